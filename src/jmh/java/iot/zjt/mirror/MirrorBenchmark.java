@@ -0,0 +1,162 @@
+package iot.zjt.mirror;
+
+import io.vertx.core.Vertx;
+import iot.zjt.Repository;
+import org.eclipse.jgit.api.Git;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mirror throughput between local bare repositories of several sizes,
+ * over the file protocol:
+ * <ul>
+ *     <li>clone+push: a full mirror into an empty target.</li>
+ *     <li>fetch+push: one new commit mirrored through the cache.</li>
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class MirrorBenchmark {
+
+    /**
+     * Commits in the source repository, each changing a file of 4 KB.
+     */
+    @Param({"10", "100", "1000"})
+    private int commits;
+
+    @Param({"default", "bulk"})
+    private String profile;
+
+    private Vertx vertx;
+    private Path root;
+    private Git work;
+    private LocalPlatform source;
+    private LocalPlatform target;
+    private Repository repo;
+    private MirrorOptions options;
+    private MirrorCache cache;
+    private final Random random = new Random(42);
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        vertx = Vertx.vertx();
+        root = Files.createTempDirectory("mirror-benchmark-");
+        options = new MirrorOptions()
+                .setCacheDirectory(root.resolve("cache").toString())
+                .setTransportProfile("bulk".equals(profile) ? TransportProfile.bulk() : new TransportProfile());
+        options.getTransportProfile().install();
+        cache = MirrorCache.create(options);
+
+        work = Git.init().setDirectory(root.resolve("work").toFile()).call();
+        for (int i = 0; i < commits; i++) {
+            commit(i);
+        }
+        work.tag().setName("v1").call();
+        Git.cloneRepository()
+                .setURI(root.resolve("work").toUri().toString())
+                .setBare(true)
+                .setDirectory(root.resolve("source/repo.git").toFile())
+                .call()
+                .close();
+        source = new LocalPlatform(vertx, "source", root.resolve("source"));
+        target = new LocalPlatform(vertx, "target", root.resolve("target"));
+        repo = LocalPlatform.repo("repo");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        work.close();
+        vertx.close();
+        RepositoryMirror.deleteRecursively(root);
+    }
+
+    private void commit(int i) throws Exception {
+        char[] text = new char[4096];
+        for (int c = 0; c < text.length; c++) {
+            text[c] = (char) ('a' + random.nextInt(26));
+        }
+        String file = "file-" + (i % 16) + ".txt";
+        Files.write(root.resolve("work").resolve(file), new String(text).getBytes(StandardCharsets.UTF_8));
+        work.add().addFilepattern(file).call();
+        work.commit().setMessage("commit " + i).call();
+    }
+
+    /**
+     * Before each full mirror, the target is empty again.
+     */
+    @State(Scope.Thread)
+    public static class EmptyTarget {
+
+        @Setup(Level.Invocation)
+        public void setUp(MirrorBenchmark benchmark) throws Exception {
+            Path dir = benchmark.root.resolve("target/repo.git");
+            if (Files.exists(dir)) {
+                RepositoryMirror.deleteRecursively(dir);
+            }
+            Git.init().setBare(true).setDirectory(dir.toFile()).call().close();
+        }
+    }
+
+    /**
+     * Before each incremental mirror, the source has one more commit
+     * than the cache and the target.
+     */
+    @State(Scope.Thread)
+    public static class NewCommit {
+
+        private int next;
+
+        @Setup(Level.Trial)
+        public void mirrorOnce(MirrorBenchmark benchmark, EmptyTarget empty) throws Exception {
+            empty.setUp(benchmark);
+            benchmark.mirror(benchmark.cache);
+            next = benchmark.commits;
+        }
+
+        @Setup(Level.Invocation)
+        public void setUp(MirrorBenchmark benchmark) throws Exception {
+            benchmark.commit(next++);
+            try (Git git = Git.open(benchmark.root.resolve("work").toFile())) {
+                git.push()
+                        .setRemote(benchmark.root.resolve("source/repo.git").toUri().toString())
+                        .add("master")
+                        .call();
+            }
+        }
+    }
+
+    private MirrorStatus mirror(MirrorCache cache) throws Exception {
+        return new RepositoryMirror(source, repo, target, repo, options, cache).call();
+    }
+
+    @Benchmark
+    public MirrorStatus clonePush(EmptyTarget empty) throws Exception {
+        return mirror(null);
+    }
+
+    @Benchmark
+    public MirrorStatus fetchPush(NewCommit commit) throws Exception {
+        return mirror(cache);
+    }
+}
@@ -0,0 +1,137 @@
+package iot.zjt.platform;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import iot.zjt.Repository;
+import org.apache.logging.log4j.core.config.Configurator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Step 2 and 3 for large synthetic listings, through
+ * {@link AbstractOnlinePlatform#prepareTarget}: match source repositories
+ * with the existing ones on the target by name, plan creations and
+ * visibility updates, and apply them on a platform answering at once.
+ * Matching is indexed, so the time should grow linearly with the listings.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MatchingBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    private int repos;
+
+    private Vertx vertx;
+    private AbstractOnlinePlatform source;
+    private AbstractOnlinePlatform target;
+    private List<Repository> fromRepos;
+    private List<Repository> toRepos;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        vertx = Vertx.vertx();
+        source = new OfflinePlatform(vertx);
+        target = new OfflinePlatform(vertx);
+        // the steps log a few lines on every call.
+        Configurator.setLevel(AbstractOnlinePlatform.class.getName(), org.apache.logging.log4j.Level.ERROR);
+    }
+
+    /**
+     * Planning updates the visibility of listed repositories, so every
+     * call starts from fresh listings.
+     */
+    @Setup(Level.Invocation)
+    public void list() {
+        fromRepos = new ArrayList<>();
+        toRepos = new ArrayList<>();
+        for (int i = 0; i < repos; i++) {
+            fromRepos.add(repo("Repo-" + i, i % 3 == 0));
+            // 80% already exist on the target, some with another visibility.
+            if (i % 5 != 0) {
+                toRepos.add(repo("repo-" + i, i % 7 == 0));
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        vertx.close();
+    }
+
+    private static Repository repo(String name, boolean visibilityPrivate) {
+        Repository repo = new Repository();
+        repo.setOwner("tom");
+        repo.setName(name);
+        repo.setVisibilityPrivate(visibilityPrivate);
+        return repo;
+    }
+
+    @Benchmark
+    public Map<Repository, Repository> prepareTarget() {
+        Future<Map<Repository, Repository>> prepared = source.prepareTarget(target, fromRepos, toRepos, null);
+        if (!prepared.succeeded()) {
+            throw new IllegalStateException("not prepared at once");
+        }
+        return prepared.result();
+    }
+
+    /**
+     * A platform applying every mutation at once, without any request.
+     */
+    private static class OfflinePlatform extends AbstractOnlinePlatform {
+
+        OfflinePlatform(Vertx vertx) {
+            super(vertx, new PlatformUser("tom", "xxx"));
+        }
+
+        @Override
+        public Future<Void> createRepository(Repository repo) {
+            return Future.succeededFuture();
+        }
+
+        @Override
+        public Future<Void> deleteRepository(Repository repo) {
+            return Future.failedFuture("offline");
+        }
+
+        @Override
+        public Future<Void> updateRepository(Repository repo) {
+            return Future.succeededFuture();
+        }
+
+        @Override
+        public Future<List<Repository>> getRepositories(boolean includePrivate) {
+            return Future.failedFuture("offline");
+        }
+
+        @Override
+        public String getPlatform() {
+            return "offline";
+        }
+
+        @Override
+        public String getRepositoryHttpsUrl(Repository repo) {
+            return "https://localhost/" + repo.getOwner() + "/" + repo.getName() + ".git";
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package iot.zjt.platform;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpServer;
+import io.vertx.ext.web.client.WebClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost of building a WebClient for every API call, as the platforms
+ * once did, against the client shared by all calls to a platform now.
+ * Requests go to a local server, so the connection setup is what differs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WebClientBenchmark {
+
+    private Vertx vertx;
+    private HttpServer server;
+    private PlatformClientOptions options;
+    private WebClient shared;
+
+    @Setup
+    public void setUp() throws Exception {
+        vertx = Vertx.vertx();
+        server = vertx.createHttpServer()
+                .requestHandler(request -> request.response().end("[]"))
+                .listen(0).toCompletionStage().toCompletableFuture().get(10, TimeUnit.SECONDS);
+        options = new PlatformClientOptions();
+        shared = WebClient.create(vertx, options.getWebClientOptions());
+    }
+
+    @TearDown
+    public void tearDown() {
+        shared.close();
+        vertx.close();
+    }
+
+    @Benchmark
+    public int clientPerCall() throws Exception {
+        WebClient client = WebClient.create(vertx, options.getWebClientOptions());
+        try {
+            return send(client);
+        } finally {
+            client.close();
+        }
+    }
+
+    @Benchmark
+    public int sharedClient() throws Exception {
+        return send(shared);
+    }
+
+    private int send(WebClient client) throws Exception {
+        return client.get(server.actualPort(), "localhost", "/user/repos").send()
+                .toCompletionStage().toCompletableFuture().get(10, TimeUnit.SECONDS)
+                .statusCode();
+    }
+}
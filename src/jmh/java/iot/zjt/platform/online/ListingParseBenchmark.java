@@ -0,0 +1,103 @@
+package iot.zjt.platform.online;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import iot.zjt.Repository;
+import iot.zjt.platform.RepositoryListParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parse a page of GitHub repository listing, through the whole body as
+ * a JsonArray (the former bodyAsJsonArray path) or through the streaming
+ * parser used now.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ListingParseBenchmark {
+
+    /**
+     * Repositories per page, 100 is the maximum of GitHub.
+     */
+    @Param({"30", "100"})
+    private int perPage;
+
+    private Buffer body;
+    private List<Buffer> chunks;
+
+    @Setup
+    public void setUp() {
+        JsonArray page = new JsonArray();
+        for (int i = 0; i < perPage; i++) {
+            // the real payload has about 100 fields, most of them ignored.
+            JsonObject repo = new JsonObject()
+                    .put("id", 100000 + i)
+                    .put("name", "repo-" + i)
+                    .put("full_name", "tom/repo-" + i)
+                    .put("private", i % 3 == 0)
+                    .put("owner", new JsonObject()
+                            .put("login", "tom")
+                            .put("id", 42)
+                            .put("avatar_url", "https://avatars.githubusercontent.com/u/42?v=4"))
+                    .put("description", "A synthetic repository for benchmarks, number " + i)
+                    .put("topics", new JsonArray().add("java").add("git").add("mirror"))
+                    .put("size", 1024 * i);
+            for (int f = 0; f < 60; f++) {
+                repo.put("field_" + f, "https://api.github.com/repos/tom/repo-" + i + "/field/" + f);
+            }
+            page.add(repo);
+        }
+        body = page.toBuffer();
+
+        // like a response arriving in network chunks.
+        chunks = new ArrayList<>();
+        for (int start = 0; start < body.length(); start += 8192) {
+            chunks.add(body.getBuffer(start, Math.min(body.length(), start + 8192)));
+        }
+    }
+
+    @Benchmark
+    public List<Repository> jsonArray() {
+        List<Repository> repos = new ArrayList<>();
+        for (Object item : body.toJsonArray()) {
+            JsonObject json = (JsonObject) item;
+            Repository repo = new Repository();
+            repo.setId(json.getInteger("id"));
+            repo.setName(json.getString("name"));
+            repo.setOwner(json.getJsonObject("owner").getString("login"));
+            repo.setVisibilityPrivate(json.getBoolean("private"));
+            repo.setSize(json.getLong("size"));
+            repos.add(repo);
+        }
+        return repos;
+    }
+
+    @Benchmark
+    public List<Repository> streaming() {
+        List<Repository> repos = new ArrayList<>();
+        RepositoryListParser parser = new RepositoryListParser(GitHubPlatform::readRepositoryField, repos::add);
+        for (Buffer chunk : chunks) {
+            parser.write(chunk);
+        }
+        parser.end();
+        return repos;
+    }
+}
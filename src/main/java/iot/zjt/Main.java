@@ -5,12 +5,18 @@ import io.vertx.config.ConfigRetrieverOptions;
 import io.vertx.config.ConfigStoreOptions;
 import io.vertx.core.Vertx;
 import io.vertx.core.json.JsonObject;
-import iot.zjt.platform.PlatformUser;
-import iot.zjt.platform.online.GitHubPlatform;
-import iot.zjt.platform.online.GitLabPlatform;
+import iot.zjt.metrics.MetricsServer;
+import iot.zjt.mirror.MirrorOptions;
+import iot.zjt.mirror.MirrorScheduler;
+import iot.zjt.platform.PlatformRegistry;
+import iot.zjt.sync.SyncPlan;
+import iot.zjt.sync.TenantBatch;
+import iot.zjt.webhook.WebhookOptions;
+import iot.zjt.webhook.WebhookServer;
 import org.apache.logging.log4j.LogManager;
 
 import java.io.IOException;
+import java.util.List;
 
 /**
  * Hello world!
@@ -39,72 +45,63 @@ public class Main {
         configRetriever.getConfig(json -> {
             logger.info("Successfully load user configurations.");
 
-            PlatformUser githubUser = new PlatformUser(
-                    json.result().getString("github.username"),
-                    json.result().getString("github.token"));
-            PlatformUser gitlabUser = new PlatformUser(
-                    json.result().getString("gitlab.username"),
-                    json.result().getString("gitlab.token")
-            );
-
-            GitHubPlatform github = new GitHubPlatform(vertx, githubUser);
-            GitLabPlatform gitlab = new GitLabPlatform(vertx, gitlabUser);
-
-//            Repository repo = new Repository();
-//            repo.setVisibilityPrivate(false);
-//            repo.setOwner(gitlabUser.getUsername());
-//            repo.setName("repo-mirror-sync");
-//
-//            gitlab.updateRepository(repo).onComplete(ar -> {
-//                if (ar.succeeded()) {
-//                    logger.info("ojbk");
-//                } else {
-//                    logger.error("fail to update");
-//                }
-//
-//                vertx.close();
-//            });
-
-//
-//            gitlab.createRepository(repo).onComplete(ar -> {
-//                if (ar.succeeded()) {
-//                    logger.info("objk");
-//                } else {
-//                    logger.error("end");
-//                }
-//                vertx.close();
-//            });
-
-//            gitlab.deleteRepository(repo).onComplete(ar -> {
-//                if (ar.succeeded()) {
-//                    logger.info("objk");
-//                } else {
-//                    logger.error("end");
-//                }
-//                vertx.close();
-//            });
-
-//            gitlab.getRepositories(true).onComplete(ar -> {
-//                if (ar.succeeded()) {
-//                    for (Repository onlineRepo : ar.result()) {
-//                        logger.info(onlineRepo.getName());
-//                    }
-//                    logger.info(ar.result().size());
-//                } else {
-//                    logger.error(ar.cause().getMessage());
-//                }
-//
-//                vertx.close();
-//            });
-
-            github.mirrorAllRepoTo(gitlab, true).onComplete(ar -> {
-                if (ar.succeeded()) {
+            MetricsServer metricsServer = new MetricsServer(vertx);
+            int metricsPort = Integer.parseInt(json.result().getValue("metrics.port", -1).toString());
+            if (metricsPort >= 0) {
+                metricsServer.start(metricsPort);
+            }
+
+            MirrorScheduler scheduler = new MirrorScheduler(vertx,
+                    MirrorOptions.fromConfig(json.result()));
+
+            if (json.result().containsKey("tenants")) {
+                // mirror the accounts of every tenant, sharing the worker pool fairly.
+                TenantBatch batch = TenantBatch.fromConfig(vertx, json.result(), PlatformRegistry.load());
+                batch.run(scheduler).onComplete(ar -> {
+                    ar.result().forEach(result -> System.out.println(result));
+                    if (ar.result().stream().allMatch(TenantBatch.TenantResult::isSucceeded)) {
+                        System.out.println("Mirroring success");
+                    } else {
+                        System.err.println("Mirroring failed");
+                    }
+
+                    scheduler.close();
+                    metricsServer.close().onComplete(closed -> vertx.close());
+                });
+                return;
+            }
+
+            SyncPlan plan = SyncPlan.fromConfig(vertx, json.result(), PlatformRegistry.load());
+
+            if (Boolean.parseBoolean(json.result().getValue("webhook.enabled", false).toString())) {
+                // keep running, and mirror repositories as they are pushed to.
+                SyncPlan.Sync sync = plan.getSyncs().get(0);
+                if (plan.getSyncs().size() > 1 || sync.getTargets().size() > 1) {
+                    logger.warn("Webhooks are only served for sync [" + sync.getName() + "] to " +
+                            sync.getTargets().get(0));
+                }
+                new WebhookServer(vertx, plan.getPlatform(sync.getSource()),
+                        plan.getPlatform(sync.getTargets().get(0)), scheduler,
+                        WebhookOptions.fromConfig(json.result())
+                                .setIncludePrivate(sync.isIncludePrivate())).start().onFailure(err -> {
+                    logger.error("Fail to start webhook server: " + err.getMessage());
+                    vertx.close();
+                });
+                return;
+            }
+
+            plan.run(scheduler).onComplete(ar -> {
+                if (ar.succeeded() && ar.result().values().stream()
+                        .flatMap(List::stream)
+                        .allMatch(summary -> summary.getFailedCount() == 0 && summary.getCancelledCount() == 0)) {
                     System.out.println("Mirroring success");
                 } else {
                     System.err.println("Mirroring failed");
                 }
 
-                vertx.close();
+                scheduler.close();
+                plan.close();
+                metricsServer.close().onComplete(closed -> vertx.close());
             });
         });
 
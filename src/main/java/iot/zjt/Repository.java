@@ -11,6 +11,11 @@ public class Repository {
     private String name;
     private boolean visibilityPrivate;
     private int id;
+    private long size; // in KB
+    private String defaultBranch;
+    private long pushedAt; // in millis, 0 if unknown
+    private boolean archived;
+    private boolean fork;
 
     public Repository() {
     }
@@ -20,6 +25,11 @@ public class Repository {
         this.name = another.name;
         this.visibilityPrivate = another.visibilityPrivate;
         this.id = another.id;
+        this.size = another.size;
+        this.defaultBranch = another.defaultBranch;
+        this.pushedAt = another.pushedAt;
+        this.archived = another.archived;
+        this.fork = another.fork;
     }
 
     public void setName(String name) {
@@ -38,6 +48,26 @@ public class Repository {
         this.id = id;
     }
 
+    public void setSize(long size) {
+        this.size = size;
+    }
+
+    public void setDefaultBranch(String defaultBranch) {
+        this.defaultBranch = defaultBranch;
+    }
+
+    public void setPushedAt(long pushedAt) {
+        this.pushedAt = pushedAt;
+    }
+
+    public void setArchived(boolean archived) {
+        this.archived = archived;
+    }
+
+    public void setFork(boolean fork) {
+        this.fork = fork;
+    }
+
     public String getName() {
         return name;
     }
@@ -53,4 +83,31 @@ public class Repository {
     public int getId() {
         return id;
     }
+
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * @return The default branch like "master", null if unknown.
+     */
+    public String getDefaultBranch() {
+        return defaultBranch;
+    }
+
+    /**
+     * @return When the repository was last pushed to, or had activity on
+     * GitLab, in milliseconds since the epoch, 0 if unknown.
+     */
+    public long getPushedAt() {
+        return pushedAt;
+    }
+
+    public boolean isArchived() {
+        return archived;
+    }
+
+    public boolean isFork() {
+        return fork;
+    }
 }
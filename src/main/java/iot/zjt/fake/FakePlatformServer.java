@@ -0,0 +1,646 @@
+package iot.zjt.fake;
+
+import io.netty.handler.codec.http.QueryStringDecoder;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.http.HttpServerOptions;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import iot.zjt.fake.FakeServerOptions.Dialect;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A stand-in of GitHub or GitLab for end-to-end and load tests without
+ * the real services. It serves the API endpoints used by the platforms,
+ * listing, creating, updating and deleting repositories with pagination,
+ * Git smart HTTP over bare repositories on disk, and their Git LFS objects.
+ * <p>
+ * Latency and rate limiting (429 with "Retry-After") can be injected
+ * into API responses. Point a platform to it by its API and Git URLs.
+ *
+ * @author Mr Dk.
+ * @since 2021/01/25
+ */
+public class FakePlatformServer {
+
+    private final static Logger logger = LogManager.getLogger(FakePlatformServer.class);
+
+    private static final Pattern GIT_PATH =
+            Pattern.compile("^/([^/]+)/([^/]+?)(?:\\.git)?/(info/refs|git-upload-pack|git-receive-pack)$");
+    private static final Pattern LFS_PATH =
+            Pattern.compile("^/([^/]+)/([^/]+?)(?:\\.git)?/info/lfs/(.+)$");
+    private static final Pattern GITHUB_REPO_PATH = Pattern.compile("^/repos/([^/]+)/([^/]+)$");
+    private static final Pattern GITLAB_USER_PROJECTS_PATH = Pattern.compile("^/api/v4/users/([^/]+)/projects$");
+    private static final Pattern GITLAB_PROJECT_PATH = Pattern.compile("^/api/v4/projects/([^/]+)$");
+    private static final Pattern GRAPHQL_CREATE =
+            Pattern.compile("(\\w+)\\s*:\\s*createRepository\\(input:\\s*\\$(\\w+)\\)");
+
+    private final Vertx vertx;
+    private final FakeServerOptions options;
+    private final Path root;
+    private final GitHttpHandler gitHandler;
+    private final LfsHttpHandler lfsHandler;
+
+    /**
+     * Repositories by lower-cased path, in the order of creation.
+     */
+    private final Map<String, FakeRepository> repos = new LinkedHashMap<>();
+    private int nextId = 1;
+
+    private long apiRequests = 0;
+    private HttpServer server;
+
+    private static class FakeRepository {
+        private final int id;
+        private final String name;
+        private final String path;
+        private boolean visibilityPrivate;
+        private long size; // in KB
+        private long pushedAt; // in millis, 0 if never pushed
+        private boolean archived;
+
+        private FakeRepository(int id, String name, String path, boolean visibilityPrivate) {
+            this.id = id;
+            this.name = name;
+            this.path = path;
+            this.visibilityPrivate = visibilityPrivate;
+        }
+    }
+
+    public FakePlatformServer(final Vertx vertx, FakeServerOptions options) {
+        if (options.getRoot() == null) {
+            throw new IllegalArgumentException("root directory must be set");
+        }
+        this.vertx = vertx;
+        this.options = options;
+        this.root = Paths.get(options.getRoot()).toAbsolutePath().normalize();
+        this.gitHandler = new GitHttpHandler(vertx);
+        this.lfsHandler = new LfsHttpHandler(vertx, options.getLfsFailEvery());
+    }
+
+    /**
+     * Run a stand-in configured by "fake.*" system properties, e.g.
+     * <pre>
+     * $ java -Dfake.dialect=gitlab -Dfake.port=8081 -Dfake.root=/tmp/repos \
+     *     -cp repo-mirror-sync-jar-with-dependencies.jar iot.zjt.fake.FakePlatformServer
+     * </pre>
+     */
+    public static void main(String[] args) {
+        JsonObject config = new JsonObject();
+        System.getProperties().forEach((key, value) -> config.put(key.toString(), value.toString()));
+
+        Vertx vertx = Vertx.vertx();
+        new FakePlatformServer(vertx, FakeServerOptions.fromConfig(config)).start().onFailure(err -> {
+            logger.error("Fail to start the stand-in server: " + err.getMessage());
+            vertx.close();
+        });
+    }
+
+    /**
+     * List the repositories on disk, then start serving.
+     *
+     * @return The future of the listening server.
+     */
+    public Future<HttpServer> start() {
+        return vertx.<Void>executeBlocking(promise -> {
+            try {
+                scan();
+                promise.complete();
+            } catch (IOException e) {
+                promise.fail(e);
+            }
+        }).compose(v -> vertx.createHttpServer(new HttpServerOptions()
+                .setDecompressionSupported(true) // Git may gzip request bodies.
+                .setHandle100ContinueAutomatically(true))
+                .requestHandler(this::handle)
+                .listen(options.getPort()))
+                .onSuccess(server -> {
+                    this.server = server;
+                    logger.info("Serving a stand-in of " + options.getDialect() + " with " + repos.size() +
+                            " repositories, API at " + getApiUrl() + ", Git at " + getGitUrl());
+                });
+    }
+
+    public Future<Void> close() {
+        return server == null ? Future.succeededFuture() : server.close();
+    }
+
+    /**
+     * @return The base URL for the API of the platform.
+     */
+    public String getApiUrl() {
+        return getGitUrl() + (options.getDialect() == Dialect.GITLAB ? "/api/v4" : "");
+    }
+
+    /**
+     * @return The base URL for Git remote operations of the platform.
+     */
+    public String getGitUrl() {
+        return "http://localhost:" + (server == null ? options.getPort() : server.actualPort());
+    }
+
+    /**
+     * @return The API requests received, including rate limited ones.
+     */
+    public synchronized long getApiRequestCount() {
+        return apiRequests;
+    }
+
+    /**
+     * @return The names of repositories, in the order of creation.
+     */
+    public synchronized List<String> getRepositoryNames() {
+        return repos.values().stream().map(repo -> repo.name).collect(Collectors.toList());
+    }
+
+    /**
+     * @param name The repository name.
+     * @return The bare repository on disk, which may not exist yet.
+     */
+    public Path getRepositoryDirectory(String name) {
+        return root.resolve(options.getOwner()).resolve(toPath(name) + ".git");
+    }
+
+    /**
+     * @param name The repository name.
+     * @param oid  The SHA-256 of an LFS object.
+     * @return The LFS object on disk, which may not exist.
+     */
+    public Path getLfsObjectPath(String name, String oid) {
+        return LfsHttpHandler.getObjectPath(getRepositoryDirectory(name), oid);
+    }
+
+    /**
+     * @return The LFS objects uploaded and stored.
+     */
+    public long getLfsUploadCount() {
+        return lfsHandler.getUploadCount();
+    }
+
+    /**
+     * Archive or unarchive a repository, which is then listed so.
+     *
+     * @param name     The name of the repository.
+     * @param archived Whether it is archived.
+     */
+    public synchronized void setArchived(String name, boolean archived) {
+        FakeRepository repo = find(name);
+        if (repo == null) {
+            throw new IllegalArgumentException("no repository named " + name);
+        }
+        repo.archived = archived;
+    }
+
+    private void scan() throws IOException {
+        Path ownerDir = root.resolve(options.getOwner());
+        if (Files.isDirectory(ownerDir)) {
+            try (Stream<Path> dirs = Files.list(ownerDir)) {
+                for (Path dir : dirs.sorted().collect(Collectors.toList())) {
+                    String file = dir.getFileName().toString();
+                    if (Files.isDirectory(dir) && file.endsWith(".git")) {
+                        FakeRepository repo = add(file.substring(0, file.length() - 4), false);
+                        repo.size = sizeOf(dir) / 1024;
+                        repo.pushedAt = Files.getLastModifiedTime(dir).toMillis();
+                    }
+                }
+            }
+        }
+        for (int i = 0; i < options.getSeedRepos(); i++) {
+            if (find("seed-" + i) == null) {
+                add("seed-" + i, i % 2 == 0);
+            }
+        }
+    }
+
+    private synchronized FakeRepository add(String name, boolean visibilityPrivate) {
+        FakeRepository repo = new FakeRepository(nextId++, name, toPath(name), visibilityPrivate);
+        repos.put(repo.path.toLowerCase(Locale.ROOT), repo);
+        return repo;
+    }
+
+    private synchronized FakeRepository find(String name) {
+        return repos.get(toPath(name).toLowerCase(Locale.ROOT));
+    }
+
+    private synchronized FakeRepository findById(int id) {
+        for (FakeRepository repo : repos.values()) {
+            if (repo.id == id) {
+                return repo;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * GitLab derives the path of a project from its name.
+     */
+    private String toPath(String name) {
+        return options.getDialect() == Dialect.GITLAB ? name.replace('.', '-') : name;
+    }
+
+    private void handle(HttpServerRequest request) {
+        Matcher git = GIT_PATH.matcher(request.path());
+        if (git.matches()) {
+            FakeRepository repo = find(git.group(2));
+            if (repo == null || !options.getOwner().equalsIgnoreCase(git.group(1))) {
+                request.response().setStatusCode(404).end();
+                return;
+            }
+            Path dir = getRepositoryDirectory(repo.name);
+            gitHandler.handle(request, dir, git.group(3), () -> {
+                try {
+                    long size = sizeOf(dir) / 1024;
+                    synchronized (this) {
+                        repo.size = size;
+                        repo.pushedAt = System.currentTimeMillis();
+                    }
+                } catch (IOException e) {
+                    logger.error("Fail to measure " + dir + ": " + e.getMessage());
+                }
+            });
+            return;
+        }
+
+        Matcher lfs = LFS_PATH.matcher(request.path());
+        if (lfs.matches()) {
+            FakeRepository repo = find(lfs.group(2));
+            if (repo == null || !options.getOwner().equalsIgnoreCase(lfs.group(1))) {
+                request.response().setStatusCode(404).end();
+                return;
+            }
+            lfsHandler.handle(request, getRepositoryDirectory(repo.name),
+                    getGitUrl() + "/" + options.getOwner() + "/" + repo.path + ".git/info/lfs", lfs.group(3));
+            return;
+        }
+
+        long count;
+        synchronized (this) {
+            count = ++apiRequests;
+        }
+        request.bodyHandler(body -> {
+            if (options.getRateLimitEvery() > 0 && count % options.getRateLimitEvery() == 0) {
+                request.response()
+                        .setStatusCode(429)
+                        .putHeader("Retry-After", Integer.toString(options.getRetryAfterSeconds()))
+                        .putHeader("X-RateLimit-Remaining", "0")
+                        .end();
+                return;
+            }
+            if (options.getLatencyMs() > 0) {
+                vertx.setTimer(options.getLatencyMs(), id -> route(request, body));
+            } else {
+                route(request, body);
+            }
+        });
+    }
+
+    private void route(HttpServerRequest request, Buffer body) {
+        try {
+            if (options.getDialect() == Dialect.GITHUB) {
+                routeGitHub(request, body);
+            } else {
+                routeGitLab(request, body);
+            }
+        } catch (DecodeException | ClassCastException e) {
+            reply(request.response(), 400, new JsonObject().put("message", "Problems parsing JSON"));
+        }
+    }
+
+    private void routeGitHub(HttpServerRequest request, Buffer body) {
+        String path = request.path();
+        HttpMethod method = request.method();
+        Matcher repoPath = GITHUB_REPO_PATH.matcher(path);
+
+        if ("/user/repos".equals(path) && method == HttpMethod.GET) {
+            list(request);
+        } else if ("/user/repos".equals(path) && method == HttpMethod.POST) {
+            JsonObject input = body.toJsonObject();
+            createGitHub(request.response(), input.getString("name"), input.getBoolean("private", false));
+        } else if ("/graphql".equals(path) && method == HttpMethod.POST) {
+            graphQL(request.response(), body.toJsonObject());
+        } else if (repoPath.matches() && options.getOwner().equalsIgnoreCase(repoPath.group(1))) {
+            FakeRepository repo = find(repoPath.group(2));
+            if (repo == null) {
+                reply(request.response(), 404, new JsonObject().put("message", "Not Found"));
+            } else if (method == HttpMethod.PATCH) {
+                Boolean visibilityPrivate = body.toJsonObject().getBoolean("private");
+                synchronized (this) {
+                    if (visibilityPrivate != null) {
+                        repo.visibilityPrivate = visibilityPrivate;
+                    }
+                }
+                reply(request.response(), 200, toJson(repo, request));
+            } else if (method == HttpMethod.DELETE) {
+                delete(repo);
+                request.response().setStatusCode(204).end();
+            } else {
+                request.response().setStatusCode(405).end();
+            }
+        } else {
+            reply(request.response(), 404, new JsonObject().put("message", "Not Found"));
+        }
+    }
+
+    private void routeGitLab(HttpServerRequest request, Buffer body) {
+        String path = request.path();
+        HttpMethod method = request.method();
+        Matcher userProjects = GITLAB_USER_PROJECTS_PATH.matcher(path);
+        Matcher project = GITLAB_PROJECT_PATH.matcher(path);
+
+        if (userProjects.matches() && method == HttpMethod.GET) {
+            if (options.getOwner().equalsIgnoreCase(userProjects.group(1))) {
+                list(request);
+            } else {
+                reply(request.response(), 404, new JsonObject().put("message", "404 User Not Found"));
+            }
+        } else if ("/api/v4/projects".equals(path) && method == HttpMethod.POST) {
+            Map<String, String> form = parseForm(body);
+            createGitLab(request, form.get("name"), "private".equals(form.get("visibility")));
+        } else if (project.matches()) {
+            FakeRepository repo = findProject(URLDecoder.decode(project.group(1), StandardCharsets.UTF_8));
+            if (repo == null) {
+                reply(request.response(), 404, new JsonObject().put("message", "404 Project Not Found"));
+            } else if (method == HttpMethod.PUT) {
+                String visibility = parseForm(body).get("visibility");
+                synchronized (this) {
+                    if (visibility != null) {
+                        repo.visibilityPrivate = "private".equals(visibility);
+                    }
+                }
+                reply(request.response(), 200, toJson(repo, request));
+            } else if (method == HttpMethod.DELETE) {
+                delete(repo);
+                reply(request.response(), 202, new JsonObject().put("message", "202 Accepted"));
+            } else {
+                request.response().setStatusCode(405).end();
+            }
+        } else {
+            reply(request.response(), 404, new JsonObject().put("message", "404 Not Found"));
+        }
+    }
+
+    /**
+     * A project is identified by its id, or by "{owner}/{path}".
+     */
+    private FakeRepository findProject(String idOrPath) {
+        int slash = idOrPath.indexOf('/');
+        if (slash < 0) {
+            try {
+                return findById(Integer.parseInt(idOrPath));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        if (!options.getOwner().equalsIgnoreCase(idOrPath.substring(0, slash))) {
+            return null;
+        }
+        return find(idOrPath.substring(slash + 1));
+    }
+
+    private static Map<String, String> parseForm(Buffer body) {
+        Map<String, String> form = new LinkedHashMap<>();
+        new QueryStringDecoder(body.toString(StandardCharsets.UTF_8), false).parameters()
+                .forEach((key, values) -> form.put(key, values.get(0)));
+        return form;
+    }
+
+    /**
+     * One page of the listing, with the pagination headers of the dialect
+     * and an ETag changing with any mutation.
+     */
+    private void list(HttpServerRequest request) {
+        int perPage = Math.min(options.getMaxPerPage(), parseInt(request.getParam("per_page"),
+                options.getDialect() == Dialect.GITLAB ? 20 : 30));
+        int page = Math.max(1, parseInt(request.getParam("page"), 1));
+
+        List<FakeRepository> all;
+        synchronized (this) {
+            all = new ArrayList<>(repos.values());
+        }
+        int lastPage = Math.max(1, (all.size() + perPage - 1) / perPage);
+
+        JsonArray body = new JsonArray();
+        for (int i = (page - 1) * perPage; i < Math.min(all.size(), page * perPage); i++) {
+            synchronized (this) {
+                body.add(toJson(all.get(i), request));
+            }
+        }
+
+        // like GitHub, the ETag only depends on the body: a page is not
+        // modified by repositories added to the pages behind it.
+        String etag = "W/\"" + Integer.toHexString(body.encode().hashCode()) + "\"";
+        HttpServerResponse response = request.response().putHeader("ETag", etag);
+        if (etag.equals(request.getHeader("If-None-Match"))) {
+            response.setStatusCode(304).end();
+            return;
+        }
+
+        if (options.getDialect() == Dialect.GITHUB) {
+            String url = "http://" + request.host() + "/user/repos?per_page=" + perPage + "&page=";
+            List<String> links = new ArrayList<>();
+            if (page < lastPage) {
+                links.add("<" + url + (page + 1) + ">; rel=\"next\"");
+                links.add("<" + url + lastPage + ">; rel=\"last\"");
+            }
+            if (page > 1) {
+                links.add("<" + url + 1 + ">; rel=\"first\"");
+                links.add("<" + url + (page - 1) + ">; rel=\"prev\"");
+            }
+            if (!links.isEmpty()) {
+                response.putHeader("Link", String.join(", ", links));
+            }
+        } else {
+            response.putHeader("X-Page", Integer.toString(page))
+                    .putHeader("X-Per-Page", Integer.toString(perPage))
+                    .putHeader("X-Total", Integer.toString(all.size()))
+                    .putHeader("X-Total-Pages", Integer.toString(lastPage))
+                    .putHeader("X-Next-Page", page < lastPage ? Integer.toString(page + 1) : "")
+                    .putHeader("X-Prev-Page", page > 1 ? Integer.toString(page - 1) : "");
+        }
+        response.putHeader("Content-Type", "application/json").end(body.toBuffer());
+    }
+
+    private void createGitHub(HttpServerResponse response, String name, boolean visibilityPrivate) {
+        if (name == null || name.trim().isEmpty()) {
+            reply(response, 422, new JsonObject().put("message", "Repository creation failed."));
+            return;
+        }
+        FakeRepository repo = create(name, visibilityPrivate);
+        if (repo == null) {
+            reply(response, 422, new JsonObject()
+                    .put("message", "Repository creation failed.")
+                    .put("errors", new JsonArray().add(new JsonObject()
+                            .put("resource", "Repository")
+                            .put("field", "name")
+                            .put("message", "name already exists on this account"))));
+            return;
+        }
+        reply(response, 201, toJson(repo, null));
+    }
+
+    private void createGitLab(HttpServerRequest request, String name, boolean visibilityPrivate) {
+        if (name == null || name.trim().isEmpty()) {
+            reply(request.response(), 400, new JsonObject().put("error", "name is missing"));
+            return;
+        }
+        FakeRepository repo = create(name, visibilityPrivate);
+        if (repo == null) {
+            reply(request.response(), 400, new JsonObject().put("message", new JsonObject()
+                    .put("name", new JsonArray().add("has already been taken"))
+                    .put("path", new JsonArray().add("has already been taken"))));
+            return;
+        }
+        reply(request.response(), 201, toJson(repo, request));
+    }
+
+    /**
+     * Only the aliased "createRepository" mutations sent by the GitHub
+     * platform are understood. Each succeeds or fails on its own.
+     */
+    private void graphQL(HttpServerResponse response, JsonObject request) {
+        String query = request.getString("query", "");
+        JsonObject variables = request.getJsonObject("variables", new JsonObject());
+
+        JsonObject data = new JsonObject();
+        JsonArray errors = new JsonArray();
+        Matcher mutation = GRAPHQL_CREATE.matcher(query);
+        while (mutation.find()) {
+            String alias = mutation.group(1);
+            JsonObject input = variables.getJsonObject(mutation.group(2), new JsonObject());
+            FakeRepository repo = input.getString("name") == null ? null :
+                    create(input.getString("name"), "PRIVATE".equals(input.getString("visibility")));
+            if (repo == null) {
+                data.putNull(alias);
+                errors.add(new JsonObject()
+                        .put("type", "UNPROCESSABLE")
+                        .put("path", new JsonArray().add(alias))
+                        .put("message", "Name already exists on this account"));
+            } else {
+                data.put(alias, new JsonObject().put("repository", new JsonObject().put("databaseId", repo.id)));
+            }
+        }
+        if (data.isEmpty()) {
+            errors.add(new JsonObject().put("message", "only createRepository mutations are supported"));
+        }
+
+        JsonObject body = new JsonObject().put("data", data);
+        if (!errors.isEmpty()) {
+            body.put("errors", errors);
+        }
+        reply(response, 200, body);
+    }
+
+    /**
+     * @return The new repository, or null if the name is taken.
+     */
+    private synchronized FakeRepository create(String name, boolean visibilityPrivate) {
+        if (find(name) != null) {
+            return null;
+        }
+        return add(name, visibilityPrivate);
+    }
+
+    private void delete(FakeRepository repo) {
+        synchronized (this) {
+            repos.remove(repo.path.toLowerCase(Locale.ROOT));
+        }
+        Path dir = getRepositoryDirectory(repo.name);
+        vertx.fileSystem().exists(dir.toString())
+                .compose(exists -> exists ? vertx.fileSystem().deleteRecursive(dir.toString(), true) :
+                        Future.succeededFuture())
+                .onFailure(err -> logger.error("Fail to remove " + dir + ": " + err.getMessage()));
+    }
+
+    private JsonObject toJson(FakeRepository repo, HttpServerRequest request) {
+        String gitUrl = request == null ? getGitUrl() : "http://" + request.host();
+        String cloneUrl = gitUrl + "/" + options.getOwner() + "/" + repo.path + ".git";
+        if (options.getDialect() == Dialect.GITHUB) {
+            return new JsonObject()
+                    .put("id", repo.id)
+                    .put("name", repo.name)
+                    .put("full_name", options.getOwner() + "/" + repo.name)
+                    .put("private", repo.visibilityPrivate)
+                    .put("owner", new JsonObject().put("login", options.getOwner()).put("type", "User"))
+                    .put("clone_url", cloneUrl)
+                    .put("size", repo.size)
+                    .put("default_branch", getDefaultBranch(repo))
+                    .put("pushed_at", repo.pushedAt == 0 ? null : Instant.ofEpochMilli(repo.pushedAt).toString())
+                    .put("archived", repo.archived)
+                    .put("fork", false);
+        }
+        return new JsonObject()
+                .put("id", repo.id)
+                .put("name", repo.name)
+                .put("path", repo.path)
+                .put("path_with_namespace", options.getOwner() + "/" + repo.path)
+                .put("visibility", repo.visibilityPrivate ? "private" : "public")
+                .put("owner", new JsonObject().put("username", options.getOwner()))
+                .put("http_url_to_repo", cloneUrl)
+                .put("default_branch", getDefaultBranch(repo))
+                .put("last_activity_at", Instant.ofEpochMilli(repo.pushedAt == 0 ?
+                        System.currentTimeMillis() : repo.pushedAt).toString())
+                .put("archived", repo.archived)
+                .put("statistics", new JsonObject().put("repository_size", repo.size * 1024));
+    }
+
+    /**
+     * @return The branch HEAD points to, null if the repository is empty.
+     */
+    private String getDefaultBranch(FakeRepository repo) {
+        Path head = getRepositoryDirectory(repo.name).resolve("HEAD");
+        try {
+            String ref = Files.exists(head) ? new String(Files.readAllBytes(head), StandardCharsets.UTF_8).trim() : "";
+            return repo.pushedAt != 0 && ref.startsWith("ref: refs/heads/") ?
+                    ref.substring("ref: refs/heads/".length()) : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static void reply(HttpServerResponse response, int status, JsonObject body) {
+        response.setStatusCode(status)
+                .putHeader("Content-Type", "application/json")
+                .end(body.toBuffer());
+    }
+
+    private static int parseInt(String value, int defaultValue) {
+        try {
+            return value == null ? defaultValue : Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    private static long sizeOf(Path dir) throws IOException {
+        if (!Files.exists(dir)) {
+            return 0;
+        }
+        try (Stream<Path> files = Files.walk(dir)) {
+            return files.filter(Files::isRegularFile).mapToLong(file -> file.toFile().length()).sum();
+        }
+    }
+}
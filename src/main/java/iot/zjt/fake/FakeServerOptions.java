@@ -0,0 +1,221 @@
+package iot.zjt.fake;
+
+import io.vertx.core.json.JsonObject;
+
+import java.util.Locale;
+
+/**
+ * Options of the stand-in platform server, loaded from "fake.*" configurations.
+ *
+ * @author Mr Dk.
+ * @since 2021/01/25
+ */
+public class FakeServerOptions {
+
+    /**
+     * The API the server speaks.
+     */
+    public enum Dialect {
+        GITHUB,
+        GITLAB
+    }
+
+    private Dialect dialect = Dialect.GITHUB;
+
+    /**
+     * Port to listen on, 0 for a random one.
+     */
+    private int port = 0;
+
+    /**
+     * Directory of bare repositories, as "{root}/{owner}/{path}.git".
+     * Repositories already there are listed when the server starts.
+     */
+    private String root = null;
+
+    /**
+     * The user owning every repository.
+     */
+    private String owner = "tom";
+
+    /**
+     * Repositories per page at most, whatever "per_page" asks for.
+     */
+    private int maxPerPage = 100;
+
+    /**
+     * Delay before every API response.
+     */
+    private int latencyMs = 0;
+
+    /**
+     * Every this many API requests is rate limited with 429, 0 to disable.
+     */
+    private int rateLimitEvery = 0;
+
+    /**
+     * The "Retry-After" of rate limited responses.
+     */
+    private int retryAfterSeconds = 1;
+
+    /**
+     * Empty repositories "seed-{n}" listed in addition to those on disk,
+     * for listing and creation load without Git data.
+     */
+    private int seedRepos = 0;
+
+    /**
+     * Every this many LFS downloads is cut off half-way, 0 to disable.
+     */
+    private int lfsFailEvery = 0;
+
+    public FakeServerOptions() {
+    }
+
+    /**
+     * Load options from flat configurations like "fake.dialect=gitlab".
+     * Missing keys fall back to defaults.
+     *
+     * @param config The configuration object.
+     * @return The options.
+     */
+    public static FakeServerOptions fromConfig(JsonObject config) {
+        return new FakeServerOptions()
+                .setDialect(Dialect.valueOf(config.getString("fake.dialect", "github").trim()
+                        .toUpperCase(Locale.ROOT)))
+                .setPort(getInt(config, "fake.port", 0))
+                .setRoot(config.getString("fake.root"))
+                .setOwner(config.getString("fake.owner", "tom"))
+                .setMaxPerPage(getInt(config, "fake.max-per-page", 100))
+                .setLatencyMs(getInt(config, "fake.latency-ms", 0))
+                .setRateLimitEvery(getInt(config, "fake.rate-limit-every", 0))
+                .setRetryAfterSeconds(getInt(config, "fake.retry-after-seconds", 1))
+                .setSeedRepos(getInt(config, "fake.seed-repos", 0))
+                .setLfsFailEvery(getInt(config, "fake.lfs-fail-every", 0));
+    }
+
+    private static int getInt(JsonObject config, String key, int defaultValue) {
+        Object value = config.getValue(key);
+        return value == null ? defaultValue : Integer.parseInt(value.toString().trim());
+    }
+
+    public FakeServerOptions setDialect(Dialect dialect) {
+        if (dialect == null) {
+            throw new IllegalArgumentException("dialect must not be null");
+        }
+        this.dialect = dialect;
+        return this;
+    }
+
+    public FakeServerOptions setPort(int port) {
+        if (port < 0) {
+            throw new IllegalArgumentException("port must not be negative");
+        }
+        this.port = port;
+        return this;
+    }
+
+    public FakeServerOptions setRoot(String root) {
+        if (root == null || root.trim().isEmpty()) {
+            throw new IllegalArgumentException("root directory must be set");
+        }
+        this.root = root.trim();
+        return this;
+    }
+
+    public FakeServerOptions setOwner(String owner) {
+        if (owner == null || owner.trim().isEmpty()) {
+            throw new IllegalArgumentException("owner must not be empty");
+        }
+        this.owner = owner.trim();
+        return this;
+    }
+
+    public FakeServerOptions setMaxPerPage(int maxPerPage) {
+        if (maxPerPage < 1) {
+            throw new IllegalArgumentException("page size must be positive");
+        }
+        this.maxPerPage = maxPerPage;
+        return this;
+    }
+
+    public FakeServerOptions setLatencyMs(int latencyMs) {
+        if (latencyMs < 0) {
+            throw new IllegalArgumentException("latency must not be negative");
+        }
+        this.latencyMs = latencyMs;
+        return this;
+    }
+
+    public FakeServerOptions setRateLimitEvery(int rateLimitEvery) {
+        if (rateLimitEvery < 0) {
+            throw new IllegalArgumentException("rate limit interval must not be negative");
+        }
+        this.rateLimitEvery = rateLimitEvery;
+        return this;
+    }
+
+    public FakeServerOptions setRetryAfterSeconds(int retryAfterSeconds) {
+        if (retryAfterSeconds < 0) {
+            throw new IllegalArgumentException("retry after must not be negative");
+        }
+        this.retryAfterSeconds = retryAfterSeconds;
+        return this;
+    }
+
+    public FakeServerOptions setSeedRepos(int seedRepos) {
+        if (seedRepos < 0) {
+            throw new IllegalArgumentException("seed repositories must not be negative");
+        }
+        this.seedRepos = seedRepos;
+        return this;
+    }
+
+    public FakeServerOptions setLfsFailEvery(int lfsFailEvery) {
+        if (lfsFailEvery < 0) {
+            throw new IllegalArgumentException("LFS failure interval must not be negative");
+        }
+        this.lfsFailEvery = lfsFailEvery;
+        return this;
+    }
+
+    public Dialect getDialect() {
+        return dialect;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public String getRoot() {
+        return root;
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    public int getMaxPerPage() {
+        return maxPerPage;
+    }
+
+    public int getLatencyMs() {
+        return latencyMs;
+    }
+
+    public int getRateLimitEvery() {
+        return rateLimitEvery;
+    }
+
+    public int getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+
+    public int getSeedRepos() {
+        return seedRepos;
+    }
+
+    public int getLfsFailEvery() {
+        return lfsFailEvery;
+    }
+}
@@ -0,0 +1,135 @@
+package iot.zjt.fake;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServerRequest;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.eclipse.jgit.transport.PacketLineOut;
+import org.eclipse.jgit.transport.ReceivePack;
+import org.eclipse.jgit.transport.RefAdvertiser;
+import org.eclipse.jgit.transport.UploadPack;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * The Git smart HTTP protocol over bare repositories on disk, like
+ * JGit's GitServlet but without a servlet container:
+ * <ul>
+ *     <li>GET "info/refs?service=git-upload-pack|git-receive-pack"</li>
+ *     <li>POST "git-upload-pack" and "git-receive-pack"</li>
+ * </ul>
+ * Request bodies are held in memory, which is fine for a stand-in.
+ * Repositories are created empty on first access.
+ *
+ * @author Mr Dk.
+ * @since 2021/01/25
+ */
+class GitHttpHandler {
+
+    private final static Logger logger = LogManager.getLogger(GitHttpHandler.class);
+
+    static final String INFO_REFS = "info/refs";
+    static final String UPLOAD_PACK = "git-upload-pack";
+    static final String RECEIVE_PACK = "git-receive-pack";
+
+    private final Vertx vertx;
+
+    GitHttpHandler(Vertx vertx) {
+        this.vertx = vertx;
+    }
+
+    /**
+     * @param request  The request.
+     * @param dir      The bare repository.
+     * @param action   "info/refs", "git-upload-pack" or "git-receive-pack".
+     * @param received Called after objects are received by a push.
+     */
+    void handle(HttpServerRequest request, Path dir, String action, Runnable received) {
+        if (INFO_REFS.equals(action)) {
+            String service = request.getParam("service");
+            if (request.method() != HttpMethod.GET) {
+                request.response().setStatusCode(405).end();
+            } else if (!UPLOAD_PACK.equals(service) && !RECEIVE_PACK.equals(service)) {
+                // the dumb protocol is not served.
+                request.response().setStatusCode(403).end();
+            } else {
+                serve(request, dir, service, null, received);
+            }
+            return;
+        }
+
+        if (request.method() != HttpMethod.POST) {
+            request.response().setStatusCode(405).end();
+            return;
+        }
+        request.bodyHandler(body -> serve(request, dir, action, body, received));
+    }
+
+    /**
+     * Advertise refs if there is no body, or run the service on the body.
+     */
+    private void serve(HttpServerRequest request, Path dir, String service, Buffer body, Runnable received) {
+        vertx.<Buffer>executeBlocking(promise -> {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try (Repository repo = open(dir)) {
+                if (body == null) {
+                    PacketLineOut pckOut = new PacketLineOut(out);
+                    pckOut.writeString("# service=" + service + "\n");
+                    pckOut.end();
+                    RefAdvertiser advertiser = new RefAdvertiser.PacketLineOutRefAdvertiser(pckOut);
+                    if (UPLOAD_PACK.equals(service)) {
+                        UploadPack uploadPack = new UploadPack(repo);
+                        uploadPack.setBiDirectionalPipe(false);
+                        uploadPack.sendAdvertisedRefs(advertiser);
+                    } else {
+                        ReceivePack receivePack = new ReceivePack(repo);
+                        receivePack.setBiDirectionalPipe(false);
+                        receivePack.sendAdvertisedRefs(advertiser);
+                    }
+                } else if (UPLOAD_PACK.equals(service)) {
+                    UploadPack uploadPack = new UploadPack(repo);
+                    uploadPack.setBiDirectionalPipe(false);
+                    uploadPack.upload(new ByteArrayInputStream(body.getBytes()), out, null);
+                } else {
+                    // no "gc --auto" left running after the response, as tests remove repositories.
+                    repo.getConfig().setBoolean("receive", null, "autogc", false);
+                    ReceivePack receivePack = new ReceivePack(repo);
+                    receivePack.setBiDirectionalPipe(false);
+                    receivePack.receive(new ByteArrayInputStream(body.getBytes()), out, null);
+                    received.run();
+                }
+                promise.complete(Buffer.buffer(out.toByteArray()));
+            } catch (Exception e) {
+                promise.fail(e);
+            }
+        }, false, ar -> {
+            if (ar.failed()) {
+                logger.error("Fail to serve " + service + " of " + dir + ": " + ar.cause().getMessage());
+                request.response().setStatusCode(500).end();
+                return;
+            }
+            request.response()
+                    .putHeader("Content-Type", "application/x-" + service +
+                            (body == null ? "-advertisement" : "-result"))
+                    .putHeader("Cache-Control", "no-cache")
+                    .end(ar.result());
+        });
+    }
+
+    private static Repository open(Path dir) throws Exception {
+        synchronized (GitHttpHandler.class) {
+            if (!Files.exists(dir.resolve("HEAD"))) {
+                Git.init().setBare(true).setDirectory(dir.toFile()).call().close();
+            }
+        }
+        return new FileRepositoryBuilder().setGitDir(dir.toFile()).setMustExist(true).build();
+    }
+}
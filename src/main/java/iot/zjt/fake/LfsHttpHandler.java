@@ -0,0 +1,236 @@
+package iot.zjt.fake;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The Git LFS batch API and "basic" transfer over objects on disk, at
+ * "lfs/objects/{oid[0:2]}/{oid[2:4]}/{oid}" of each bare repository:
+ * <ul>
+ *     <li>POST "objects/batch"</li>
+ *     <li>GET and PUT "objects/{oid}", with "Range" for GET</li>
+ *     <li>POST "objects/{oid}/verify"</li>
+ * </ul>
+ * Downloads can be cut off half-way to test resuming. Objects are held
+ * in memory while transferred, which is fine for a stand-in.
+ *
+ * @author Mr Dk.
+ * @since 2021/01/28
+ */
+class LfsHttpHandler {
+
+    private final static Logger logger = LogManager.getLogger(LfsHttpHandler.class);
+
+    static final String BATCH = "objects/batch";
+
+    private static final String MEDIA_TYPE = "application/vnd.git-lfs+json";
+    private static final Pattern OBJECT = Pattern.compile("^objects/([0-9a-f]{64})(/verify)?$");
+    private static final Pattern RANGE = Pattern.compile("^bytes=(\\d+)-$");
+
+    private final Vertx vertx;
+    private final int failEvery;
+    private long downloads = 0;
+    private long uploads = 0;
+
+    /**
+     * @param failEvery Every this many downloads is cut off half-way, 0 to disable.
+     */
+    LfsHttpHandler(Vertx vertx, int failEvery) {
+        this.vertx = vertx;
+        this.failEvery = failEvery;
+    }
+
+    synchronized long getUploadCount() {
+        return uploads;
+    }
+
+    static Path getObjectPath(Path dir, String oid) {
+        return dir.resolve("lfs").resolve("objects")
+                .resolve(oid.substring(0, 2)).resolve(oid.substring(2, 4)).resolve(oid);
+    }
+
+    /**
+     * @param request The request.
+     * @param dir     The bare repository.
+     * @param baseUrl The LFS URL of the repository, for actions.
+     * @param action  The path after "info/lfs/".
+     */
+    void handle(HttpServerRequest request, Path dir, String baseUrl, String action) {
+        Matcher object = OBJECT.matcher(action);
+        if (BATCH.equals(action) && request.method() == HttpMethod.POST) {
+            request.bodyHandler(body -> batch(request, dir, baseUrl, body));
+        } else if (object.matches() && object.group(2) != null && request.method() == HttpMethod.POST) {
+            request.bodyHandler(body -> verify(request, dir, object.group(1), body));
+        } else if (object.matches() && object.group(2) == null && request.method() == HttpMethod.GET) {
+            download(request, getObjectPath(dir, object.group(1)));
+        } else if (object.matches() && object.group(2) == null && request.method() == HttpMethod.PUT) {
+            request.bodyHandler(body -> upload(request, getObjectPath(dir, object.group(1)), object.group(1), body));
+        } else {
+            request.response().setStatusCode(404).end();
+        }
+    }
+
+    private void batch(HttpServerRequest request, Path dir, String baseUrl, Buffer body) {
+        JsonObject input;
+        try {
+            input = body.toJsonObject();
+        } catch (DecodeException e) {
+            reply(request, 422, new JsonObject().put("message", "invalid batch request"));
+            return;
+        }
+        String operation = input.getString("operation");
+        if (!"download".equals(operation) && !"upload".equals(operation)) {
+            reply(request, 422, new JsonObject().put("message", "unknown operation: " + operation));
+            return;
+        }
+
+        JsonArray objects = new JsonArray();
+        for (Object item : input.getJsonArray("objects", new JsonArray())) {
+            JsonObject requested = (JsonObject) item;
+            String oid = requested.getString("oid");
+            long size = requested.getLong("size", -1L);
+            JsonObject answer = new JsonObject().put("oid", oid).put("size", size);
+            boolean exists = isStored(dir, oid, size);
+            String href = baseUrl + "/objects/" + oid;
+
+            if ("download".equals(operation)) {
+                if (exists) {
+                    answer.put("actions", new JsonObject().put("download", new JsonObject().put("href", href)));
+                } else {
+                    answer.put("error", new JsonObject().put("code", 404).put("message", "Object does not exist"));
+                }
+            } else if (!exists) {
+                answer.put("actions", new JsonObject()
+                        .put("upload", new JsonObject().put("href", href))
+                        .put("verify", new JsonObject().put("href", href + "/verify")));
+            }
+            objects.add(answer);
+        }
+        reply(request, 200, new JsonObject().put("transfer", "basic").put("objects", objects));
+    }
+
+    private static boolean isStored(Path dir, String oid, long size) {
+        try {
+            Path file = getObjectPath(dir, oid);
+            return Files.exists(file) && Files.size(file) == size;
+        } catch (Exception e) {
+            return false; // invalid oid.
+        }
+    }
+
+    private void download(HttpServerRequest request, Path file) {
+        long count;
+        synchronized (this) {
+            count = ++downloads;
+        }
+        vertx.<Buffer>executeBlocking(promise -> {
+            try {
+                promise.complete(Files.exists(file) ? Buffer.buffer(Files.readAllBytes(file)) : null);
+            } catch (Exception e) {
+                promise.fail(e);
+            }
+        }, false, ar -> {
+            if (ar.failed() || ar.result() == null) {
+                request.response().setStatusCode(ar.failed() ? 500 : 404).end();
+                return;
+            }
+            Buffer content = ar.result();
+            int offset = 0;
+            String range = request.getHeader("Range");
+            if (range != null) {
+                Matcher matcher = RANGE.matcher(range);
+                if (!matcher.matches() || Long.parseLong(matcher.group(1)) >= content.length()) {
+                    request.response().setStatusCode(416).end();
+                    return;
+                }
+                offset = Integer.parseInt(matcher.group(1));
+                request.response()
+                        .setStatusCode(206)
+                        .putHeader("Content-Range", "bytes " + offset + "-" + (content.length() - 1) +
+                                "/" + content.length());
+            }
+            Buffer body = content.getBuffer(offset, content.length());
+            request.response()
+                    .putHeader("Content-Type", "application/octet-stream")
+                    .putHeader("Content-Length", Integer.toString(body.length()));
+
+            if (failEvery > 0 && count % failEvery == 0 && body.length() > 1) {
+                request.response().write(body.getBuffer(0, body.length() / 2));
+                request.connection().close();
+                return;
+            }
+            request.response().end(body);
+        });
+    }
+
+    private void upload(HttpServerRequest request, Path file, String oid, Buffer body) {
+        vertx.<Integer>executeBlocking(promise -> {
+            try {
+                byte[] content = body.getBytes();
+                if (!oid.equals(sha256(content))) {
+                    promise.complete(422);
+                    return;
+                }
+                Files.createDirectories(file.getParent());
+                Path temp = Files.createTempFile(file.getParent(), oid, ".tmp");
+                Files.write(temp, content);
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                synchronized (this) {
+                    uploads++;
+                }
+                promise.complete(200);
+            } catch (Exception e) {
+                promise.fail(e);
+            }
+        }, false, ar -> {
+            if (ar.failed()) {
+                logger.error("Fail to store LFS object " + oid + ": " + ar.cause().getMessage());
+            }
+            request.response().setStatusCode(ar.failed() ? 500 : ar.result()).end();
+        });
+    }
+
+    private void verify(HttpServerRequest request, Path dir, String oid, Buffer body) {
+        long size;
+        try {
+            size = body.toJsonObject().getLong("size", -1L);
+        } catch (DecodeException | ClassCastException e) {
+            reply(request, 422, new JsonObject().put("message", "invalid verify request"));
+            return;
+        }
+        if (isStored(dir, oid, size)) {
+            request.response().setStatusCode(200).end();
+        } else {
+            reply(request, 404, new JsonObject().put("message", "Object does not exist"));
+        }
+    }
+
+    private static void reply(HttpServerRequest request, int status, JsonObject body) {
+        request.response()
+                .setStatusCode(status)
+                .putHeader("Content-Type", MEDIA_TYPE)
+                .end(body.encode());
+    }
+
+    private static String sha256(byte[] content) throws Exception {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : MessageDigest.getInstance("SHA-256").digest(content)) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+}
@@ -0,0 +1,318 @@
+package iot.zjt.lfs;
+
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A blocking client of the Git LFS batch API and its "basic" transfer:
+ * objects are downloaded and uploaded by plain GET and PUT requests to
+ * the URLs the batch API returns. Downloads are streamed to disk and
+ * resumed by "Range" requests, uploads are streamed from disk.
+ *
+ * @author Mr Dk.
+ * @since 2021/01/28
+ */
+public class LfsClient {
+
+    static final String MEDIA_TYPE = "application/vnd.git-lfs+json";
+
+    /**
+     * Objects in one batch request, as servers limit it.
+     */
+    static final int BATCH_SIZE = 100;
+
+    private static final Set<String> RESTRICTED_HEADERS = new HashSet<>(Arrays.asList(
+            "connection", "content-length", "date", "expect", "from", "host", "upgrade", "via", "warning"));
+
+    public static final String DOWNLOAD = "download";
+    public static final String UPLOAD = "upload";
+
+    /**
+     * Shared by all jobs, so that connections are reused.
+     */
+    private static final HttpClient client = HttpClient.newBuilder()
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .connectTimeout(Duration.ofSeconds(30))
+            .build();
+
+    /**
+     * What to do with an object, as answered by the batch API.
+     */
+    public static class Action {
+        private final LfsPointer pointer;
+        private final String href;
+        private final Map<String, String> headers;
+        private final Action verify;
+
+        Action(LfsPointer pointer, String href, Map<String, String> headers, Action verify) {
+            this.pointer = pointer;
+            this.href = href;
+            this.headers = headers;
+            this.verify = verify;
+        }
+
+        public LfsPointer getPointer() {
+            return pointer;
+        }
+
+        public String getHref() {
+            return href;
+        }
+
+        /**
+         * @return The action to confirm an upload, or null if not needed.
+         */
+        public Action getVerify() {
+            return verify;
+        }
+    }
+
+    /**
+     * Answers of the batch API for a set of objects.
+     */
+    public static class BatchResult {
+        private final Map<LfsPointer, Action> actions = new LinkedHashMap<>();
+        private final Map<LfsPointer, String> errors = new LinkedHashMap<>();
+
+        /**
+         * @return Objects to be transferred. Objects the server already
+         * has for an upload are absent.
+         */
+        public Map<LfsPointer, Action> getActions() {
+            return actions;
+        }
+
+        /**
+         * @return Objects the server refuses, e.g. missing for a download.
+         */
+        public Map<LfsPointer, String> getErrors() {
+            return errors;
+        }
+    }
+
+    private final String lfsUrl;
+    private final String authorization;
+    private final long deadline;
+
+    /**
+     * @param lfsUrl        The LFS server of a repository, like "https://github.com/tom/repo.git/info/lfs".
+     * @param authorization The "Authorization" header of the repository, or null.
+     */
+    public LfsClient(String lfsUrl, String authorization) {
+        this(lfsUrl, authorization, 0);
+    }
+
+    /**
+     * @param deadline The time in millis every request must end by, 0 for none.
+     */
+    public LfsClient(String lfsUrl, String authorization, long deadline) {
+        this.lfsUrl = lfsUrl;
+        this.authorization = authorization;
+        this.deadline = deadline;
+    }
+
+    /**
+     * Ask the server what to do with objects, in batches.
+     *
+     * @param operation "download" or "upload".
+     * @param pointers  The objects.
+     * @return The actions and errors.
+     */
+    public BatchResult batch(String operation, Collection<LfsPointer> pointers) throws IOException {
+        BatchResult result = new BatchResult();
+        List<LfsPointer> all = new ArrayList<>(pointers);
+        for (int start = 0; start < all.size(); start += BATCH_SIZE) {
+            batch(operation, all.subList(start, Math.min(all.size(), start + BATCH_SIZE)), result);
+        }
+        return result;
+    }
+
+    private void batch(String operation, List<LfsPointer> pointers, BatchResult result) throws IOException {
+        JsonArray objects = new JsonArray();
+        Map<String, LfsPointer> byOid = new LinkedHashMap<>();
+        for (LfsPointer pointer : pointers) {
+            objects.add(new JsonObject().put("oid", pointer.getOid()).put("size", pointer.getSize()));
+            byOid.put(pointer.getOid(), pointer);
+        }
+        JsonObject body = new JsonObject()
+                .put("operation", operation)
+                .put("transfers", new JsonArray().add("basic"))
+                .put("objects", objects);
+
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(lfsUrl + "/objects/batch"))
+                .header("Accept", MEDIA_TYPE)
+                .header("Content-Type", MEDIA_TYPE)
+                .POST(HttpRequest.BodyPublishers.ofString(body.encode()));
+        if (authorization != null) {
+            request.header("Authorization", authorization);
+        }
+        HttpResponse<String> response = send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IOException("LFS batch " + operation + " failed with " + response.statusCode() +
+                    " at " + lfsUrl);
+        }
+
+        try {
+            JsonArray answered = new JsonObject(response.body()).getJsonArray("objects", new JsonArray());
+            for (int i = 0; i < answered.size(); i++) {
+                JsonObject object = answered.getJsonObject(i);
+                LfsPointer pointer = byOid.get(object.getString("oid"));
+                if (pointer == null) {
+                    continue;
+                }
+                JsonObject error = object.getJsonObject("error");
+                JsonObject actions = object.getJsonObject("actions");
+                if (error != null) {
+                    result.errors.put(pointer, error.getInteger("code", 0) + " " + error.getString("message", ""));
+                } else if (actions != null && actions.containsKey(operation)) {
+                    Action verify = actions.containsKey("verify") ?
+                            toAction(pointer, actions.getJsonObject("verify"), null) : null;
+                    result.actions.put(pointer, toAction(pointer, actions.getJsonObject(operation), verify));
+                }
+            }
+        } catch (DecodeException | ClassCastException e) {
+            throw new IOException("invalid LFS batch response from " + lfsUrl + ": " + e.getMessage());
+        }
+    }
+
+    private Action toAction(LfsPointer pointer, JsonObject action, Action verify) {
+        Map<String, String> headers = new LinkedHashMap<>();
+        JsonObject header = action.getJsonObject("header", new JsonObject());
+        for (String name : header.fieldNames()) {
+            headers.put(name, header.getValue(name).toString());
+        }
+        // credentials of the repository also work on its own host.
+        String href = action.getString("href");
+        if (authorization != null && !headers.containsKey("Authorization") &&
+                URI.create(href).getHost().equalsIgnoreCase(URI.create(lfsUrl).getHost())) {
+            headers.put("Authorization", authorization);
+        }
+        return new Action(pointer, href, headers, verify);
+    }
+
+    /**
+     * Download an object, appending to the partial file if it exists.
+     *
+     * @param action  The download action.
+     * @param partial The partial file, complete when this method returns.
+     */
+    public void download(Action action, Path partial) throws IOException {
+        long offset = Files.exists(partial) ? Files.size(partial) : 0;
+        if (offset >= action.getPointer().getSize()) {
+            return;
+        }
+        HttpRequest.Builder request = newRequest(action).GET();
+        if (offset > 0) {
+            request.header("Range", "bytes=" + offset + "-");
+        }
+        HttpResponse<InputStream> response = send(request, HttpResponse.BodyHandlers.ofInputStream());
+        try (InputStream in = response.body()) {
+            if (response.statusCode() != 200 && response.statusCode() != 206) {
+                throw new IOException("LFS download of " + action.getPointer().getOid() +
+                        " failed with " + response.statusCode());
+            }
+            // the server may ignore the range, and send the whole object.
+            boolean append = response.statusCode() == 206;
+            try (OutputStream out = Files.newOutputStream(partial, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE,
+                    append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING)) {
+                in.transferTo(out);
+            }
+        }
+        if (Files.size(partial) != action.getPointer().getSize()) {
+            throw new IOException("LFS download of " + action.getPointer().getOid() + " is incomplete");
+        }
+    }
+
+    /**
+     * Upload an object, and verify it if the server asks to.
+     *
+     * @param action The upload action.
+     * @param file   The object on disk.
+     */
+    public void upload(Action action, Path file) throws IOException {
+        HttpResponse<Void> response = send(newRequest(action)
+                        .header("Content-Type", "application/octet-stream")
+                        .PUT(HttpRequest.BodyPublishers.ofFile(file)),
+                HttpResponse.BodyHandlers.discarding());
+        if (response.statusCode() / 100 != 2) {
+            throw new IOException("LFS upload of " + action.getPointer().getOid() +
+                    " failed with " + response.statusCode());
+        }
+
+        Action verify = action.getVerify();
+        if (verify != null) {
+            JsonObject body = new JsonObject()
+                    .put("oid", action.getPointer().getOid())
+                    .put("size", action.getPointer().getSize());
+            response = send(newRequest(verify)
+                            .header("Accept", MEDIA_TYPE)
+                            .header("Content-Type", MEDIA_TYPE)
+                            .POST(HttpRequest.BodyPublishers.ofString(body.encode())),
+                    HttpResponse.BodyHandlers.discarding());
+            if (response.statusCode() / 100 != 2) {
+                throw new IOException("LFS verify of " + action.getPointer().getOid() +
+                        " failed with " + response.statusCode());
+            }
+        }
+    }
+
+    private HttpRequest.Builder newRequest(Action action) {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(action.getHref()));
+        action.headers.forEach((name, value) -> {
+            // headers managed by the HTTP client itself are not allowed.
+            if (!RESTRICTED_HEADERS.contains(name.toLowerCase(Locale.ROOT))) {
+                request.header(name, value);
+            }
+        });
+        return request;
+    }
+
+    /**
+     * Send a request, timed out at the deadline.
+     */
+    private <T> HttpResponse<T> send(HttpRequest.Builder request, HttpResponse.BodyHandler<T> handler)
+            throws IOException {
+        if (deadline != 0) {
+            long left = deadline - System.currentTimeMillis();
+            if (left <= 0) {
+                throw new HttpTimeoutException("deadline exceeded before requesting " + request.build().uri());
+            }
+            request.timeout(Duration.ofMillis(left));
+        }
+        return send(request.build(), handler);
+    }
+
+    private static <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> handler)
+            throws IOException {
+        try {
+            return client.send(request, handler);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while requesting " + request.uri(), e);
+        }
+    }
+}
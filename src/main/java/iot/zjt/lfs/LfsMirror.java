@@ -0,0 +1,294 @@
+package iot.zjt.lfs;
+
+import iot.zjt.Repository;
+import iot.zjt.metrics.MirrorMetrics;
+import iot.zjt.platform.AbstractOnlinePlatform;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Mirror the LFS objects of a repository fetched on disk, before its refs
+ * are pushed. Only objects the target is missing are transferred, which
+ * are found through the batch API of the target.
+ * <p>
+ * Objects are kept in "lfs/objects" of the local repository like Git LFS
+ * does, so that they are downloaded once for all targets, and again only
+ * if the local repository is gone. Objects are transferred in parallel,
+ * each uploaded as soon as it is downloaded. An interrupted download is
+ * resumed from where it stopped, and an interrupted upload is sent again.
+ *
+ * @author Mr Dk.
+ * @since 2021/01/28
+ */
+public class LfsMirror {
+
+    private final static Logger logger = LogManager.getLogger(LfsMirror.class);
+
+    /**
+     * Attempts of each download or upload.
+     */
+    private static final int ATTEMPTS = 3;
+
+    /**
+     * Locks of objects being downloaded by object path, as pushes to
+     * many targets share a local repository.
+     */
+    private static final Object[] downloadLocks = new Object[64];
+
+    static {
+        for (int i = 0; i < downloadLocks.length; i++) {
+            downloadLocks[i] = new Object();
+        }
+    }
+
+    private final Path dir;
+    private final Path objects;
+    private final int parallelism;
+    private final long deadline;
+
+    /**
+     * Bytes of the objects downloaded from the source so far.
+     */
+    private long downloadedBytes = 0;
+
+    /**
+     * @param dir         The local bare repository.
+     * @param parallelism Objects transferred at the same time.
+     */
+    public LfsMirror(Path dir, int parallelism) {
+        this(dir, parallelism, 0);
+    }
+
+    /**
+     * @param deadline The time in millis requests must end by, 0 for none.
+     */
+    public LfsMirror(Path dir, int parallelism, long deadline) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("LFS transfers in parallel must be positive");
+        }
+        this.dir = dir;
+        this.objects = dir.resolve("lfs").resolve("objects");
+        this.parallelism = parallelism;
+        this.deadline = deadline;
+    }
+
+    /**
+     * Transfer the LFS objects referenced by refs that the target is missing.
+     * This method is blocking.
+     *
+     * @param refs  The refs to be pushed.
+     * @param known The commits on the target, whose objects are not looked for.
+     * @return The number of objects uploaded.
+     */
+    public int mirror(AbstractOnlinePlatform sourcePlatform, Repository from,
+                      AbstractOnlinePlatform targetPlatform, Repository to,
+                      List<String> refs, Collection<ObjectId> known) throws IOException {
+        Set<LfsPointer> pointers;
+        try (org.eclipse.jgit.lib.Repository repo = new FileRepositoryBuilder()
+                .setGitDir(dir.toFile()).setMustExist(true).build()) {
+            List<ObjectId> tips = new ArrayList<>();
+            for (String name : refs) {
+                Ref ref = repo.exactRef(name);
+                if (ref != null) {
+                    tips.add(ref.getObjectId());
+                }
+            }
+            pointers = LfsScanner.scan(repo, tips, known);
+        }
+        if (pointers.isEmpty()) {
+            return 0;
+        }
+
+        LfsClient target = new LfsClient(targetPlatform.getLfsUrl(to), targetPlatform.getBasicAuthorization(),
+                deadline);
+        Map<LfsPointer, LfsClient.Action> uploads = target.batch(LfsClient.UPLOAD, pointers).getActions();
+        logger.info("[" + from.getName() + "] references " + pointers.size() + " LFS object(s), " +
+                uploads.size() + " missing on " + targetPlatform.getPlatform());
+        if (uploads.isEmpty()) {
+            return 0;
+        }
+
+        List<LfsPointer> absent = new ArrayList<>();
+        for (LfsPointer pointer : uploads.keySet()) {
+            if (!isStored(pointer)) {
+                absent.add(pointer);
+            }
+        }
+        LfsClient source = new LfsClient(sourcePlatform.getLfsUrl(from), sourcePlatform.getBasicAuthorization(),
+                deadline);
+        LfsClient.BatchResult downloads = absent.isEmpty() ?
+                new LfsClient.BatchResult() : source.batch(LfsClient.DOWNLOAD, absent);
+        for (Map.Entry<LfsPointer, String> error : downloads.getErrors().entrySet()) {
+            // nothing to mirror, the pointer stays dangling as on the source.
+            logger.error("LFS object " + error.getKey().getOid() + " of [" + from.getName() +
+                    "] is not available on " + sourcePlatform.getPlatform() + ": " + error.getValue());
+            uploads.remove(error.getKey());
+        }
+        if (uploads.isEmpty()) {
+            return 0;
+        }
+
+        AtomicLong downloaded = new AtomicLong();
+        AtomicLong uploaded = new AtomicLong();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, uploads.size()), runnable -> {
+            Thread thread = new Thread(runnable, "lfs-transfer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (LfsClient.Action upload : uploads.values()) {
+                LfsClient.Action download = downloads.getActions().get(upload.getPointer());
+                futures.add(executor.submit(() -> {
+                    Path file = fetch(source, upload.getPointer(), download, downloaded);
+                    retry("upload", upload.getPointer(), () -> target.upload(upload, file));
+                    uploaded.addAndGet(upload.getPointer().getSize());
+                    return null;
+                }));
+            }
+
+            int failed = 0;
+            IOException cause = null;
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    failed++;
+                    cause = e.getCause() instanceof IOException ? (IOException) e.getCause() :
+                            new IOException(e.getCause());
+                }
+            }
+            downloadedBytes += downloaded.get();
+            MirrorMetrics.recordTransfer(MirrorMetrics.PHASE_LFS_DOWNLOAD, sourcePlatform.getPlatform(),
+                    futures.size() - failed, downloaded.get());
+            MirrorMetrics.recordTransfer(MirrorMetrics.PHASE_LFS_UPLOAD, targetPlatform.getPlatform(),
+                    futures.size() - failed, uploaded.get());
+            if (cause != null) {
+                throw new IOException(failed + " LFS object(s) of [" + from.getName() +
+                        "] failed, the last one: " + cause.getMessage(), cause);
+            }
+            logger.info("Mirrored " + futures.size() + " LFS object(s) of [" + from.getName() + "] to " +
+                    targetPlatform.getPlatform());
+            return futures.size();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while mirroring LFS objects", e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @return The path of an object, like "lfs/objects/4d/7a/4d7a...".
+     */
+    Path getPath(LfsPointer pointer) {
+        String oid = pointer.getOid();
+        return objects.resolve(oid.substring(0, 2)).resolve(oid.substring(2, 4)).resolve(oid);
+    }
+
+    private boolean isStored(LfsPointer pointer) throws IOException {
+        Path file = getPath(pointer);
+        return Files.exists(file) && Files.size(file) == pointer.getSize();
+    }
+
+    /**
+     * Download an object unless it is stored, and verify its content.
+     */
+    private Path fetch(LfsClient source, LfsPointer pointer, LfsClient.Action download,
+                       AtomicLong downloaded) throws IOException {
+        Path file = getPath(pointer);
+        synchronized (downloadLocks[Math.floorMod(file.hashCode(), downloadLocks.length)]) {
+            if (isStored(pointer)) {
+                return file;
+            }
+            if (download == null) {
+                throw new IOException("LFS object " + pointer.getOid() + " is not offered for download");
+            }
+            Path partial = objects.resolve("incomplete").resolve(pointer.getOid() + ".part");
+            Files.createDirectories(partial.getParent());
+            retry("download", pointer, () -> {
+                long before = Files.exists(partial) ? Files.size(partial) : 0;
+                try {
+                    source.download(download, partial);
+                } finally {
+                    downloaded.addAndGet(Math.max(0, Files.exists(partial) ? Files.size(partial) - before : 0));
+                }
+                if (!pointer.getOid().equals(sha256(partial))) {
+                    Files.delete(partial); // corrupted, start over.
+                    throw new IOException("LFS object " + pointer.getOid() + " does not match its id");
+                }
+            });
+            Files.createDirectories(file.getParent());
+            Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return file;
+        }
+    }
+
+    private interface Transfer {
+        void run() throws IOException;
+    }
+
+    private static void retry(String operation, LfsPointer pointer, Transfer transfer) throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                transfer.run();
+                return;
+            } catch (IOException e) {
+                if (attempt >= ATTEMPTS || Thread.currentThread().isInterrupted()) {
+                    throw e;
+                }
+                logger.warn("LFS " + operation + " of " + pointer.getOid() + " failed: " +
+                        e.getMessage() + ", retrying");
+            }
+        }
+    }
+
+    static String sha256(Path file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * @return The bytes of the objects downloaded from the source so far.
+     */
+    public long getDownloadedBytes() {
+        return downloadedBytes;
+    }
+}
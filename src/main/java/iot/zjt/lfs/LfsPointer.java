@@ -0,0 +1,118 @@
+package iot.zjt.lfs;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+import java.util.regex.Pattern;
+
+/**
+ * A Git LFS pointer, the blob committed in place of a large file:
+ * <pre>
+ * version https://git-lfs.github.com/spec/v1
+ * oid sha256:4d7a214614ab2935c943f9e0ff69d22eadbb8f32b1258daaa5e2ca24d17e2393
+ * size 12345
+ * </pre>
+ *
+ * @author Mr Dk.
+ * @since 2021/01/28
+ */
+public final class LfsPointer {
+
+    /**
+     * Pointers are never larger than this, so bigger blobs are not read.
+     */
+    public static final int MAX_SIZE = 1024;
+
+    private static final String VERSION = "https://git-lfs.github.com/spec/v1";
+    private static final String LEGACY_VERSION = "https://hawser.github.com/spec/v1";
+    private static final Pattern OID = Pattern.compile("^[0-9a-f]{64}$");
+
+    /**
+     * The SHA-256 of the content, in lower-case hex.
+     */
+    private final String oid;
+    private final long size;
+
+    public LfsPointer(String oid, long size) {
+        if (oid == null || !OID.matcher(oid).matches()) {
+            throw new IllegalArgumentException("invalid LFS object id: " + oid);
+        }
+        if (size < 0) {
+            throw new IllegalArgumentException("size of LFS object must not be negative");
+        }
+        this.oid = oid;
+        this.size = size;
+    }
+
+    /**
+     * Parse a blob as a pointer.
+     *
+     * @param blob The content of the blob.
+     * @return The pointer, or null if the blob is not a pointer.
+     */
+    public static LfsPointer parse(byte[] blob) {
+        if (blob.length > MAX_SIZE) {
+            return null;
+        }
+        String[] lines = new String(blob, StandardCharsets.UTF_8).split("\n");
+        if (lines.length < 3 || !lines[0].startsWith("version ")) {
+            return null;
+        }
+        String version = lines[0].substring("version ".length());
+        if (!VERSION.equals(version) && !LEGACY_VERSION.equals(version)) {
+            return null;
+        }
+
+        String oid = null;
+        long size = -1;
+        for (int i = 1; i < lines.length; i++) {
+            if (lines[i].startsWith("oid sha256:")) {
+                oid = lines[i].substring("oid sha256:".length());
+            } else if (lines[i].startsWith("size ")) {
+                try {
+                    size = Long.parseLong(lines[i].substring("size ".length()));
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+            } else if (!lines[i].isEmpty() && !lines[i].startsWith("ext-")) {
+                return null;
+            }
+        }
+        if (oid == null || size < 0 || !OID.matcher(oid).matches()) {
+            return null;
+        }
+        return new LfsPointer(oid, size);
+    }
+
+    public String getOid() {
+        return oid;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof LfsPointer)) {
+            return false;
+        }
+        LfsPointer that = (LfsPointer) o;
+        return size == that.size && oid.equals(that.oid);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(oid, size);
+    }
+
+    /**
+     * @return The pointer as it is committed.
+     */
+    @Override
+    public String toString() {
+        return "version " + VERSION + "\noid sha256:" + oid + "\nsize " + size + "\n";
+    }
+}
@@ -0,0 +1,143 @@
+package iot.zjt.lfs;
+
+import org.eclipse.jgit.attributes.Attribute;
+import org.eclipse.jgit.attributes.AttributesNode;
+import org.eclipse.jgit.attributes.AttributesRule;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.ObjectWalk;
+import org.eclipse.jgit.revwalk.RevObject;
+import org.eclipse.jgit.revwalk.RevTree;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.PathSuffixFilter;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Find the LFS objects referenced by a repository.
+ * <p>
+ * Paths tracked by LFS are read from the ".gitattributes" files on the
+ * tips, as "filter=lfs". Repositories without them are not walked at all.
+ * Otherwise every blob reachable from the tips at such a path, and small
+ * enough to be a pointer, is parsed as one.
+ *
+ * @author Mr Dk.
+ * @since 2021/01/28
+ */
+public class LfsScanner {
+
+    private static final String ATTRIBUTES = Constants.DOT_GIT_ATTRIBUTES;
+
+    /**
+     * A rule of a ".gitattributes" file, matched relative to its directory.
+     */
+    private static class TrackRule {
+        private final String directory;
+        private final AttributesRule rule;
+
+        private TrackRule(String directory, AttributesRule rule) {
+            this.directory = directory;
+            this.rule = rule;
+        }
+
+        private boolean isMatch(String path) {
+            if (!path.startsWith(directory)) {
+                return false;
+            }
+            return rule.isMatch(path.substring(directory.length()), false);
+        }
+    }
+
+    /**
+     * @param repo  The repository.
+     * @param tips  The commits or tags to scan from.
+     * @param known The commits whose objects have been mirrored before, which are not scanned.
+     * @return The pointers found.
+     */
+    public static Set<LfsPointer> scan(Repository repo, Collection<ObjectId> tips,
+                                       Collection<ObjectId> known) throws IOException {
+        Set<LfsPointer> pointers = new LinkedHashSet<>();
+        try (ObjectReader reader = repo.newObjectReader();
+             ObjectWalk walk = new ObjectWalk(reader)) {
+            List<TrackRule> rules = new ArrayList<>();
+            for (ObjectId tip : tips) {
+                RevObject object = walk.peel(walk.parseAny(tip));
+                if (object.getType() == Constants.OBJ_COMMIT) {
+                    readRules(reader, walk.parseCommit(object).getTree(), rules);
+                }
+            }
+            if (rules.isEmpty()) {
+                return pointers; // LFS is not used.
+            }
+
+            walk.reset();
+            for (ObjectId tip : tips) {
+                walk.markStart(walk.parseAny(tip));
+            }
+            for (ObjectId id : known) {
+                if (id != null && repo.getObjectDatabase().has(id)) {
+                    walk.markUninteresting(walk.parseAny(id));
+                }
+            }
+            while (walk.next() != null) {
+                // objects are walked after all commits.
+            }
+            RevObject object;
+            while ((object = walk.nextObject()) != null) {
+                if (object.getType() != Constants.OBJ_BLOB || !isTracked(rules, walk.getPathString()) ||
+                        reader.getObjectSize(object, Constants.OBJ_BLOB) > LfsPointer.MAX_SIZE) {
+                    continue;
+                }
+                LfsPointer pointer = LfsPointer.parse(reader.open(object, Constants.OBJ_BLOB).getBytes());
+                if (pointer != null) {
+                    pointers.add(pointer);
+                }
+            }
+        }
+        return pointers;
+    }
+
+    private static void readRules(ObjectReader reader, RevTree tree, List<TrackRule> rules) throws IOException {
+        try (TreeWalk treeWalk = new TreeWalk(reader)) {
+            treeWalk.addTree(tree);
+            treeWalk.setRecursive(true);
+            treeWalk.setFilter(PathSuffixFilter.create(ATTRIBUTES));
+            while (treeWalk.next()) {
+                String path = treeWalk.getPathString();
+                if (!path.equals(ATTRIBUTES) && !path.endsWith("/" + ATTRIBUTES)) {
+                    continue;
+                }
+                AttributesNode node = new AttributesNode();
+                node.parse(new ByteArrayInputStream(reader.open(treeWalk.getObjectId(0)).getBytes()));
+                String directory = path.substring(0, path.length() - ATTRIBUTES.length());
+                for (AttributesRule rule : node.getRules()) {
+                    for (Attribute attribute : rule.getAttributes()) {
+                        if ("filter".equals(attribute.getKey()) && "lfs".equals(attribute.getValue())) {
+                            rules.add(new TrackRule(directory, rule));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static boolean isTracked(List<TrackRule> rules, String path) {
+        if (path == null) {
+            return false;
+        }
+        for (TrackRule rule : rules) {
+            if (rule.isMatch(path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
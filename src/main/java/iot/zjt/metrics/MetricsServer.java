@@ -0,0 +1,65 @@
+package iot.zjt.metrics;
+
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpServer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Local HTTP server exposing meters on "/metrics" in Prometheus text format.
+ *
+ * @author Mr Dk.
+ * @since 2021/01/17
+ */
+public class MetricsServer {
+
+    private final static Logger logger = LogManager.getLogger(MetricsServer.class);
+
+    private final Vertx vertx;
+    private final PrometheusMeterRegistry registry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+    private HttpServer server;
+
+    public MetricsServer(final Vertx vertx) {
+        this.vertx = vertx;
+    }
+
+    /**
+     * Start recording meters and serving them.
+     *
+     * @param port The port to listen on, 0 for a random one.
+     * @return The future of the listening server.
+     */
+    public Future<HttpServer> start(int port) {
+        Metrics.addRegistry(registry);
+
+        return vertx.createHttpServer()
+                .requestHandler(request -> {
+                    if ("/metrics".equals(request.path())) {
+                        request.response()
+                                .putHeader("content-type", "text/plain; version=0.0.4; charset=utf-8")
+                                .end(registry.scrape());
+                    } else {
+                        request.response().setStatusCode(404).end();
+                    }
+                })
+                .listen(port)
+                .onSuccess(server -> {
+                    this.server = server;
+                    logger.info("Serving metrics on http://localhost:" + server.actualPort() + "/metrics");
+                });
+    }
+
+    public PrometheusMeterRegistry getRegistry() {
+        return registry;
+    }
+
+    public Future<Void> close() {
+        Metrics.removeRegistry(registry);
+        registry.close();
+        return server == null ? Future.succeededFuture() : server.close();
+    }
+}
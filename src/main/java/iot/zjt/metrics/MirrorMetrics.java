@@ -0,0 +1,107 @@
+package iot.zjt.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Meters of mirror runs, recorded to the global Micrometer registry.
+ * Nothing is kept unless a registry is added, e.g. by {@link MetricsServer}.
+ *
+ * @author Mr Dk.
+ * @since 2021/01/17
+ */
+public class MirrorMetrics {
+
+    /**
+     * Time spent in each phase of a run, tagged by "phase" and "platform".
+     */
+    public static final String PHASE = "mirror.phase";
+    public static final String TRANSFER_OBJECTS = "mirror.transfer.objects";
+    public static final String TRANSFER_BYTES = "mirror.transfer.bytes";
+    public static final String JOBS_RUNNING = "mirror.jobs.running";
+    public static final String JOBS_QUEUED = "mirror.jobs.queued";
+    public static final String API_REQUEST = "api.request";
+    public static final String API_REQUESTS_IN_FLIGHT = "api.requests.in-flight";
+    public static final String API_REQUESTS_QUEUED = "api.requests.queued";
+    public static final String API_RATE_LIMIT_REMAINING = "api.rate-limit.remaining";
+    public static final String API_REQUESTS_SAVED = "api.requests.saved";
+
+    public static final String PHASE_LISTING = "listing";
+    public static final String PHASE_CREATE = "create";
+    public static final String PHASE_VISIBILITY = "visibility";
+    public static final String PHASE_COMPARE = "compare";
+    public static final String PHASE_CLONE = "clone";
+    public static final String PHASE_FETCH = "fetch";
+    public static final String PHASE_PUSH = "push";
+    public static final String PHASE_LFS_DOWNLOAD = "lfs-download";
+    public static final String PHASE_LFS_UPLOAD = "lfs-upload";
+
+    private MirrorMetrics() {
+    }
+
+    public static Timer phaseTimer(String phase, String platform) {
+        return Metrics.timer(PHASE, "phase", phase, "platform", platform);
+    }
+
+    /**
+     * Time a blocking phase.
+     */
+    public static <T> T time(String phase, String platform, Callable<T> callable) throws Exception {
+        return phaseTimer(phase, platform).recordCallable(callable);
+    }
+
+    /**
+     * Record API requests saved by deduplicating and batching mutations.
+     */
+    public static void recordSavedRequests(String platform, int saved) {
+        Metrics.counter(API_REQUESTS_SAVED, "platform", platform).increment(saved);
+    }
+
+    /**
+     * Record the objects and bytes transferred from or to a platform.
+     *
+     * @param direction "fetch", "push", "lfs-download" or "lfs-upload".
+     * @param platform  The remote platform.
+     * @param objects   The number of objects, ignored if negative.
+     * @param bytes     The number of bytes, ignored if negative.
+     */
+    public static void recordTransfer(String direction, String platform, long objects, long bytes) {
+        if (objects >= 0) {
+            DistributionSummary.builder(TRANSFER_OBJECTS)
+                    .tags("direction", direction, "platform", platform)
+                    .register(Metrics.globalRegistry)
+                    .record(objects);
+        }
+        if (bytes >= 0) {
+            DistributionSummary.builder(TRANSFER_BYTES)
+                    .baseUnit("bytes")
+                    .tags("direction", direction, "platform", platform)
+                    .register(Metrics.globalRegistry)
+                    .record(bytes);
+        }
+    }
+
+    /**
+     * Record the latency of an API request, with a histogram for quantiles.
+     */
+    public static void recordRequest(String platform, int status, long nanos) {
+        Timer.builder(API_REQUEST)
+                .tags("platform", platform, "status", status < 0 ? "error" : Integer.toString(status))
+                .publishPercentileHistogram()
+                .register(Metrics.globalRegistry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Register a gauge on an object, which is weakly referenced.
+     */
+    public static <T> void gauge(String name, Tags tags, T object, ToDoubleFunction<T> value) {
+        Metrics.gauge(name, tags, object, value);
+    }
+}
@@ -0,0 +1,64 @@
+package iot.zjt.metrics;
+
+import org.eclipse.jgit.lib.ProgressMonitor;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * Progress monitor collecting the number of objects transferred by JGit,
+ * from the "Receiving objects" task of fetch and "Writing objects" task of push.
+ * It also tells JGit to stop once the transfer is cancelled.
+ *
+ * @author Mr Dk.
+ * @since 2021/01/17
+ */
+public class TransferProgressMonitor implements ProgressMonitor {
+
+    private static final String RECEIVING_OBJECTS = "Receiving objects";
+    private static final String WRITING_OBJECTS = "Writing objects";
+
+    private final BooleanSupplier cancelled;
+    private boolean counting = false;
+    private long objects = 0;
+
+    public TransferProgressMonitor() {
+        this(() -> false);
+    }
+
+    /**
+     * @param cancelled Whether the transfer is cancelled, checked by JGit between steps.
+     */
+    public TransferProgressMonitor(BooleanSupplier cancelled) {
+        this.cancelled = cancelled;
+    }
+
+    @Override
+    public void start(int totalTasks) {
+    }
+
+    @Override
+    public void beginTask(String title, int totalWork) {
+        counting = RECEIVING_OBJECTS.equals(title) || WRITING_OBJECTS.equals(title);
+    }
+
+    @Override
+    public void update(int completed) {
+        if (counting) {
+            objects += completed;
+        }
+    }
+
+    @Override
+    public void endTask() {
+        counting = false;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return cancelled.getAsBoolean();
+    }
+
+    public long getObjects() {
+        return objects;
+    }
+}
@@ -0,0 +1,316 @@
+package iot.zjt.mirror;
+
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Future;
+import iot.zjt.Repository;
+import iot.zjt.metrics.MirrorMetrics;
+import iot.zjt.platform.AbstractOnlinePlatform;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Mirror one source repository to many target platforms. The source is
+ * fetched once by one job, then pushed to each target by a job of its
+ * own, so that pushes to different targets run in parallel under their
+ * own host limits, and a slow target only holds its own jobs.
+ * <p>
+ * The local repository is kept until the last push finishes.
+ *
+ * @author Mr Dk.
+ * @since 2021/01/21
+ */
+public class FanOutMirror {
+
+    private final static Logger logger = LogManager.getLogger(FanOutMirror.class);
+
+    /**
+     * A target platform and the repository to mirror to on it.
+     */
+    public static class Target {
+        private final AbstractOnlinePlatform platform;
+        private final Repository to;
+
+        public Target(AbstractOnlinePlatform platform, Repository to) {
+            this.platform = platform;
+            this.to = to;
+        }
+
+        public AbstractOnlinePlatform getPlatform() {
+            return platform;
+        }
+
+        public Repository getTo() {
+            return to;
+        }
+    }
+
+    private final AbstractOnlinePlatform sourcePlatform;
+    private final Repository from;
+    private final List<Target> targets;
+    private final MirrorCache cache;
+    private final SyncStateStore store;
+    private final MirrorScheduler scheduler;
+    private final RefFilter refFilter;
+    private final MirrorRun<?> run;
+
+    /*
+     * Written by the fetch job, and read by push jobs submitted after it.
+     */
+    private RefSnapshot sourceRefs;
+    private final List<List<String>> changedRefs = new ArrayList<>();
+    private final List<RefSnapshot> targetRefs = new ArrayList<>();
+    private final List<Throwable> compareFailures = new ArrayList<>();
+    private final AtomicInteger remainingPushes = new AtomicInteger();
+
+    /*
+     * Who releases the fetched repository, under the lock of this: the
+     * pushes once the fetch has returned it, or the fetch itself if the
+     * fetch job is already reported as not mirrored.
+     */
+    private boolean fetched = false;
+    private boolean abandoned = false;
+    private Path dir;
+    private Semaphore cacheLock;
+
+    /**
+     * @param cache The persistent cache, or null to fetch into a temporary directory.
+     * @param store The sync state store, or null to always compare with targets.
+     */
+    public FanOutMirror(AbstractOnlinePlatform sourcePlatform, Repository from, List<Target> targets,
+                        MirrorCache cache, SyncStateStore store, MirrorScheduler scheduler) {
+        this(sourcePlatform, from, targets, cache, store, scheduler, scheduler.getOptions().getRefFilter());
+    }
+
+    /**
+     * @param cache     The persistent cache, or null to fetch into a temporary directory.
+     * @param store     The sync state store, or null to always compare with targets.
+     * @param refFilter The refs to be mirrored.
+     */
+    public FanOutMirror(AbstractOnlinePlatform sourcePlatform, Repository from, List<Target> targets,
+                        MirrorCache cache, SyncStateStore store, MirrorScheduler scheduler,
+                        RefFilter refFilter) {
+        this(sourcePlatform, from, targets, cache, store, scheduler, refFilter, null);
+    }
+
+    /**
+     * @param cache     The persistent cache, or null to fetch into a temporary directory.
+     * @param store     The sync state store, or null to always compare with targets.
+     * @param refFilter The refs to be mirrored.
+     * @param run       The run the jobs belong to, or null.
+     */
+    public FanOutMirror(AbstractOnlinePlatform sourcePlatform, Repository from, List<Target> targets,
+                        MirrorCache cache, SyncStateStore store, MirrorScheduler scheduler,
+                        RefFilter refFilter, MirrorRun<?> run) {
+        this.sourcePlatform = sourcePlatform;
+        this.from = from;
+        this.targets = targets;
+        this.cache = cache;
+        this.store = store;
+        this.scheduler = scheduler;
+        this.refFilter = refFilter;
+        this.run = run;
+    }
+
+    /**
+     * @return The future of the result of each target, in the order of targets, which never fails.
+     */
+    @SuppressWarnings("rawtypes")
+    public Future<List<MirrorResult>> mirror() {
+        MirrorJob fetchJob = new MirrorJob(from, null, sourcePlatform.getRepositoryHost(from), null,
+                this::fetch, sourcePlatform.getTenant(), run);
+
+        return scheduler.submit(fetchJob).compose(fetched -> {
+            if (fetched.getStatus() != MirrorStatus.MIRRORED) {
+                abandon();
+            }
+            List<Future> futures = new ArrayList<>();
+            for (int i = 0; i < targets.size(); i++) {
+                Target target = targets.get(i);
+                if (fetched.getStatus() == MirrorStatus.FAILED || fetched.getStatus() == MirrorStatus.CANCELLED) {
+                    futures.add(Future.succeededFuture(new MirrorResult(from, target.to,
+                            fetched.getStatus(), fetched.getCause(), fetched.getElapsedMillis())));
+                } else if (compareFailures.get(i) != null) {
+                    futures.add(Future.succeededFuture(new MirrorResult(from, target.to,
+                            MirrorStatus.FAILED, compareFailures.get(i), fetched.getElapsedMillis())));
+                } else if (changedRefs.get(i).isEmpty()) {
+                    futures.add(Future.succeededFuture(new MirrorResult(from, target.to,
+                            MirrorStatus.SKIPPED, null, fetched.getElapsedMillis())));
+                } else {
+                    List<String> refs = changedRefs.get(i);
+                    RefSnapshot snapshot = targetRefs.get(i);
+                    AtomicBoolean started = new AtomicBoolean();
+                    futures.add(scheduler.submit(new MirrorJob(from, target.to, null,
+                            target.platform.getRepositoryHost(target.to), () -> {
+                        started.set(true);
+                        return push(target, refs, snapshot);
+                    }, sourcePlatform.getTenant(), run)).onSuccess(result -> {
+                        if (!started.get()) {
+                            releasePush(); // cancelled before it started.
+                        }
+                    }));
+                }
+            }
+
+            return CompositeFuture.all(futures).map(all -> {
+                List<MirrorResult> results = new ArrayList<>();
+                for (int i = 0; i < all.size(); i++) {
+                    results.add(all.resultAt(i));
+                }
+                return results;
+            });
+        });
+    }
+
+    /**
+     * Compare the source with every target, and fetch it once if any
+     * target is behind.
+     */
+    private MirrorStatus fetch() throws Exception {
+        if (store != null && targets.stream().allMatch(target -> RepositoryMirror.isArchivedAndFresh(
+                scheduler.getOptions(), from,
+                store.get(SyncStateStore.key(sourcePlatform, from, target.platform, target.to))))) {
+            logger.info("[" + from.getName() + "] is archived and mirrored recently, skipped.");
+            for (int i = 0; i < targets.size(); i++) {
+                changedRefs.add(Collections.emptyList()); // skipped on every target.
+                targetRefs.add(null);
+                compareFailures.add(null);
+            }
+            return MirrorStatus.SKIPPED;
+        }
+        sourceRefs = MirrorMetrics.time(MirrorMetrics.PHASE_COMPARE, sourcePlatform.getPlatform(),
+                () -> RefSnapshot.lsRemote(sourcePlatform.getRepositoryHttpsUrl(from),
+                        sourcePlatform.getCredentialsProvider(), refFilter));
+
+        int behind = 0;
+        for (Target target : targets) {
+            List<String> refs = Collections.emptyList();
+            Throwable failure = null;
+            RefSnapshot snapshot = null;
+            try {
+                snapshot = compare(target);
+                refs = sourceRefs.diff(snapshot);
+                if (refs.isEmpty() && store != null) {
+                    store.recordMirrored(SyncStateStore.key(sourcePlatform, from, target.platform, target.to),
+                            sourceRefs);
+                }
+            } catch (Exception e) {
+                logger.error("Fail to compare [" + from.getName() + "] with " +
+                        target.platform.getPlatform() + ": " + e.getMessage());
+                failure = e;
+            }
+            changedRefs.add(refs);
+            targetRefs.add(snapshot);
+            compareFailures.add(failure);
+            if (!refs.isEmpty()) {
+                behind++;
+            }
+        }
+        if (behind == 0) {
+            logger.info("[" + from.getName() + "] is up to date on every target, skipped.");
+            return MirrorStatus.SKIPPED;
+        }
+
+        remainingPushes.set(behind);
+        try {
+            Path cacheDir = cache == null ? null : cache.getDirectory(sourcePlatform, from);
+            if (cacheDir != null && cache.getLock(cacheDir).tryAcquire()) {
+                dir = cacheDir;
+                cacheLock = cache.getLock(cacheDir);
+                RepositoryMirror.syncCache(cache, sourcePlatform, from, dir, sourceRefs.getRefs().keySet(),
+                        scheduler.getOptions().getTransportProfile());
+            } else {
+                // no cache, or the cached one is in use by another run.
+                dir = Files.createTempDirectory("mirror-");
+                Path tempDir = dir;
+                Runnable cleanup = () -> RepositoryMirror.deleteRecursively(tempDir);
+                JobControl.current().onCancel(cleanup);
+                try {
+                    RepositoryMirror.cloneTo(sourcePlatform, from, dir, sourceRefs.getRefs().keySet(),
+                            scheduler.getOptions().getTransportProfile());
+                } finally {
+                    JobControl.current().removeOnCancel(cleanup);
+                }
+            }
+            JobControl.current().checkCancelled();
+        } catch (Exception e) {
+            release();
+            throw e;
+        }
+        synchronized (this) {
+            if (abandoned) {
+                // stopped by the scheduler while returning, no push will come.
+                release();
+                throw new CancellationException("fetch of [" + from.getName() + "] abandoned");
+            }
+            fetched = true;
+        }
+        logger.info("[" + from.getName() + "] fetched, pushing to " + behind + " target(s).");
+        return MirrorStatus.MIRRORED;
+    }
+
+    /**
+     * Release the fetched repository if the fetch job is reported otherwise
+     * than mirrored, e.g. timed out after its last check, as no push will
+     * release it. If the fetch is still running, it releases it on return.
+     */
+    private synchronized void abandon() {
+        abandoned = true;
+        if (fetched) {
+            fetched = false;
+            release();
+        }
+    }
+
+    /**
+     * @return The refs on the target, asked even if the source has not changed
+     * since it was last mirrored, as the target may have been reset since.
+     */
+    private RefSnapshot compare(Target target) throws Exception {
+        return MirrorMetrics.time(MirrorMetrics.PHASE_COMPARE, target.platform.getPlatform(),
+                () -> RefSnapshot.lsRemote(target.platform.getRepositoryHttpsUrl(target.to),
+                        target.platform.getCredentialsProvider(), refFilter));
+    }
+
+    private MirrorStatus push(Target target, List<String> refs, RefSnapshot snapshot) throws Exception {
+        try {
+            RepositoryMirror.transferLfs(sourcePlatform, from, target.platform, target.to, dir, refs, snapshot,
+                    scheduler.getOptions());
+            RepositoryMirror.pushFrom(target.platform, target.to, dir, refs,
+                    scheduler.getOptions().getTransportProfile());
+            if (store != null) {
+                store.recordMirrored(SyncStateStore.key(sourcePlatform, from, target.platform, target.to),
+                        sourceRefs);
+            }
+            return MirrorStatus.MIRRORED;
+        } finally {
+            releasePush();
+        }
+    }
+
+    /**
+     * Release the fetched repository after the last push.
+     */
+    private void releasePush() {
+        if (remainingPushes.decrementAndGet() == 0) {
+            release();
+        }
+    }
+
+    private void release() {
+        if (cacheLock != null) {
+            cacheLock.release();
+        } else if (dir != null) {
+            RepositoryMirror.deleteRecursively(dir);
+        }
+    }
+}
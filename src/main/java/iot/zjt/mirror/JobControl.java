@@ -0,0 +1,186 @@
+package iot.zjt.mirror;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Deadline and cancellation of the mirror job running on the current
+ * thread. Blocking steps of the job look it up with {@link #current()}:
+ * JGit commands get the time left as their I/O timeout and stop through
+ * {@link org.eclipse.jgit.lib.ProgressMonitor#isCancelled()}, and LFS
+ * requests get the time left as their timeout.
+ * <p>
+ * A job cancelled or past its deadline is interrupted, and its cleanups
+ * run at once, e.g. to remove its temporary directory, so that it gives
+ * its resources back without waiting for the blocked call to return.
+ *
+ * @author Mr Dk.
+ * @since 2021/01/30
+ */
+public class JobControl {
+
+    private static final ThreadLocal<JobControl> current = new ThreadLocal<>();
+
+    /**
+     * Control of code running outside of a mirror job, never cancelled.
+     */
+    private static final JobControl NONE = new JobControl(0);
+
+    private volatile long deadline;
+    private final List<Runnable> cleanups = new ArrayList<>();
+    private volatile String cancelReason = null;
+    private final AtomicLong transferredBytes = new AtomicLong();
+    private Thread thread = null;
+
+    /**
+     * @param deadline The time in millis the job must end by, 0 for none.
+     */
+    JobControl(long deadline) {
+        this.deadline = deadline;
+    }
+
+    /**
+     * Set the deadline once the job starts running, so that a job waiting
+     * for a thread does not spend its time.
+     *
+     * @param deadline The time in millis the job must end by, 0 for none.
+     */
+    void setDeadline(long deadline) {
+        this.deadline = deadline;
+    }
+
+    /**
+     * @return The control of the job running on this thread, never null.
+     */
+    public static JobControl current() {
+        JobControl control = current.get();
+        return control == null ? NONE : control;
+    }
+
+    /**
+     * Bind the control to the current thread, before the job runs.
+     */
+    synchronized void attach() {
+        thread = Thread.currentThread();
+        current.set(this);
+    }
+
+    /**
+     * Unbind the control from the current thread, after the job ends.
+     */
+    synchronized void detach() {
+        current.remove();
+        thread = null;
+        // an interrupt sent while the job was ending must not hit the next one.
+        Thread.interrupted();
+    }
+
+    /**
+     * Cancel the job: interrupt its thread, and run its cleanups.
+     *
+     * @param reason The reason reported by {@link #checkCancelled()}.
+     */
+    void cancel(String reason) {
+        List<Runnable> toRun;
+        synchronized (this) {
+            if (cancelReason != null) {
+                return;
+            }
+            cancelReason = reason;
+            if (thread != null) {
+                thread.interrupt();
+            }
+            toRun = new ArrayList<>(cleanups);
+            cleanups.clear();
+        }
+        toRun.forEach(Runnable::run);
+    }
+
+    /**
+     * Run a cleanup once the job is cancelled, or at once if it already is.
+     * Cleanups not run are dropped when the job ends.
+     *
+     * @param cleanup The cleanup.
+     */
+    public void onCancel(Runnable cleanup) {
+        synchronized (this) {
+            if (cancelReason == null) {
+                if (this != NONE) {
+                    cleanups.add(cleanup);
+                }
+                return;
+            }
+        }
+        cleanup.run();
+    }
+
+    /**
+     * Drop a cleanup registered, once it is no longer needed.
+     *
+     * @param cleanup The cleanup.
+     */
+    public synchronized void removeOnCancel(Runnable cleanup) {
+        cleanups.remove(cleanup);
+    }
+
+    /**
+     * @return Whether the job is cancelled or past its deadline.
+     */
+    public boolean isCancelled() {
+        return cancelReason != null || (deadline != 0 && System.currentTimeMillis() >= deadline);
+    }
+
+    /**
+     * Stop the job between blocking steps if it is cancelled.
+     *
+     * @throws CancellationException If it is cancelled or past its deadline.
+     */
+    public void checkCancelled() {
+        if (cancelReason != null) {
+            throw new CancellationException(cancelReason);
+        }
+        if (isCancelled()) {
+            throw new CancellationException("deadline exceeded");
+        }
+    }
+
+    /**
+     * Count bytes received by the job, charged to the bandwidth quota of
+     * its tenant once it ends.
+     *
+     * @param bytes The bytes received.
+     */
+    public void addTransferredBytes(long bytes) {
+        if (this != NONE && bytes > 0) {
+            transferredBytes.addAndGet(bytes);
+        }
+    }
+
+    /**
+     * @return The bytes received by the job so far.
+     */
+    long getTransferredBytes() {
+        return transferredBytes.get();
+    }
+
+    /**
+     * @return The time in millis the job must end by, 0 for none.
+     */
+    public long getDeadline() {
+        return deadline;
+    }
+
+    /**
+     * @return The I/O timeout of JGit commands in seconds, the time left
+     * before the deadline rounded up, 0 for none.
+     */
+    public int getTimeoutSeconds() {
+        if (deadline == 0) {
+            return 0;
+        }
+        long left = deadline - System.currentTimeMillis();
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, (left + 999) / 1000));
+    }
+}
@@ -0,0 +1,201 @@
+package iot.zjt.mirror;
+
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.WorkerExecutor;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Backend running the blocking part of mirror jobs, selected by
+ * "mirror.executor":
+ * <ul>
+ * <li>"workers": a dedicated Vert.x worker pool, whose size is the number
+ * of jobs running at once.</li>
+ * <li>"virtual-threads": a virtual thread for each job, so that thousands
+ * of jobs mostly waiting for the network can run at once. Only available
+ * on JDK 21 and later, workers are used otherwise.</li>
+ * </ul>
+ * Either way, results are delivered on a Vert.x context, so that callers
+ * keep composing the same futures.
+ *
+ * @author Mr Dk.
+ * @since 2021/01/30
+ */
+public abstract class JobExecutor {
+
+    private final static Logger logger = LogManager.getLogger(JobExecutor.class);
+
+    public static final String WORKERS = "workers";
+    public static final String VIRTUAL_THREADS = "virtual-threads";
+
+    /**
+     * Create the backend selected by the options.
+     *
+     * @param vertx   The Vert.x instance.
+     * @param context The context to deliver results on.
+     * @param options The mirror options.
+     * @return The backend.
+     */
+    static JobExecutor create(Vertx vertx, Context context, MirrorOptions options) {
+        if (VIRTUAL_THREADS.equals(options.getExecutor())) {
+            ExecutorService executor = virtualThreadExecutor();
+            if (executor != null) {
+                return new VirtualThreads(context, executor, options.getMaxVirtualThreadJobs());
+            }
+            logger.warn("Virtual threads need JDK 21 or later, running on " +
+                    Runtime.version() + ", using workers instead.");
+        }
+        return new Workers(vertx, options.getWorkerPoolSize());
+    }
+
+    /**
+     * @return Whether mirror jobs can run on virtual threads in this JVM.
+     */
+    public static boolean isVirtualThreadsSupported() {
+        ExecutorService executor = virtualThreadExecutor();
+        if (executor == null) {
+            return false;
+        }
+        executor.shutdown();
+        return true;
+    }
+
+    /**
+     * Build an executor starting a virtual thread named "mirror-virtual-N"
+     * for each task. The project is compiled for Java 11, so the API is
+     * reached by reflection.
+     *
+     * @return The executor, or null if virtual threads are not supported.
+     */
+    private static ExecutorService virtualThreadExecutor() {
+        if (Runtime.version().feature() < 21) {
+            return null; // a preview feature before.
+        }
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class)
+                    .invoke(builder, "mirror-virtual-", 0L);
+            ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                    .invoke(null, factory);
+        } catch (ReflectiveOperationException e) {
+            logger.warn("Fail to create virtual threads: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Run a blocking task.
+     *
+     * @param task The task.
+     * @return The future of its result, completed on a Vert.x context.
+     */
+    abstract <T> Future<T> execute(Callable<T> task);
+
+    /**
+     * @return Jobs allowed to run at once.
+     */
+    abstract int getMaxJobs();
+
+    /**
+     * Release the backend. Jobs still running may be interrupted.
+     */
+    abstract void close();
+
+    /**
+     * Every scheduler has a worker pool of its own. Vert.x shares worker
+     * pools by name, so the name is numbered: otherwise a second scheduler
+     * would run its jobs on the pool of the first one, of the first size.
+     */
+    private static class Workers extends JobExecutor {
+        private static final AtomicInteger pools = new AtomicInteger();
+
+        private final WorkerExecutor executor;
+        private final int size;
+
+        private Workers(Vertx vertx, int size) {
+            // git operations run for minutes, do not warn about blocked threads.
+            this.executor = vertx.createSharedWorkerExecutor("mirror-worker-" + pools.incrementAndGet(),
+                    size, 1, TimeUnit.DAYS);
+            this.size = size;
+        }
+
+        @Override
+        <T> Future<T> execute(Callable<T> task) {
+            return executor.executeBlocking(promise -> {
+                try {
+                    promise.complete(task.call());
+                } catch (Exception e) {
+                    promise.fail(e);
+                }
+            }, false);
+        }
+
+        @Override
+        int getMaxJobs() {
+            return size;
+        }
+
+        @Override
+        void close() {
+            executor.close();
+        }
+    }
+
+    /**
+     * Every job has a virtual thread of its own, owned by the executor:
+     * closing it interrupts the jobs still running, and blocking socket
+     * operations of virtual threads give up on interrupts.
+     */
+    private static class VirtualThreads extends JobExecutor {
+        private final Context context;
+        private final ExecutorService executor;
+        private final int maxJobs;
+
+        private VirtualThreads(Context context, ExecutorService executor, int maxJobs) {
+            this.context = context;
+            this.executor = executor;
+            this.maxJobs = maxJobs;
+        }
+
+        @Override
+        <T> Future<T> execute(Callable<T> task) {
+            Promise<T> promise = Promise.promise();
+            try {
+                executor.execute(() -> {
+                    try {
+                        T result = task.call();
+                        context.runOnContext(v -> promise.complete(result));
+                    } catch (Exception e) {
+                        context.runOnContext(v -> promise.fail(e));
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                promise.fail(new IllegalStateException("mirror scheduler is closed"));
+            }
+            return promise.future();
+        }
+
+        @Override
+        int getMaxJobs() {
+            return maxJobs;
+        }
+
+        @Override
+        void close() {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package iot.zjt.mirror;
+
+import iot.zjt.Repository;
+import iot.zjt.platform.AbstractOnlinePlatform;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Persistent cache of bare repositories, so that later runs only fetch
+ * new objects instead of cloning the whole history again.
+ * The layout is "{root}/{platform}@{host}/{owner}/{name}.git", so that
+ * instances of the same platform on different hosts never share entries.
+ *
+ * @author Mr Dk.
+ * @since 2021/01/11
+ */
+public class MirrorCache {
+
+    private final static Logger logger = LogManager.getLogger(MirrorCache.class);
+
+    /**
+     * Marker inside the bare repository, whose modified time is the last sync.
+     */
+    private static final String LAST_SYNC_FILE = "mirror-last-sync";
+
+    /**
+     * Locks of cache entries, shared by all caches in the JVM.
+     */
+    private static final Map<Path, Semaphore> locks = new ConcurrentHashMap<>();
+
+    private final Path root;
+    private final long maxSizeBytes;
+
+    public MirrorCache(String root, long maxSizeMb) {
+        this.root = Paths.get(root).toAbsolutePath().normalize();
+        this.maxSizeBytes = maxSizeMb * 1024 * 1024;
+    }
+
+    /**
+     * @param options The mirror options.
+     * @return The cache configured by the options, or null if disabled.
+     */
+    public static MirrorCache create(MirrorOptions options) {
+        if (options.getCacheDirectory() == null) {
+            return null;
+        }
+        return new MirrorCache(options.getCacheDirectory(), options.getCacheMaxSizeMb());
+    }
+
+    /**
+     * @param platform The source platform.
+     * @param repo     The source repository.
+     * @return The cache directory of the repository.
+     */
+    public Path getDirectory(AbstractOnlinePlatform platform, Repository repo) {
+        return getDirectory(platform.getPlatform(),
+                URI.create(platform.getRepositoryHttpsUrl(repo)).getAuthority(), repo);
+    }
+
+    /**
+     * @param platform The name of the source platform.
+     * @param host     The host serving Git remote operations, with its port if any,
+     *                 null for local repositories.
+     * @param repo     The source repository.
+     * @return The cache directory of the repository.
+     */
+    Path getDirectory(String platform, String host, Repository repo) {
+        String instance = platform.toLowerCase(Locale.ROOT);
+        if (host != null) {
+            // ':' is not allowed in file names on Windows.
+            instance += "@" + host.toLowerCase(Locale.ROOT).replace(':', '_');
+        }
+        return root.resolve(instance)
+                .resolve(repo.getOwner())
+                .resolve(repo.getName() + ".git");
+    }
+
+    /**
+     * Return the lock of a cache entry. It must be held while the entry
+     * is fetched into or pushed from, and may be released by another
+     * thread than the one acquiring it.
+     *
+     * @param dir The cache directory of a repository.
+     * @return The lock.
+     */
+    public Semaphore getLock(Path dir) {
+        return locks.computeIfAbsent(dir, k -> new Semaphore(1));
+    }
+
+    /**
+     * @param dir The cache directory of a repository.
+     * @return Whether a completely synced repository is cached.
+     */
+    public boolean isCached(Path dir) {
+        return Files.exists(dir.resolve(LAST_SYNC_FILE));
+    }
+
+    /**
+     * Record a successful sync of the entry.
+     *
+     * @param dir The cache directory of a repository.
+     */
+    public void markSynced(Path dir) throws IOException {
+        Path marker = dir.resolve(LAST_SYNC_FILE);
+        if (!Files.exists(marker)) {
+            Files.createFile(marker);
+        }
+        Files.setLastModifiedTime(marker, FileTime.fromMillis(System.currentTimeMillis()));
+    }
+
+    /**
+     * Remove an entry, e.g. when it is broken.
+     *
+     * @param dir The cache directory of a repository.
+     */
+    public void invalidate(Path dir) {
+        if (Files.exists(dir)) {
+            logger.warn("Removing cached repository " + dir);
+            RepositoryMirror.deleteRecursively(dir);
+        }
+    }
+
+    /**
+     * Evict least recently synced entries until the total size is under
+     * the cap. Entries in use are skipped. This method is blocking.
+     */
+    public void evict() {
+        if (maxSizeBytes <= 0 || !Files.isDirectory(root)) {
+            return;
+        }
+
+        List<Entry> entries = new ArrayList<>();
+        long total = 0;
+        // {root}/{platform}@{host}/{owner}/{name}.git
+        try (Stream<Path> dirs = Files.find(root, 3,
+                (path, attrs) -> attrs.isDirectory() && path.getNameCount() == root.getNameCount() + 3)) {
+            for (Path dir : dirs.collect(Collectors.toList())) {
+                Entry entry = new Entry(dir, RepositoryMirror.sizeOf(dir), lastSync(dir));
+                entries.add(entry);
+                total += entry.size;
+            }
+        } catch (IOException e) {
+            logger.error("Fail to scan cache " + root + ": " + e.getMessage());
+            return;
+        }
+
+        entries.sort(Comparator.comparingLong(entry -> entry.lastSync));
+        for (Entry entry : entries) {
+            if (total <= maxSizeBytes) {
+                break;
+            }
+
+            Semaphore lock = getLock(entry.dir);
+            if (!lock.tryAcquire()) {
+                continue; // being synced right now.
+            }
+            try {
+                logger.warn("Evicting cached repository " + entry.dir);
+                RepositoryMirror.deleteRecursively(entry.dir);
+                total -= entry.size;
+            } finally {
+                lock.release();
+            }
+        }
+    }
+
+    private static long lastSync(Path dir) {
+        try {
+            return Files.getLastModifiedTime(dir.resolve(LAST_SYNC_FILE)).toMillis();
+        } catch (IOException e) {
+            return 0; // never synced completely, evict first.
+        }
+    }
+
+    private static class Entry {
+        private final Path dir;
+        private final long size;
+        private final long lastSync;
+
+        private Entry(Path dir, long size, long lastSync) {
+            this.dir = dir;
+            this.size = size;
+            this.lastSync = lastSync;
+        }
+    }
+}
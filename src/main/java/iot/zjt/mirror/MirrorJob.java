@@ -0,0 +1,83 @@
+package iot.zjt.mirror;
+
+import iot.zjt.Repository;
+
+import java.util.concurrent.Callable;
+
+/**
+ * A unit of blocking mirror work to be run by {@link MirrorScheduler}.
+ *
+ * @author Mr Dk.
+ * @since 2021/01/10
+ */
+public class MirrorJob {
+    private final Repository from;
+    private final Repository to;
+    private final String sourceHost;
+    private final String targetHost;
+    private final Callable<MirrorStatus> task;
+    private final String tenant;
+    private final MirrorRun<?> run;
+
+    /**
+     * @param from       The source repository.
+     * @param to         The target repository.
+     * @param sourceHost The host to fetch from, null if not limited.
+     * @param targetHost The host to push to, null if not limited.
+     * @param task       The blocking work, run on the mirror worker pool.
+     */
+    public MirrorJob(Repository from, Repository to, String sourceHost, String targetHost,
+                     Callable<MirrorStatus> task) {
+        this(from, to, sourceHost, targetHost, task, null);
+    }
+
+    /**
+     * @param tenant The tenant sharing the scheduler fairly with others, null for the default one.
+     */
+    public MirrorJob(Repository from, Repository to, String sourceHost, String targetHost,
+                     Callable<MirrorStatus> task, String tenant) {
+        this(from, to, sourceHost, targetHost, task, tenant, null);
+    }
+
+    /**
+     * @param run The run the job belongs to, cancelled with it, or null.
+     */
+    public MirrorJob(Repository from, Repository to, String sourceHost, String targetHost,
+                     Callable<MirrorStatus> task, String tenant, MirrorRun<?> run) {
+        this.from = from;
+        this.to = to;
+        this.sourceHost = sourceHost;
+        this.targetHost = targetHost;
+        this.task = task;
+        this.tenant = tenant;
+        this.run = run;
+    }
+
+    public Repository getFrom() {
+        return from;
+    }
+
+    public Repository getTo() {
+        return to;
+    }
+
+    public String getSourceHost() {
+        return sourceHost;
+    }
+
+    public String getTargetHost() {
+        return targetHost;
+    }
+
+    public Callable<MirrorStatus> getTask() {
+        return task;
+    }
+
+    public String getTenant() {
+        return tenant;
+    }
+
+    public MirrorRun<?> getRun() {
+        return run;
+    }
+}
@@ -0,0 +1,399 @@
+package iot.zjt.mirror;
+
+import io.vertx.core.json.JsonObject;
+
+import java.util.Locale;
+
+/**
+ * Options of the mirror pipeline, loaded from "mirror.*" configurations.
+ *
+ * @author Mr Dk.
+ * @since 2021/01/10
+ */
+public class MirrorOptions {
+
+    public static final int DEFAULT_WORKER_POOL_SIZE = 4;
+    public static final int DEFAULT_MAX_JOBS_PER_SOURCE_HOST = 4;
+    public static final int DEFAULT_MAX_JOBS_PER_TARGET_HOST = 4;
+
+    /**
+     * Threads of the dedicated mirror worker pool, which is also the
+     * number of mirror jobs running concurrently.
+     */
+    private int workerPoolSize = DEFAULT_WORKER_POOL_SIZE;
+
+    /**
+     * Concurrent mirror jobs allowed to fetch from the same source host.
+     */
+    private int maxJobsPerSourceHost = DEFAULT_MAX_JOBS_PER_SOURCE_HOST;
+
+    /**
+     * Concurrent mirror jobs allowed to push to the same target host.
+     */
+    private int maxJobsPerTargetHost = DEFAULT_MAX_JOBS_PER_TARGET_HOST;
+
+    /**
+     * Directory of the persistent bare repository cache.
+     * Null to clone every repository into a temporary directory.
+     */
+    private String cacheDirectory = null;
+
+    /**
+     * Total size cap of the cache in MB, 0 for unlimited. Least recently
+     * synced repositories are evicted first when the cap is exceeded.
+     */
+    private long cacheMaxSizeMb = 0;
+
+    /**
+     * Whether to mirror small repositories through memory, fetching and
+     * pushing them in batches of refs, without a local repository on disk.
+     */
+    private boolean streaming = false;
+
+    /**
+     * Repositories up to this size in MB are streamed when streaming is enabled.
+     */
+    private long streamingMaxSizeMb = 512;
+
+    /**
+     * Refs fetched and pushed in each batch when streaming.
+     */
+    private int streamingBatchRefs = 16;
+
+    /**
+     * Total size in MB of the repositories streamed at once, held in the heap.
+     * Repositories over it are mirrored through the disk instead.
+     */
+    private long streamingMemoryMb = 1024;
+
+    /**
+     * Journal file of the sync state store, null to disable. Runs sharing
+     * the file resume each other and skip repositories already mirrored.
+     */
+    private String stateFile = null;
+
+    /**
+     * Tuning of JGit for every clone, fetch and push.
+     */
+    private TransportProfile transportProfile = new TransportProfile();
+
+    /**
+     * Whether LFS objects are mirrored before refs are pushed. Repositories
+     * are then never streamed, as LFS objects are kept on disk.
+     */
+    private boolean lfs = false;
+
+    /**
+     * LFS objects transferred at the same time by a mirror job.
+     */
+    private int lfsParallelism = 4;
+
+    /**
+     * Refs mirrored by default, branches and tags unless configured.
+     */
+    private RefFilter refFilter = RefFilter.headsAndTags();
+
+    /**
+     * Repositories pushed within these hours are mirrored before the
+     * others, 0 to order by size only.
+     */
+    private int recentPushHours = 24;
+
+    /**
+     * Archived repositories are mirrored again only after these hours
+     * since they were last mirrored, 0 to mirror them on every run.
+     */
+    private int archivedIntervalHours = 168;
+
+    /**
+     * Backend running mirror jobs, "workers" or "virtual-threads".
+     */
+    private String executor = JobExecutor.WORKERS;
+
+    /**
+     * Mirror jobs running at once on virtual threads, which are not
+     * limited by the worker pool size.
+     */
+    private int maxVirtualThreadJobs = 1024;
+
+    /**
+     * Seconds a mirror job may take before it is stopped and reported as
+     * failed, 0 for unlimited. It is also the I/O timeout of Git commands.
+     */
+    private int repoTimeoutSeconds = 3600;
+
+    /**
+     * Seconds a whole run may take before its jobs left are cancelled,
+     * 0 for unlimited.
+     */
+    private int runTimeoutSeconds = 0;
+
+    public MirrorOptions() {
+    }
+
+    /**
+     * Load options from flat configurations like "mirror.workers=8".
+     * Missing keys fall back to defaults.
+     *
+     * @param config The configuration object.
+     * @return The options.
+     */
+    public static MirrorOptions fromConfig(JsonObject config) {
+        return new MirrorOptions()
+                .setWorkerPoolSize(getInt(config, "mirror.workers", DEFAULT_WORKER_POOL_SIZE))
+                .setMaxJobsPerSourceHost(getInt(config, "mirror.per-source-host",
+                        DEFAULT_MAX_JOBS_PER_SOURCE_HOST))
+                .setMaxJobsPerTargetHost(getInt(config, "mirror.per-target-host",
+                        DEFAULT_MAX_JOBS_PER_TARGET_HOST))
+                .setCacheDirectory(config.getString("mirror.cache.dir"))
+                .setCacheMaxSizeMb(getInt(config, "mirror.cache.max-size-mb", 0))
+                .setStreaming(Boolean.parseBoolean(config.getValue("mirror.streaming", false).toString()))
+                .setStreamingMaxSizeMb(getInt(config, "mirror.streaming.max-size-mb", 512))
+                .setStreamingBatchRefs(getInt(config, "mirror.streaming.batch-refs", 16))
+                .setStreamingMemoryMb(getInt(config, "mirror.streaming.memory-mb", 1024))
+                .setStateFile(config.getString("mirror.state.file"))
+                .setTransportProfile(TransportProfile.fromConfig(config))
+                .setLfs(Boolean.parseBoolean(config.getValue("mirror.lfs", false).toString()))
+                .setLfsParallelism(getInt(config, "mirror.lfs.parallelism", 4))
+                .setRefFilter(RefFilter.fromConfig(config, "mirror.", RefFilter.headsAndTags()))
+                .setRecentPushHours(getInt(config, "mirror.recent-push-hours", 24))
+                .setArchivedIntervalHours(getInt(config, "mirror.archived-interval-hours", 168))
+                .setExecutor(config.getString("mirror.executor", JobExecutor.WORKERS))
+                .setMaxVirtualThreadJobs(getInt(config, "mirror.virtual-threads.max-jobs", 1024))
+                .setRepoTimeoutSeconds(getInt(config, "mirror.repo-timeout-seconds", 3600))
+                .setRunTimeoutSeconds(getInt(config, "mirror.run-timeout-seconds", 0));
+    }
+
+    static int getInt(JsonObject config, String key, int defaultValue) {
+        Object value = config.getValue(key);
+        return value == null ? defaultValue : Integer.parseInt(value.toString().trim());
+    }
+
+    public MirrorOptions setWorkerPoolSize(int workerPoolSize) {
+        if (workerPoolSize < 1) {
+            throw new IllegalArgumentException("mirror worker pool size must be positive");
+        }
+        this.workerPoolSize = workerPoolSize;
+        return this;
+    }
+
+    public MirrorOptions setMaxJobsPerSourceHost(int maxJobsPerSourceHost) {
+        if (maxJobsPerSourceHost < 1) {
+            throw new IllegalArgumentException("jobs per source host must be positive");
+        }
+        this.maxJobsPerSourceHost = maxJobsPerSourceHost;
+        return this;
+    }
+
+    public MirrorOptions setMaxJobsPerTargetHost(int maxJobsPerTargetHost) {
+        if (maxJobsPerTargetHost < 1) {
+            throw new IllegalArgumentException("jobs per target host must be positive");
+        }
+        this.maxJobsPerTargetHost = maxJobsPerTargetHost;
+        return this;
+    }
+
+    public MirrorOptions setCacheDirectory(String cacheDirectory) {
+        this.cacheDirectory = cacheDirectory == null || cacheDirectory.trim().isEmpty() ?
+                null : cacheDirectory.trim();
+        return this;
+    }
+
+    public MirrorOptions setCacheMaxSizeMb(long cacheMaxSizeMb) {
+        if (cacheMaxSizeMb < 0) {
+            throw new IllegalArgumentException("cache size cap must not be negative");
+        }
+        this.cacheMaxSizeMb = cacheMaxSizeMb;
+        return this;
+    }
+
+    public MirrorOptions setStreaming(boolean streaming) {
+        this.streaming = streaming;
+        return this;
+    }
+
+    public MirrorOptions setStreamingMaxSizeMb(long streamingMaxSizeMb) {
+        this.streamingMaxSizeMb = streamingMaxSizeMb;
+        return this;
+    }
+
+    public MirrorOptions setStreamingBatchRefs(int streamingBatchRefs) {
+        if (streamingBatchRefs < 1) {
+            throw new IllegalArgumentException("refs per streaming batch must be positive");
+        }
+        this.streamingBatchRefs = streamingBatchRefs;
+        return this;
+    }
+
+    public MirrorOptions setStreamingMemoryMb(long streamingMemoryMb) {
+        if (streamingMemoryMb < 1) {
+            throw new IllegalArgumentException("streaming memory must be positive");
+        }
+        this.streamingMemoryMb = streamingMemoryMb;
+        return this;
+    }
+
+    public MirrorOptions setStateFile(String stateFile) {
+        this.stateFile = stateFile == null || stateFile.trim().isEmpty() ? null : stateFile.trim();
+        return this;
+    }
+
+    public MirrorOptions setTransportProfile(TransportProfile transportProfile) {
+        if (transportProfile == null) {
+            throw new IllegalArgumentException("transport profile must not be null");
+        }
+        this.transportProfile = transportProfile;
+        return this;
+    }
+
+    public MirrorOptions setLfs(boolean lfs) {
+        this.lfs = lfs;
+        return this;
+    }
+
+    public MirrorOptions setLfsParallelism(int lfsParallelism) {
+        if (lfsParallelism < 1) {
+            throw new IllegalArgumentException("LFS transfers in parallel must be positive");
+        }
+        this.lfsParallelism = lfsParallelism;
+        return this;
+    }
+
+    public MirrorOptions setRefFilter(RefFilter refFilter) {
+        if (refFilter == null) {
+            throw new IllegalArgumentException("ref filter must not be null");
+        }
+        this.refFilter = refFilter;
+        return this;
+    }
+
+    public MirrorOptions setRecentPushHours(int recentPushHours) {
+        if (recentPushHours < 0) {
+            throw new IllegalArgumentException("recent push hours must not be negative");
+        }
+        this.recentPushHours = recentPushHours;
+        return this;
+    }
+
+    public MirrorOptions setArchivedIntervalHours(int archivedIntervalHours) {
+        if (archivedIntervalHours < 0) {
+            throw new IllegalArgumentException("archived interval hours must not be negative");
+        }
+        this.archivedIntervalHours = archivedIntervalHours;
+        return this;
+    }
+
+    public MirrorOptions setExecutor(String executor) {
+        String name = executor == null || executor.trim().isEmpty() ?
+                JobExecutor.WORKERS : executor.trim().toLowerCase(Locale.ROOT);
+        if (!name.equals(JobExecutor.WORKERS) && !name.equals(JobExecutor.VIRTUAL_THREADS)) {
+            throw new IllegalArgumentException("unknown mirror executor: " + executor);
+        }
+        this.executor = name;
+        return this;
+    }
+
+    public MirrorOptions setMaxVirtualThreadJobs(int maxVirtualThreadJobs) {
+        if (maxVirtualThreadJobs < 1) {
+            throw new IllegalArgumentException("jobs on virtual threads must be positive");
+        }
+        this.maxVirtualThreadJobs = maxVirtualThreadJobs;
+        return this;
+    }
+
+    public MirrorOptions setRepoTimeoutSeconds(int repoTimeoutSeconds) {
+        if (repoTimeoutSeconds < 0) {
+            throw new IllegalArgumentException("repository timeout must not be negative");
+        }
+        this.repoTimeoutSeconds = repoTimeoutSeconds;
+        return this;
+    }
+
+    public MirrorOptions setRunTimeoutSeconds(int runTimeoutSeconds) {
+        if (runTimeoutSeconds < 0) {
+            throw new IllegalArgumentException("run timeout must not be negative");
+        }
+        this.runTimeoutSeconds = runTimeoutSeconds;
+        return this;
+    }
+
+    public int getWorkerPoolSize() {
+        return workerPoolSize;
+    }
+
+    public int getMaxJobsPerSourceHost() {
+        return maxJobsPerSourceHost;
+    }
+
+    public int getMaxJobsPerTargetHost() {
+        return maxJobsPerTargetHost;
+    }
+
+    public String getCacheDirectory() {
+        return cacheDirectory;
+    }
+
+    public long getCacheMaxSizeMb() {
+        return cacheMaxSizeMb;
+    }
+
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    public long getStreamingMaxSizeMb() {
+        return streamingMaxSizeMb;
+    }
+
+    public int getStreamingBatchRefs() {
+        return streamingBatchRefs;
+    }
+
+    public long getStreamingMemoryMb() {
+        return streamingMemoryMb;
+    }
+
+    public String getStateFile() {
+        return stateFile;
+    }
+
+    public TransportProfile getTransportProfile() {
+        return transportProfile;
+    }
+
+    public boolean isLfs() {
+        return lfs;
+    }
+
+    public int getLfsParallelism() {
+        return lfsParallelism;
+    }
+
+    public RefFilter getRefFilter() {
+        return refFilter;
+    }
+
+    public int getRecentPushHours() {
+        return recentPushHours;
+    }
+
+    public int getArchivedIntervalHours() {
+        return archivedIntervalHours;
+    }
+
+    public String getExecutor() {
+        return executor;
+    }
+
+    public int getMaxVirtualThreadJobs() {
+        return maxVirtualThreadJobs;
+    }
+
+    public int getRepoTimeoutSeconds() {
+        return repoTimeoutSeconds;
+    }
+
+    public int getRunTimeoutSeconds() {
+        return runTimeoutSeconds;
+    }
+}
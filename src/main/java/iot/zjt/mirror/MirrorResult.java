@@ -0,0 +1,49 @@
+package iot.zjt.mirror;
+
+import iot.zjt.Repository;
+
+/**
+ * The result of one mirror job.
+ *
+ * @author Mr Dk.
+ * @since 2021/01/10
+ */
+public class MirrorResult {
+    private final Repository from;
+    private final Repository to;
+    private final MirrorStatus status;
+    private final Throwable cause;
+    private final long elapsedMillis;
+
+    public MirrorResult(Repository from, Repository to, MirrorStatus status,
+                        Throwable cause, long elapsedMillis) {
+        this.from = from;
+        this.to = to;
+        this.status = status;
+        this.cause = cause;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public Repository getFrom() {
+        return from;
+    }
+
+    public Repository getTo() {
+        return to;
+    }
+
+    public MirrorStatus getStatus() {
+        return status;
+    }
+
+    /**
+     * @return The failure cause, null if the job did not fail.
+     */
+    public Throwable getCause() {
+        return cause;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+}
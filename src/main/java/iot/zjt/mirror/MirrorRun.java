@@ -0,0 +1,148 @@
+package iot.zjt.mirror;
+
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.function.Consumer;
+
+/**
+ * Handle of a mirror run, to cancel it or to bound it by a deadline.
+ * <p>
+ * Once the run is cancelled, or its deadline has passed, its queued jobs
+ * are never started, and its running jobs are interrupted and reported as
+ * {@link MirrorStatus#CANCELLED} at once, so that their workers are free
+ * for other runs. The result is then the summary of what was done, or a
+ * {@link CancellationException} if the run was cancelled before any job.
+ *
+ * @author Mr Dk.
+ * @since 2021/01/30
+ */
+public class MirrorRun<T> {
+
+    private final static Logger logger = LogManager.getLogger(MirrorRun.class);
+
+    private final Vertx vertx;
+    private final long deadline;
+    private final Promise<T> promise = Promise.promise();
+    private final List<Consumer<String>> cancelHandlers = new ArrayList<>();
+    private String cancelReason = null;
+    private long timer = -1;
+
+    /**
+     * @param vertx     The Vert.x instance.
+     * @param timeoutMs Time the run may take in millis, 0 for unlimited.
+     */
+    public MirrorRun(Vertx vertx, long timeoutMs) {
+        if (timeoutMs < 0) {
+            throw new IllegalArgumentException("run timeout must not be negative");
+        }
+        this.vertx = vertx;
+        this.deadline = timeoutMs == 0 ? 0 : System.currentTimeMillis() + timeoutMs;
+        if (timeoutMs > 0) {
+            timer = vertx.setTimer(timeoutMs, id -> cancel("run deadline exceeded"));
+        }
+    }
+
+    /**
+     * Complete the run with the outcome of its work.
+     *
+     * @param outcome The future of the result.
+     * @return This run.
+     */
+    public MirrorRun<T> complete(Future<T> outcome) {
+        outcome.onComplete(ar -> {
+            synchronized (this) {
+                if (timer != -1) {
+                    vertx.cancelTimer(timer);
+                    timer = -1;
+                }
+                cancelHandlers.clear();
+            }
+            promise.handle(ar);
+        });
+        return this;
+    }
+
+    /**
+     * @return The future of the result, completed when the run ends.
+     */
+    public Future<T> result() {
+        return promise.future();
+    }
+
+    /**
+     * Cancel the run.
+     *
+     * @return Whether the run was still going on.
+     */
+    public boolean cancel() {
+        return cancel("run cancelled");
+    }
+
+    private boolean cancel(String reason) {
+        List<Consumer<String>> handlers;
+        synchronized (this) {
+            if (cancelReason != null || promise.future().isComplete()) {
+                return false;
+            }
+            cancelReason = reason;
+            handlers = new ArrayList<>(cancelHandlers);
+            cancelHandlers.clear();
+        }
+        logger.warn("Mirror run stopping: " + reason);
+        handlers.forEach(handler -> handler.accept(reason));
+        return true;
+    }
+
+    /**
+     * Call a handler once the run is cancelled, or at once if it already is.
+     *
+     * @param handler The handler of the reason.
+     */
+    void onCancel(Consumer<String> handler) {
+        String reason;
+        synchronized (this) {
+            if (cancelReason == null) {
+                if (!promise.future().isComplete()) {
+                    cancelHandlers.add(handler);
+                }
+                return;
+            }
+            reason = cancelReason;
+        }
+        handler.accept(reason);
+    }
+
+    /**
+     * Stop the run between its steps if it is cancelled.
+     *
+     * @throws CancellationException If it is cancelled.
+     */
+    public void checkCancelled() {
+        String reason = getCancelReason();
+        if (reason != null) {
+            throw new CancellationException(reason);
+        }
+    }
+
+    public synchronized boolean isCancelled() {
+        return cancelReason != null;
+    }
+
+    public synchronized String getCancelReason() {
+        return cancelReason;
+    }
+
+    /**
+     * @return The time in millis the run must end by, 0 for none.
+     */
+    public long getDeadline() {
+        return deadline;
+    }
+}
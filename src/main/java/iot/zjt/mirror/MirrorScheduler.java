@@ -0,0 +1,610 @@
+package iot.zjt.mirror;
+
+import io.micrometer.core.instrument.Tags;
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import iot.zjt.Repository;
+import iot.zjt.metrics.MirrorMetrics;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Run mirror jobs on a dedicated worker pool, or on virtual threads (see
+ * {@link JobExecutor}), with bounded parallelism.
+ * Jobs are queued recently pushed first, then largest first, and a job
+ * is only started when both of its source host and target host are under
+ * their concurrency limits.
+ * <p>
+ * Jobs of different tenants are queued apart and share the pool fairly:
+ * a free worker goes to the tenant with the fewest running jobs, so that
+ * a tenant with thousands of repositories does not starve the others.
+ * Tenants may be further limited by a {@link TenantQuota}.
+ *
+ * @author Mr Dk.
+ * @since 2021/01/10
+ */
+public class MirrorScheduler {
+
+    private final static Logger logger = LogManager.getLogger(MirrorScheduler.class);
+
+    private final Vertx vertx;
+
+    /**
+     * The event loop setting the refill timer. Vert.x 4.0.0 may lose a
+     * timer set from another thread if it is due at once.
+     */
+    private final Context context;
+    private final MirrorOptions options;
+    private final JobExecutor executor;
+
+    /**
+     * Order of queued jobs. Recently pushed repositories start first, as
+     * the others are mostly skipped after listing their refs whatever
+     * their size. Then big repositories start first, so that they finish
+     * in parallel with the small ones instead of being the tail of a run.
+     */
+    private final Comparator<MirrorJob> order;
+
+    /**
+     * Queues of jobs by tenant, the default tenant being "".
+     */
+    private final Map<String, TenantQueue> tenants = new LinkedHashMap<>();
+    private final Map<String, Integer> sourceHostJobs = new HashMap<>();
+    private final Map<String, Integer> targetHostJobs = new HashMap<>();
+    private final Map<String, Integer> hostLimits = new HashMap<>();
+    private int runningJobs = 0;
+    private final Set<PendingJob> running = new HashSet<>();
+
+    /**
+     * Runs whose cancellation is handled, weakly held for long-lived schedulers.
+     */
+    private final Set<MirrorRun<?>> watchedRuns = Collections.newSetFromMap(new WeakHashMap<>());
+
+    /**
+     * Increased on every start, to find the tenant served least recently.
+     */
+    private long sequence = 0;
+
+    /**
+     * Timer to dispatch again when tenants have bandwidth again, -1 if none.
+     */
+    private long refillTimer = -1;
+    private boolean refillPending = false;
+
+    public MirrorScheduler(final Vertx vertx, final MirrorOptions options) {
+        this.vertx = vertx;
+        this.context = vertx.getOrCreateContext();
+        this.options = options;
+        this.order = Comparator.comparing((MirrorJob job) -> !isRecentlyPushed(job.getFrom()))
+                .thenComparing(Comparator.comparingLong((MirrorJob job) -> job.getFrom().getSize()).reversed())
+                .thenComparing(Comparator.comparingLong((MirrorJob job) -> job.getFrom().getPushedAt()).reversed());
+        options.getTransportProfile().install();
+        this.executor = JobExecutor.create(vertx, context, options);
+
+        MirrorMetrics.gauge(MirrorMetrics.JOBS_RUNNING, Tags.empty(), this, MirrorScheduler::getRunningJobs);
+        MirrorMetrics.gauge(MirrorMetrics.JOBS_QUEUED, Tags.empty(), this, MirrorScheduler::getQueuedJobs);
+    }
+
+    public MirrorOptions getOptions() {
+        return options;
+    }
+
+    /**
+     * Submit a job to the scheduler.
+     *
+     * @param job The mirror job.
+     * @return The future of the job result, which never fails.
+     */
+    public Future<MirrorResult> submit(MirrorJob job) {
+        PendingJob pending = new PendingJob(job);
+        boolean queued;
+        synchronized (this) {
+            queued = enqueue(pending);
+        }
+        if (!queued) {
+            drop(pending);
+        }
+        watch(job.getRun());
+        dispatch();
+        return pending.promise.future();
+    }
+
+    /**
+     * Submit a batch of jobs to the scheduler.
+     *
+     * @param jobs The mirror jobs.
+     * @return The future completed when every job has finished,
+     * containing the results in the same order of the jobs.
+     */
+    @SuppressWarnings("rawtypes")
+    public Future<List<MirrorResult>> submitAll(List<MirrorJob> jobs) {
+        List<Future> futures = new ArrayList<>();
+        List<PendingJob> dropped = new ArrayList<>();
+        synchronized (this) {
+            for (MirrorJob job : jobs) {
+                PendingJob pending = new PendingJob(job);
+                if (!enqueue(pending)) {
+                    dropped.add(pending);
+                }
+                futures.add(pending.promise.future());
+            }
+        }
+        dropped.forEach(this::drop);
+        jobs.stream().map(MirrorJob::getRun).distinct().forEach(this::watch);
+        dispatch();
+
+        return CompositeFuture.all(futures).map(all -> {
+            List<MirrorResult> results = new ArrayList<>();
+            for (int i = 0; i < all.size(); i++) {
+                results.add(all.resultAt(i));
+            }
+            return results;
+        });
+    }
+
+    /**
+     * Limit the jobs fetching from or pushing to a host, instead of the
+     * per-source-host and per-target-host limits of the options.
+     *
+     * @param host    The Git host.
+     * @param maxJobs The jobs allowed at the same time.
+     */
+    public synchronized void limitHost(String host, int maxJobs) {
+        if (maxJobs < 1) {
+            throw new IllegalArgumentException("jobs per host must be positive");
+        }
+        hostLimits.put(host, maxJobs);
+    }
+
+    /**
+     * Limit the jobs of a tenant, applied to jobs not started yet.
+     *
+     * @param tenant The tenant of jobs, null for the default one.
+     * @param quota  The limits, null to remove them.
+     */
+    public synchronized void setTenantQuota(String tenant, TenantQuota quota) {
+        TenantQueue queue = getTenantQueue(tenant);
+        queue.quota = quota;
+        queue.tokens = quota == null ? 0 : quota.getMaxBytesPerSecond();
+        queue.refilledAt = System.currentTimeMillis();
+    }
+
+    public synchronized int getRunningJobs() {
+        return runningJobs;
+    }
+
+    public synchronized int getQueuedJobs() {
+        int queued = 0;
+        for (TenantQueue queue : tenants.values()) {
+            queued += queue.jobs.size();
+        }
+        return queued;
+    }
+
+    /**
+     * @param tenant The tenant of jobs, null for the default one.
+     * @return Jobs of the tenant running now.
+     */
+    public synchronized int getRunningJobs(String tenant) {
+        TenantQueue queue = tenants.get(tenant == null ? "" : tenant);
+        return queue == null ? 0 : queue.running;
+    }
+
+    /**
+     * Release the worker pool. Jobs still queued will never be run, and
+     * jobs running on virtual threads are interrupted.
+     */
+    public void close() {
+        synchronized (this) {
+            if (refillTimer != -1) {
+                vertx.cancelTimer(refillTimer);
+                refillTimer = -1;
+            }
+            refillPending = false;
+        }
+        executor.close();
+    }
+
+    private TenantQueue getTenantQueue(String tenant) {
+        return tenants.computeIfAbsent(tenant == null ? "" : tenant, name -> new TenantQueue());
+    }
+
+    /**
+     * @return Whether the repository was pushed within the recent push hours
+     * of the options. Push times unknown are taken as recent, and archived
+     * repositories are never recent.
+     */
+    private boolean isRecentlyPushed(Repository repo) {
+        if (repo.isArchived() || options.getRecentPushHours() == 0) {
+            return false;
+        }
+        return repo.getPushedAt() == 0 ||
+                System.currentTimeMillis() - repo.getPushedAt() < TimeUnit.HOURS.toMillis(options.getRecentPushHours());
+    }
+
+    /**
+     * @return Whether the job is queued, false if its run is cancelled.
+     */
+    private boolean enqueue(PendingJob pending) {
+        if (pending.job.getRun() != null && pending.job.getRun().isCancelled()) {
+            return false;
+        }
+        // keep the queue ordered, and FIFO among jobs of the same order.
+        ListIterator<PendingJob> it = getTenantQueue(pending.job.getTenant()).jobs.listIterator();
+        while (it.hasNext()) {
+            if (order.compare(pending.job, it.next().job) < 0) {
+                it.previous();
+                break;
+            }
+        }
+        it.add(pending);
+        return true;
+    }
+
+    /**
+     * Stop the jobs of a run once it is cancelled.
+     */
+    private void watch(MirrorRun<?> run) {
+        if (run == null) {
+            return;
+        }
+        synchronized (this) {
+            if (!watchedRuns.add(run)) {
+                return;
+            }
+        }
+        run.onCancel(reason -> cancel(run, reason));
+    }
+
+    /**
+     * Drop the queued jobs of a cancelled run, and stop its running ones
+     * at once, so that their workers go to other jobs.
+     */
+    private void cancel(MirrorRun<?> run, String reason) {
+        List<PendingJob> dropped = new ArrayList<>();
+        List<PendingJob> stopped = new ArrayList<>();
+        synchronized (this) {
+            for (TenantQueue queue : tenants.values()) {
+                Iterator<PendingJob> it = queue.jobs.iterator();
+                while (it.hasNext()) {
+                    PendingJob pending = it.next();
+                    if (pending.job.getRun() == run) {
+                        it.remove();
+                        dropped.add(pending);
+                    }
+                }
+            }
+            for (PendingJob pending : running) {
+                if (pending.job.getRun() == run) {
+                    stopped.add(pending);
+                }
+            }
+        }
+
+        dropped.forEach(this::drop);
+        for (PendingJob pending : stopped) {
+            stop(pending, MirrorStatus.CANCELLED, new CancellationException(reason));
+        }
+        if (!dropped.isEmpty() || !stopped.isEmpty()) {
+            logger.warn("Cancelled " + dropped.size() + " queued and " + stopped.size() +
+                    " running mirror job(s): " + reason);
+        }
+        dispatch();
+    }
+
+    /**
+     * Report a job of a cancelled run, which is never started.
+     */
+    private void drop(PendingJob pending) {
+        pending.promise.complete(new MirrorResult(pending.job.getFrom(), pending.job.getTo(),
+                MirrorStatus.CANCELLED, new CancellationException(pending.job.getRun().getCancelReason()), 0));
+    }
+
+    /**
+     * Start as many queued jobs as the limits allow.
+     */
+    private void dispatch() {
+        List<PendingJob> ready = new ArrayList<>();
+
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            long wait = Long.MAX_VALUE;
+            for (TenantQueue queue : tenants.values()) {
+                queue.refill(now);
+            }
+
+            while (runningJobs < executor.getMaxJobs()) {
+                // the tenant with the fewest running jobs goes first,
+                // then the one served least recently.
+                List<TenantQueue> candidates = new ArrayList<>(tenants.values());
+                candidates.sort(Comparator.comparingInt((TenantQueue queue) -> queue.running)
+                        .thenComparingLong(queue -> queue.servedAt));
+
+                PendingJob next = null;
+                for (TenantQueue queue : candidates) {
+                    if (queue.jobs.isEmpty() || queue.isFull()) {
+                        continue;
+                    }
+                    if (queue.tokens <= 0 && queue.isBandwidthLimited()) {
+                        wait = Math.min(wait, queue.getRefillDelay());
+                        continue;
+                    }
+                    next = poll(queue);
+                    if (next != null) {
+                        queue.running++;
+                        queue.servedAt = ++sequence;
+                        break;
+                    }
+                }
+                if (next == null) {
+                    break;
+                }
+
+                MirrorJob job = next.job;
+                runningJobs++;
+                acquire(sourceHostJobs, job.getSourceHost(), 1);
+                acquire(targetHostJobs, job.getTargetHost(), 1);
+                next.start = now;
+                // the repository timeout starts once the job gets a thread.
+                next.control = new JobControl(job.getRun() == null ? 0 : job.getRun().getDeadline());
+                running.add(next);
+                ready.add(next);
+            }
+
+            if (wait != Long.MAX_VALUE && !refillPending) {
+                refillPending = true;
+                long delay = Math.max(wait, 1);
+                context.runOnContext(v -> {
+                    synchronized (this) {
+                        if (!refillPending) {
+                            return; // closed.
+                        }
+                        refillTimer = vertx.setTimer(delay, id -> {
+                            synchronized (this) {
+                                refillTimer = -1;
+                                refillPending = false;
+                            }
+                            dispatch();
+                        });
+                    }
+                });
+            }
+        }
+
+        for (PendingJob pending : ready) {
+            run(pending);
+        }
+    }
+
+    /**
+     * Take the first job of a tenant whose hosts are under their limits.
+     */
+    private PendingJob poll(TenantQueue queue) {
+        Iterator<PendingJob> it = queue.jobs.iterator();
+        while (it.hasNext()) {
+            PendingJob pending = it.next();
+            MirrorJob job = pending.job;
+            if (count(sourceHostJobs, job.getSourceHost()) >=
+                    hostLimits.getOrDefault(job.getSourceHost(), options.getMaxJobsPerSourceHost()) ||
+                    count(targetHostJobs, job.getTargetHost()) >=
+                            hostLimits.getOrDefault(job.getTargetHost(), options.getMaxJobsPerTargetHost())) {
+                continue; // hosts of this job are busy, try the next one.
+            }
+            it.remove();
+            return pending;
+        }
+        return null;
+    }
+
+    /**
+     * @return The time in millis a job started now must end by, the
+     * earlier of its repository timeout and the deadline of its run,
+     * 0 for none.
+     */
+    private long getDeadline(MirrorJob job, long now) {
+        long deadline = options.getRepoTimeoutSeconds() == 0 ? 0 :
+                now + TimeUnit.SECONDS.toMillis(options.getRepoTimeoutSeconds());
+        long runDeadline = job.getRun() == null ? 0 : job.getRun().getDeadline();
+        if (deadline == 0 || (runDeadline != 0 && runDeadline < deadline)) {
+            return runDeadline;
+        }
+        return deadline;
+    }
+
+    private void run(PendingJob pending) {
+        MirrorJob job = pending.job;
+        JobControl control = pending.control;
+
+        executor.execute(() -> {
+            control.attach();
+            try {
+                startTimeout(pending, System.currentTimeMillis());
+                control.checkCancelled();
+                return job.getTask().call();
+            } finally {
+                control.detach();
+            }
+        }).onComplete(ar -> finish(pending, ar.succeeded() ? ar.result() : MirrorStatus.FAILED,
+                ar.succeeded() ? null : ar.cause()));
+    }
+
+    /**
+     * Start the repository timeout of a job getting a thread. With workers,
+     * a job stopped reports and frees its place at once, but its thread is
+     * only back once its blocked call returns, at the latest when the I/O
+     * timeout passed to JGit runs out. Jobs started meanwhile wait for a
+     * thread, without spending their own timeout.
+     */
+    private void startTimeout(PendingJob pending, long now) {
+        long repoDeadline = options.getRepoTimeoutSeconds() == 0 ? 0 :
+                now + TimeUnit.SECONDS.toMillis(options.getRepoTimeoutSeconds());
+        pending.control.setDeadline(getDeadline(pending.job, now));
+        if (repoDeadline != 0 && repoDeadline == pending.control.getDeadline()) {
+            // the deadline of the run is enforced by the run itself.
+            context.runOnContext(v -> {
+                synchronized (this) {
+                    if (!pending.finished) {
+                        pending.timer = vertx.setTimer(Math.max(repoDeadline - System.currentTimeMillis(), 1),
+                                id -> timeout(pending));
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Stop a job past its repository timeout.
+     */
+    private void timeout(PendingJob pending) {
+        synchronized (this) {
+            pending.timer = -1;
+        }
+        stop(pending, MirrorStatus.FAILED,
+                new TimeoutException("timed out after " + options.getRepoTimeoutSeconds() + " second(s)"));
+    }
+
+    /**
+     * Cancel a running job, then report it with the given status, which
+     * is also reported if the job fails from the interrupt first.
+     */
+    private void stop(PendingJob pending, MirrorStatus status, Throwable cause) {
+        synchronized (this) {
+            if (pending.finished) {
+                return;
+            }
+            pending.stopStatus = status;
+            pending.stopCause = cause;
+        }
+        pending.control.cancel(cause.getMessage());
+        finish(pending, status, cause);
+    }
+
+    /**
+     * Report the result of a job and release its worker, once. A job
+     * stopped may report before its blocked call has returned.
+     */
+    private void finish(PendingJob pending, MirrorStatus status, Throwable cause) {
+        MirrorJob job = pending.job;
+        synchronized (this) {
+            if (pending.finished) {
+                return;
+            }
+            if (pending.stopStatus != null) {
+                status = pending.stopStatus;
+                cause = pending.stopCause;
+            }
+            pending.finished = true;
+            running.remove(pending);
+            if (pending.timer != -1) {
+                vertx.cancelTimer(pending.timer);
+                pending.timer = -1;
+            }
+            runningJobs--;
+            TenantQueue queue = getTenantQueue(job.getTenant());
+            queue.running--;
+            if (queue.isBandwidthLimited()) {
+                // in debt until the bytes received are paid back, none for a repository up to date.
+                queue.tokens -= pending.control.getTransferredBytes();
+            }
+            acquire(sourceHostJobs, job.getSourceHost(), -1);
+            acquire(targetHostJobs, job.getTargetHost(), -1);
+        }
+
+        long elapsed = System.currentTimeMillis() - pending.start;
+        if (status == MirrorStatus.FAILED) {
+            logger.error("Mirroring [" + job.getFrom().getName() + "] failed: " + cause.getMessage());
+        }
+        pending.promise.complete(new MirrorResult(job.getFrom(), job.getTo(), status, cause, elapsed));
+
+        dispatch();
+    }
+
+    private static int count(Map<String, Integer> hostJobs, String host) {
+        if (host == null) {
+            return 0; // not limited.
+        }
+        return hostJobs.getOrDefault(host, 0);
+    }
+
+    private static void acquire(Map<String, Integer> hostJobs, String host, int delta) {
+        if (host != null) {
+            hostJobs.merge(host, delta, Integer::sum);
+        }
+    }
+
+    private static class TenantQueue {
+        private final LinkedList<PendingJob> jobs = new LinkedList<>();
+        private TenantQuota quota;
+        private int running = 0;
+        private long servedAt = 0;
+
+        /**
+         * Bytes the tenant may still transfer, negative if in debt.
+         */
+        private double tokens = 0;
+        private long refilledAt = 0;
+
+        private boolean isFull() {
+            return quota != null && quota.getMaxJobs() > 0 && running >= quota.getMaxJobs();
+        }
+
+        private boolean isBandwidthLimited() {
+            return quota != null && quota.getMaxBytesPerSecond() > 0;
+        }
+
+        private void refill(long now) {
+            if (isBandwidthLimited()) {
+                long rate = quota.getMaxBytesPerSecond();
+                // bursts of up to one second of bandwidth.
+                tokens = Math.min(rate, tokens + (now - refilledAt) * rate / 1000.0);
+            }
+            refilledAt = now;
+        }
+
+        /**
+         * @return Milliseconds until the tenant is out of debt.
+         */
+        private long getRefillDelay() {
+            return (long) Math.ceil((1 - tokens) * 1000 / quota.getMaxBytesPerSecond());
+        }
+    }
+
+    private static class PendingJob {
+        private final MirrorJob job;
+        private final Promise<MirrorResult> promise = Promise.promise();
+
+        /*
+         * Set when the job is started, under the lock of the scheduler.
+         */
+        private long start = 0;
+        private JobControl control;
+        private boolean finished = false;
+        private long timer = -1;
+        private MirrorStatus stopStatus = null; // when stopped by the scheduler.
+        private Throwable stopCause = null;
+
+        private PendingJob(MirrorJob job) {
+            this.job = job;
+        }
+    }
+}
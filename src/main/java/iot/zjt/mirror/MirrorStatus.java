@@ -0,0 +1,14 @@
+package iot.zjt.mirror;
+
+/**
+ * Final status of a mirror job.
+ *
+ * @author Mr Dk.
+ * @since 2021/01/10
+ */
+public enum MirrorStatus {
+    MIRRORED,
+    SKIPPED, // already up to date on the target.
+    FAILED,
+    CANCELLED // the run was cancelled or past its deadline.
+}
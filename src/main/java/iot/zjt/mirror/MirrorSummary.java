@@ -0,0 +1,57 @@
+package iot.zjt.mirror;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The results of a whole mirror run.
+ *
+ * @author Mr Dk.
+ * @since 2021/01/10
+ */
+public class MirrorSummary {
+    private final List<MirrorResult> results;
+
+    public MirrorSummary(List<MirrorResult> results) {
+        this.results = Collections.unmodifiableList(results);
+    }
+
+    public List<MirrorResult> getResults() {
+        return results;
+    }
+
+    public int count(MirrorStatus status) {
+        int count = 0;
+        for (MirrorResult result : results) {
+            if (result.getStatus() == status) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public int getMirroredCount() {
+        return count(MirrorStatus.MIRRORED);
+    }
+
+    public int getSkippedCount() {
+        return count(MirrorStatus.SKIPPED);
+    }
+
+    public int getFailedCount() {
+        return count(MirrorStatus.FAILED);
+    }
+
+    public int getCancelledCount() {
+        return count(MirrorStatus.CANCELLED);
+    }
+
+    @Override
+    public String toString() {
+        return results.size() + " repositories: " +
+                getMirroredCount() + " mirrored, " +
+                getSkippedCount() + " skipped (up to date), " +
+                getFailedCount() + " failed" +
+                (getCancelledCount() == 0 ? "" : ", " + getCancelledCount() + " cancelled");
+    }
+}
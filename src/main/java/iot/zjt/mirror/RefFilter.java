@@ -0,0 +1,167 @@
+package iot.zjt.mirror;
+
+import io.vertx.core.json.JsonObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Refs to be mirrored, by include and exclude globs like "refs/heads/**".
+ * A ref is mirrored if it matches any include and no exclude. In globs,
+ * "**" matches anything, "*" and "?" do not match "/".
+ * <p>
+ * Filtered refs are left out of comparisons, fetches and pushes, so that
+ * refs like "refs/pull/*" take no part in negotiation nor packs.
+ *
+ * @author Mr Dk.
+ * @since 2021/01/29
+ */
+public class RefFilter {
+
+    /**
+     * Preset of branches and tags only, the default.
+     */
+    public static final String HEADS_AND_TAGS = "heads-and-tags";
+
+    /**
+     * Preset of every ref, including pull requests and CI refs.
+     */
+    public static final String ALL = "all";
+
+    private final List<String> includes;
+    private final List<String> excludes;
+    private final List<Pattern> includePatterns;
+    private final List<Pattern> excludePatterns;
+
+    public RefFilter(List<String> includes, List<String> excludes) {
+        if (includes.isEmpty()) {
+            throw new IllegalArgumentException("ref filter must include some refs");
+        }
+        this.includes = Collections.unmodifiableList(new ArrayList<>(includes));
+        this.excludes = Collections.unmodifiableList(new ArrayList<>(excludes));
+        this.includePatterns = includes.stream().map(RefFilter::compile).collect(Collectors.toList());
+        this.excludePatterns = excludes.stream().map(RefFilter::compile).collect(Collectors.toList());
+    }
+
+    public static RefFilter headsAndTags() {
+        return new RefFilter(Arrays.asList("refs/heads/**", "refs/tags/**"), Collections.emptyList());
+    }
+
+    public static RefFilter all() {
+        return new RefFilter(Collections.singletonList("refs/**"), Collections.emptyList());
+    }
+
+    /**
+     * @param name "heads-and-tags" or "all".
+     * @return The preset filter.
+     */
+    public static RefFilter preset(String name) {
+        switch (name.trim().toLowerCase(Locale.ROOT)) {
+            case HEADS_AND_TAGS:
+                return headsAndTags();
+            case ALL:
+                return all();
+            default:
+                throw new IllegalArgumentException("unknown ref preset: " + name);
+        }
+    }
+
+    /**
+     * Load a filter from flat configurations:
+     * <pre>
+     * {prefix}refs=heads-and-tags
+     * {prefix}refs.include=refs/heads/**,refs/tags/v*
+     * {prefix}refs.exclude=refs/heads/dependabot/**
+     * </pre>
+     * Includes replace those of the preset, and excludes are added to it.
+     *
+     * @param config        The configuration object.
+     * @param prefix        The prefix of keys, like "mirror." or "sync.{name}.".
+     * @param defaultFilter The filter if none of the keys is set.
+     * @return The filter.
+     */
+    public static RefFilter fromConfig(JsonObject config, String prefix, RefFilter defaultFilter) {
+        String preset = getString(config, prefix + "refs");
+        List<String> includes = getList(config, prefix + "refs.include");
+        List<String> excludes = getList(config, prefix + "refs.exclude");
+        if (preset == null && includes.isEmpty() && excludes.isEmpty()) {
+            return defaultFilter;
+        }
+
+        RefFilter base = preset == null ? defaultFilter : preset(preset);
+        List<String> allExcludes = new ArrayList<>(base.excludes);
+        allExcludes.addAll(excludes);
+        return new RefFilter(includes.isEmpty() ? base.includes : includes, allExcludes);
+    }
+
+    private static String getString(JsonObject config, String key) {
+        Object value = config.getValue(key);
+        return value == null || value.toString().trim().isEmpty() ? null : value.toString().trim();
+    }
+
+    private static List<String> getList(JsonObject config, String key) {
+        String value = getString(config, key);
+        if (value == null) {
+            return Collections.emptyList();
+        }
+        return Arrays.stream(value.split(","))
+                .map(String::trim)
+                .filter(glob -> !glob.isEmpty())
+                .collect(Collectors.toList());
+    }
+
+    private static Pattern compile(String glob) {
+        if (!glob.startsWith("refs/")) {
+            throw new IllegalArgumentException("ref glob must start with \"refs/\": " + glob);
+        }
+        StringBuilder regex = new StringBuilder();
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '*' && i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                regex.append(".*");
+                i++;
+            } else if (c == '*') {
+                regex.append("[^/]*");
+            } else if (c == '?') {
+                regex.append("[^/]");
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    /**
+     * @param ref The full name of a ref, like "refs/heads/master".
+     * @return Whether the ref is to be mirrored.
+     */
+    public boolean matches(String ref) {
+        return includePatterns.stream().anyMatch(pattern -> pattern.matcher(ref).matches()) &&
+                excludePatterns.stream().noneMatch(pattern -> pattern.matcher(ref).matches());
+    }
+
+    /**
+     * @return Whether only branches and tags may be mirrored.
+     */
+    boolean isHeadsAndTagsOnly() {
+        return includes.stream().allMatch(glob -> glob.startsWith("refs/heads/") || glob.startsWith("refs/tags/"));
+    }
+
+    public List<String> getIncludes() {
+        return includes;
+    }
+
+    public List<String> getExcludes() {
+        return excludes;
+    }
+
+    @Override
+    public String toString() {
+        return "include " + includes + (excludes.isEmpty() ? "" : ", exclude " + excludes);
+    }
+}
@@ -0,0 +1,121 @@
+package iot.zjt.mirror;
+
+import io.vertx.core.json.JsonObject;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.transport.CredentialsProvider;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Names and SHAs of the refs of a remote repository, branches and tags by default,
+ * used to find out what is to be mirrored without any object transfer.
+ *
+ * @author Mr Dk.
+ * @since 2021/01/12
+ */
+public class RefSnapshot {
+    private final Map<String, ObjectId> refs;
+
+    public RefSnapshot(Map<String, ObjectId> refs) {
+        this.refs = Collections.unmodifiableMap(new TreeMap<>(refs));
+    }
+
+    /**
+     * List branches and tags of a remote repository.
+     * This method is blocking.
+     *
+     * @param url         The URL of the remote repository.
+     * @param credentials The credentials of the remote.
+     * @return The snapshot of the remote refs.
+     */
+    public static RefSnapshot lsRemote(String url, CredentialsProvider credentials) throws GitAPIException {
+        return lsRemote(url, credentials, RefFilter.headsAndTags());
+    }
+
+    /**
+     * List the refs of a remote repository passing the filter.
+     * This method is blocking.
+     *
+     * @param url         The URL of the remote repository.
+     * @param credentials The credentials of the remote.
+     * @param filter      The refs to be listed.
+     * @return The snapshot of the remote refs.
+     */
+    public static RefSnapshot lsRemote(String url, CredentialsProvider credentials,
+                                       RefFilter filter) throws GitAPIException {
+        // $ git ls-remote [--heads --tags] {url}
+        boolean headsAndTags = filter.isHeadsAndTagsOnly();
+        Map<String, ObjectId> refs = new TreeMap<>();
+        for (Ref ref : Git.lsRemoteRepository()
+                .setCredentialsProvider(credentials)
+                .setTimeout(JobControl.current().getTimeoutSeconds())
+                .setRemote(url)
+                .setHeads(headsAndTags)
+                .setTags(headsAndTags)
+                .call()) {
+            if (ref.getObjectId() != null && filter.matches(ref.getName())) {
+                refs.put(ref.getName(), ref.getObjectId());
+            }
+        }
+        return new RefSnapshot(refs);
+    }
+
+    /**
+     * @param json The refs in JSON, from ref names to SHAs.
+     * @return The snapshot.
+     */
+    public static RefSnapshot fromJson(JsonObject json) {
+        Map<String, ObjectId> refs = new TreeMap<>();
+        for (String name : json.fieldNames()) {
+            refs.put(name, ObjectId.fromString(json.getString(name)));
+        }
+        return new RefSnapshot(refs);
+    }
+
+    public JsonObject toJson() {
+        JsonObject json = new JsonObject();
+        for (Map.Entry<String, ObjectId> ref : refs.entrySet()) {
+            json.put(ref.getKey(), ref.getValue().name());
+        }
+        return json;
+    }
+
+    public Map<String, ObjectId> getRefs() {
+        return refs;
+    }
+
+    /**
+     * Find the refs to be pushed to make the target the same as this one.
+     * Refs existing only on the target are not touched, as pushing does not
+     * delete them either.
+     *
+     * @param target The snapshot of the target.
+     * @return The names of refs which are missing or different on the target.
+     */
+    public List<String> diff(RefSnapshot target) {
+        List<String> changed = new ArrayList<>();
+        for (Map.Entry<String, ObjectId> ref : refs.entrySet()) {
+            if (!ref.getValue().equals(target.refs.get(ref.getKey()))) {
+                changed.add(ref.getKey());
+            }
+        }
+        return changed;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof RefSnapshot && refs.equals(((RefSnapshot) o).refs);
+    }
+
+    @Override
+    public int hashCode() {
+        return refs.hashCode();
+    }
+}
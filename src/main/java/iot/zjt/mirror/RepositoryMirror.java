@@ -0,0 +1,375 @@
+package iot.zjt.mirror;
+
+import io.micrometer.core.instrument.Timer;
+import iot.zjt.Repository;
+import iot.zjt.lfs.LfsMirror;
+import iot.zjt.metrics.MirrorMetrics;
+import iot.zjt.metrics.TransferProgressMonitor;
+import iot.zjt.platform.AbstractOnlinePlatform;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.PushCommand;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.transport.RefSpec;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * The blocking Git work to mirror one repository between platforms.
+ *
+ * @author Mr Dk.
+ * @since 2021/01/10
+ */
+public class RepositoryMirror implements Callable<MirrorStatus> {
+
+    private final static Logger logger = LogManager.getLogger(RepositoryMirror.class);
+
+    private final AbstractOnlinePlatform sourcePlatform;
+    private final Repository from;
+    private final AbstractOnlinePlatform targetPlatform;
+    private final Repository to;
+    private final MirrorOptions options;
+    private final MirrorCache cache;
+    private final SyncStateStore store;
+    private final RefFilter refFilter;
+
+    /**
+     * @param options The mirror options.
+     * @param cache   The persistent cache, or null to clone into a temporary directory.
+     */
+    public RepositoryMirror(AbstractOnlinePlatform sourcePlatform, Repository from,
+                            AbstractOnlinePlatform targetPlatform, Repository to,
+                            MirrorOptions options, MirrorCache cache) {
+        this(sourcePlatform, from, targetPlatform, to, options, cache, null);
+    }
+
+    /**
+     * @param options The mirror options.
+     * @param cache   The persistent cache, or null to clone into a temporary directory.
+     * @param store   The sync state store, or null.
+     */
+    public RepositoryMirror(AbstractOnlinePlatform sourcePlatform, Repository from,
+                            AbstractOnlinePlatform targetPlatform, Repository to,
+                            MirrorOptions options, MirrorCache cache, SyncStateStore store) {
+        this(sourcePlatform, from, targetPlatform, to, options, cache, store, options.getRefFilter());
+    }
+
+    /**
+     * @param options   The mirror options.
+     * @param cache     The persistent cache, or null to clone into a temporary directory.
+     * @param store     The sync state store, or null.
+     * @param refFilter The refs to be mirrored.
+     */
+    public RepositoryMirror(AbstractOnlinePlatform sourcePlatform, Repository from,
+                            AbstractOnlinePlatform targetPlatform, Repository to,
+                            MirrorOptions options, MirrorCache cache, SyncStateStore store,
+                            RefFilter refFilter) {
+        this.sourcePlatform = sourcePlatform;
+        this.from = from;
+        this.targetPlatform = targetPlatform;
+        this.to = to;
+        this.options = options;
+        this.cache = cache;
+        this.store = store;
+        this.refFilter = refFilter;
+    }
+
+    @Override
+    public MirrorStatus call() throws Exception {
+        /*
+         * Compare refs on both sides before any object transfer,
+         * and only push the refs that differ. The target is always
+         * asked, as it may have been reset since it was last mirrored.
+         */
+        String key = store == null ? null : SyncStateStore.key(sourcePlatform, from, targetPlatform, to);
+        if (store != null && isArchivedAndFresh(options, from, store.get(key))) {
+            logger.info("[" + from.getName() + "] is archived and mirrored recently, skipped.");
+            return MirrorStatus.SKIPPED;
+        }
+        RefSnapshot sourceRefs = MirrorMetrics.time(MirrorMetrics.PHASE_COMPARE,
+                sourcePlatform.getPlatform(), () -> RefSnapshot.lsRemote(sourcePlatform.getRepositoryHttpsUrl(from),
+                        sourcePlatform.getCredentialsProvider(), refFilter));
+        RefSnapshot targetRefs = MirrorMetrics.time(MirrorMetrics.PHASE_COMPARE,
+                targetPlatform.getPlatform(), () -> RefSnapshot.lsRemote(targetPlatform.getRepositoryHttpsUrl(to),
+                        targetPlatform.getCredentialsProvider(), refFilter));
+        JobControl.current().checkCancelled();
+        List<String> changedRefs = sourceRefs.diff(targetRefs);
+        if (changedRefs.isEmpty()) {
+            if (store != null) {
+                store.recordMirrored(key, sourceRefs);
+            }
+            logger.info("[" + from.getName() + "] is up to date on " +
+                    targetPlatform.getPlatform() + ", skipped.");
+            return MirrorStatus.SKIPPED;
+        }
+        logger.info("[" + from.getName() + "] has " + changedRefs.size() + " ref(s) to mirror.");
+
+        if (isStreamable() && StreamingMirror.reserve(from.getSize(), options.getStreamingMemoryMb())) {
+            try {
+                new StreamingMirror(sourcePlatform, from, targetPlatform, to,
+                        options.getStreamingBatchRefs(), options.getTransportProfile()).mirror(changedRefs);
+            } finally {
+                StreamingMirror.release(from.getSize());
+            }
+        } else if (cache == null) {
+            Path dir = Files.createTempDirectory("mirror-");
+            // a job stopped gives its disk back at once.
+            Runnable cleanup = () -> deleteRecursively(dir);
+            JobControl.current().onCancel(cleanup);
+            try {
+                logStart(dir);
+                cloneTo(sourcePlatform, from, dir, sourceRefs.getRefs().keySet(), options.getTransportProfile());
+                JobControl.current().checkCancelled();
+                transferLfs(sourcePlatform, from, targetPlatform, to, dir, changedRefs, targetRefs, options);
+                pushFrom(targetPlatform, to, dir, changedRefs, options.getTransportProfile());
+            } finally {
+                JobControl.current().removeOnCancel(cleanup);
+                deleteRecursively(dir);
+            }
+        } else {
+            Path dir = cache.getDirectory(sourcePlatform, from);
+            Semaphore lock = cache.getLock(dir);
+            lock.acquire();
+            try {
+                logStart(dir);
+                syncCache(cache, sourcePlatform, from, dir, sourceRefs.getRefs().keySet(),
+                        options.getTransportProfile());
+                JobControl.current().checkCancelled();
+                transferLfs(sourcePlatform, from, targetPlatform, to, dir, changedRefs, targetRefs, options);
+                pushFrom(targetPlatform, to, dir, changedRefs, options.getTransportProfile());
+            } finally {
+                lock.release();
+            }
+        }
+
+        if (store != null) {
+            store.recordMirrored(key, sourceRefs);
+        }
+        logger.info("Mirroring [" + from.getName() + "] complete.");
+        return MirrorStatus.MIRRORED;
+    }
+
+    /**
+     * Only repositories of known size that fit in memory are streamed,
+     * if the memory for streaming is not taken by other jobs.
+     */
+    private boolean isStreamable() {
+        return options.isStreaming() && !options.isLfs() && from.getSize() > 0 &&
+                from.getSize() <= options.getStreamingMaxSizeMb() * 1024;
+    }
+
+    private void logStart(Path dir) {
+        logger.warn("Start to mirror [" + from.getName() + "] from {" +
+                sourcePlatform.getPlatform() + "} to {" + targetPlatform.getPlatform() +
+                "} at " + dir);
+    }
+
+    /**
+     * Archived repositories are seldom pushed, so they are not even
+     * compared until the archived interval has passed since their state
+     * was last updated.
+     *
+     * @param options The options giving the archived interval.
+     * @param from    The source repository.
+     * @param state   The state of the repository pair, or null if unknown.
+     * @return Whether the repository can be skipped without comparing.
+     */
+    static boolean isArchivedAndFresh(MirrorOptions options, Repository from, SyncState state) {
+        return from.isArchived() && options.getArchivedIntervalHours() > 0 &&
+                state != null && state.hasReached(SyncStage.MIRRORED) &&
+                System.currentTimeMillis() - state.getUpdatedAt() <
+                        TimeUnit.HOURS.toMillis(options.getArchivedIntervalHours());
+    }
+
+    /**
+     * Fetch incrementally into the cached bare repository,
+     * or clone it if it is not cached yet.
+     *
+     * @param refs The refs to be fetched, other local refs are removed.
+     */
+    static void syncCache(MirrorCache cache, AbstractOnlinePlatform sourcePlatform, Repository from, Path dir,
+                          Collection<String> refs, TransportProfile profile) throws GitAPIException, IOException {
+        if (cache.isCached(dir)) {
+            try {
+                fetchInto(sourcePlatform, from, dir, refs, profile);
+                cache.markSynced(dir);
+                return;
+            } catch (GitAPIException | IOException e) {
+                logger.error("Fail to fetch into cached [" + from.getName() + "]: " +
+                        e.getMessage() + ", cloning again");
+            }
+        }
+
+        cache.invalidate(dir); // remove the broken or partial one.
+        cloneTo(sourcePlatform, from, dir, refs, profile);
+        cache.markSynced(dir);
+    }
+
+    /**
+     * @param refs The refs to be cloned.
+     */
+    static void cloneTo(AbstractOnlinePlatform sourcePlatform, Repository from, Path dir,
+                        Collection<String> refs, TransportProfile profile) throws GitAPIException, IOException {
+        logger.warn("Cloning from: [" + from.getName() + "] on " + sourcePlatform.getPlatform());
+        TransferProgressMonitor monitor = new TransferProgressMonitor(JobControl.current()::isCancelled);
+        Timer.Sample sample = Timer.start();
+        // $ git init --bare && git fetch {from.git.url} +{ref}:{ref} ...
+        try (Git git = Git.init().setBare(true).setDirectory(dir.toFile()).call()) {
+            fetch(git, sourcePlatform, from, refs, profile, monitor);
+        }
+        sample.stop(MirrorMetrics.phaseTimer(MirrorMetrics.PHASE_CLONE, sourcePlatform.getPlatform()));
+        long bytes = sizeOf(dir);
+        MirrorMetrics.recordTransfer(MirrorMetrics.PHASE_FETCH, sourcePlatform.getPlatform(),
+                monitor.getObjects(), bytes);
+        JobControl.current().addTransferredBytes(bytes);
+        logger.info("Clone [" + from.getName() + "] success");
+    }
+
+    /**
+     * @param refs The refs to be fetched, other local refs are removed.
+     */
+    static void fetchInto(AbstractOnlinePlatform sourcePlatform, Repository from, Path dir,
+                          Collection<String> refs, TransportProfile profile) throws GitAPIException, IOException {
+        logger.warn("Fetching from: [" + from.getName() + "] on " + sourcePlatform.getPlatform());
+        TransferProgressMonitor monitor = new TransferProgressMonitor(JobControl.current()::isCancelled);
+        long sizeBefore = sizeOf(dir);
+        Timer.Sample sample = Timer.start();
+        try (Git git = Git.open(dir.toFile())) {
+            fetch(git, sourcePlatform, from, refs, profile, monitor);
+        }
+        sample.stop(MirrorMetrics.phaseTimer(MirrorMetrics.PHASE_FETCH, sourcePlatform.getPlatform()));
+        // new objects arrive as new packs.
+        long bytes = Math.max(0, sizeOf(dir) - sizeBefore);
+        MirrorMetrics.recordTransfer(MirrorMetrics.PHASE_FETCH, sourcePlatform.getPlatform(),
+                monitor.getObjects(), bytes);
+        JobControl.current().addTransferredBytes(bytes);
+        logger.info("Fetch [" + from.getName() + "] success");
+    }
+
+    /**
+     * Fetch exactly the refs listed from the source, so that filtered refs
+     * are never negotiated nor transferred, then remove the local refs not
+     * listed any more, as "--prune" would.
+     */
+    private static void fetch(Git git, AbstractOnlinePlatform sourcePlatform, Repository from,
+                              Collection<String> refs, TransportProfile profile,
+                              TransferProgressMonitor monitor) throws GitAPIException, IOException {
+        // $ git fetch {from.git.url} +{ref}:{ref} ...
+        List<RefSpec> specs = new ArrayList<>();
+        for (String ref : refs) {
+            specs.add(new RefSpec("+" + ref + ":" + ref));
+        }
+        if (!specs.isEmpty()) {
+            // fetches end with "gc --auto", which must not outlive a temporary directory.
+            git.getRepository().getConfig().setBoolean(ConfigConstants.CONFIG_GC_SECTION, null,
+                    ConfigConstants.CONFIG_KEY_AUTODETACH, false);
+            git.fetch()
+                    .setCredentialsProvider(sourcePlatform.getCredentialsProvider())
+                    .setTimeout(JobControl.current().getTimeoutSeconds())
+                    .setRemote(sourcePlatform.getRepositoryHttpsUrl(from))
+                    .setRefSpecs(specs)
+                    .setTransportConfigCallback(profile.configurer())
+                    .setProgressMonitor(monitor)
+                    .call();
+        }
+
+        Set<String> wanted = new HashSet<>(refs);
+        org.eclipse.jgit.lib.Repository repo = git.getRepository();
+        // the branch of HEAD cannot be removed, and is never pushed anyway.
+        wanted.add(repo.getFullBranch());
+        for (Ref ref : repo.getRefDatabase().getRefsByPrefix(Constants.R_REFS)) {
+            if (wanted.contains(ref.getName())) {
+                continue;
+            }
+            RefUpdate update = repo.updateRef(ref.getName());
+            update.setForceUpdate(true);
+            RefUpdate.Result result = update.delete();
+            if (result != RefUpdate.Result.FORCED && result != RefUpdate.Result.NO_CHANGE) {
+                logger.warn("Fail to remove stale ref " + ref.getName() + " of [" + from.getName() +
+                        "]: " + result);
+            }
+        }
+    }
+
+    static void pushFrom(AbstractOnlinePlatform targetPlatform, Repository to, Path dir, List<String> refs,
+                         TransportProfile profile) throws GitAPIException, IOException {
+        logger.warn("Pushing mirror to: [" + to.getName() + "] on " + targetPlatform.getPlatform());
+        TransferProgressMonitor monitor = new TransferProgressMonitor(JobControl.current()::isCancelled);
+        Timer.Sample sample = Timer.start();
+        // $ git push --force {to.git.url} {ref}:{ref} ...
+        try (Git git = Git.open(dir.toFile())) {
+            PushCommand push = git.push()
+                    .setCredentialsProvider(targetPlatform.getCredentialsProvider())
+                    .setTimeout(JobControl.current().getTimeoutSeconds())
+                    .setRemote(targetPlatform.getRepositoryHttpsUrl(to))
+                    .setForce(true)
+                    .setTransportConfigCallback(profile.configurer())
+                    .setProgressMonitor(monitor);
+            for (String ref : refs) {
+                push.add(ref + ":" + ref);
+            }
+            push.call();
+        }
+        sample.stop(MirrorMetrics.phaseTimer(MirrorMetrics.PHASE_PUSH, targetPlatform.getPlatform()));
+        // JGit does not report the size of pushed packs.
+        MirrorMetrics.recordTransfer(MirrorMetrics.PHASE_PUSH, targetPlatform.getPlatform(),
+                monitor.getObjects(), -1);
+        logger.info("Push [" + to.getName() + "] success");
+    }
+
+    /**
+     * Upload the LFS objects the target is missing, if enabled, so that
+     * pointers pushed next are never dangling.
+     *
+     * @param targetRefs The refs on the target, whose LFS objects are not looked for, or null.
+     */
+    static void transferLfs(AbstractOnlinePlatform sourcePlatform, Repository from,
+                            AbstractOnlinePlatform targetPlatform, Repository to, Path dir,
+                            List<String> refs, RefSnapshot targetRefs, MirrorOptions options) throws IOException {
+        if (!options.isLfs()) {
+            return;
+        }
+        LfsMirror lfs = new LfsMirror(dir, options.getLfsParallelism(), JobControl.current().getDeadline());
+        try {
+            lfs.mirror(sourcePlatform, from, targetPlatform, to, refs,
+                    targetRefs == null ? Collections.emptyList() : targetRefs.getRefs().values());
+        } finally {
+            JobControl.current().addTransferredBytes(lfs.getDownloadedBytes());
+        }
+    }
+
+    static long sizeOf(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            return files.filter(Files::isRegularFile).mapToLong(file -> file.toFile().length()).sum();
+        }
+    }
+
+    static void deleteRecursively(Path dir) {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder())
+                    .map(Path::toFile)
+                    .forEach(File::delete);
+        } catch (IOException e) {
+            logger.error("Fail to remove " + dir + ": " + e.getMessage());
+        }
+    }
+}
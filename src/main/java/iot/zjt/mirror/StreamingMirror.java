@@ -0,0 +1,174 @@
+package iot.zjt.mirror;
+
+import io.micrometer.core.instrument.Timer;
+import iot.zjt.Repository;
+import iot.zjt.metrics.MirrorMetrics;
+import iot.zjt.metrics.TransferProgressMonitor;
+import iot.zjt.platform.AbstractOnlinePlatform;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.PushCommand;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.internal.storage.dfs.DfsPackFile;
+import org.eclipse.jgit.internal.storage.dfs.DfsRepository;
+import org.eclipse.jgit.internal.storage.dfs.DfsRepositoryDescription;
+import org.eclipse.jgit.internal.storage.dfs.InMemoryRepository;
+import org.eclipse.jgit.internal.storage.pack.PackExt;
+import org.eclipse.jgit.transport.RefSpec;
+import org.eclipse.jgit.util.FS;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Mirror a repository without touching the disk. Objects are fetched into an
+ * in-memory object store, and refs are transferred in batches: each batch is
+ * fetched from the source, then pushed to the target, which only receives
+ * objects it does not have yet, so that packs stay small.
+ * <p>
+ * Fetch and push run one after the other on the job thread, as the object
+ * store is not meant to be read and written by two transports at once, and
+ * most objects are reachable from the first batch anyway.
+ * <p>
+ * The whole repository is held in memory, so this is only used for
+ * repositories under a configured size, and while the repositories streamed
+ * at once in the JVM stay under a configured total: the others, and large
+ * repositories in any case, are mirrored through the disk.
+ *
+ * @author Mr Dk.
+ * @since 2021/01/18
+ */
+class StreamingMirror {
+
+    private final static Logger logger = LogManager.getLogger(StreamingMirror.class);
+
+    /**
+     * KB of repositories being streamed in the JVM, which share the heap
+     * whichever scheduler runs them.
+     */
+    private static long reservedKb = 0;
+
+    private final AbstractOnlinePlatform sourcePlatform;
+    private final Repository from;
+    private final AbstractOnlinePlatform targetPlatform;
+    private final Repository to;
+    private final int batchRefs;
+    private final TransportProfile profile;
+
+    /**
+     * Control of the job creating this.
+     */
+    private final JobControl control = JobControl.current();
+
+    StreamingMirror(AbstractOnlinePlatform sourcePlatform, Repository from,
+                    AbstractOnlinePlatform targetPlatform, Repository to, int batchRefs,
+                    TransportProfile profile) {
+        this.sourcePlatform = sourcePlatform;
+        this.from = from;
+        this.targetPlatform = targetPlatform;
+        this.to = to;
+        this.batchRefs = batchRefs;
+        this.profile = profile;
+    }
+
+    /**
+     * Reserve memory to stream a repository, without waiting for it.
+     *
+     * @param sizeKb   The size of the repository in KB.
+     * @param memoryMb The total size of repositories streamed at once.
+     * @return Whether the memory is reserved, to be given back by {@link #release(long)}.
+     */
+    static synchronized boolean reserve(long sizeKb, long memoryMb) {
+        if (reservedKb + sizeKb > memoryMb * 1024) {
+            return false;
+        }
+        reservedKb += sizeKb;
+        return true;
+    }
+
+    static synchronized void release(long sizeKb) {
+        reservedKb -= sizeKb;
+    }
+
+    /**
+     * Transfer refs from the source to the target. This method is blocking.
+     *
+     * @param refs The refs to be mirrored, branches before tags.
+     */
+    void mirror(List<String> refs) throws GitAPIException, IOException {
+        logger.warn("Start to stream [" + from.getName() + "] from {" +
+                sourcePlatform.getPlatform() + "} to {" + targetPlatform.getPlatform() +
+                "} in batches of " + batchRefs + " ref(s)");
+
+        InMemoryRepository repo = new InMemoryRepository.Builder()
+                .setRepositoryDescription(new DfsRepositoryDescription(from.getName()))
+                .setFS(FS.DETECTED) // needed by local transports.
+                .build();
+        try (Git git = Git.wrap(repo)) {
+            for (int start = 0; start < refs.size(); start += batchRefs) {
+                List<String> batch = refs.subList(start, Math.min(refs.size(), start + batchRefs));
+                fetch(git, batch);
+                control.checkCancelled();
+                push(git, batch);
+            }
+        } finally {
+            repo.close();
+        }
+        logger.info("Stream [" + from.getName() + "] success");
+    }
+
+    private void fetch(Git git, List<String> refs) throws GitAPIException, IOException {
+        List<RefSpec> specs = new ArrayList<>();
+        for (String ref : refs) {
+            specs.add(new RefSpec("+" + ref + ":" + ref));
+        }
+
+        TransferProgressMonitor monitor = new TransferProgressMonitor(control::isCancelled);
+        DfsRepository repo = (DfsRepository) git.getRepository();
+        long sizeBefore = sizeOf(repo);
+        Timer.Sample sample = Timer.start();
+        git.fetch()
+                .setCredentialsProvider(sourcePlatform.getCredentialsProvider())
+                .setTimeout(control.getTimeoutSeconds())
+                .setRemote(sourcePlatform.getRepositoryHttpsUrl(from))
+                .setRefSpecs(specs)
+                .setTransportConfigCallback(profile.configurer())
+                .setProgressMonitor(monitor)
+                .call();
+        sample.stop(MirrorMetrics.phaseTimer(MirrorMetrics.PHASE_FETCH, sourcePlatform.getPlatform()));
+        // new objects arrive as new packs.
+        long bytes = Math.max(0, sizeOf(repo) - sizeBefore);
+        MirrorMetrics.recordTransfer(MirrorMetrics.PHASE_FETCH, sourcePlatform.getPlatform(),
+                monitor.getObjects(), bytes);
+        control.addTransferredBytes(bytes);
+    }
+
+    private static long sizeOf(DfsRepository repo) throws IOException {
+        long size = 0;
+        for (DfsPackFile pack : repo.getObjectDatabase().getPacks()) {
+            size += pack.getPackDescription().getFileSize(PackExt.PACK);
+        }
+        return size;
+    }
+
+    private void push(Git git, List<String> refs) throws GitAPIException {
+        TransferProgressMonitor monitor = new TransferProgressMonitor(control::isCancelled);
+        Timer.Sample sample = Timer.start();
+        PushCommand push = git.push()
+                .setCredentialsProvider(targetPlatform.getCredentialsProvider())
+                .setTimeout(control.getTimeoutSeconds())
+                .setRemote(targetPlatform.getRepositoryHttpsUrl(to))
+                .setForce(true)
+                .setTransportConfigCallback(profile.configurer())
+                .setProgressMonitor(monitor);
+        for (String ref : refs) {
+            push.add(ref + ":" + ref);
+        }
+        push.call();
+        sample.stop(MirrorMetrics.phaseTimer(MirrorMetrics.PHASE_PUSH, targetPlatform.getPlatform()));
+        MirrorMetrics.recordTransfer(MirrorMetrics.PHASE_PUSH, targetPlatform.getPlatform(),
+                monitor.getObjects(), -1);
+    }
+}
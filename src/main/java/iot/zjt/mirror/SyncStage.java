@@ -0,0 +1,13 @@
+package iot.zjt.mirror;
+
+/**
+ * The stages a repository reaches in a mirror run, in order.
+ *
+ * @author Mr Dk.
+ * @since 2021/01/19
+ */
+public enum SyncStage {
+    CREATED,
+    VISIBILITY_UPDATED,
+    MIRRORED
+}
@@ -0,0 +1,105 @@
+package iot.zjt.mirror;
+
+import io.vertx.core.json.JsonObject;
+
+/**
+ * What is known about the mirror of a repository from previous runs.
+ *
+ * @author Mr Dk.
+ * @since 2021/01/19
+ */
+public class SyncState {
+    private SyncStage stage;
+    private int targetId;
+    private boolean visibilityPrivate;
+    private RefSnapshot sourceRefs;
+    private long updatedAt;
+
+    public SyncState() {
+    }
+
+    public SyncState(SyncState another) {
+        this.stage = another.stage;
+        this.targetId = another.targetId;
+        this.visibilityPrivate = another.visibilityPrivate;
+        this.sourceRefs = another.sourceRefs;
+        this.updatedAt = another.updatedAt;
+    }
+
+    /**
+     * Apply a journal record, whose absent fields are left unchanged.
+     * Stages never go backwards, unless the record resets the state.
+     *
+     * @param record The journal record.
+     */
+    void apply(JsonObject record) {
+        if (record.getBoolean("reset", false)) {
+            stage = null;
+            sourceRefs = null;
+        }
+        if (record.containsKey("stage")) {
+            SyncStage recordStage = SyncStage.valueOf(record.getString("stage"));
+            if (stage == null || recordStage.compareTo(stage) > 0) {
+                stage = recordStage;
+            }
+        }
+        if (record.containsKey("targetId")) {
+            targetId = record.getInteger("targetId");
+        }
+        if (record.containsKey("private")) {
+            visibilityPrivate = record.getBoolean("private");
+        }
+        if (record.containsKey("refs")) {
+            sourceRefs = RefSnapshot.fromJson(record.getJsonObject("refs"));
+        }
+        updatedAt = record.getLong("time", updatedAt);
+    }
+
+    /**
+     * @return The whole state as one journal record.
+     */
+    JsonObject toJson() {
+        JsonObject json = new JsonObject()
+                .put("targetId", targetId)
+                .put("private", visibilityPrivate)
+                .put("time", updatedAt);
+        if (stage != null) {
+            json.put("stage", stage.name());
+        }
+        if (sourceRefs != null) {
+            json.put("refs", sourceRefs.toJson());
+        }
+        return json;
+    }
+
+    /**
+     * @param stage The stage to check.
+     * @return Whether the repository has reached the stage.
+     */
+    public boolean hasReached(SyncStage stage) {
+        return this.stage != null && this.stage.compareTo(stage) >= 0;
+    }
+
+    public SyncStage getStage() {
+        return stage;
+    }
+
+    public int getTargetId() {
+        return targetId;
+    }
+
+    public boolean getVisibilityPrivate() {
+        return visibilityPrivate;
+    }
+
+    /**
+     * @return The source refs last mirrored, null if never mirrored.
+     */
+    public RefSnapshot getSourceRefs() {
+        return sourceRefs;
+    }
+
+    public long getUpdatedAt() {
+        return updatedAt;
+    }
+}
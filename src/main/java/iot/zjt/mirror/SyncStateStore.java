@@ -0,0 +1,206 @@
+package iot.zjt.mirror;
+
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.JsonObject;
+import iot.zjt.Repository;
+import iot.zjt.platform.AbstractOnlinePlatform;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Durable store of {@link SyncState}, kept as an append-only journal of JSON
+ * lines. Each line records what a repository reached, and the state is
+ * rebuilt by replaying the journal, so an interrupted run can be resumed by
+ * the next one. The journal is compacted when it is opened.
+ * <p>
+ * States are updated in memory at once, and lines are appended and synced
+ * to disk in order by a background writer.
+ *
+ * @author Mr Dk.
+ * @since 2021/01/19
+ */
+public class SyncStateStore {
+
+    private final static Logger logger = LogManager.getLogger(SyncStateStore.class);
+
+    /**
+     * Stores opened in the JVM, so that each journal has only one writer.
+     */
+    private static final Map<Path, SyncStateStore> stores = new HashMap<>();
+
+    private final Path file;
+    private final Map<String, SyncState> states = new HashMap<>();
+    private final ExecutorService writer;
+    private FileChannel channel;
+
+    private SyncStateStore(Path file) {
+        this.file = file;
+        this.writer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "mirror-state-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Open the store of a journal file, which is created if absent.
+     * This method is blocking.
+     *
+     * @param file The journal file.
+     * @return The store.
+     */
+    public static SyncStateStore open(String file) throws IOException {
+        Path path = Paths.get(file).toAbsolutePath().normalize();
+        synchronized (stores) {
+            SyncStateStore store = stores.get(path);
+            if (store == null) {
+                store = new SyncStateStore(path);
+                store.load();
+                stores.put(path, store);
+            }
+            return store;
+        }
+    }
+
+    /**
+     * @param options The mirror options.
+     * @return The store configured by the options, or null if disabled.
+     */
+    public static SyncStateStore open(MirrorOptions options) throws IOException {
+        return options.getStateFile() == null ? null : open(options.getStateFile());
+    }
+
+    /**
+     * The key of a repository pair, like "GitHub:tom/repo->GitLab:jerry/repo".
+     * The target is named as its platform matches names, so that a repository
+     * created by a run has the same key once listed by the next one.
+     */
+    public static String key(AbstractOnlinePlatform sourcePlatform, Repository from,
+                             AbstractOnlinePlatform targetPlatform, Repository to) {
+        return sourcePlatform.getPlatform() + ":" + from.getOwner() + "/" + from.getName() +
+                "->" + targetPlatform.getPlatform() + ":" +
+                targetPlatform.getRepositoryKey(to.getOwner() + "/" + to.getName());
+    }
+
+    /**
+     * @param key The key of a repository pair.
+     * @return A copy of the state, null if unknown.
+     */
+    public synchronized SyncState get(String key) {
+        SyncState state = states.get(key);
+        return state == null ? null : new SyncState(state);
+    }
+
+    /**
+     * Record a target repository new to the store, which starts its state
+     * over: what was recorded of a former one of the same name no longer holds.
+     */
+    public void recordCreated(String key, int targetId, boolean visibilityPrivate) {
+        record(key, new JsonObject()
+                .put("reset", true)
+                .put("stage", SyncStage.CREATED.name())
+                .put("targetId", targetId)
+                .put("private", visibilityPrivate));
+    }
+
+    public void recordVisibility(String key, boolean visibilityPrivate) {
+        record(key, new JsonObject()
+                .put("stage", SyncStage.VISIBILITY_UPDATED.name())
+                .put("private", visibilityPrivate));
+    }
+
+    public void recordMirrored(String key, RefSnapshot sourceRefs) {
+        record(key, new JsonObject()
+                .put("stage", SyncStage.MIRRORED.name())
+                .put("refs", sourceRefs.toJson()));
+    }
+
+    /**
+     * Wait until every record is written to disk. This method is blocking.
+     */
+    public void flush() {
+        try {
+            writer.submit(() -> null).get(1, TimeUnit.MINUTES);
+        } catch (Exception e) {
+            logger.error("Fail to flush " + file + ": " + e.getMessage());
+        }
+    }
+
+    private void record(String key, JsonObject record) {
+        record.put("key", key).put("time", System.currentTimeMillis());
+        synchronized (this) {
+            states.computeIfAbsent(key, k -> new SyncState()).apply(record);
+        }
+
+        byte[] line = (record.encode() + "\n").getBytes(StandardCharsets.UTF_8);
+        writer.execute(() -> {
+            try {
+                channel.write(ByteBuffer.wrap(line));
+                channel.force(false);
+            } catch (IOException e) {
+                logger.error("Fail to write " + file + ": " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Replay the journal, then rewrite it with one line per repository.
+     */
+    private void load() throws IOException {
+        int lines = 0;
+        if (Files.exists(file)) {
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.trim().isEmpty()) {
+                        continue;
+                    }
+                    try {
+                        JsonObject record = new JsonObject(line);
+                        states.computeIfAbsent(record.getString("key"), k -> new SyncState()).apply(record);
+                        lines++;
+                    } catch (DecodeException | IllegalArgumentException | ClassCastException e) {
+                        // e.g. the last line torn by a crash.
+                        logger.warn("Skipping broken record in " + file + ": " + e.getMessage());
+                    }
+                }
+            }
+        } else if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+
+        if (lines > states.size()) {
+            compact();
+        }
+        logger.info("Loaded " + states.size() + " sync state(s) from " + file);
+
+        channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private void compact() throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".compact");
+        StringBuilder content = new StringBuilder();
+        for (Map.Entry<String, SyncState> entry : states.entrySet()) {
+            content.append(entry.getValue().toJson().put("key", entry.getKey()).encode()).append('\n');
+        }
+        Files.write(temp, content.toString().getBytes(StandardCharsets.UTF_8));
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,51 @@
+package iot.zjt.mirror;
+
+/**
+ * Limits of the mirror jobs of one tenant in {@link MirrorScheduler}.
+ * <p>
+ * The bandwidth is enforced between jobs rather than on the wire: a job
+ * ending takes the bytes it received from a token bucket refilled at the
+ * quota, and the jobs of a tenant wait to start while its bucket is in
+ * debt. The average transfer rate of a tenant converges to its quota,
+ * while a single big repository is never blocked forever. As jobs are
+ * charged once they end, jobs started at once may exceed the quota for a
+ * while, which the jobs of the tenant at once bound.
+ *
+ * @author Mr Dk.
+ * @since 2021/01/27
+ */
+public class TenantQuota {
+
+    /**
+     * Jobs of the tenant running at the same time, 0 for unlimited.
+     */
+    private final int maxJobs;
+
+    /**
+     * Bytes transferred per second on average, 0 for unlimited.
+     */
+    private final long maxBytesPerSecond;
+
+    /**
+     * @param maxJobs           Jobs running at the same time, 0 for unlimited.
+     * @param maxBytesPerSecond Bytes transferred per second on average, 0 for unlimited.
+     */
+    public TenantQuota(int maxJobs, long maxBytesPerSecond) {
+        if (maxJobs < 0) {
+            throw new IllegalArgumentException("jobs of a tenant must not be negative");
+        }
+        if (maxBytesPerSecond < 0) {
+            throw new IllegalArgumentException("bandwidth of a tenant must not be negative");
+        }
+        this.maxJobs = maxJobs;
+        this.maxBytesPerSecond = maxBytesPerSecond;
+    }
+
+    public int getMaxJobs() {
+        return maxJobs;
+    }
+
+    public long getMaxBytesPerSecond() {
+        return maxBytesPerSecond;
+    }
+}
@@ -0,0 +1,246 @@
+package iot.zjt.mirror;
+
+import io.vertx.core.json.JsonObject;
+import org.eclipse.jgit.api.TransportConfigCallback;
+import org.eclipse.jgit.storage.file.WindowCacheConfig;
+import org.eclipse.jgit.storage.pack.PackConfig;
+import org.eclipse.jgit.transport.Transport;
+
+import java.util.zip.Deflater;
+
+/**
+ * Tuning of JGit for clone, fetch and push, loaded from "git.*" configurations.
+ * <p>
+ * The default profile keeps JGit defaults. The "bulk" profile is tuned for
+ * mirroring many big repositories: packs are read through a bigger window
+ * cache with memory-mapped access, existing deltas and objects are sent as
+ * they are, new deltas are searched by all cores and compressed fast, and
+ * pushes send thin packs.
+ *
+ * @author Mr Dk.
+ * @since 2021/01/24
+ */
+public class TransportProfile {
+
+    /**
+     * The window cache is global to the JVM, so it is installed only
+     * when a different profile comes.
+     */
+    private static TransportProfile installed = null;
+
+    private long windowCacheMb = 10;
+    private int windowSizeKb = 8;
+    private boolean mmap = false;
+    private long deltaBaseCacheMb = 10;
+    private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+    private int deltaSearchWindow = PackConfig.DEFAULT_DELTA_SEARCH_WINDOW_SIZE;
+    private int threads = 0; // one per core
+    private boolean reuseDeltas = true;
+    private boolean reuseObjects = true;
+    private boolean thinPack = false;
+
+    public TransportProfile() {
+    }
+
+    /**
+     * @return The profile tuned for bulk mirroring.
+     */
+    public static TransportProfile bulk() {
+        return new TransportProfile()
+                .setWindowCacheMb(256)
+                .setWindowSizeKb(64)
+                .setMmap(true)
+                .setDeltaBaseCacheMb(64)
+                .setCompressionLevel(Deflater.BEST_SPEED)
+                .setThreads(Runtime.getRuntime().availableProcessors())
+                .setThinPack(true);
+    }
+
+    /**
+     * Load the profile named by "git.profile", "default" or "bulk",
+     * then apply the other keys on it.
+     *
+     * @param config The configuration object.
+     * @return The profile.
+     */
+    public static TransportProfile fromConfig(JsonObject config) {
+        String name = config.getString("git.profile", "default").trim();
+        TransportProfile profile;
+        if ("bulk".equals(name)) {
+            profile = bulk();
+        } else if ("default".equals(name) || name.isEmpty()) {
+            profile = new TransportProfile();
+        } else {
+            throw new IllegalArgumentException("unknown git profile: " + name);
+        }
+
+        return profile
+                .setWindowCacheMb(MirrorOptions.getInt(config, "git.window-cache-mb", (int) profile.windowCacheMb))
+                .setWindowSizeKb(MirrorOptions.getInt(config, "git.window-size-kb", profile.windowSizeKb))
+                .setMmap(getBoolean(config, "git.mmap", profile.mmap))
+                .setDeltaBaseCacheMb(MirrorOptions.getInt(config, "git.delta-base-cache-mb",
+                        (int) profile.deltaBaseCacheMb))
+                .setCompressionLevel(MirrorOptions.getInt(config, "git.compression", profile.compressionLevel))
+                .setDeltaSearchWindow(MirrorOptions.getInt(config, "git.delta-window", profile.deltaSearchWindow))
+                .setThreads(MirrorOptions.getInt(config, "git.threads", profile.threads))
+                .setReuseDeltas(getBoolean(config, "git.reuse-deltas", profile.reuseDeltas))
+                .setReuseObjects(getBoolean(config, "git.reuse-objects", profile.reuseObjects))
+                .setThinPack(getBoolean(config, "git.thin-pack", profile.thinPack));
+    }
+
+    private static boolean getBoolean(JsonObject config, String key, boolean defaultValue) {
+        Object value = config.getValue(key);
+        return value == null ? defaultValue : Boolean.parseBoolean(value.toString().trim());
+    }
+
+    /**
+     * Install the window cache of this profile for the JVM, if not yet.
+     */
+    public void install() {
+        synchronized (TransportProfile.class) {
+            if (installed == this) {
+                return;
+            }
+            WindowCacheConfig config = new WindowCacheConfig();
+            config.setPackedGitLimit(windowCacheMb * 1024 * 1024);
+            config.setPackedGitWindowSize(windowSizeKb * 1024);
+            config.setPackedGitMMAP(mmap);
+            config.setDeltaBaseCacheLimit((int) (deltaBaseCacheMb * 1024 * 1024));
+            config.install();
+            installed = this;
+        }
+    }
+
+    /**
+     * @return The callback applying this profile on the transport of a command.
+     */
+    public TransportConfigCallback configurer() {
+        return this::configure;
+    }
+
+    private void configure(Transport transport) {
+        PackConfig pack = new PackConfig();
+        pack.setCompressionLevel(compressionLevel);
+        pack.setDeltaSearchWindowSize(deltaSearchWindow);
+        pack.setThreads(threads);
+        pack.setReuseDeltas(reuseDeltas);
+        pack.setReuseObjects(reuseObjects);
+        transport.setPackConfig(pack);
+        transport.setPushThin(thinPack);
+    }
+
+    public TransportProfile setWindowCacheMb(long windowCacheMb) {
+        if (windowCacheMb < 1) {
+            throw new IllegalArgumentException("window cache must be positive");
+        }
+        this.windowCacheMb = windowCacheMb;
+        return this;
+    }
+
+    public TransportProfile setWindowSizeKb(int windowSizeKb) {
+        if (windowSizeKb < 4 || Integer.bitCount(windowSizeKb) != 1) {
+            throw new IllegalArgumentException("window size must be a power of 2, at least 4 KB");
+        }
+        this.windowSizeKb = windowSizeKb;
+        return this;
+    }
+
+    /**
+     * Memory-mapped packs can not be deleted on Windows while mapped,
+     * so temporary directories may be left behind there.
+     */
+    public TransportProfile setMmap(boolean mmap) {
+        this.mmap = mmap;
+        return this;
+    }
+
+    public TransportProfile setDeltaBaseCacheMb(long deltaBaseCacheMb) {
+        if (deltaBaseCacheMb < 1 || deltaBaseCacheMb > 1024) {
+            throw new IllegalArgumentException("delta base cache must be between 1 MB and 1 GB");
+        }
+        this.deltaBaseCacheMb = deltaBaseCacheMb;
+        return this;
+    }
+
+    public TransportProfile setCompressionLevel(int compressionLevel) {
+        if (compressionLevel < Deflater.DEFAULT_COMPRESSION || compressionLevel > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("compression level must be between -1 and 9");
+        }
+        this.compressionLevel = compressionLevel;
+        return this;
+    }
+
+    public TransportProfile setDeltaSearchWindow(int deltaSearchWindow) {
+        if (deltaSearchWindow < 0) {
+            throw new IllegalArgumentException("delta window must not be negative");
+        }
+        this.deltaSearchWindow = deltaSearchWindow;
+        return this;
+    }
+
+    /**
+     * @param threads Threads searching deltas, 0 for one per core.
+     */
+    public TransportProfile setThreads(int threads) {
+        if (threads < 0) {
+            throw new IllegalArgumentException("threads must not be negative");
+        }
+        this.threads = threads;
+        return this;
+    }
+
+    public TransportProfile setReuseDeltas(boolean reuseDeltas) {
+        this.reuseDeltas = reuseDeltas;
+        return this;
+    }
+
+    public TransportProfile setReuseObjects(boolean reuseObjects) {
+        this.reuseObjects = reuseObjects;
+        return this;
+    }
+
+    public TransportProfile setThinPack(boolean thinPack) {
+        this.thinPack = thinPack;
+        return this;
+    }
+
+    public long getWindowCacheMb() {
+        return windowCacheMb;
+    }
+
+    public int getWindowSizeKb() {
+        return windowSizeKb;
+    }
+
+    public boolean isMmap() {
+        return mmap;
+    }
+
+    public long getDeltaBaseCacheMb() {
+        return deltaBaseCacheMb;
+    }
+
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    public int getDeltaSearchWindow() {
+        return deltaSearchWindow;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public boolean isReuseDeltas() {
+        return reuseDeltas;
+    }
+
+    public boolean isReuseObjects() {
+        return reuseObjects;
+    }
+
+    public boolean isThinPack() {
+        return thinPack;
+    }
+}
@@ -1,22 +1,49 @@
 package iot.zjt.platform;
 
+import io.micrometer.core.instrument.Timer;
 import io.vertx.core.CompositeFuture;
 import io.vertx.core.Future;
+import io.vertx.core.MultiMap;
 import io.vertx.core.Vertx;
-import io.vertx.core.file.FileSystem;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.client.HttpResponse;
+import io.vertx.ext.web.client.WebClient;
 import iot.zjt.Repository;
+import iot.zjt.metrics.MirrorMetrics;
+import iot.zjt.mirror.FanOutMirror;
+import iot.zjt.mirror.MirrorCache;
+import iot.zjt.mirror.MirrorJob;
+import iot.zjt.mirror.MirrorOptions;
+import iot.zjt.mirror.MirrorResult;
+import iot.zjt.mirror.MirrorRun;
+import iot.zjt.mirror.MirrorScheduler;
+import iot.zjt.mirror.MirrorStatus;
+import iot.zjt.mirror.MirrorSummary;
+import iot.zjt.mirror.RefFilter;
+import iot.zjt.mirror.RepositoryMirror;
+import iot.zjt.mirror.SyncState;
+import iot.zjt.mirror.SyncStateStore;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.eclipse.jgit.api.Git;
-import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.transport.CredentialsProvider;
 import org.eclipse.jgit.transport.UsernamePasswordCredentialsProvider;
 
-import java.io.File;
 import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
 
 /**
  * An abstract concept of online SCM platform.
@@ -30,10 +57,27 @@ public abstract class AbstractOnlinePlatform implements OnlinePlatform {
 
     private final Vertx vertx;
     private final PlatformUser user;
+    private final PlatformClientOptions clientOptions;
+    private final WebClient client;
+    private RequestScheduler requestScheduler;
+    private ResponseCache responseCache;
+    private String apiUrl;
+    private String gitUrl;
+    private String tenant;
 
     public AbstractOnlinePlatform(final Vertx vertx, final PlatformUser user) {
+        this(vertx, user, new PlatformClientOptions());
+    }
+
+    /**
+     * @param clientOptions Options of the API client shared by all requests to the platform.
+     */
+    public AbstractOnlinePlatform(final Vertx vertx, final PlatformUser user,
+                                  final PlatformClientOptions clientOptions) {
         this.user = user;
         this.vertx = vertx;
+        this.clientOptions = clientOptions;
+        this.client = WebClient.create(vertx, clientOptions.getWebClientOptions());
     }
 
     protected PlatformUser getUser() {
@@ -44,6 +88,131 @@ public abstract class AbstractOnlinePlatform implements OnlinePlatform {
         return vertx;
     }
 
+    /**
+     * Point the platform to another API server, e.g. a self-hosted
+     * instance or a stand-in for tests.
+     *
+     * @param apiUrl The base URL of the API, like "https://api.github.com".
+     * @return The platform itself.
+     */
+    public AbstractOnlinePlatform setApiUrl(String apiUrl) {
+        this.apiUrl = trimUrl(apiUrl);
+        return this;
+    }
+
+    /**
+     * Point the platform to another server for Git remote operations.
+     *
+     * @param gitUrl The base URL of repositories, like "https://github.com".
+     * @return The platform itself.
+     */
+    public AbstractOnlinePlatform setGitUrl(String gitUrl) {
+        this.gitUrl = trimUrl(gitUrl);
+        return this;
+    }
+
+    private static String trimUrl(String url) {
+        if (url == null || url.trim().isEmpty()) {
+            throw new IllegalArgumentException("base URL must not be empty");
+        }
+        url = url.trim();
+        return url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+    }
+
+    public String getApiUrl() {
+        return apiUrl;
+    }
+
+    public String getGitUrl() {
+        return gitUrl;
+    }
+
+    /**
+     * Mark mirror jobs from this platform as jobs of a tenant, which
+     * share the mirror scheduler fairly with jobs of other tenants.
+     *
+     * @param tenant The tenant, null for the default one.
+     * @return The platform itself.
+     */
+    public AbstractOnlinePlatform setTenant(String tenant) {
+        this.tenant = tenant;
+        return this;
+    }
+
+    public String getTenant() {
+        return tenant;
+    }
+
+    /**
+     * Return the long-lived API client, so that connections are reused.
+     *
+     * @return The web client of the platform.
+     */
+    protected WebClient getWebClient() {
+        return client;
+    }
+
+    /**
+     * @return Milliseconds an API request may wait for a response, 0 for unlimited.
+     */
+    protected long getRequestTimeoutMs() {
+        return clientOptions.getRequestTimeoutMs();
+    }
+
+    /**
+     * Send an API request under the rate limits of the platform.
+     *
+     * @param lane    The priority lane of the request.
+     * @param request The supplier building and sending the request, may be called again on retry.
+     * @return The future of the final response.
+     */
+    protected <T> Future<HttpResponse<T>> schedule(RequestScheduler.Lane lane,
+                                                   Supplier<Future<HttpResponse<T>>> request) {
+        return getRequestScheduler().schedule(lane, request);
+    }
+
+    public synchronized RequestScheduler getRequestScheduler() {
+        if (requestScheduler == null) {
+            // created lazily, as the platform name is not available in constructor.
+            requestScheduler = new RequestScheduler(vertx, getPlatform(), clientOptions);
+        }
+        return requestScheduler;
+    }
+
+    /**
+     * Return the cache of listing responses, whose expired entries are
+     * evicted when it is first used.
+     *
+     * @return The response cache, or null if disabled.
+     */
+    protected synchronized ResponseCache getResponseCache() {
+        if (responseCache == null && clientOptions.getCacheDirectory() != null) {
+            // responses of another server, e.g. a stand-in, must not be served.
+            responseCache = new ResponseCache(vertx, getPlatform() + "/" + user.getUsername() +
+                    (apiUrl == null ? "" : "@" + apiUrl), clientOptions);
+            responseCache.evict();
+        }
+        return responseCache;
+    }
+
+    /**
+     * Look up a cached listing response.
+     *
+     * @param key The key of the response.
+     * @return The future of the entry, null if not cached.
+     */
+    protected Future<ResponseCache.Entry> getCachedResponse(String key) {
+        ResponseCache cache = getResponseCache();
+        return cache == null ? Future.succeededFuture() : cache.get(key);
+    }
+
+    /**
+     * Close the API client and its connections.
+     */
+    public void close() {
+        client.close();
+    }
+
     @Override
     public abstract Future<Void> createRepository(Repository repo);
 
@@ -62,130 +231,636 @@ public abstract class AbstractOnlinePlatform implements OnlinePlatform {
     @Override
     public abstract String getRepositoryHttpsUrl(Repository repo);
 
+    /**
+     * Create repositories with as few API calls as the platform allows.
+     * By default they are created one by one.
+     *
+     * @param repos The repositories to create.
+     * @return The future of each repository, in the same order.
+     */
+    public List<Future<Void>> createRepositories(List<Repository> repos) {
+        List<Future<Void>> futures = new ArrayList<>();
+        for (Repository repo : repos) {
+            futures.add(createRepository(repo));
+        }
+        return futures;
+    }
+
+    /**
+     * @param repos The number of repositories to create.
+     * @return The API calls {@link #createRepositories(List)} sends for them.
+     */
+    public int countCreateRequests(int repos) {
+        return repos;
+    }
+
+    /**
+     * Fetch all pages of a repository listing. If the first page tells how
+     * many pages there are, the rest pages are fetched concurrently;
+     * otherwise the next pages are followed one by one until the last one.
+     *
+     * @param fetchPage The function to fetch a page by page number from 1.
+     * @return The future of repositories on all pages, in page order.
+     */
     @SuppressWarnings("rawtypes")
-    public Future<?> mirrorAllRepoTo(AbstractOnlinePlatform targetPlatform, boolean includePrivate) {
+    protected Future<List<Repository>> fetchAllPages(IntFunction<Future<RepositoryPage>> fetchPage) {
+        return fetchPage.apply(1).compose(first -> {
+            List<Repository> repos = new ArrayList<>(first.getRepositories());
+
+            if (first.getLastPage() > 1) {
+                List<Future> futures = new ArrayList<>();
+                for (int page = 2; page <= first.getLastPage(); page++) {
+                    futures.add(fetchPage.apply(page));
+                }
+                return CompositeFuture.all(futures).compose(all -> {
+                    for (int i = 0; i < all.size(); i++) {
+                        repos.addAll(all.<RepositoryPage>resultAt(i).getRepositories());
+                    }
+                    // the last page may have been revalidated, with more pages behind.
+                    return followNextPages(fetchPage, all.resultAt(all.size() - 1), repos);
+                });
+            }
+
+            return followNextPages(fetchPage, first, repos);
+        });
+    }
+
+    private Future<List<Repository>> followNextPages(IntFunction<Future<RepositoryPage>> fetchPage,
+                                                     RepositoryPage page, List<Repository> repos) {
+        if (page.getNextPage() <= 0) {
+            return Future.succeededFuture(repos);
+        }
+        return fetchPage.apply(page.getNextPage()).compose(next -> {
+            repos.addAll(next.getRepositories());
+            return followNextPages(fetchPage, next, repos);
+        });
+    }
+
+    /**
+     * Return the credentials for Git remote operation.
+     *
+     * @return The credentials provider of the platform user.
+     */
+    public CredentialsProvider getCredentialsProvider() {
+        return new UsernamePasswordCredentialsProvider(user.getUsername(), user.getToken());
+    }
+
+    /**
+     * @return The "Authorization" header of Git and LFS requests over HTTP.
+     */
+    public String getBasicAuthorization() {
+        String credentials = user.getUsername() + ":" + user.getToken();
+        return "Basic " + Base64.getEncoder().encodeToString(credentials.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Return the Git LFS server of a repository, at "info/lfs" of its Git URL by default.
+     *
+     * @param repo The repository.
+     * @return The LFS URL, like "https://github.com/tom/repo.git/info/lfs".
+     */
+    public String getLfsUrl(Repository repo) {
+        String url = getRepositoryHttpsUrl(repo);
+        return (url.endsWith(".git") ? url : url + ".git") + "/info/lfs";
+    }
+
+    /**
+     * Return the key identifying a repository name on this platform, used to
+     * match source repositories with existing ones. Names are compared
+     * case-insensitively by default.
+     *
+     * @param name The repository name.
+     * @return The normalized key.
+     */
+    public String getRepositoryKey(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Whether the owner of a repository is the account of this platform,
+     * compared case-insensitively as logins and namespaces are.
+     *
+     * @param owner The owner of a repository.
+     * @return True if the repository belongs to the account.
+     */
+    public boolean isOwnedByUser(String owner) {
+        return owner != null && owner.equalsIgnoreCase(user.getUsername());
+    }
+
+    /**
+     * Return the host serving Git remote operation of the repository,
+     * which the concurrency limits of mirror jobs are applied to.
+     *
+     * @param repo The repository on the platform.
+     * @return The host name.
+     */
+    public String getRepositoryHost(Repository repo) {
+        return URI.create(getRepositoryHttpsUrl(repo)).getHost();
+    }
+
+    /**
+     * Verify that a webhook request is sent by the platform.
+     * Platforms not supporting webhooks reject every request.
+     *
+     * @param headers The request headers.
+     * @param body    The raw request body.
+     * @param secret  The secret configured on the webhook.
+     * @return Whether or not the request is authentic.
+     */
+    public boolean verifyWebhook(MultiMap headers, Buffer body, String secret) {
+        return false;
+    }
+
+    /**
+     * Parse the repository pushed to from a webhook request.
+     *
+     * @param headers The request headers.
+     * @param payload The request body.
+     * @return The repository, or null if the event is not a push.
+     */
+    public Repository parsePushEvent(MultiMap headers, JsonObject payload) {
+        return null;
+    }
+
+    /**
+     * Mirror all repositories to another platform, with a temporary
+     * scheduler built from default options.
+     *
+     * @param targetPlatform The platform to mirror to.
+     * @param includePrivate Whether or not to mirror private repositories.
+     * @return The future of the run summary.
+     */
+    public Future<MirrorSummary> mirrorAllRepoTo(AbstractOnlinePlatform targetPlatform, boolean includePrivate) {
+        MirrorScheduler scheduler = new MirrorScheduler(vertx, new MirrorOptions());
+        return mirrorAllRepoTo(targetPlatform, includePrivate, scheduler)
+                .onComplete(ar -> scheduler.close());
+    }
+
+    /**
+     * Mirror all repositories to another platform.
+     * The returned future completes after every mirror job has finished,
+     * and the result of each repository is reported in the summary.
+     *
+     * @param targetPlatform The platform to mirror to.
+     * @param includePrivate Whether or not to mirror private repositories.
+     * @param scheduler      The scheduler to run mirror jobs.
+     * @return The future of the run summary.
+     */
+    public Future<MirrorSummary> mirrorAllRepoTo(AbstractOnlinePlatform targetPlatform, boolean includePrivate,
+                                                 MirrorScheduler scheduler) {
+        return mirrorAllRepoTo(targetPlatform, includePrivate, scheduler, scheduler.getOptions().getRefFilter());
+    }
+
+    /**
+     * Mirror all repositories to another platform, with only the refs
+     * passing the filter.
+     *
+     * @param targetPlatform The platform to mirror to.
+     * @param includePrivate Whether or not to mirror private repositories.
+     * @param scheduler      The scheduler to run mirror jobs.
+     * @param refFilter      The refs to be mirrored.
+     * @return The future of the run summary.
+     */
+    public Future<MirrorSummary> mirrorAllRepoTo(AbstractOnlinePlatform targetPlatform, boolean includePrivate,
+                                                 MirrorScheduler scheduler, RefFilter refFilter) {
+        return startMirrorAllRepoTo(targetPlatform, includePrivate, scheduler, refFilter).result();
+    }
+
+    /**
+     * Start to mirror all repositories to another platform, as a run which
+     * can be cancelled, and which is cancelled after the run timeout of the
+     * scheduler options.
+     *
+     * @param targetPlatform The platform to mirror to.
+     * @param includePrivate Whether or not to mirror private repositories.
+     * @param scheduler      The scheduler to run mirror jobs.
+     * @return The handle of the run.
+     */
+    public MirrorRun<MirrorSummary> startMirrorAllRepoTo(AbstractOnlinePlatform targetPlatform,
+                                                         boolean includePrivate, MirrorScheduler scheduler) {
+        return startMirrorAllRepoTo(targetPlatform, includePrivate, scheduler, scheduler.getOptions().getRefFilter());
+    }
+
+    /**
+     * Start to mirror all repositories to another platform, with only the
+     * refs passing the filter.
+     *
+     * @param targetPlatform The platform to mirror to.
+     * @param includePrivate Whether or not to mirror private repositories.
+     * @param scheduler      The scheduler to run mirror jobs.
+     * @param refFilter      The refs to be mirrored.
+     * @return The handle of the run.
+     */
+    public MirrorRun<MirrorSummary> startMirrorAllRepoTo(AbstractOnlinePlatform targetPlatform,
+                                                         boolean includePrivate, MirrorScheduler scheduler,
+                                                         RefFilter refFilter) {
+        MirrorRun<MirrorSummary> run = newRun(scheduler);
         /*
          * Step 1:
          * Fetch repositories from platforms.
          */
         logger.warn("Step 1: fetching repositories from {" + getPlatform() +
                 "} and {" + targetPlatform.getPlatform() + "} ...");
+        Timer.Sample listing = Timer.start();
         Future<List<Repository>> fromReposFuture = this.getRepositories(includePrivate);
         Future<List<Repository>> toReposFuture = targetPlatform.getRepositories(true);
+        Future<SyncStateStore> storeFuture = openStateStore(scheduler.getOptions());
 
-        return CompositeFuture.all(fromReposFuture, toReposFuture).compose(v -> {
-            /*
-             * Step 2:
-             * Create empty repositories if necessary.
-             */
-            logger.warn("Step 2: Creating repositories on {" + targetPlatform.getPlatform() + "} ...");
-            List<Future> createRepoFutures = new ArrayList<>();
-            Map<Repository, Repository> repoMapper = new HashMap<>();
-
-            needToCreate:
-            for (Repository from : fromReposFuture.result()) {
-                for (Repository existRepo : toReposFuture.result()) {
-                    if (existRepo.getName().equals(from.getName())) {
-                        // found matched repo with names.
-                        repoMapper.put(from, existRepo);
-                        continue needToCreate;
-                        // no need to create repo.
+        return run.complete(CompositeFuture.all(fromReposFuture, toReposFuture, storeFuture).compose(v -> {
+            listing.stop(MirrorMetrics.phaseTimer(MirrorMetrics.PHASE_LISTING, getPlatform()));
+            run.checkCancelled();
+            return mirrorReposTo(targetPlatform, fromReposFuture.result(), toReposFuture.result(),
+                    storeFuture.result(), scheduler, refFilter, run);
+        }));
+    }
+
+    /**
+     * @return A new run, with the deadline of the scheduler options.
+     */
+    private <T> MirrorRun<T> newRun(MirrorScheduler scheduler) {
+        return new MirrorRun<>(vertx,
+                TimeUnit.SECONDS.toMillis(scheduler.getOptions().getRunTimeoutSeconds()));
+    }
+
+    /**
+     * Mirror one repository to another platform, for example the one
+     * just pushed to. Only the target repositories are listed, to find
+     * out whether the repository has to be created.
+     *
+     * @param targetPlatform The platform to mirror to.
+     * @param from           The repository on this platform.
+     * @param scheduler      The scheduler to run the mirror job.
+     * @return The future of the run summary.
+     */
+    public Future<MirrorSummary> mirrorRepoTo(AbstractOnlinePlatform targetPlatform, Repository from,
+                                              MirrorScheduler scheduler) {
+        logger.warn("Step 1: fetching repositories from {" + targetPlatform.getPlatform() +
+                "} to mirror [" + from.getName() + "] ...");
+        Timer.Sample listing = Timer.start();
+        Future<List<Repository>> toReposFuture = targetPlatform.getRepositories(true);
+        Future<SyncStateStore> storeFuture = openStateStore(scheduler.getOptions());
+
+        MirrorRun<MirrorSummary> run = newRun(scheduler);
+        return run.complete(CompositeFuture.all(toReposFuture, storeFuture).compose(v -> {
+            listing.stop(MirrorMetrics.phaseTimer(MirrorMetrics.PHASE_LISTING, targetPlatform.getPlatform()));
+            return mirrorReposTo(targetPlatform, Collections.singletonList(from), toReposFuture.result(),
+                    storeFuture.result(), scheduler, scheduler.getOptions().getRefFilter(), run);
+        })).result();
+    }
+
+    private Future<SyncStateStore> openStateStore(MirrorOptions options) {
+        return vertx.executeBlocking(promise -> {
+            try {
+                promise.complete(SyncStateStore.open(options));
+            } catch (IOException e) {
+                promise.fail(e);
+            }
+        }, false);
+    }
+
+    /**
+     * Mirror all repositories to many platforms. Repositories are listed
+     * and fetched once, then pushed to every target in parallel. Targets
+     * are prepared independently, so that a target failing to list or to
+     * create repositories does not stop the others.
+     *
+     * @param targetPlatforms The platforms to mirror to.
+     * @param includePrivate  Whether or not to mirror private repositories.
+     * @param scheduler       The scheduler to run mirror jobs.
+     * @return The future of the summary of each target, in the order of targets.
+     */
+    public Future<List<MirrorSummary>> mirrorAllRepoTo(List<AbstractOnlinePlatform> targetPlatforms,
+                                                       boolean includePrivate, MirrorScheduler scheduler) {
+        return mirrorAllRepoTo(targetPlatforms, includePrivate, scheduler, scheduler.getOptions().getRefFilter());
+    }
+
+    /**
+     * Mirror all repositories to many platforms, with only the refs
+     * passing the filter.
+     *
+     * @param targetPlatforms The platforms to mirror to.
+     * @param includePrivate  Whether or not to mirror private repositories.
+     * @param scheduler       The scheduler to run mirror jobs.
+     * @param refFilter       The refs to be mirrored.
+     * @return The future of the summary of each target, in the order of targets.
+     */
+    public Future<List<MirrorSummary>> mirrorAllRepoTo(List<AbstractOnlinePlatform> targetPlatforms,
+                                                       boolean includePrivate, MirrorScheduler scheduler,
+                                                       RefFilter refFilter) {
+        return startMirrorAllRepoTo(targetPlatforms, includePrivate, scheduler, refFilter).result();
+    }
+
+    /**
+     * Start to mirror all repositories to many platforms, as a run which
+     * can be cancelled.
+     *
+     * @param targetPlatforms The platforms to mirror to.
+     * @param includePrivate  Whether or not to mirror private repositories.
+     * @param scheduler       The scheduler to run mirror jobs.
+     * @return The handle of the run.
+     */
+    public MirrorRun<List<MirrorSummary>> startMirrorAllRepoTo(List<AbstractOnlinePlatform> targetPlatforms,
+                                                               boolean includePrivate, MirrorScheduler scheduler) {
+        return startMirrorAllRepoTo(targetPlatforms, includePrivate, scheduler,
+                scheduler.getOptions().getRefFilter());
+    }
+
+    /**
+     * Start to mirror all repositories to many platforms, as a run which
+     * can be cancelled, and which is cancelled after the run timeout of the
+     * scheduler options.
+     *
+     * @param targetPlatforms The platforms to mirror to.
+     * @param includePrivate  Whether or not to mirror private repositories.
+     * @param scheduler       The scheduler to run mirror jobs.
+     * @param refFilter       The refs to be mirrored.
+     * @return The handle of the run.
+     */
+    @SuppressWarnings("rawtypes")
+    public MirrorRun<List<MirrorSummary>> startMirrorAllRepoTo(List<AbstractOnlinePlatform> targetPlatforms,
+                                                               boolean includePrivate, MirrorScheduler scheduler,
+                                                               RefFilter refFilter) {
+        MirrorRun<List<MirrorSummary>> run = newRun(scheduler);
+        /*
+         * Step 1:
+         * Fetch repositories from platforms.
+         */
+        logger.warn("Step 1: fetching repositories from {" + getPlatform() + "} and " +
+                targetPlatforms.size() + " target platform(s) ...");
+        Timer.Sample listing = Timer.start();
+        Future<List<Repository>> fromReposFuture = this.getRepositories(includePrivate);
+        Future<SyncStateStore> storeFuture = openStateStore(scheduler.getOptions());
+        List<Future<List<Repository>>> toReposFutures = new ArrayList<>();
+        for (AbstractOnlinePlatform targetPlatform : targetPlatforms) {
+            toReposFutures.add(targetPlatform.getRepositories(true));
+        }
+
+        return run.complete(CompositeFuture.all(fromReposFuture, storeFuture).compose(v -> {
+            listing.stop(MirrorMetrics.phaseTimer(MirrorMetrics.PHASE_LISTING, getPlatform()));
+            run.checkCancelled();
+            List<Repository> fromRepos = fromReposFuture.result();
+            SyncStateStore store = storeFuture.result();
+
+            // Step 2 and 3 for each target.
+            List<Future<Map<Repository, Repository>>> prepared = new ArrayList<>();
+            for (int i = 0; i < targetPlatforms.size(); i++) {
+                AbstractOnlinePlatform targetPlatform = targetPlatforms.get(i);
+                prepared.add(toReposFutures.get(i)
+                        .compose(toRepos -> prepareTarget(targetPlatform, fromRepos, toRepos, store))
+                        .onFailure(err -> logger.error("Fail to prepare repositories on {" +
+                                targetPlatform.getPlatform() + "}: " + err.getMessage())));
+            }
+
+            return CompositeFuture.join(new ArrayList<>(prepared))
+                    .recover(err -> Future.succeededFuture())
+                    .compose(done -> {
+                        run.checkCancelled();
+                        return fanOut(targetPlatforms, fromRepos, prepared, store, scheduler, refFilter, run);
+                    });
+        }));
+    }
+
+    /**
+     * Step 4 of mirroring to many platforms: fetch each repository once,
+     * and push it to every target prepared successfully.
+     */
+    @SuppressWarnings("rawtypes")
+    private Future<List<MirrorSummary>> fanOut(List<AbstractOnlinePlatform> targetPlatforms,
+                                               List<Repository> fromRepos,
+                                               List<Future<Map<Repository, Repository>>> prepared,
+                                               SyncStateStore store, MirrorScheduler scheduler,
+                                               RefFilter refFilter, MirrorRun<?> run) {
+        logger.warn("Step 4: Start mirroring repositories to " + targetPlatforms.size() + " platform(s) ...");
+        MirrorCache cache = MirrorCache.create(scheduler.getOptions());
+        List<Future> mirrorFutures = new ArrayList<>();
+
+        for (Repository from : fromRepos) {
+            List<FanOutMirror.Target> targets = new ArrayList<>();
+            for (int i = 0; i < targetPlatforms.size(); i++) {
+                if (prepared.get(i).succeeded() && prepared.get(i).result().containsKey(from)) {
+                    targets.add(new FanOutMirror.Target(targetPlatforms.get(i), prepared.get(i).result().get(from)));
+                }
+            }
+            mirrorFutures.add(targets.isEmpty() ? Future.succeededFuture(Collections.emptyList()) :
+                    new FanOutMirror(this, from, targets, cache, store, scheduler, refFilter, run).mirror());
+        }
+
+        return CompositeFuture.all(mirrorFutures).compose(all -> vertx.<List<MirrorSummary>>executeBlocking(promise -> {
+            if (cache != null) {
+                cache.evict();
+            }
+            if (store != null) {
+                store.flush();
+            }
+
+            // regroup the results of each repository by target.
+            List<List<MirrorResult>> results = new ArrayList<>();
+            for (int i = 0; i < targetPlatforms.size(); i++) {
+                results.add(new ArrayList<>());
+            }
+            for (int r = 0; r < fromRepos.size(); r++) {
+                List<MirrorResult> repoResults = all.resultAt(r);
+                int next = 0;
+                for (int i = 0; i < targetPlatforms.size(); i++) {
+                    Future<Map<Repository, Repository>> target = prepared.get(i);
+                    if (target.failed()) {
+                        results.get(i).add(new MirrorResult(fromRepos.get(r), null,
+                                MirrorStatus.FAILED, target.cause(), 0));
+                    } else if (target.result().containsKey(fromRepos.get(r))) {
+                        results.get(i).add(repoResults.get(next++));
                     }
                 }
+            }
 
-                // create a new repository.
-                // the id of new repository shall be overwrite lately.
-                Repository newRepo = new Repository(from);
-                createRepoFutures.add(targetPlatform.createRepository(newRepo));
-                repoMapper.put(from, newRepo);
+            List<MirrorSummary> summaries = new ArrayList<>();
+            for (int i = 0; i < targetPlatforms.size(); i++) {
+                MirrorSummary summary = new MirrorSummary(results.get(i));
+                logger.warn("Mirroring from {" + getPlatform() + "} to {" +
+                        targetPlatforms.get(i).getPlatform() + "} complete: " + summary);
+                summaries.add(summary);
             }
+            promise.complete(summaries);
+        }, false));
+    }
 
-            return CompositeFuture
-                    .all(createRepoFutures)
-                    .compose(createComplete -> Future.succeededFuture(repoMapper));
-        }).compose(repoMapper -> {
+    /**
+     * Step 2 to 4 of mirroring, from the listed repositories.
+     */
+    private Future<MirrorSummary> mirrorReposTo(AbstractOnlinePlatform targetPlatform,
+                                                List<Repository> fromRepos, List<Repository> toRepos,
+                                                SyncStateStore store, MirrorScheduler scheduler,
+                                                RefFilter refFilter, MirrorRun<?> run) {
+        return prepareTarget(targetPlatform, fromRepos, toRepos, store).compose(repoMapper -> {
+            run.checkCancelled();
             /*
-             * Step 3:
-             * Update repository visibility if necessary.
+             * Step 4:
+             * Start to mirror the repository list on the mirror worker pool.
              */
-            logger.warn("Step 3: updating repository visibility ...");
-            List<Future> updateFutures = new ArrayList<>();
+            logger.warn("Step 4: Start mirroring repositories ...");
+            List<MirrorJob> jobs = new ArrayList<>();
+            MirrorCache cache = MirrorCache.create(scheduler.getOptions());
 
             for (Map.Entry<Repository, Repository> entry : repoMapper.entrySet()) {
                 Repository from = entry.getKey();
                 Repository to = entry.getValue();
 
-                if (from.getVisibilityPrivate() != to.getVisibilityPrivate()) {
-                    to.setVisibilityPrivate(from.getVisibilityPrivate());
-                    updateFutures.add(targetPlatform.updateRepository(to));
+                jobs.add(new MirrorJob(from, to,
+                        getRepositoryHost(from), targetPlatform.getRepositoryHost(to),
+                        new RepositoryMirror(this, from, targetPlatform, to,
+                                scheduler.getOptions(), cache, store, refFilter), tenant, run));
+            }
+
+            Future<List<MirrorResult>> results = scheduler.submitAll(jobs);
+            if (cache == null && store == null) {
+                return results;
+            }
+            return results.compose(done -> vertx.<Void>executeBlocking(promise -> {
+                if (cache != null) {
+                    cache.evict();
                 }
+                if (store != null) {
+                    store.flush();
+                }
+                promise.complete();
+            }, false).map(done));
+        }).map(results -> {
+            MirrorSummary summary = new MirrorSummary(results);
+            logger.warn("Mirroring from {" + getPlatform() + "} to {" +
+                    targetPlatform.getPlatform() + "} complete: " + summary);
+            return summary;
+        });
+    }
+
+    /**
+     * Step 2 and 3 of mirroring: create missing repositories on the target
+     * platform, and update their visibility. Mutations of both steps are
+     * planned first, so that they are deduplicated and batched.
+     *
+     * @param store The sync state store, or null.
+     * @return The future of the map from source repositories to target ones.
+     */
+    @SuppressWarnings("rawtypes")
+    Future<Map<Repository, Repository>> prepareTarget(AbstractOnlinePlatform targetPlatform,
+                                                      List<Repository> fromRepos, List<Repository> toRepos,
+                                                      SyncStateStore store) {
+        /*
+         * Step 2:
+         * Create empty repositories if necessary.
+         */
+        logger.warn("Step 2: Creating repositories on {" + targetPlatform.getPlatform() + "} ...");
+        RepositoryMutations mutations = new RepositoryMutations(targetPlatform);
+        Map<Repository, Repository> repoMapper = new HashMap<>();
+
+        // index existing repositories once, so that matching is linear.
+        Map<String, Repository> existRepos = new HashMap<>();
+        Set<String> ambiguousKeys = new HashSet<>();
+        for (Repository existRepo : toRepos) {
+            String key = targetPlatform.getRepositoryKey(existRepo.getName());
+            if (existRepos.putIfAbsent(key, existRepo) != null) {
+                ambiguousKeys.add(key);
             }
+        }
+        if (!ambiguousKeys.isEmpty()) {
+            logger.warn("Names " + ambiguousKeys + " match several repositories on {" +
+                    targetPlatform.getPlatform() + "}, matching them by exact name.");
+        }
 
-            return CompositeFuture.all(updateFutures)
-                    .compose(updateComplete -> Future.succeededFuture(repoMapper));
-        }).compose(repoMapper -> {
-            /*
-             * Step 4:
-             * Start to mirror the repository list.
-             */
-            logger.warn("Step 4: Start mirroring repositories ...");
+        Map<String, Repository> fromKeys = new HashMap<>();
+        for (Repository from : fromRepos) {
+            String repoKey = targetPlatform.getRepositoryKey(from.getName());
+            Repository sameKey = fromKeys.putIfAbsent(repoKey, from);
+            if (sameKey != null) {
+                // both would be mirrored to one repository, overwriting each other.
+                logger.error("[" + from.getName() + "] and [" + sameKey.getName() + "] are the same repository on {" +
+                        targetPlatform.getPlatform() + "}, [" + from.getName() + "] is not mirrored.");
+                continue;
+            }
+
+            Repository existRepo = existRepos.get(repoKey);
+            if (ambiguousKeys.contains(repoKey)) {
+                existRepo = toRepos.stream().filter(repo -> repo.getName().equals(from.getName()))
+                        .findFirst().orElse(existRepo);
+            }
+            if (existRepo != null) {
+                // found matched repo with names.
+                // no need to create repo.
+                repoMapper.put(from, existRepo);
+                if (store != null) {
+                    String key = SyncStateStore.key(this, from, targetPlatform, existRepo);
+                    SyncState state = store.get(key);
+                    if (state == null || state.getTargetId() != existRepo.getId()) {
+                        // unknown, or recreated by someone else since the state was recorded.
+                        store.recordCreated(key, existRepo.getId(), existRepo.getVisibilityPrivate());
+                    }
+                }
+                continue;
+            }
+
+            // create a new repository, even if the state says an earlier run
+            // created it: the listing is fresh, so it has been deleted since.
+            // the id of new repository shall be overwrite lately.
+            Repository newRepo = new Repository(from);
+            // owned by the account of the target platform, as the next run lists it.
+            newRepo.setOwner(targetPlatform.getUser().getUsername());
+            repoMapper.put(from, mutations.create(newRepo));
+        }
+
+        /*
+         * Step 3:
+         * Update repository visibility if necessary.
+         */
+        for (Map.Entry<Repository, Repository> entry : repoMapper.entrySet()) {
+            Repository from = entry.getKey();
+            Repository to = entry.getValue();
 
-            FileSystem fs = vertx.fileSystem();
-            Future<?> mirrorRepoFuture = Future.succeededFuture(); // one by one.
+            // as listed, even if an earlier run has updated it.
+            if (from.getVisibilityPrivate() != to.getVisibilityPrivate()) {
+                mutations.updateVisibility(to, from.getVisibilityPrivate());
+            }
+        }
 
+        Timer.Sample create = Timer.start();
+        Map<Repository, Future<Void>> created = mutations.applyCreates();
+        if (store != null) {
             for (Map.Entry<Repository, Repository> entry : repoMapper.entrySet()) {
-                Repository from = entry.getKey();
                 Repository to = entry.getValue();
+                Future<Void> createFuture = created.get(to);
+                if (createFuture != null) {
+                    String key = SyncStateStore.key(this, entry.getKey(), targetPlatform, to);
+                    createFuture.onSuccess(done -> store.recordCreated(key, to.getId(), to.getVisibilityPrivate()));
+                }
+            }
+        }
 
-                mirrorRepoFuture
-                        .compose(v -> fs.createTempDirectory("")) // no need to remove by hand.
-                        .compose(dirStr -> vertx.executeBlocking(promise -> {
-                                logger.warn("Start to mirror [" + from.getName() + "] from {" +
-                                        getPlatform() + "} to {" + targetPlatform.getPlatform() +
-                                        "} at " + dirStr);
-
-                                File dir = new File(dirStr);
-                                try {
-                                    logger.warn("Cloning from: [" + from.getName() +
-                                            "] on " + getPlatform());
-                                    // $ git clone --bare {from.git.url}
-                                    Git.cloneRepository()
-                                            .setCredentialsProvider(
-                                                    new UsernamePasswordCredentialsProvider(
-                                                            getUser().getUsername(),
-                                                            getUser().getToken()
-                                                    ))
-                                            .setURI(getRepositoryHttpsUrl(from))
-                                            .setBare(true)
-                                            .setDirectory(dir)
-                                            .call();
-                                    logger.info("Clone [" + from.getName() + "] success");
-
-                                    logger.warn("Pushing mirror to: [" + to.getName() +
-                                            "] on " + targetPlatform.getPlatform());
-                                    // $ git push --mirror {to.git.url}
-                                    Git.open(dir).push()
-                                            .setCredentialsProvider(
-                                                    new UsernamePasswordCredentialsProvider(
-                                                            targetPlatform.getUser().getUsername(),
-                                                            targetPlatform.getUser().getToken()
-                                                    ))
-                                            .setRemote(targetPlatform.getRepositoryHttpsUrl(to))
-                                            .setForce(true)
-                                            .add("refs/*:refs/*")
-                                            .call();
-                                    logger.info("Push [" + to.getName() + "] success");
-
-                                } catch (GitAPIException | IOException e) {
-                                    logger.error(e.getMessage());
-                                    promise.fail(e.getMessage());
-                                }
-                                logger.info("Mirroring [" + from.getName() + "] complete.");
-                                promise.complete();
-                            }));
-            }
-
-            return mirrorRepoFuture;
-        });
+        return CompositeFuture
+                .all(new ArrayList<>(created.values()))
+                .onComplete(createComplete -> create.stop(MirrorMetrics.phaseTimer(
+                        MirrorMetrics.PHASE_CREATE, targetPlatform.getPlatform())))
+                .compose(createComplete -> {
+                    logger.warn("Step 3: updating repository visibility ...");
+                    Timer.Sample visibility = Timer.start();
+                    Map<Repository, Future<Void>> updated = mutations.applyUpdates();
+                    if (store != null) {
+                        for (Map.Entry<Repository, Repository> entry : repoMapper.entrySet()) {
+                            Repository to = entry.getValue();
+                            Future<Void> updateFuture = updated.get(to);
+                            if (updateFuture != null) {
+                                String key = SyncStateStore.key(this, entry.getKey(), targetPlatform, to);
+                                updateFuture.onSuccess(done -> store.recordVisibility(key, to.getVisibilityPrivate()));
+                            }
+                        }
+                    }
+
+                    return CompositeFuture.all(new ArrayList<>(updated.values()))
+                            .onComplete(updateComplete -> visibility.stop(MirrorMetrics.phaseTimer(
+                                    MirrorMetrics.PHASE_VISIBILITY, targetPlatform.getPlatform())));
+                })
+                .map(updateComplete -> {
+                    logger.warn(mutations.getRequestedCount() + " mutation(s) on {" +
+                            targetPlatform.getPlatform() + "} sent in " + mutations.getRequestCount() +
+                            " API call(s), " + mutations.getSavedCount() + " saved.");
+                    MirrorMetrics.recordSavedRequests(targetPlatform.getPlatform(), mutations.getSavedCount());
+                    return repoMapper;
+                });
     }
 }
@@ -0,0 +1,52 @@
+package iot.zjt.platform;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Parser of RFC 8288 "Link" response header used for pagination, like:
+ * <pre>
+ * &lt;https://api.github.com/user/repos?page=2&gt;; rel="next", &lt;https://api.github.com/user/repos?page=5&gt;; rel="last"
+ * </pre>
+ *
+ * @author Mr Dk.
+ * @since 2021/01/13
+ */
+public class LinkHeader {
+
+    private static final Pattern LINK = Pattern.compile("<([^>]*)>\\s*;\\s*rel=\"?([^\",;]+)\"?");
+    private static final Pattern PAGE = Pattern.compile("[?&]page=(\\d+)");
+
+    /**
+     * @param header The value of "Link" header, may be null.
+     * @return The map from relation type to URL.
+     */
+    public static Map<String, String> parse(String header) {
+        Map<String, String> links = new HashMap<>();
+        if (header == null) {
+            return links;
+        }
+
+        Matcher matcher = LINK.matcher(header);
+        while (matcher.find()) {
+            for (String rel : matcher.group(2).trim().split("\\s+")) {
+                links.put(rel, matcher.group(1));
+            }
+        }
+        return links;
+    }
+
+    /**
+     * @param url The URL of a page, may be null.
+     * @return The "page" query parameter of the URL, 0 if absent.
+     */
+    public static int pageOf(String url) {
+        if (url == null) {
+            return 0;
+        }
+        Matcher matcher = PAGE.matcher(url);
+        return matcher.find() ? Integer.parseInt(matcher.group(1)) : 0;
+    }
+}
@@ -0,0 +1,233 @@
+package iot.zjt.platform;
+
+import io.vertx.core.http.HttpVersion;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.client.WebClientOptions;
+
+/**
+ * Options of the API client shared by all requests to a platform,
+ * loaded from "http.*" and "api.*" configurations.
+ *
+ * @author Mr Dk.
+ * @since 2021/01/14
+ */
+public class PlatformClientOptions {
+
+    public static final int DEFAULT_POOL_SIZE = 8;
+    public static final int DEFAULT_KEEP_ALIVE_SECONDS = 60;
+    public static final int DEFAULT_CONNECT_TIMEOUT_MS = 10000;
+    public static final int DEFAULT_IDLE_TIMEOUT_SECONDS = 60;
+    public static final int DEFAULT_MAX_IN_FLIGHT_REQUESTS = 8;
+    public static final int DEFAULT_MAX_RETRIES = 5;
+    public static final int DEFAULT_RETRY_BASE_DELAY_MS = 1000;
+    public static final int DEFAULT_RETRY_MAX_DELAY_MS = 60000;
+    public static final int DEFAULT_CACHE_MAX_AGE_HOURS = 24 * 7;
+    public static final int DEFAULT_CACHE_MAX_SIZE_MB = 64;
+    public static final int DEFAULT_REQUEST_TIMEOUT_MS = 60000;
+
+    private WebClientOptions webClientOptions = createWebClientOptions(new JsonObject());
+
+    /**
+     * Requests sent to the platform at the same time.
+     */
+    private int maxInFlightRequests = DEFAULT_MAX_IN_FLIGHT_REQUESTS;
+
+    /**
+     * Retries of a request on 429, 5xx and rate limit responses.
+     */
+    private int maxRetries = DEFAULT_MAX_RETRIES;
+
+    /**
+     * The n-th retry waits a random delay between half and all of
+     * min(base * 2^n, max) milliseconds.
+     */
+    private long retryBaseDelayMs = DEFAULT_RETRY_BASE_DELAY_MS;
+    private long retryMaxDelayMs = DEFAULT_RETRY_MAX_DELAY_MS;
+
+    /**
+     * Directory of the listing response cache, null to disable.
+     */
+    private String cacheDirectory = null;
+
+    /**
+     * Cached responses older than this are evicted.
+     */
+    private long cacheMaxAgeHours = DEFAULT_CACHE_MAX_AGE_HOURS;
+
+    /**
+     * Total size cap of the response cache, oldest responses are evicted first.
+     */
+    private long cacheMaxSizeMb = DEFAULT_CACHE_MAX_SIZE_MB;
+
+    /**
+     * Whether to always fetch listings in full, still refreshing the cache.
+     */
+    private boolean cacheBypass = false;
+
+    /**
+     * Milliseconds an API request may wait for a response, 0 for unlimited.
+     * Listing requests timed out are retried like on network failures.
+     */
+    private long requestTimeoutMs = DEFAULT_REQUEST_TIMEOUT_MS;
+
+    public PlatformClientOptions() {
+    }
+
+    /**
+     * Load options from flat configurations. Missing keys fall back to defaults.
+     *
+     * @param config The configuration object.
+     * @return The options.
+     */
+    public static PlatformClientOptions fromConfig(JsonObject config) {
+        return new PlatformClientOptions()
+                .setWebClientOptions(createWebClientOptions(config))
+                .setMaxInFlightRequests(getInt(config, "api.max-in-flight", DEFAULT_MAX_IN_FLIGHT_REQUESTS))
+                .setMaxRetries(getInt(config, "api.max-retries", DEFAULT_MAX_RETRIES))
+                .setRetryBaseDelayMs(getInt(config, "api.retry-base-delay-ms", DEFAULT_RETRY_BASE_DELAY_MS))
+                .setRetryMaxDelayMs(getInt(config, "api.retry-max-delay-ms", DEFAULT_RETRY_MAX_DELAY_MS))
+                .setCacheDirectory(config.getString("http.cache.dir"))
+                .setCacheMaxAgeHours(getInt(config, "http.cache.max-age-hours", DEFAULT_CACHE_MAX_AGE_HOURS))
+                .setCacheMaxSizeMb(getInt(config, "http.cache.max-size-mb", DEFAULT_CACHE_MAX_SIZE_MB))
+                .setCacheBypass(Boolean.parseBoolean(config.getValue("http.cache.bypass", false).toString()))
+                .setRequestTimeoutMs(getInt(config, "http.request-timeout-ms", DEFAULT_REQUEST_TIMEOUT_MS));
+    }
+
+    /**
+     * Build web client options. Keep-alive connections are pooled, and
+     * HTTP/2 is negotiated by ALPN so that requests to a host supporting it
+     * are multiplexed on one connection, falling back to HTTP/1.1 otherwise.
+     */
+    private static WebClientOptions createWebClientOptions(JsonObject config) {
+        boolean http2 = Boolean.parseBoolean(config.getValue("http.http2", true).toString());
+        int keepAlive = getInt(config, "http.keep-alive-seconds", DEFAULT_KEEP_ALIVE_SECONDS);
+
+        WebClientOptions options = new WebClientOptions()
+                .setMaxPoolSize(getInt(config, "http.pool-size", DEFAULT_POOL_SIZE))
+                .setKeepAlive(keepAlive > 0)
+                .setKeepAliveTimeout(keepAlive)
+                .setHttp2KeepAliveTimeout(keepAlive)
+                .setTryUseCompression(Boolean.parseBoolean(
+                        config.getValue("http.compression", true).toString()))
+                .setConnectTimeout(getInt(config, "http.connect-timeout-ms", DEFAULT_CONNECT_TIMEOUT_MS))
+                .setIdleTimeout(getInt(config, "http.idle-timeout-seconds", DEFAULT_IDLE_TIMEOUT_SECONDS));
+
+        if (http2) {
+            options.setProtocolVersion(HttpVersion.HTTP_2)
+                    .setUseAlpn(true)
+                    .setHttp2MaxPoolSize(1); // one multiplexed connection per host.
+        }
+        return options;
+    }
+
+    private static int getInt(JsonObject config, String key, int defaultValue) {
+        Object value = config.getValue(key);
+        return value == null ? defaultValue : Integer.parseInt(value.toString().trim());
+    }
+
+    public PlatformClientOptions setWebClientOptions(WebClientOptions webClientOptions) {
+        this.webClientOptions = webClientOptions;
+        return this;
+    }
+
+    public PlatformClientOptions setMaxInFlightRequests(int maxInFlightRequests) {
+        if (maxInFlightRequests < 1) {
+            throw new IllegalArgumentException("in-flight requests must be positive");
+        }
+        this.maxInFlightRequests = maxInFlightRequests;
+        return this;
+    }
+
+    public PlatformClientOptions setMaxRetries(int maxRetries) {
+        if (maxRetries < 0) {
+            throw new IllegalArgumentException("retries must not be negative");
+        }
+        this.maxRetries = maxRetries;
+        return this;
+    }
+
+    public PlatformClientOptions setRetryBaseDelayMs(long retryBaseDelayMs) {
+        this.retryBaseDelayMs = Math.max(1, retryBaseDelayMs);
+        return this;
+    }
+
+    public PlatformClientOptions setRetryMaxDelayMs(long retryMaxDelayMs) {
+        this.retryMaxDelayMs = Math.max(1, retryMaxDelayMs);
+        return this;
+    }
+
+    public PlatformClientOptions setCacheDirectory(String cacheDirectory) {
+        this.cacheDirectory = cacheDirectory == null || cacheDirectory.trim().isEmpty() ?
+                null : cacheDirectory.trim();
+        return this;
+    }
+
+    public PlatformClientOptions setCacheMaxAgeHours(long cacheMaxAgeHours) {
+        if (cacheMaxAgeHours < 1) {
+            throw new IllegalArgumentException("cache max age must be positive");
+        }
+        this.cacheMaxAgeHours = cacheMaxAgeHours;
+        return this;
+    }
+
+    public PlatformClientOptions setCacheMaxSizeMb(long cacheMaxSizeMb) {
+        if (cacheMaxSizeMb < 1) {
+            throw new IllegalArgumentException("cache size must be positive");
+        }
+        this.cacheMaxSizeMb = cacheMaxSizeMb;
+        return this;
+    }
+
+    public PlatformClientOptions setCacheBypass(boolean cacheBypass) {
+        this.cacheBypass = cacheBypass;
+        return this;
+    }
+
+    public PlatformClientOptions setRequestTimeoutMs(long requestTimeoutMs) {
+        if (requestTimeoutMs < 0) {
+            throw new IllegalArgumentException("request timeout must not be negative");
+        }
+        this.requestTimeoutMs = requestTimeoutMs;
+        return this;
+    }
+
+    public WebClientOptions getWebClientOptions() {
+        return webClientOptions;
+    }
+
+    public int getMaxInFlightRequests() {
+        return maxInFlightRequests;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public long getRetryBaseDelayMs() {
+        return retryBaseDelayMs;
+    }
+
+    public long getRetryMaxDelayMs() {
+        return retryMaxDelayMs;
+    }
+
+    public String getCacheDirectory() {
+        return cacheDirectory;
+    }
+
+    public long getCacheMaxAgeHours() {
+        return cacheMaxAgeHours;
+    }
+
+    public long getCacheMaxSizeMb() {
+        return cacheMaxSizeMb;
+    }
+
+    public boolean isCacheBypass() {
+        return cacheBypass;
+    }
+
+    public long getRequestTimeoutMs() {
+        return requestTimeoutMs;
+    }
+}
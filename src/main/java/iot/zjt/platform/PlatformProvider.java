@@ -0,0 +1,26 @@
+package iot.zjt.platform;
+
+import io.vertx.core.Vertx;
+
+/**
+ * Service provider creating platforms of one type, discovered by
+ * {@link PlatformRegistry} through "META-INF/services".
+ *
+ * @author Mr Dk.
+ * @since 2021/01/26
+ */
+public interface PlatformProvider {
+
+    /**
+     * @return The type in configurations, like "github".
+     */
+    String getType();
+
+    /**
+     * @param vertx         The Vert.x instance.
+     * @param user          The credentials of the account.
+     * @param clientOptions Options of the API client.
+     * @return A new platform instance on the default endpoints.
+     */
+    AbstractOnlinePlatform create(Vertx vertx, PlatformUser user, PlatformClientOptions clientOptions);
+}
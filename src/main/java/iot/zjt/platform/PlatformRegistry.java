@@ -0,0 +1,63 @@
+package iot.zjt.platform;
+
+import io.vertx.core.Vertx;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Platform types available, by the type in configurations.
+ *
+ * @author Mr Dk.
+ * @since 2021/01/26
+ */
+public class PlatformRegistry {
+
+    private final Map<String, PlatformProvider> providers = new TreeMap<>();
+
+    public PlatformRegistry() {
+    }
+
+    /**
+     * @return The registry of all providers on the class path.
+     */
+    public static PlatformRegistry load() {
+        PlatformRegistry registry = new PlatformRegistry();
+        for (PlatformProvider provider : ServiceLoader.load(PlatformProvider.class)) {
+            registry.register(provider);
+        }
+        return registry;
+    }
+
+    /**
+     * @param provider The provider, replacing the one of the same type.
+     * @return The registry itself.
+     */
+    public PlatformRegistry register(PlatformProvider provider) {
+        providers.put(provider.getType().toLowerCase(Locale.ROOT), provider);
+        return this;
+    }
+
+    public Set<String> getTypes() {
+        return providers.keySet();
+    }
+
+    /**
+     * @param type          The platform type, case insensitive.
+     * @param vertx         The Vert.x instance.
+     * @param user          The credentials of the account.
+     * @param clientOptions Options of the API client.
+     * @return A new platform instance.
+     */
+    public AbstractOnlinePlatform create(String type, Vertx vertx, PlatformUser user,
+                                        PlatformClientOptions clientOptions) {
+        PlatformProvider provider = providers.get(type.trim().toLowerCase(Locale.ROOT));
+        if (provider == null) {
+            throw new IllegalArgumentException("unknown platform type: " + type + ", available: " + getTypes());
+        }
+        return provider.create(vertx, user, clientOptions);
+    }
+}
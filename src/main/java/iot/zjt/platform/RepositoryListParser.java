@@ -0,0 +1,234 @@
+package iot.zjt.platform;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Promise;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.streams.WriteStream;
+import iot.zjt.Repository;
+
+import java.io.IOException;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming parser of a JSON array of repositories. Response body is fed to
+ * the non-blocking Jackson parser chunk by chunk while it arrives, and only
+ * scalar fields are passed to a {@link FieldReader}, so no JSON tree of the
+ * whole page is built. A repository is emitted as soon as its object ends.
+ * <p>
+ * Fields are identified by paths below the repository object, like "name"
+ * or "owner.login". Values inside nested arrays are ignored.
+ *
+ * @author Mr Dk.
+ * @since 2021/01/16
+ */
+public class RepositoryListParser implements WriteStream<Buffer> {
+
+    private static final JsonFactory factory = new JsonFactory();
+
+    /**
+     * Read a scalar field of a repository object.
+     */
+    public interface FieldReader {
+        /**
+         * @param repo   The repository being parsed.
+         * @param path   The path of the field, like "owner.login".
+         * @param parser The parser positioned at the value token.
+         */
+        void read(Repository repo, String path, JsonParser parser) throws IOException;
+    }
+
+    private final FieldReader reader;
+    private final Handler<Repository> handler;
+    private final JsonParser parser;
+    private final ByteArrayFeeder feeder;
+
+    private Handler<Throwable> exceptionHandler;
+    private Throwable failure;
+
+    private int depth = 0;
+    private boolean isArray = false;
+    private int ignoreDepth = 0; // depth of the nested array being ignored.
+    private final List<String> objectPath = new ArrayList<>(); // fields of nested objects.
+    private String field;
+    private Repository current;
+
+    /**
+     * @param reader  The reader of fields.
+     * @param handler The handler of each parsed repository.
+     */
+    public RepositoryListParser(FieldReader reader, Handler<Repository> handler) {
+        this.reader = reader;
+        this.handler = handler;
+        try {
+            this.parser = factory.createNonBlockingByteArrayParser();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        this.feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+    }
+
+    /**
+     * Read a timestamp like "2021-01-20T08:00:00Z" or "2021-01-20T16:00:00.000+08:00".
+     *
+     * @param parser The parser positioned at the value token.
+     * @return Milliseconds since the epoch, 0 if null or invalid.
+     */
+    public static long readTime(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.VALUE_STRING) {
+            return 0;
+        }
+        try {
+            return OffsetDateTime.parse(parser.getText()).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Parse a whole body at once, e.g. a cached one.
+     *
+     * @param body The response body.
+     * @return The failure, null if succeeded.
+     */
+    public Throwable parse(Buffer body) {
+        write(body);
+        end();
+        return failure;
+    }
+
+    @Override
+    public WriteStream<Buffer> exceptionHandler(Handler<Throwable> handler) {
+        this.exceptionHandler = handler;
+        return this;
+    }
+
+    @Override
+    public Future<Void> write(Buffer data) {
+        Promise<Void> promise = Promise.promise();
+        write(data, promise);
+        return promise.future();
+    }
+
+    @Override
+    public void write(Buffer data, Handler<AsyncResult<Void>> handler) {
+        if (failure == null) {
+            try {
+                byte[] bytes = data.getBytes();
+                feeder.feedInput(bytes, 0, bytes.length);
+                drain();
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+        if (handler != null) {
+            handler.handle(failure == null ? Future.succeededFuture() : Future.failedFuture(failure));
+        }
+    }
+
+    @Override
+    public void end(Handler<AsyncResult<Void>> handler) {
+        if (failure == null) {
+            try {
+                feeder.endOfInput();
+                drain();
+                parser.close();
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+        if (handler != null) {
+            handler.handle(failure == null ? Future.succeededFuture() : Future.failedFuture(failure));
+        }
+    }
+
+    @Override
+    public WriteStream<Buffer> setWriteQueueMaxSize(int maxSize) {
+        return this;
+    }
+
+    @Override
+    public boolean writeQueueFull() {
+        return false; // parsed synchronously.
+    }
+
+    @Override
+    public WriteStream<Buffer> drainHandler(Handler<Void> handler) {
+        return this;
+    }
+
+    private void fail(Throwable e) {
+        failure = e;
+        if (exceptionHandler != null) {
+            exceptionHandler.handle(e);
+        }
+    }
+
+    private void drain() throws IOException {
+        JsonToken token;
+        while ((token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+            handle(token);
+        }
+    }
+
+    private void handle(JsonToken token) throws IOException {
+        switch (token) {
+            case START_ARRAY:
+                depth++;
+                if (depth == 1) {
+                    isArray = true;
+                } else if (current != null && ignoreDepth == 0) {
+                    ignoreDepth = depth;
+                }
+                break;
+            case END_ARRAY:
+                if (ignoreDepth == depth) {
+                    ignoreDepth = 0;
+                }
+                depth--;
+                break;
+            case START_OBJECT:
+                depth++;
+                if (depth == 2 && isArray) {
+                    current = new Repository();
+                    objectPath.clear();
+                } else if (current != null && ignoreDepth == 0) {
+                    objectPath.add(field);
+                }
+                break;
+            case END_OBJECT:
+                if (depth == 2 && current != null) {
+                    handler.handle(current);
+                    current = null;
+                } else if (current != null && ignoreDepth == 0) {
+                    objectPath.remove(objectPath.size() - 1);
+                }
+                depth--;
+                break;
+            case FIELD_NAME:
+                field = parser.getCurrentName();
+                break;
+            default:
+                // scalar values.
+                if (current != null && ignoreDepth == 0) {
+                    reader.read(current, path(), parser);
+                }
+                break;
+        }
+    }
+
+    private String path() {
+        if (objectPath.isEmpty()) {
+            return field;
+        }
+        return String.join(".", objectPath) + "." + field;
+    }
+}
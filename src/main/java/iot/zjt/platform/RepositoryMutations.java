@@ -0,0 +1,112 @@
+package iot.zjt.platform;
+
+import io.vertx.core.Future;
+import iot.zjt.Repository;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Mutations of repositories planned on a platform, applied together with
+ * as few API calls as possible:
+ * <ul>
+ *     <li>creating the same repository twice creates it once;</li>
+ *     <li>updating the visibility of a repository to be created is folded into the creation;</li>
+ *     <li>only the last visibility update of a repository is sent;</li>
+ *     <li>creations are sent in batches if the platform supports it.</li>
+ * </ul>
+ *
+ * @author Mr Dk.
+ * @since 2021/01/22
+ */
+public class RepositoryMutations {
+
+    private final AbstractOnlinePlatform platform;
+    private final Map<String, Repository> creates = new LinkedHashMap<>();
+    private final Map<String, Repository> updates = new LinkedHashMap<>();
+    private int requested = 0;
+
+    public RepositoryMutations(AbstractOnlinePlatform platform) {
+        this.platform = platform;
+    }
+
+    /**
+     * Plan to create a repository.
+     *
+     * @param repo The repository to create.
+     * @return The repository that will be created, which is the one
+     * planned before if a repository of the same name is planned already.
+     */
+    public Repository create(Repository repo) {
+        requested++;
+        return creates.computeIfAbsent(platform.getRepositoryKey(repo.getName()), key -> repo);
+    }
+
+    /**
+     * Plan to update the visibility of a repository.
+     *
+     * @param repo              The repository on the platform.
+     * @param visibilityPrivate The visibility to update to.
+     */
+    public void updateVisibility(Repository repo, boolean visibilityPrivate) {
+        requested++;
+        String key = platform.getRepositoryKey(repo.getName());
+        Repository created = creates.get(key);
+        if (created != null) {
+            created.setVisibilityPrivate(visibilityPrivate); // created with it.
+            return;
+        }
+        repo.setVisibilityPrivate(visibilityPrivate);
+        updates.put(key, repo);
+    }
+
+    /**
+     * Send the planned creations.
+     *
+     * @return The future of each created repository.
+     */
+    public Map<Repository, Future<Void>> applyCreates() {
+        List<Repository> repos = new ArrayList<>(creates.values());
+        List<Future<Void>> futures = platform.createRepositories(repos);
+
+        Map<Repository, Future<Void>> results = new IdentityHashMap<>();
+        for (int i = 0; i < repos.size(); i++) {
+            results.put(repos.get(i), futures.get(i));
+        }
+        return results;
+    }
+
+    /**
+     * Send the planned visibility updates.
+     *
+     * @return The future of each updated repository.
+     */
+    public Map<Repository, Future<Void>> applyUpdates() {
+        Map<Repository, Future<Void>> results = new IdentityHashMap<>();
+        for (Repository repo : updates.values()) {
+            results.put(repo, platform.updateRepository(repo));
+        }
+        return results;
+    }
+
+    /**
+     * @return The mutations planned, as if each were sent by its own API call.
+     */
+    public int getRequestedCount() {
+        return requested;
+    }
+
+    /**
+     * @return The API calls sent to apply the mutations.
+     */
+    public int getRequestCount() {
+        return platform.countCreateRequests(creates.size()) + updates.size();
+    }
+
+    public int getSavedCount() {
+        return requested - getRequestCount();
+    }
+}
@@ -0,0 +1,131 @@
+package iot.zjt.platform;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import iot.zjt.Repository;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One page of a paginated repository listing.
+ *
+ * @author Mr Dk.
+ * @since 2021/01/13
+ */
+public class RepositoryPage {
+    private final List<Repository> repositories;
+    private final int nextPage;
+    private final int lastPage;
+
+    /**
+     * @param repositories The repositories on this page.
+     * @param nextPage     The number of the next page, 0 if this is the last one.
+     * @param lastPage     The number of the last page, 0 if unknown.
+     */
+    public RepositoryPage(List<Repository> repositories, int nextPage, int lastPage) {
+        this.repositories = repositories;
+        this.nextPage = nextPage;
+        this.lastPage = lastPage;
+    }
+
+    /**
+     * @param json The page in JSON, as {@link #toJson()} returns.
+     * @return The page.
+     */
+    public static RepositoryPage fromJson(JsonObject json) {
+        List<Repository> repositories = new ArrayList<>();
+        JsonArray array = json.getJsonArray("repositories");
+        for (int i = 0; i < array.size(); i++) {
+            JsonObject object = array.getJsonObject(i);
+            Repository repo = new Repository();
+            repo.setId(object.getInteger("id"));
+            repo.setOwner(object.getString("owner"));
+            repo.setName(object.getString("name"));
+            repo.setVisibilityPrivate(object.getBoolean("private"));
+            repo.setSize(object.getLong("size"));
+            // absent from pages cached by older versions.
+            repo.setDefaultBranch(object.getString("defaultBranch"));
+            repo.setPushedAt(object.getLong("pushedAt", 0L));
+            repo.setArchived(object.getBoolean("archived", false));
+            repo.setFork(object.getBoolean("fork", false));
+            repositories.add(repo);
+        }
+        return new RepositoryPage(repositories, json.getInteger("nextPage"), json.getInteger("lastPage"));
+    }
+
+    public JsonObject toJson() {
+        JsonArray array = new JsonArray();
+        for (Repository repo : repositories) {
+            array.add(new JsonObject()
+                    .put("id", repo.getId())
+                    .put("owner", repo.getOwner())
+                    .put("name", repo.getName())
+                    .put("private", repo.getVisibilityPrivate())
+                    .put("size", repo.getSize())
+                    .put("defaultBranch", repo.getDefaultBranch())
+                    .put("pushedAt", repo.getPushedAt())
+                    .put("archived", repo.isArchived())
+                    .put("fork", repo.isFork()));
+        }
+        return new JsonObject()
+                .put("repositories", array)
+                .put("nextPage", nextPage)
+                .put("lastPage", lastPage);
+    }
+
+    /**
+     * Serve this cached page as revalidated by a 304 response. The pages are
+     * taken from the 304 response if it has them. Otherwise, the page after
+     * the cached last page is requested: repositories may have been added
+     * behind this page without modifying it.
+     *
+     * @param page     The number of this page.
+     * @param hasPages Whether the 304 response has pagination headers.
+     * @param nextPage The next page in the 304 response.
+     * @param lastPage The last page in the 304 response.
+     * @return The page to be followed.
+     */
+    public RepositoryPage notModified(int page, boolean hasPages, int nextPage, int lastPage) {
+        if (hasPages) {
+            return new RepositoryPage(repositories, nextPage, lastPage);
+        }
+        if (this.nextPage <= 0 && !repositories.isEmpty()) {
+            // an empty page is behind the last one, nothing more to look for.
+            return new RepositoryPage(repositories, page + 1, 0);
+        }
+        return this;
+    }
+
+    /**
+     * Pages are cached with every repository, so that an empty page is known
+     * to be behind the last one, and filtered when they are served.
+     *
+     * @param includePrivate Whether or not to keep private repositories.
+     * @return The page with the repositories to be listed.
+     */
+    public RepositoryPage filter(boolean includePrivate) {
+        if (includePrivate) {
+            return this;
+        }
+        List<Repository> visible = new ArrayList<>();
+        for (Repository repo : repositories) {
+            if (!repo.getVisibilityPrivate()) {
+                visible.add(repo);
+            }
+        }
+        return new RepositoryPage(visible, nextPage, lastPage);
+    }
+
+    public List<Repository> getRepositories() {
+        return repositories;
+    }
+
+    public int getNextPage() {
+        return nextPage;
+    }
+
+    public int getLastPage() {
+        return lastPage;
+    }
+}
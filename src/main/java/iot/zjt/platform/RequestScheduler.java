@@ -0,0 +1,303 @@
+package iot.zjt.platform;
+
+import io.micrometer.core.instrument.Tags;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.ext.web.client.HttpResponse;
+import iot.zjt.metrics.MirrorMetrics;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * Schedule API requests to a platform under its rate limits.
+ * <ul>
+ *     <li>At most a number of requests are in flight at the same time.</li>
+ *     <li>Rate limit headers are tracked as a token bucket: when no request
+ *     is remaining, requests wait until the limit is reset.</li>
+ *     <li>429, 5xx and rate limit responses are retried with jittered
+ *     exponential backoff, and "Retry-After" pauses the whole platform.</li>
+ *     <li>Listing requests get ahead of mutating requests.</li>
+ * </ul>
+ *
+ * @author Mr Dk.
+ * @since 2021/01/15
+ */
+public class RequestScheduler {
+
+    private final static Logger logger = LogManager.getLogger(RequestScheduler.class);
+
+    /**
+     * Priority lanes of requests, in order of priority.
+     */
+    public enum Lane {
+        LISTING,
+        MUTATION
+    }
+
+    private final Vertx vertx;
+    private final String platform;
+    private final PlatformClientOptions options;
+
+    private final Map<Lane, Deque<PendingRequest<?>>> lanes = new EnumMap<>(Lane.class);
+    private int inFlight = 0;
+    private long remaining = -1; // unknown before the first response.
+    private long resetAt = 0;
+    private long pausedUntil = 0;
+    private boolean timerSet = false;
+
+    /**
+     * @param platform The platform name, to tag meters with.
+     */
+    public RequestScheduler(final Vertx vertx, final String platform, final PlatformClientOptions options) {
+        this.vertx = vertx;
+        this.platform = platform;
+        this.options = options;
+        for (Lane lane : Lane.values()) {
+            lanes.put(lane, new ArrayDeque<>());
+        }
+
+        Tags tags = Tags.of("platform", platform);
+        MirrorMetrics.gauge(MirrorMetrics.API_REQUESTS_IN_FLIGHT, tags, this,
+                RequestScheduler::getInFlightRequests);
+        MirrorMetrics.gauge(MirrorMetrics.API_REQUESTS_QUEUED, tags, this,
+                RequestScheduler::getQueuedRequests);
+        MirrorMetrics.gauge(MirrorMetrics.API_RATE_LIMIT_REMAINING, tags, this,
+                RequestScheduler::getRateLimitRemaining);
+    }
+
+    /**
+     * Schedule a request. The request may be sent more than once when retried,
+     * so the supplier should build and send a new request every time.
+     *
+     * @param lane    The priority lane of the request.
+     * @param request The supplier sending the request.
+     * @return The future of the final response.
+     */
+    public <T> Future<HttpResponse<T>> schedule(Lane lane, Supplier<Future<HttpResponse<T>>> request) {
+        PendingRequest<T> pending = new PendingRequest<>(lane, request);
+        synchronized (this) {
+            lanes.get(lane).addLast(pending);
+        }
+        dispatch();
+        return pending.promise.future();
+    }
+
+    public synchronized int getInFlightRequests() {
+        return inFlight;
+    }
+
+    public synchronized int getQueuedRequests() {
+        int queued = 0;
+        for (Deque<PendingRequest<?>> lane : lanes.values()) {
+            queued += lane.size();
+        }
+        return queued;
+    }
+
+    /**
+     * @return The remaining requests reported by the platform, -1 if unknown.
+     */
+    public synchronized long getRateLimitRemaining() {
+        return remaining;
+    }
+
+    private void dispatch() {
+        List<PendingRequest<?>> ready = new ArrayList<>();
+        long wait = 0;
+
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            while (inFlight < options.getMaxInFlightRequests()) {
+                Deque<PendingRequest<?>> lane = nextLane();
+                if (lane == null) {
+                    break;
+                }
+
+                long delay = delayBeforeNext(now);
+                if (delay > 0) {
+                    if (!timerSet) {
+                        timerSet = true;
+                        wait = delay;
+                    }
+                    break;
+                }
+
+                ready.add(lane.pollFirst());
+                inFlight++;
+                if (remaining > 0) {
+                    remaining--; // consume a token before the platform tells.
+                }
+            }
+        }
+
+        if (wait > 0) {
+            logger.warn("Rate limited, waiting " + wait + " ms before sending requests");
+            vertx.setTimer(wait, id -> {
+                synchronized (this) {
+                    timerSet = false;
+                }
+                dispatch();
+            });
+        }
+
+        for (PendingRequest<?> pending : ready) {
+            send(pending);
+        }
+    }
+
+    private Deque<PendingRequest<?>> nextLane() {
+        for (Lane lane : Lane.values()) {
+            if (!lanes.get(lane).isEmpty()) {
+                return lanes.get(lane);
+            }
+        }
+        return null;
+    }
+
+    private long delayBeforeNext(long now) {
+        if (now < pausedUntil) {
+            return pausedUntil - now;
+        }
+        if (remaining == 0 && now < resetAt) {
+            return resetAt - now;
+        }
+        return 0;
+    }
+
+    private <T> void send(PendingRequest<T> pending) {
+        long start = System.nanoTime();
+        Future<HttpResponse<T>> future;
+        try {
+            future = pending.request.get();
+        } catch (RuntimeException e) {
+            future = Future.failedFuture(e);
+        }
+
+        future.onComplete(ar -> {
+            MirrorMetrics.recordRequest(platform,
+                    ar.succeeded() ? ar.result().statusCode() : -1, System.nanoTime() - start);
+
+            long retryDelay = -1;
+            synchronized (this) {
+                inFlight--;
+                if (ar.succeeded()) {
+                    observe(ar.result());
+                }
+                if (shouldRetry(pending, ar)) {
+                    retryDelay = retryDelay(pending.attempts);
+                    retryDelay = Math.max(retryDelay, pausedUntil - System.currentTimeMillis());
+                    pending.attempts++;
+                }
+            }
+
+            if (retryDelay >= 0) {
+                logger.warn("Retrying request in " + retryDelay + " ms (attempt " + pending.attempts +
+                        "), because of " + (ar.succeeded() ?
+                        "response " + ar.result().statusCode() : ar.cause().getMessage()));
+                vertx.setTimer(Math.max(1, retryDelay), id -> {
+                    synchronized (this) {
+                        lanes.get(pending.lane).addFirst(pending);
+                    }
+                    dispatch();
+                });
+            } else if (ar.succeeded()) {
+                pending.promise.complete(ar.result());
+            } else {
+                pending.promise.fail(ar.cause());
+            }
+
+            dispatch();
+        });
+    }
+
+    /**
+     * Track rate limit headers of GitHub ("X-RateLimit-*") and GitLab ("RateLimit-*").
+     */
+    private void observe(HttpResponse<?> response) {
+        long now = System.currentTimeMillis();
+
+        long limitRemaining = parseLong(header(response, "X-RateLimit-Remaining", "RateLimit-Remaining"));
+        if (limitRemaining >= 0) {
+            remaining = limitRemaining;
+        }
+        long limitReset = parseLong(header(response, "X-RateLimit-Reset", "RateLimit-Reset"));
+        if (limitReset >= 0) {
+            resetAt = limitReset * 1000; // epoch seconds.
+        }
+        if (remaining >= 0 && resetAt > 0 && now >= resetAt) {
+            remaining = -1; // the window is over, unknown again.
+        }
+
+        long retryAfter = parseLong(response.getHeader("Retry-After"));
+        if (retryAfter >= 0) {
+            pausedUntil = Math.max(pausedUntil, now + retryAfter * 1000);
+        }
+    }
+
+    private boolean shouldRetry(PendingRequest<?> pending, AsyncResult<? extends HttpResponse<?>> ar) {
+        if (pending.attempts >= options.getMaxRetries()) {
+            return false;
+        }
+        if (ar.failed()) {
+            // a mutation may have been applied before the network failure.
+            return pending.lane == Lane.LISTING;
+        }
+
+        int status = ar.result().statusCode();
+        if (status == 429 || status >= 500) {
+            return true;
+        }
+        // GitHub responses 403 when primary or secondary rate limits are exceeded.
+        return status == 403 && (ar.result().getHeader("Retry-After") != null || remaining == 0);
+    }
+
+    private long retryDelay(int attempts) {
+        long delay = Math.min(options.getRetryMaxDelayMs(),
+                options.getRetryBaseDelayMs() << Math.min(attempts, 20));
+        return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+
+    private static String header(HttpResponse<?> response, String... names) {
+        for (String name : names) {
+            String value = response.getHeader(name);
+            if (value != null) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    private static long parseLong(String value) {
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1; // e.g. HTTP-date form of "Retry-After".
+        }
+    }
+
+    private static class PendingRequest<T> {
+        private final Lane lane;
+        private final Supplier<Future<HttpResponse<T>>> request;
+        private final Promise<HttpResponse<T>> promise = Promise.promise();
+        private int attempts = 0;
+
+        private PendingRequest(Lane lane, Supplier<Future<HttpResponse<T>>> request) {
+            this.lane = lane;
+            this.request = request;
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package iot.zjt.platform;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.client.HttpRequest;
+import io.vertx.ext.web.client.HttpResponse;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * On-disk cache of API responses validated by "ETag" or "Last-Modified".
+ * A cached response is revalidated with "If-None-Match" or
+ * "If-Modified-Since", and served from the cache if the platform
+ * responses 304, which GitHub does not count against the rate limit.
+ * <p>
+ * Each entry is a JSON file named by the hash of its key, keeping
+ * the validators and the parsed response.
+ *
+ * @author Mr Dk.
+ * @since 2021/01/23
+ */
+public class ResponseCache {
+
+    private final static Logger logger = LogManager.getLogger(ResponseCache.class);
+
+    private final Vertx vertx;
+    private final Path root;
+    private final String namespace;
+    private final long maxAgeMillis;
+    private final long maxSizeBytes;
+    private final boolean bypass;
+
+    /**
+     * A cached response.
+     */
+    public static class Entry {
+        private final String etag;
+        private final String lastModified;
+        private final JsonObject value;
+
+        private Entry(String etag, String lastModified, JsonObject value) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.value = value;
+        }
+
+        /**
+         * Make the request conditional on the cached response.
+         */
+        public <T> HttpRequest<T> addConditionalHeaders(HttpRequest<T> request) {
+            if (etag != null) {
+                request.putHeader("If-None-Match", etag);
+            }
+            if (lastModified != null) {
+                request.putHeader("If-Modified-Since", lastModified);
+            }
+            return request;
+        }
+
+        public JsonObject getValue() {
+            return value;
+        }
+    }
+
+    /**
+     * @param namespace The namespace of keys, e.g. the platform and the user.
+     */
+    public ResponseCache(Vertx vertx, String namespace, PlatformClientOptions options) {
+        this.vertx = vertx;
+        this.root = Paths.get(options.getCacheDirectory()).toAbsolutePath().normalize();
+        this.namespace = namespace;
+        this.maxAgeMillis = TimeUnit.HOURS.toMillis(options.getCacheMaxAgeHours());
+        this.maxSizeBytes = options.getCacheMaxSizeMb() * 1024 * 1024;
+        this.bypass = options.isCacheBypass();
+    }
+
+    /**
+     * Look up the cached response.
+     *
+     * @param key The key of the response, e.g. the URL.
+     * @return The future of the entry, null if not cached, expired or bypassed.
+     */
+    public Future<Entry> get(String key) {
+        if (bypass) {
+            return Future.succeededFuture();
+        }
+
+        String file = fileOf(key).toString();
+        return vertx.fileSystem().readFile(file).map(buffer -> {
+            JsonObject json = buffer.toJsonObject();
+            if (!key.equals(json.getString("key")) ||
+                    System.currentTimeMillis() - json.getLong("storedAt") > maxAgeMillis) {
+                return null;
+            }
+            return new Entry(json.getString("etag"), json.getString("lastModified"),
+                    json.getJsonObject("value"));
+        }).recover(err -> Future.succeededFuture()); // absent or broken, as not cached.
+    }
+
+    /**
+     * Cache a response if the platform gives a validator of it.
+     *
+     * @param key      The key of the response.
+     * @param response The response.
+     * @param value    The parsed response to cache.
+     */
+    public void put(String key, HttpResponse<?> response, JsonObject value) {
+        String etag = response.getHeader("ETag");
+        String lastModified = response.getHeader("Last-Modified");
+        if (etag == null && lastModified == null) {
+            return;
+        }
+
+        JsonObject json = new JsonObject()
+                .put("key", key)
+                .put("etag", etag)
+                .put("lastModified", lastModified)
+                .put("storedAt", System.currentTimeMillis())
+                .put("value", value);
+        vertx.fileSystem().mkdirs(root.toString())
+                .compose(v -> vertx.fileSystem().writeFile(fileOf(key).toString(), json.toBuffer()))
+                .onFailure(err -> logger.error("Fail to cache response of " + key + ": " + err.getMessage()));
+    }
+
+    /**
+     * Evict expired responses, then the oldest ones until the total size
+     * is under the cap. Responses of every namespace are evicted.
+     *
+     * @return The future of eviction.
+     */
+    public Future<Void> evict() {
+        return vertx.executeBlocking(promise -> {
+            File[] files = root.toFile().listFiles((dir, name) -> name.endsWith(".json"));
+            if (files == null) {
+                promise.complete();
+                return;
+            }
+
+            Arrays.sort(files, Comparator.comparingLong(File::lastModified).reversed());
+            long now = System.currentTimeMillis();
+            long total = 0;
+            for (File file : files) {
+                total += file.length();
+                if (now - file.lastModified() > maxAgeMillis || total > maxSizeBytes) {
+                    try {
+                        Files.deleteIfExists(file.toPath());
+                    } catch (IOException e) {
+                        logger.error("Fail to evict " + file + ": " + e.getMessage());
+                    }
+                }
+            }
+            promise.complete();
+        }, false);
+    }
+
+    private Path fileOf(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest((namespace + "\n" + key).getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder();
+            for (byte b : digest) {
+                name.append(String.format("%02x", b));
+            }
+            return root.resolve(name + ".json");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // always available.
+        }
+    }
+}
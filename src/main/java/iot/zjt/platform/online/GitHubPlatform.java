@@ -1,19 +1,35 @@
 package iot.zjt.platform.online;
 
-import io.vertx.core.CompositeFuture;
+import com.fasterxml.jackson.core.JsonParser;
 import io.vertx.core.Future;
+import io.vertx.core.MultiMap;
 import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
-import io.vertx.ext.web.client.WebClient;
+import io.vertx.ext.web.client.HttpRequest;
+import io.vertx.ext.web.codec.BodyCodec;
 import iot.zjt.Repository;
 import iot.zjt.platform.AbstractOnlinePlatform;
+import iot.zjt.platform.LinkHeader;
+import iot.zjt.platform.PlatformClientOptions;
 import iot.zjt.platform.PlatformUser;
+import iot.zjt.platform.RepositoryListParser;
+import iot.zjt.platform.RepositoryPage;
+import iot.zjt.platform.RequestScheduler.Lane;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 
 /**
  * Platform operation of GitHub.
@@ -26,21 +42,21 @@ public class GitHubPlatform extends AbstractOnlinePlatform {
     private final static Logger logger = LogManager.getLogger(GitHubPlatform.class);
 
     /**
-     * Since GitHub API need cannot show all repositories because of pagination,
-     * the user need to provide approximate number of repository numbers so that
-     * we can calculate how many pages should be requested.
-     * A bigger number should be provided to make sure all of the repositories
-     * are fetched.
+     * Mutations sent in one GraphQL request.
      */
-    private final int approximateRepoCount;
+    private static final int GRAPHQL_BATCH_SIZE = 20;
 
-    public GitHubPlatform(final Vertx vertx, final PlatformUser user, final int approximateRepoCount) {
-        super(vertx, user);
-        this.approximateRepoCount = approximateRepoCount;
-    }
+    public static final String DEFAULT_API_URL = "https://api.github.com";
+    public static final String DEFAULT_GIT_URL = "https://github.com";
 
     public GitHubPlatform(final Vertx vertx, final PlatformUser user) {
-        this(vertx, user, 100);
+        this(vertx, user, new PlatformClientOptions());
+    }
+
+    public GitHubPlatform(final Vertx vertx, final PlatformUser user, final PlatformClientOptions clientOptions) {
+        super(vertx, user, clientOptions);
+        setApiUrl(DEFAULT_API_URL);
+        setGitUrl(DEFAULT_GIT_URL);
     }
 
     /**
@@ -54,16 +70,15 @@ public class GitHubPlatform extends AbstractOnlinePlatform {
     @Override
     public Future<Void> createRepository(Repository repo) {
         logger.warn("Trying to create repository [" + repo.getName() + "] on " + getPlatform());
-        WebClient client = WebClient.create(getVertx());
-
-        return client
-                .postAbs("https://api.github.com/user/repos")
+        return schedule(Lane.MUTATION, () -> getWebClient()
+                .postAbs(getApiUrl() + "/user/repos")
+                .timeout(getRequestTimeoutMs())
                 .bearerTokenAuthentication(getUser().getToken())
                 .putHeader("accept", "application/vnd.github.v3+json")
                 .sendJsonObject(new JsonObject()
                         .put("name", repo.getName())
                         .put("private", repo.getVisibilityPrivate())
-                )
+                ))
                 .onFailure(err -> {
                     // network failure.
                     logger.error(new StringBuilder()
@@ -95,6 +110,114 @@ public class GitHubPlatform extends AbstractOnlinePlatform {
                 });
     }
 
+    /**
+     * Create repositories through GitHub GraphQL API v4, with up to
+     * {@value #GRAPHQL_BATCH_SIZE} aliased "createRepository" mutations
+     * in one request. A single repository is created through API v3.
+     *
+     * @param repos The repositories to create.
+     * @return The future of each repository, in the same order.
+     */
+    @Override
+    public List<Future<Void>> createRepositories(List<Repository> repos) {
+        List<Future<Void>> futures = new ArrayList<>();
+        for (int start = 0; start < repos.size(); start += GRAPHQL_BATCH_SIZE) {
+            List<Repository> batch = repos.subList(start, Math.min(repos.size(), start + GRAPHQL_BATCH_SIZE));
+            if (batch.size() == 1) {
+                futures.add(createRepository(batch.get(0)));
+            } else {
+                futures.addAll(createRepositoryBatch(batch));
+            }
+        }
+        return futures;
+    }
+
+    @Override
+    public int countCreateRequests(int repos) {
+        return (repos + GRAPHQL_BATCH_SIZE - 1) / GRAPHQL_BATCH_SIZE;
+    }
+
+    /**
+     * The end point is "https://api.github.com/graphql" with POST method.
+     * Each mutation succeeds or fails on its own: a failed one has null
+     * data under its alias, and an error whose path starts with the alias.
+     */
+    private List<Future<Void>> createRepositoryBatch(List<Repository> batch) {
+        logger.warn("Trying to create " + batch.size() + " repositories on " + getPlatform() + " in one request");
+
+        StringBuilder parameters = new StringBuilder();
+        StringBuilder mutations = new StringBuilder();
+        JsonObject variables = new JsonObject();
+        for (int i = 0; i < batch.size(); i++) {
+            Repository repo = batch.get(i);
+            parameters.append(i == 0 ? "" : ", ").append("$r").append(i).append(": CreateRepositoryInput!");
+            mutations.append(" r").append(i).append(": createRepository(input: $r").append(i)
+                    .append(") { repository { databaseId } }");
+            variables.put("r" + i, new JsonObject()
+                    .put("name", repo.getName())
+                    .put("visibility", repo.getVisibilityPrivate() ? "PRIVATE" : "PUBLIC"));
+        }
+        String query = "mutation(" + parameters + ") {" + mutations + " }";
+
+        Future<JsonObject> response = schedule(Lane.MUTATION, () -> getWebClient()
+                .postAbs(getApiUrl() + "/graphql")
+                .timeout(getRequestTimeoutMs())
+                .bearerTokenAuthentication(getUser().getToken())
+                .sendJsonObject(new JsonObject().put("query", query).put("variables", variables)))
+                .onFailure(err -> {
+                    // network failure.
+                    logger.error(new StringBuilder()
+                            .append(getPlatform())
+                            .append(" responses: ")
+                            .append(err.getMessage())
+                    );
+                })
+                .compose(resp -> {
+                    JsonObject body = resp.bodyAsJsonObject();
+                    if (resp.statusCode() != 200 || body == null) {
+                        String log = getPlatform() + " responses " + resp.statusCode();
+                        logger.error(log);
+                        return Future.failedFuture(log);
+                    }
+                    return Future.succeededFuture(body);
+                });
+
+        List<Future<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < batch.size(); i++) {
+            Repository repo = batch.get(i);
+            String alias = "r" + i;
+            futures.add(response.compose(body -> {
+                JsonObject data = body.getJsonObject("data");
+                JsonObject result = data == null ? null : data.getJsonObject(alias);
+                if (result == null || result.getJsonObject("repository") == null) {
+                    String log = getPlatform() + " fails to create " + repo.getName() + ": " +
+                            graphQLError(body, alias);
+                    logger.error(log);
+                    return Future.failedFuture(log);
+                }
+
+                repo.setId(result.getJsonObject("repository").getInteger("databaseId"));
+                logger.info("Successfully create " + repo.getName() + " on " + getPlatform());
+                return Future.succeededFuture();
+            }));
+        }
+        return futures;
+    }
+
+    private static String graphQLError(JsonObject body, String alias) {
+        JsonArray errors = body.getJsonArray("errors");
+        if (errors != null) {
+            for (int i = 0; i < errors.size(); i++) {
+                JsonObject error = errors.getJsonObject(i);
+                JsonArray path = error.getJsonArray("path");
+                if (path != null && !path.isEmpty() && alias.equals(path.getValue(0))) {
+                    return error.getString("message");
+                }
+            }
+        }
+        return "unknown error";
+    }
+
     /**
      * To delete a GitHub repository through GitHub API v3.
      * The end point is "https://api.github.com/repos/{owner}/{repo}"
@@ -107,13 +230,12 @@ public class GitHubPlatform extends AbstractOnlinePlatform {
     public Future<Void> deleteRepository(Repository repo) {
         logger.warn("Trying to delete repository [" + repo.getName() + "] on " + getPlatform());
 
-        WebClient client = WebClient.create(getVertx());
-
-        return client
-                .deleteAbs("https://api.github.com/repos/" + repo.getOwner() + "/" + repo.getName())
+        return schedule(Lane.MUTATION, () -> getWebClient()
+                .deleteAbs(getApiUrl() + "/repos/" + repo.getOwner() + "/" + repo.getName())
+                .timeout(getRequestTimeoutMs())
                 .bearerTokenAuthentication(getUser().getToken())
                 .putHeader("accept", "application/vnd.github.v3+json")
-                .send()
+                .send())
                 .onFailure(err -> {
                     // network failure.
                     logger.error(new StringBuilder()
@@ -142,15 +264,14 @@ public class GitHubPlatform extends AbstractOnlinePlatform {
     public Future<Void> updateRepository(Repository repo) {
         logger.warn("Trying to update repository [" + repo.getName() + "] on " + getPlatform());
 
-        WebClient client = WebClient.create(getVertx());
-
-        return client
-                .patchAbs("https://api.github.com/repos/" + repo.getOwner() + "/" + repo.getName())
+        return schedule(Lane.MUTATION, () -> getWebClient()
+                .patchAbs(getApiUrl() + "/repos/" + repo.getOwner() + "/" + repo.getName())
+                .timeout(getRequestTimeoutMs())
                 .bearerTokenAuthentication(getUser().getToken())
                 .putHeader("accept", "application/vnd.github.v3+json")
                 .sendJsonObject(new JsonObject()
                         .put("private", repo.getVisibilityPrivate())
-                )
+                ))
                 .onFailure(err -> {
                     // network failure.
                     logger.error(new StringBuilder()
@@ -185,78 +306,162 @@ public class GitHubPlatform extends AbstractOnlinePlatform {
      * To get all GitHub repositories of a user through GitHub API v3.
      * The end point is "https://api.github.com/user/repos" with GET method.
      * The identity of user is implied in token. 200 should be returned.
+     * Pages are followed by "Link" response header.
      *
      * @param includePrivate Whether or not to get private repositories.
      * @return The future object containing all repository information.
      */
     @Override
-    @SuppressWarnings("rawtypes")
     public Future<List<Repository>> getRepositories(boolean includePrivate) {
         logger.warn("Trying to get repositories from " + getPlatform());
 
-        WebClient client = WebClient.create(getVertx());
+        return fetchAllPages(page -> getRepositoryPage(page, includePrivate))
+                .onFailure(err -> logger.error(err.getMessage()))
+                .compose(repos -> {
+                    logger.info("Successfully get all repositories from " + getPlatform());
+                    return Future.succeededFuture(repos);
+                });
+    }
+
+    private Future<RepositoryPage> getRepositoryPage(int page, boolean includePrivate) {
+        logger.warn("Fetching the " + page + "(-th) page from " + getPlatform());
+
         List<Repository> repos = new ArrayList<>();
-        List<Future> futures = new ArrayList<>();
+        String cacheKey = "repos?page=" + page + "&private=" + includePrivate;
 
-        for (int page = 1; page <= Math.ceil(this.approximateRepoCount / 30d); page++) {
-            logger.warn("Fetching the " + page + "(-th) page from " + getPlatform());
-            Future<Void> future = client
-                    .getAbs("https://api.github.com/user/repos")
+        return getCachedResponse(cacheKey).compose(cached -> schedule(Lane.LISTING, () -> {
+            repos.clear(); // parsed again on retry.
+            HttpRequest<Void> request = getWebClient()
+                    .getAbs(getApiUrl() + "/user/repos")
+                    .timeout(getRequestTimeoutMs())
                     .bearerTokenAuthentication(getUser().getToken())
                     .putHeader("accept", "application/vnd.github.v3+json")
                     .addQueryParam("type", "owner")
                     .addQueryParam("page", Integer.toString(page))
-                    .addQueryParam("per_page", "30") // GitHub default
-                    .send()
-                    .onFailure(err -> {
-                        // network failure.
-                        logger.error(new StringBuilder()
-                                .append(getPlatform())
-                                .append(" responses: ")
-                                .append(err.getMessage())
-                        );
-                    })
-                    .compose(response -> {
-                        // network success, but the result is unknown.
-                        JsonArray body = response.bodyAsJsonArray();
-                        if (body == null) {
-                            return Future.failedFuture(getPlatform() +
-                                    "responses with empty response body.");
-                        }
-
-                        String log = getPlatform() + " responses " + response.statusCode();
-
-                        if (response.statusCode() != 200) {
-                            logger.error(log);
-                            return Future.failedFuture(log);
-                        }
-
-                        // logger.info(log);
-
-                        for (int i = 0; i < body.size(); i++) {
-                            JsonObject githubRepo = body.getJsonObject(i);
-                            Repository repo = new Repository();
-                            repo.setId(githubRepo.getInteger("id"));
-                            repo.setOwner(githubRepo.getJsonObject("owner").getString("login"));
-                            repo.setName(githubRepo.getString("name"));
-                            repo.setVisibilityPrivate(githubRepo.getBoolean("private"));
-
-                            if (includePrivate || !repo.getVisibilityPrivate()) {
-                                repos.add(repo);
-                            }
-                        }
-
-                        return Future.succeededFuture();
-                    });
-            futures.add(future);
+                    .addQueryParam("per_page", "100") // GitHub maximum
+                    .as(BodyCodec.pipe(new RepositoryListParser(GitHubPlatform::readRepositoryField, repos::add)));
+            return cached == null ? request.send() : cached.addConditionalHeaders(request).send();
+        })
+                .onFailure(err -> {
+                    // network failure.
+                    logger.error(new StringBuilder()
+                            .append(getPlatform())
+                            .append(" responses: ")
+                            .append(err.getMessage())
+                    );
+                })
+                .compose(response -> {
+                    // network success, but the result is unknown.
+                    String log = getPlatform() + " responses " + response.statusCode();
+
+                    if (response.statusCode() == 304 && cached != null) {
+                        logger.info(log + ", the " + page + "(-th) page is not modified");
+                        Map<String, String> links = LinkHeader.parse(response.getHeader("Link"));
+                        return Future.succeededFuture(RepositoryPage.fromJson(cached.getValue())
+                                .notModified(page, response.getHeader("Link") != null,
+                                        LinkHeader.pageOf(links.get("next")), LinkHeader.pageOf(links.get("last"))));
+                    }
+                    if (response.statusCode() != 200) {
+                        logger.error(log);
+                        return Future.failedFuture(log);
+                    }
+
+                    // no "Link" header if there is only one page.
+                    Map<String, String> links = LinkHeader.parse(response.getHeader("Link"));
+                    RepositoryPage result = new RepositoryPage(repos,
+                            LinkHeader.pageOf(links.get("next")),
+                            LinkHeader.pageOf(links.get("last")));
+                    if (getResponseCache() != null) {
+                        getResponseCache().put(cacheKey, response, result.toJson());
+                    }
+                    return Future.succeededFuture(result);
+                })).map(result -> result.filter(includePrivate));
+    }
+
+    /**
+     * Read the fields of a repository object in GitHub API response.
+     */
+    static void readRepositoryField(Repository repo, String path, JsonParser parser)
+            throws IOException {
+        switch (path) {
+            case "id":
+                repo.setId(parser.getValueAsInt());
+                break;
+            case "name":
+                repo.setName(parser.getText());
+                break;
+            case "owner.login":
+                repo.setOwner(parser.getText());
+                break;
+            case "private":
+                repo.setVisibilityPrivate(parser.getValueAsBoolean());
+                break;
+            case "size":
+                repo.setSize(parser.getValueAsLong()); // already in KB
+                break;
+            case "default_branch":
+                repo.setDefaultBranch(parser.getValueAsString());
+                break;
+            case "pushed_at":
+                repo.setPushedAt(RepositoryListParser.readTime(parser));
+                break;
+            case "archived":
+                repo.setArchived(parser.getValueAsBoolean());
+                break;
+            case "fork":
+                repo.setFork(parser.getValueAsBoolean());
+                break;
+            default:
+                break;
         }
+    }
 
-        return CompositeFuture.all(futures)
-                .onFailure(err -> logger.error(err.getMessage()))
-                .compose(compositeFuture -> {
-                    logger.info("Successfully get all repositories from " + getPlatform());
-                    return Future.succeededFuture(repos);
-                });
+    /**
+     * GitHub signs the webhook body with HMAC-SHA256 of the secret,
+     * in the header "X-Hub-Signature-256" as "sha256={hex}".
+     */
+    @Override
+    public boolean verifyWebhook(MultiMap headers, Buffer body, String secret) {
+        String signature = headers.get("X-Hub-Signature-256");
+        if (signature == null || !signature.startsWith("sha256=")) {
+            return false;
+        }
+
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+            byte[] digest = mac.doFinal(body.getBytes());
+
+            StringBuilder expected = new StringBuilder("sha256=");
+            for (byte b : digest) {
+                expected.append(String.format("%02x", b));
+            }
+            return MessageDigest.isEqual(expected.toString().getBytes(StandardCharsets.UTF_8),
+                    signature.toLowerCase(Locale.ROOT).getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            logger.error("Fail to verify webhook signature: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * The "push" event carries the repository in "repository".
+     */
+    @Override
+    public Repository parsePushEvent(MultiMap headers, JsonObject payload) {
+        if (!"push".equals(headers.get("X-GitHub-Event"))) {
+            return null;
+        }
+
+        JsonObject project = payload.getJsonObject("repository");
+        JsonObject owner = project.getJsonObject("owner");
+        Repository repo = new Repository();
+        repo.setId(project.getInteger("id"));
+        repo.setName(project.getString("name"));
+        repo.setOwner(owner.getString("login", owner.getString("name")));
+        repo.setVisibilityPrivate(project.getBoolean("private", false));
+        repo.setSize(project.getLong("size", 0L));
+        return repo;
     }
 
     /**
@@ -277,6 +482,6 @@ public class GitHubPlatform extends AbstractOnlinePlatform {
      */
     @Override
     public String getRepositoryHttpsUrl(Repository repo) {
-        return "https://github.com/" + repo.getOwner() + "/" + repo.getName() + ".git";
+        return getGitUrl() + "/" + repo.getOwner() + "/" + repo.getName() + ".git";
     }
 }
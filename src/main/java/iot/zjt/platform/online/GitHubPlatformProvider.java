@@ -0,0 +1,26 @@
+package iot.zjt.platform.online;
+
+import io.vertx.core.Vertx;
+import iot.zjt.platform.AbstractOnlinePlatform;
+import iot.zjt.platform.PlatformClientOptions;
+import iot.zjt.platform.PlatformProvider;
+import iot.zjt.platform.PlatformUser;
+
+/**
+ * Provider of {@link GitHubPlatform}, as type "github".
+ *
+ * @author Mr Dk.
+ * @since 2021/01/26
+ */
+public class GitHubPlatformProvider implements PlatformProvider {
+
+    @Override
+    public String getType() {
+        return "github";
+    }
+
+    @Override
+    public AbstractOnlinePlatform create(Vertx vertx, PlatformUser user, PlatformClientOptions clientOptions) {
+        return new GitHubPlatform(vertx, user, clientOptions);
+    }
+}
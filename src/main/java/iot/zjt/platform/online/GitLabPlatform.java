@@ -1,18 +1,26 @@
 package iot.zjt.platform.online;
 
-import io.vertx.core.CompositeFuture;
+import com.fasterxml.jackson.core.JsonParser;
 import io.vertx.core.Future;
 import io.vertx.core.MultiMap;
 import io.vertx.core.Vertx;
-import io.vertx.core.json.JsonArray;
+import io.vertx.core.buffer.Buffer;
 import io.vertx.core.json.JsonObject;
-import io.vertx.ext.web.client.WebClient;
+import io.vertx.ext.web.client.HttpRequest;
+import io.vertx.ext.web.codec.BodyCodec;
 import iot.zjt.Repository;
 import iot.zjt.platform.AbstractOnlinePlatform;
+import iot.zjt.platform.PlatformClientOptions;
 import iot.zjt.platform.PlatformUser;
+import iot.zjt.platform.RepositoryListParser;
+import iot.zjt.platform.RepositoryPage;
+import iot.zjt.platform.RequestScheduler.Lane;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -26,15 +34,17 @@ public class GitLabPlatform extends AbstractOnlinePlatform {
 
     private final static Logger logger = LogManager.getLogger(GitLabPlatform.class);
 
-    private final int approximateRepoCount;
+    public static final String DEFAULT_API_URL = "https://gitlab.com/api/v4";
+    public static final String DEFAULT_GIT_URL = "https://gitlab.com";
 
     public GitLabPlatform(final Vertx vertx, final PlatformUser user) {
-        this(vertx, user, 100);
+        this(vertx, user, new PlatformClientOptions());
     }
 
-    public GitLabPlatform(final Vertx vertx, final PlatformUser user, final int approximateRepoCount) {
-        super(vertx, user);
-        this.approximateRepoCount = approximateRepoCount;
+    public GitLabPlatform(final Vertx vertx, final PlatformUser user, final PlatformClientOptions clientOptions) {
+        super(vertx, user, clientOptions);
+        setApiUrl(DEFAULT_API_URL);
+        setGitUrl(DEFAULT_GIT_URL);
     }
 
     /**
@@ -48,15 +58,14 @@ public class GitLabPlatform extends AbstractOnlinePlatform {
     @Override
     public Future<Void> createRepository(Repository repo) {
         logger.warn("Trying to create repository [" + repo.getName() + "] on " + getPlatform());
-        WebClient client = WebClient.create(getVertx());
-
-        return client
-                .postAbs("https://gitlab.com/api/v4/projects")
+        return schedule(Lane.MUTATION, () -> getWebClient()
+                .postAbs(getApiUrl() + "/projects")
+                .timeout(getRequestTimeoutMs())
                 .bearerTokenAuthentication(getUser().getToken())
                 .sendForm(MultiMap.caseInsensitiveMultiMap()
                         .set("name", repo.getName())
                         .set("visibility", repo.getVisibilityPrivate() ? "private" : "public")
-                )
+                ))
                 .onFailure(err -> {
                     // network failure.
                     logger.error(new StringBuilder()
@@ -99,13 +108,12 @@ public class GitLabPlatform extends AbstractOnlinePlatform {
     @Override
     public Future<Void> deleteRepository(Repository repo) {
         logger.warn("Trying to delete repository [" + repo.getName() + "] on " + getPlatform());
-        WebClient client = WebClient.create(getVertx());
-
-        return client
-                .deleteAbs("https://gitlab.com/api/v4/projects/" +
+        return schedule(Lane.MUTATION, () -> getWebClient()
+                .deleteAbs(getApiUrl() + "/projects/" +
                         repo.getOwner() + "%2F" + repo.getName())
+                .timeout(getRequestTimeoutMs())
                 .bearerTokenAuthentication(getUser().getToken())
-                .send()
+                .send())
                 .onFailure(err -> {
                     // network failure.
                     logger.error(new StringBuilder()
@@ -135,18 +143,17 @@ public class GitLabPlatform extends AbstractOnlinePlatform {
     @Override
     public Future<Void> updateRepository(Repository repo) {
         logger.warn("Trying to update repository [" + repo.getName() + "] on " + getPlatform());
-        WebClient client = WebClient.create(getVertx());
-
         MultiMap form = MultiMap.caseInsensitiveMultiMap();
         form.set("visibility", repo.getVisibilityPrivate() ? "private" : "public");
 
-        return client
-                .putAbs("https://gitlab.com/api/v4/projects/" +
+        return schedule(Lane.MUTATION, () -> getWebClient()
+                .putAbs(getApiUrl() + "/projects/" +
                         repo.getOwner() + "%2F" + repo.getName())
+                .timeout(getRequestTimeoutMs())
                 .bearerTokenAuthentication(getUser().getToken())
                 .sendForm(MultiMap.caseInsensitiveMultiMap()
                         .set("visibility", repo.getVisibilityPrivate() ? "private" : "public")
-                )
+                ))
                 .onFailure(err -> {
                     // network failure.
                     logger.error(new StringBuilder()
@@ -181,76 +188,157 @@ public class GitLabPlatform extends AbstractOnlinePlatform {
      * To get all GitLab repositories of a user through GitLab API.
      * The end point is "https://gitlab.com/api/v4/users/:user_id/projects"
      * with GET method. 200 should be returned.
+     * Pages are followed by "X-Next-Page" and "X-Total-Pages" response headers.
      *
      * @param includePrivate Whether or not to get private repositories.
      * @return The future object containing all repository information.
      */
     @Override
-    @SuppressWarnings("rawtypes")
     public Future<List<Repository>> getRepositories(boolean includePrivate) {
         logger.warn("Trying to get repositories from " + getPlatform());
 
+        return fetchAllPages(page -> getRepositoryPage(page, includePrivate))
+                .onFailure(err -> logger.error(err.getMessage()))
+                .compose(repos -> {
+                    logger.info("Successfully get all repositories from " + getPlatform());
+                    return Future.succeededFuture(repos);
+                });
+    }
+
+    private Future<RepositoryPage> getRepositoryPage(int page, boolean includePrivate) {
+        logger.warn("Fetching the " + page + "(-th) page from " + getPlatform());
+
         List<Repository> repos = new ArrayList<>();
-        List<Future> futures = new ArrayList<>();
-        WebClient client = WebClient.create(getVertx());
+        String cacheKey = "repos?page=" + page + "&private=" + includePrivate;
 
-        for (int page = 1; page <= Math.ceil(this.approximateRepoCount / 20d); page++) {
-            logger.warn("Fetching the " + page + "(-th) page from " + getPlatform());
-            Future<Void> future = client
-                    .getAbs("https://gitlab.com/api/v4/users/" + getUser().getUsername() + "/projects")
+        return getCachedResponse(cacheKey).compose(cached -> schedule(Lane.LISTING, () -> {
+            repos.clear(); // parsed again on retry.
+            HttpRequest<Void> request = getWebClient()
+                    .getAbs(getApiUrl() + "/users/" + getUser().getUsername() + "/projects")
+                    .timeout(getRequestTimeoutMs())
                     .bearerTokenAuthentication(getUser().getToken())
                     .setQueryParam("page", Integer.toString(page))
-                    .setQueryParam("per_page", "20") // GitLab default page size
-                    .send()
-                    .onFailure(err -> {
-                        // network failure.
-                        logger.error(new StringBuilder()
-                                .append(getPlatform())
-                                .append(" responses: ")
-                                .append(err.getMessage())
-                        );
-                    })
-                    .compose(response -> {
-                        // network success, but the result is unknown.
-                        JsonArray body = response.bodyAsJsonArray();
-                        if (body == null) {
-                            return Future.failedFuture(getPlatform() +
-                                    "responses with empty response body.");
-                        }
-
-                        String log = getPlatform() + " responses " + response.statusCode();
-
-                        if (response.statusCode() != 200) {
-                            logger.error(log);
-                            return Future.failedFuture(log);
-                        }
-
-                        // logger.info(log);
-
-                        for (int i = 0; i < body.size(); i++) {
-                            JsonObject gitlabRepo = body.getJsonObject(i);
-                            Repository repo = new Repository();
-                            repo.setId(gitlabRepo.getInteger("id"));
-                            repo.setName(gitlabRepo.getString("name"));
-                            repo.setOwner(gitlabRepo.getJsonObject("owner").getString("username"));
-                            repo.setVisibilityPrivate(gitlabRepo.getString("visibility").equals("private"));
-
-                            if (includePrivate || !repo.getVisibilityPrivate()) {
-                                repos.add(repo);
-                            }
-                        }
-
-                        return Future.succeededFuture();
-                    });
-            futures.add(future);
+                    .setQueryParam("per_page", "100") // GitLab maximum
+                    .setQueryParam("statistics", "true") // for repository size
+                    .as(BodyCodec.pipe(new RepositoryListParser(GitLabPlatform::readRepositoryField, repos::add)));
+            return cached == null ? request.send() : cached.addConditionalHeaders(request).send();
+        })
+                .onFailure(err -> {
+                    // network failure.
+                    logger.error(new StringBuilder()
+                            .append(getPlatform())
+                            .append(" responses: ")
+                            .append(err.getMessage())
+                    );
+                })
+                .compose(response -> {
+                    // network success, but the result is unknown.
+                    String log = getPlatform() + " responses " + response.statusCode();
+
+                    if (response.statusCode() == 304 && cached != null) {
+                        logger.info(log + ", the " + page + "(-th) page is not modified");
+                        return Future.succeededFuture(RepositoryPage.fromJson(cached.getValue())
+                                .notModified(page, response.getHeader("X-Next-Page") != null,
+                                        parsePageHeader(response.getHeader("X-Next-Page")),
+                                        parsePageHeader(response.getHeader("X-Total-Pages"))));
+                    }
+                    if (response.statusCode() != 200) {
+                        logger.error(log);
+                        return Future.failedFuture(log);
+                    }
+
+                    // both headers are empty or absent on the last page,
+                    // and "X-Total-Pages" is omitted for very large listings.
+                    RepositoryPage result = new RepositoryPage(repos,
+                            parsePageHeader(response.getHeader("X-Next-Page")),
+                            parsePageHeader(response.getHeader("X-Total-Pages")));
+                    if (getResponseCache() != null) {
+                        getResponseCache().put(cacheKey, response, result.toJson());
+                    }
+                    return Future.succeededFuture(result);
+                })).map(result -> result.filter(includePrivate));
+    }
+
+    /**
+     * Read the fields of a project object in GitLab API response.
+     */
+    private static void readRepositoryField(Repository repo, String path, JsonParser parser)
+            throws IOException {
+        switch (path) {
+            case "id":
+                repo.setId(parser.getValueAsInt());
+                break;
+            case "name":
+                repo.setName(parser.getText());
+                break;
+            case "owner.username":
+                repo.setOwner(parser.getText());
+                break;
+            case "visibility":
+                repo.setVisibilityPrivate("private".equals(parser.getText()));
+                break;
+            case "statistics.repository_size":
+                repo.setSize(parser.getValueAsLong() / 1024); // GitLab reports size in bytes.
+                break;
+            case "default_branch":
+                repo.setDefaultBranch(parser.getValueAsString());
+                break;
+            case "last_activity_at":
+                // GitLab has no push time, but pushes are activities.
+                repo.setPushedAt(RepositoryListParser.readTime(parser));
+                break;
+            case "archived":
+                repo.setArchived(parser.getValueAsBoolean());
+                break;
+            case "forked_from_project.id":
+                repo.setFork(true); // only present on forks.
+                break;
+            default:
+                break;
         }
+    }
 
-        return CompositeFuture.all(futures)
-                .onFailure(err -> logger.error(err.getMessage()))
-                .compose(compositeFuture -> {
-                    logger.info("Successfully get all repositories from " + getPlatform());
-                    return Future.succeededFuture(repos);
-                });
+    private static int parsePageHeader(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * GitLab sends the secret token of the webhook as it is,
+     * in the header "X-Gitlab-Token".
+     */
+    @Override
+    public boolean verifyWebhook(MultiMap headers, Buffer body, String secret) {
+        String token = headers.get("X-Gitlab-Token");
+        return token != null && MessageDigest.isEqual(
+                secret.getBytes(StandardCharsets.UTF_8), token.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Both "Push Hook" and "Tag Push Hook" carry the repository in "project",
+     * whose owner is the namespace in "path_with_namespace".
+     */
+    @Override
+    public Repository parsePushEvent(MultiMap headers, JsonObject payload) {
+        String event = headers.get("X-Gitlab-Event");
+        if (!"Push Hook".equals(event) && !"Tag Push Hook".equals(event)) {
+            return null;
+        }
+
+        JsonObject project = payload.getJsonObject("project");
+        String path = project.getString("path_with_namespace");
+        Repository repo = new Repository();
+        repo.setId(payload.getInteger("project_id", project.getInteger("id", 0)));
+        repo.setName(project.getString("name"));
+        repo.setOwner(path.substring(0, path.lastIndexOf('/')));
+        repo.setVisibilityPrivate(project.getInteger("visibility_level", 0) == 0); // 0 is private.
+        return repo;
     }
 
     /**
@@ -263,6 +351,18 @@ public class GitLabPlatform extends AbstractOnlinePlatform {
         return "GitLab";
     }
 
+    /**
+     * GitLab rewrites '.' in repository names to '-' in project paths,
+     * as {@link #getRepositoryHttpsUrl(Repository)} does.
+     *
+     * @param name The repository name.
+     * @return The normalized key.
+     */
+    @Override
+    public String getRepositoryKey(String name) {
+        return super.getRepositoryKey(name.replace('.', '-'));
+    }
+
     /**
      * Return the HTTPS URL for Git remote operation.
      *
@@ -271,7 +371,7 @@ public class GitLabPlatform extends AbstractOnlinePlatform {
      */
     @Override
     public String getRepositoryHttpsUrl(Repository repo) {
-        return "https://gitlab.com/" + repo.getOwner() + "/" +
+        return getGitUrl() + "/" + repo.getOwner() + "/" +
                 repo.getName().replace('.', '-') +
                 ".git";
     }
@@ -0,0 +1,26 @@
+package iot.zjt.platform.online;
+
+import io.vertx.core.Vertx;
+import iot.zjt.platform.AbstractOnlinePlatform;
+import iot.zjt.platform.PlatformClientOptions;
+import iot.zjt.platform.PlatformProvider;
+import iot.zjt.platform.PlatformUser;
+
+/**
+ * Provider of {@link GitLabPlatform}, as type "gitlab".
+ *
+ * @author Mr Dk.
+ * @since 2021/01/26
+ */
+public class GitLabPlatformProvider implements PlatformProvider {
+
+    @Override
+    public String getType() {
+        return "gitlab";
+    }
+
+    @Override
+    public AbstractOnlinePlatform create(Vertx vertx, PlatformUser user, PlatformClientOptions clientOptions) {
+        return new GitLabPlatform(vertx, user, clientOptions);
+    }
+}
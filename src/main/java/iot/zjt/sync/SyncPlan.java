@@ -0,0 +1,282 @@
+package iot.zjt.sync;
+
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import iot.zjt.mirror.MirrorScheduler;
+import iot.zjt.mirror.MirrorSummary;
+import iot.zjt.mirror.RefFilter;
+import iot.zjt.platform.AbstractOnlinePlatform;
+import iot.zjt.platform.PlatformClientOptions;
+import iot.zjt.platform.PlatformRegistry;
+import iot.zjt.platform.PlatformUser;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Named platform instances and the syncs between them, all run by one
+ * process on shared worker pools. Declared by flat configurations:
+ * <pre>
+ * platforms=github,work
+ * platform.github.type=github
+ * platform.github.username=tom
+ * platform.github.token=xxx
+ * platform.work.type=gitlab
+ * platform.work.api-url=https://git.example.com/api/v4
+ * platform.work.git-url=https://git.example.com
+ * platform.work.max-in-flight=4
+ * platform.work.max-jobs=2
+ *
+ * syncs=backup
+ * sync.backup.source=github
+ * sync.backup.targets=work
+ * sync.backup.include-private=true
+ * sync.backup.refs=heads-and-tags
+ * sync.backup.refs.exclude=refs/heads/dependabot/**
+ * </pre>
+ * The type of an instance defaults to its name, and keys of an instance
+ * fall back to "{name}.{key}", so that "github.username" still works.
+ * Without "platforms", GitHub is mirrored to GitLab as before. Refs of a
+ * sync fall back to "mirror.refs*", and default to branches and tags.
+ *
+ * @author Mr Dk.
+ * @since 2021/01/26
+ */
+public class SyncPlan {
+
+    private final static Logger logger = LogManager.getLogger(SyncPlan.class);
+
+    /**
+     * Instances by name, each with its own API client and rate limits.
+     */
+    private final Map<String, AbstractOnlinePlatform> platforms = new LinkedHashMap<>();
+
+    /**
+     * Git jobs allowed on the host of each instance, if limited.
+     */
+    private final Map<String, Integer> maxJobs = new LinkedHashMap<>();
+
+    private final List<Sync> syncs = new ArrayList<>();
+
+    /**
+     * Mirroring from a source instance to target instances.
+     */
+    public static class Sync {
+        private final String name;
+        private final String source;
+        private final List<String> targets;
+        private final boolean includePrivate;
+        private final RefFilter refFilter;
+
+        public Sync(String name, String source, List<String> targets, boolean includePrivate) {
+            this(name, source, targets, includePrivate, null);
+        }
+
+        /**
+         * @param refFilter The refs to be mirrored, or null for those of the scheduler options.
+         */
+        public Sync(String name, String source, List<String> targets, boolean includePrivate,
+                    RefFilter refFilter) {
+            this.name = name;
+            this.source = source;
+            this.targets = targets;
+            this.includePrivate = includePrivate;
+            this.refFilter = refFilter;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getSource() {
+            return source;
+        }
+
+        public List<String> getTargets() {
+            return targets;
+        }
+
+        public boolean isIncludePrivate() {
+            return includePrivate;
+        }
+
+        public RefFilter getRefFilter() {
+            return refFilter;
+        }
+    }
+
+    public SyncPlan() {
+    }
+
+    /**
+     * Create the platform instances and syncs declared by configurations.
+     *
+     * @param vertx    The Vert.x instance shared by all platforms.
+     * @param config   The configuration object.
+     * @param registry The platform types available.
+     * @return The plan.
+     */
+    public static SyncPlan fromConfig(Vertx vertx, JsonObject config, PlatformRegistry registry) {
+        SyncPlan plan = new SyncPlan();
+        boolean legacy = !config.containsKey("platforms");
+
+        for (String name : getList(config, "platforms", "github,gitlab")) {
+            PlatformClientOptions clientOptions = PlatformClientOptions.fromConfig(config);
+            String maxInFlight = getInstanceValue(config, name, "max-in-flight");
+            if (maxInFlight != null) {
+                clientOptions.setMaxInFlightRequests(Integer.parseInt(maxInFlight));
+            }
+
+            String type = getInstanceValue(config, name, "type");
+            AbstractOnlinePlatform platform = registry.create(type == null ? name : type, vertx,
+                    new PlatformUser(getInstanceValue(config, name, "username"),
+                            getInstanceValue(config, name, "token")),
+                    clientOptions);
+            String apiUrl = getInstanceValue(config, name, "api-url");
+            if (apiUrl != null) {
+                platform.setApiUrl(apiUrl);
+            }
+            String gitUrl = getInstanceValue(config, name, "git-url");
+            if (gitUrl != null) {
+                platform.setGitUrl(gitUrl);
+            }
+
+            String jobs = getInstanceValue(config, name, "max-jobs");
+            plan.addPlatform(name, platform, jobs == null ? 0 : Integer.parseInt(jobs));
+        }
+
+        List<String> names = getList(config, "syncs", legacy ? "default" : "");
+        if (names.isEmpty()) {
+            throw new IllegalArgumentException("no sync declared by \"syncs\"");
+        }
+        RefFilter defaultFilter = RefFilter.fromConfig(config, "mirror.", RefFilter.headsAndTags());
+        for (String name : names) {
+            String prefix = "sync." + name + ".";
+            String source = config.getString(prefix + "source", legacy ? "github" : null);
+            List<String> targets = getList(config, prefix + "targets", legacy ? "gitlab" : "");
+            boolean includePrivate = Boolean.parseBoolean(
+                    config.getValue(prefix + "include-private", true).toString().trim());
+            plan.addSync(new Sync(name, source, targets, includePrivate,
+                    RefFilter.fromConfig(config, prefix, defaultFilter)));
+        }
+        return plan;
+    }
+
+    private static String getInstanceValue(JsonObject config, String name, String key) {
+        Object value = config.getValue("platform." + name + "." + key, config.getValue(name + "." + key));
+        return value == null || value.toString().trim().isEmpty() ? null : value.toString().trim();
+    }
+
+    private static List<String> getList(JsonObject config, String key, String defaultValue) {
+        return Arrays.stream(config.getValue(key, defaultValue).toString().split(","))
+                .map(String::trim)
+                .filter(item -> !item.isEmpty())
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @param name     The unique name of the instance.
+     * @param platform The platform.
+     * @param jobs     Git jobs allowed on its host at the same time, 0 for the scheduler defaults.
+     * @return The plan itself.
+     */
+    public SyncPlan addPlatform(String name, AbstractOnlinePlatform platform, int jobs) {
+        if (platforms.containsKey(name)) {
+            throw new IllegalArgumentException("duplicate platform instance: " + name);
+        }
+        if (jobs < 0) {
+            throw new IllegalArgumentException("jobs of platform " + name + " must not be negative");
+        }
+        platforms.put(name, platform);
+        if (jobs > 0) {
+            maxJobs.put(name, jobs);
+        }
+        return this;
+    }
+
+    public SyncPlan addSync(Sync sync) {
+        if (sync.getSource() == null || !platforms.containsKey(sync.getSource())) {
+            throw new IllegalArgumentException("unknown source of sync " + sync.getName() + ": " + sync.getSource());
+        }
+        if (sync.getTargets().isEmpty()) {
+            throw new IllegalArgumentException("no target of sync " + sync.getName());
+        }
+        for (String target : sync.getTargets()) {
+            if (!platforms.containsKey(target) || target.equals(sync.getSource())) {
+                throw new IllegalArgumentException("invalid target of sync " + sync.getName() + ": " + target);
+            }
+        }
+        syncs.add(sync);
+        return this;
+    }
+
+    public AbstractOnlinePlatform getPlatform(String name) {
+        return platforms.get(name);
+    }
+
+    public List<Sync> getSyncs() {
+        return syncs;
+    }
+
+    /**
+     * Run all syncs at the same time on the scheduler. Git jobs of all syncs
+     * share its worker pool, and API requests to an instance share its client.
+     *
+     * @param scheduler The mirror scheduler.
+     * @return The future of the summaries of each target, by sync name.
+     * Failed if any sync fails before mirroring, after all syncs complete.
+     */
+    @SuppressWarnings("rawtypes")
+    public Future<Map<String, List<MirrorSummary>>> run(MirrorScheduler scheduler) {
+        for (Map.Entry<String, Integer> limit : maxJobs.entrySet()) {
+            String gitUrl = platforms.get(limit.getKey()).getGitUrl();
+            if (gitUrl != null) {
+                scheduler.limitHost(URI.create(gitUrl).getHost(), limit.getValue());
+            }
+        }
+
+        List<Future> futures = new ArrayList<>();
+        for (Sync sync : syncs) {
+            AbstractOnlinePlatform source = platforms.get(sync.getSource());
+            List<AbstractOnlinePlatform> targets = sync.getTargets().stream()
+                    .map(platforms::get)
+                    .collect(Collectors.toList());
+            RefFilter refFilter = sync.getRefFilter() != null ? sync.getRefFilter() :
+                    scheduler.getOptions().getRefFilter();
+            logger.warn("Sync [" + sync.getName() + "]: from " + sync.getSource() + " to " + sync.getTargets() +
+                    ", refs " + refFilter);
+
+            // the fan-out is only needed for more than one target.
+            Future<List<MirrorSummary>> future = targets.size() == 1 ?
+                    source.mirrorAllRepoTo(targets.get(0), sync.isIncludePrivate(), scheduler, refFilter)
+                            .map(Collections::singletonList) :
+                    source.mirrorAllRepoTo(targets, sync.isIncludePrivate(), scheduler, refFilter);
+            futures.add(future.onFailure(err ->
+                    logger.error("Sync [" + sync.getName() + "] failed: " + err.getMessage())));
+        }
+
+        return CompositeFuture.join(futures).map(all -> {
+            Map<String, List<MirrorSummary>> summaries = new LinkedHashMap<>();
+            for (int i = 0; i < syncs.size(); i++) {
+                summaries.put(syncs.get(i).getName(), all.resultAt(i));
+            }
+            return summaries;
+        });
+    }
+
+    public void close() {
+        for (AbstractOnlinePlatform platform : platforms.values()) {
+            platform.close();
+        }
+    }
+}
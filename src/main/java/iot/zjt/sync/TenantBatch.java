@@ -0,0 +1,278 @@
+package iot.zjt.sync;
+
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import iot.zjt.mirror.MirrorScheduler;
+import iot.zjt.mirror.MirrorSummary;
+import iot.zjt.mirror.TenantQuota;
+import iot.zjt.platform.AbstractOnlinePlatform;
+import iot.zjt.platform.PlatformClientOptions;
+import iot.zjt.platform.PlatformRegistry;
+import iot.zjt.platform.PlatformUser;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Mirror the accounts of many tenants, each from a source account to a
+ * target account, on one shared {@link MirrorScheduler}. Git jobs of the
+ * tenants share the worker pool fairly, limited by the quota of each
+ * tenant, and each tenant gets its own result. Declared by flat configurations:
+ * <pre>
+ * tenants=alice,bob
+ * tenants.source=github
+ * tenants.target=gitlab
+ * tenants.target-api-url=https://git.example.com/api/v4
+ * tenants.target-git-url=https://git.example.com
+ * tenants.max-jobs=2
+ * tenant.alice.source-username=alice
+ * tenant.alice.source-token=xxx
+ * tenant.alice.target-username=alice
+ * tenant.alice.target-token=xxx
+ * tenant.alice.max-kb-per-second=1024
+ * tenant.alice.include-private=false
+ * </pre>
+ * Quotas of a tenant fall back to the "tenants.*" ones, and default to unlimited.
+ *
+ * @author Mr Dk.
+ * @since 2021/01/27
+ */
+public class TenantBatch {
+
+    private final static Logger logger = LogManager.getLogger(TenantBatch.class);
+
+    /**
+     * Create the source platform of a tenant from its account.
+     */
+    private final Function<PlatformUser, AbstractOnlinePlatform> sourceFactory;
+
+    /**
+     * Create the target platform of a tenant from its account.
+     */
+    private final Function<PlatformUser, AbstractOnlinePlatform> targetFactory;
+
+    private final Map<String, Tenant> tenants = new LinkedHashMap<>();
+
+    /**
+     * Accounts and limits of a tenant.
+     */
+    public static class Tenant {
+        private final String name;
+        private final PlatformUser source;
+        private final PlatformUser target;
+        private final TenantQuota quota;
+        private final boolean includePrivate;
+
+        /**
+         * @param quota Limits of the tenant, null if unlimited.
+         */
+        public Tenant(String name, PlatformUser source, PlatformUser target,
+                      TenantQuota quota, boolean includePrivate) {
+            this.name = name;
+            this.source = source;
+            this.target = target;
+            this.quota = quota;
+            this.includePrivate = includePrivate;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public PlatformUser getSource() {
+            return source;
+        }
+
+        public PlatformUser getTarget() {
+            return target;
+        }
+
+        public TenantQuota getQuota() {
+            return quota;
+        }
+
+        public boolean isIncludePrivate() {
+            return includePrivate;
+        }
+    }
+
+    /**
+     * Result of a tenant: a summary if mirroring was done, or the cause
+     * if it failed before mirroring, e.g. with an invalid token.
+     */
+    public static class TenantResult {
+        private final String tenant;
+        private final MirrorSummary summary;
+        private final Throwable cause;
+
+        public TenantResult(String tenant, MirrorSummary summary, Throwable cause) {
+            this.tenant = tenant;
+            this.summary = summary;
+            this.cause = cause;
+        }
+
+        public String getTenant() {
+            return tenant;
+        }
+
+        public MirrorSummary getSummary() {
+            return summary;
+        }
+
+        public Throwable getCause() {
+            return cause;
+        }
+
+        /**
+         * @return Whether every repository of the tenant is mirrored or skipped.
+         */
+        public boolean isSucceeded() {
+            return summary != null && summary.getFailedCount() == 0 && summary.getCancelledCount() == 0;
+        }
+
+        @Override
+        public String toString() {
+            return tenant + ": " + (summary != null ? summary : "failed, " + cause.getMessage());
+        }
+    }
+
+    public TenantBatch(Function<PlatformUser, AbstractOnlinePlatform> sourceFactory,
+                       Function<PlatformUser, AbstractOnlinePlatform> targetFactory) {
+        this.sourceFactory = sourceFactory;
+        this.targetFactory = targetFactory;
+    }
+
+    /**
+     * Create the batch declared by configurations.
+     *
+     * @param vertx    The Vert.x instance shared by all platforms.
+     * @param config   The configuration object.
+     * @param registry The platform types available.
+     * @return The batch.
+     */
+    public static TenantBatch fromConfig(Vertx vertx, JsonObject config, PlatformRegistry registry) {
+        PlatformClientOptions clientOptions = PlatformClientOptions.fromConfig(config);
+        String sourceType = getValue(config, "tenants.source", "github");
+        String targetType = getValue(config, "tenants.target", "gitlab");
+        if (!registry.getTypes().contains(sourceType) || !registry.getTypes().contains(targetType)) {
+            throw new IllegalArgumentException("unknown platform type of tenants: " +
+                    sourceType + ", " + targetType);
+        }
+
+        TenantBatch batch = new TenantBatch(
+                user -> withUrls(registry.create(sourceType, vertx, user, clientOptions), config, "source"),
+                user -> withUrls(registry.create(targetType, vertx, user, clientOptions), config, "target"));
+
+        List<String> names = Arrays.stream(getValue(config, "tenants", "").split(","))
+                .map(String::trim)
+                .filter(name -> !name.isEmpty())
+                .collect(Collectors.toList());
+        if (names.isEmpty()) {
+            throw new IllegalArgumentException("no tenant declared by \"tenants\"");
+        }
+        for (String name : names) {
+            String prefix = "tenant." + name + ".";
+            int maxJobs = Integer.parseInt(getValue(config, prefix + "max-jobs",
+                    getValue(config, "tenants.max-jobs", "0")));
+            long maxKbPerSecond = Long.parseLong(getValue(config, prefix + "max-kb-per-second",
+                    getValue(config, "tenants.max-kb-per-second", "0")));
+            batch.addTenant(new Tenant(name,
+                    new PlatformUser(getValue(config, prefix + "source-username", null),
+                            getValue(config, prefix + "source-token", null)),
+                    new PlatformUser(getValue(config, prefix + "target-username", null),
+                            getValue(config, prefix + "target-token", null)),
+                    maxJobs == 0 && maxKbPerSecond == 0 ? null : new TenantQuota(maxJobs, maxKbPerSecond * 1024),
+                    Boolean.parseBoolean(getValue(config, prefix + "include-private", "true"))));
+        }
+        return batch;
+    }
+
+    private static AbstractOnlinePlatform withUrls(AbstractOnlinePlatform platform, JsonObject config, String side) {
+        String apiUrl = getValue(config, "tenants." + side + "-api-url", null);
+        if (apiUrl != null) {
+            platform.setApiUrl(apiUrl);
+        }
+        String gitUrl = getValue(config, "tenants." + side + "-git-url", null);
+        if (gitUrl != null) {
+            platform.setGitUrl(gitUrl);
+        }
+        return platform;
+    }
+
+    private static String getValue(JsonObject config, String key, String defaultValue) {
+        Object value = config.getValue(key);
+        return value == null || value.toString().trim().isEmpty() ? defaultValue : value.toString().trim();
+    }
+
+    public TenantBatch addTenant(Tenant tenant) {
+        if (tenant.getName() == null || tenant.getName().isEmpty()) {
+            throw new IllegalArgumentException("tenant must have a name");
+        }
+        if (tenants.containsKey(tenant.getName())) {
+            throw new IllegalArgumentException("duplicate tenant: " + tenant.getName());
+        }
+        tenants.put(tenant.getName(), tenant);
+        return this;
+    }
+
+    public List<Tenant> getTenants() {
+        return new ArrayList<>(tenants.values());
+    }
+
+    /**
+     * Mirror all tenants at the same time on the scheduler. Platforms of
+     * a tenant are created for the run, and closed when it completes.
+     *
+     * @param scheduler The mirror scheduler shared by all tenants.
+     * @return The future of the result of each tenant, in the order
+     * the tenants are added, which never fails.
+     */
+    @SuppressWarnings("rawtypes")
+    public Future<List<TenantResult>> run(MirrorScheduler scheduler) {
+        List<Future> futures = new ArrayList<>();
+        for (Tenant tenant : tenants.values()) {
+            scheduler.setTenantQuota(tenant.getName(), tenant.getQuota());
+            futures.add(run(tenant, scheduler));
+        }
+
+        return CompositeFuture.all(futures).map(all -> {
+            List<TenantResult> results = new ArrayList<>();
+            for (int i = 0; i < all.size(); i++) {
+                results.add(all.resultAt(i));
+            }
+            return results;
+        });
+    }
+
+    private Future<TenantResult> run(Tenant tenant, MirrorScheduler scheduler) {
+        AbstractOnlinePlatform source;
+        AbstractOnlinePlatform target;
+        try {
+            source = sourceFactory.apply(tenant.getSource()).setTenant(tenant.getName());
+            target = targetFactory.apply(tenant.getTarget()).setTenant(tenant.getName());
+        } catch (RuntimeException e) {
+            logger.error("Tenant [" + tenant.getName() + "] failed: " + e.getMessage());
+            return Future.succeededFuture(new TenantResult(tenant.getName(), null, e));
+        }
+
+        return source.mirrorAllRepoTo(target, tenant.isIncludePrivate(), scheduler)
+                .map(summary -> new TenantResult(tenant.getName(), summary, null))
+                .otherwise(err -> {
+                    logger.error("Tenant [" + tenant.getName() + "] failed: " + err.getMessage());
+                    return new TenantResult(tenant.getName(), null, err);
+                })
+                .onComplete(done -> {
+                    source.close();
+                    target.close();
+                });
+    }
+}
@@ -0,0 +1,174 @@
+package iot.zjt.webhook;
+
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Options of the webhook daemon, loaded from "webhook.*" configurations.
+ *
+ * @author Mr Dk.
+ * @since 2021/01/20
+ */
+public class WebhookOptions {
+
+    public static final int DEFAULT_DEBOUNCE_MS = 5000;
+    public static final int DEFAULT_MAX_DELAY_MS = 60000;
+    public static final int DEFAULT_MAX_BODY_KB = 1024;
+
+    /**
+     * Port to receive webhooks on, 0 for a random one.
+     */
+    private int port = 0;
+
+    /**
+     * Path to receive webhooks on.
+     */
+    private String path = "/webhook";
+
+    /**
+     * Secret configured on the webhooks, null if none.
+     */
+    private String secret = null;
+
+    /**
+     * Whether requests are accepted unverified when there is no secret,
+     * otherwise the server refuses to start without one.
+     */
+    private boolean allowUnsigned = false;
+
+    /**
+     * Requests with a larger body are rejected with 413.
+     */
+    private int maxBodyKb = DEFAULT_MAX_BODY_KB;
+
+    /**
+     * A repository is mirrored after no push to it for this long,
+     * so that a burst of pushes is mirrored once.
+     */
+    private int debounceMs = DEFAULT_DEBOUNCE_MS;
+
+    /**
+     * A repository keeping being pushed to is mirrored at most this long
+     * after the first push of the burst.
+     */
+    private int maxDelayMs = DEFAULT_MAX_DELAY_MS;
+
+    /**
+     * Whether pushes to private repositories are mirrored, as the
+     * include-private setting of the sync served.
+     */
+    private boolean includePrivate = true;
+
+    public WebhookOptions() {
+    }
+
+    /**
+     * Load options from flat configurations like "webhook.port=8080".
+     * Missing keys fall back to defaults.
+     *
+     * @param config The configuration object.
+     * @return The options.
+     */
+    public static WebhookOptions fromConfig(JsonObject config) {
+        Object secret = config.getValue("webhook.secret");
+        return new WebhookOptions()
+                .setPort(getInt(config, "webhook.port", 0))
+                .setPath(config.getString("webhook.path", "/webhook"))
+                .setSecret(secret == null ? null : secret.toString())
+                .setAllowUnsigned(Boolean.parseBoolean(config.getValue("webhook.allow-unsigned", false).toString()))
+                .setMaxBodyKb(getInt(config, "webhook.max-body-kb", DEFAULT_MAX_BODY_KB))
+                .setDebounceMs(getInt(config, "webhook.debounce-ms", DEFAULT_DEBOUNCE_MS))
+                .setMaxDelayMs(getInt(config, "webhook.max-delay-ms", DEFAULT_MAX_DELAY_MS));
+    }
+
+    private static int getInt(JsonObject config, String key, int defaultValue) {
+        Object value = config.getValue(key);
+        return value == null ? defaultValue : Integer.parseInt(value.toString().trim());
+    }
+
+    public WebhookOptions setPort(int port) {
+        if (port < 0) {
+            throw new IllegalArgumentException("webhook port must not be negative");
+        }
+        this.port = port;
+        return this;
+    }
+
+    public WebhookOptions setPath(String path) {
+        if (path == null || !path.startsWith("/")) {
+            throw new IllegalArgumentException("webhook path must start with /");
+        }
+        this.path = path;
+        return this;
+    }
+
+    public WebhookOptions setSecret(String secret) {
+        this.secret = secret == null || secret.isEmpty() ? null : secret;
+        return this;
+    }
+
+    public WebhookOptions setAllowUnsigned(boolean allowUnsigned) {
+        this.allowUnsigned = allowUnsigned;
+        return this;
+    }
+
+    public WebhookOptions setMaxBodyKb(int maxBodyKb) {
+        if (maxBodyKb < 1) {
+            throw new IllegalArgumentException("max webhook body must be positive");
+        }
+        this.maxBodyKb = maxBodyKb;
+        return this;
+    }
+
+    public WebhookOptions setDebounceMs(int debounceMs) {
+        if (debounceMs < 0) {
+            throw new IllegalArgumentException("debounce must not be negative");
+        }
+        this.debounceMs = debounceMs;
+        return this;
+    }
+
+    public WebhookOptions setMaxDelayMs(int maxDelayMs) {
+        if (maxDelayMs < 0) {
+            throw new IllegalArgumentException("max delay must not be negative");
+        }
+        this.maxDelayMs = maxDelayMs;
+        return this;
+    }
+
+    public WebhookOptions setIncludePrivate(boolean includePrivate) {
+        this.includePrivate = includePrivate;
+        return this;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public String getSecret() {
+        return secret;
+    }
+
+    public boolean isAllowUnsigned() {
+        return allowUnsigned;
+    }
+
+    public int getMaxBodyKb() {
+        return maxBodyKb;
+    }
+
+    public int getDebounceMs() {
+        return debounceMs;
+    }
+
+    public int getMaxDelayMs() {
+        return maxDelayMs;
+    }
+
+    public boolean isIncludePrivate() {
+        return includePrivate;
+    }
+}
@@ -0,0 +1,242 @@
+package iot.zjt.webhook;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.JsonObject;
+import iot.zjt.Repository;
+import iot.zjt.mirror.MirrorScheduler;
+import iot.zjt.mirror.MirrorSummary;
+import iot.zjt.platform.AbstractOnlinePlatform;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Daemon receiving push webhooks of the source platform, and mirroring
+ * only the repository pushed to the target platform.
+ * <p>
+ * Pushes to the same repository are debounced: the repository is mirrored
+ * once the burst settles, and pushes arriving while it is being mirrored
+ * are coalesced into one more mirror afterwards.
+ *
+ * @author Mr Dk.
+ * @since 2021/01/20
+ */
+public class WebhookServer {
+
+    private final static Logger logger = LogManager.getLogger(WebhookServer.class);
+
+    private final Vertx vertx;
+    private final AbstractOnlinePlatform sourcePlatform;
+    private final AbstractOnlinePlatform targetPlatform;
+    private final MirrorScheduler scheduler;
+    private final WebhookOptions options;
+
+    /**
+     * Repositories pushed to and not mirrored yet, by repository key.
+     */
+    private final Map<String, PendingSync> pending = new HashMap<>();
+    private HttpServer server;
+
+    private static class PendingSync {
+        private Repository repo;
+        private long firstPushAt;
+        private long timerId = -1;
+        private boolean running;
+        private boolean dirty;
+    }
+
+    public WebhookServer(final Vertx vertx, AbstractOnlinePlatform sourcePlatform,
+                         AbstractOnlinePlatform targetPlatform, MirrorScheduler scheduler,
+                         WebhookOptions options) {
+        this.vertx = vertx;
+        this.sourcePlatform = sourcePlatform;
+        this.targetPlatform = targetPlatform;
+        this.scheduler = scheduler;
+        this.options = options;
+    }
+
+    /**
+     * Start receiving webhooks.
+     *
+     * @return The future of the listening server, failed if there is no
+     * secret and unsigned requests are not allowed.
+     */
+    public Future<HttpServer> start() {
+        if (options.getSecret() == null) {
+            if (!options.isAllowUnsigned()) {
+                return Future.failedFuture(new IllegalStateException(
+                        "webhook.secret is not set, set webhook.allow-unsigned=true to accept unsigned requests"));
+            }
+            logger.warn("No webhook secret configured, requests are not verified.");
+        }
+
+        return vertx.createHttpServer()
+                .requestHandler(this::handle)
+                .listen(options.getPort())
+                .onSuccess(server -> {
+                    this.server = server;
+                    logger.info("Receiving " + sourcePlatform.getPlatform() + " webhooks on http://localhost:" +
+                            server.actualPort() + options.getPath());
+                });
+    }
+
+    public Future<Void> close() {
+        synchronized (this) {
+            for (PendingSync sync : pending.values()) {
+                if (sync.timerId >= 0) {
+                    vertx.cancelTimer(sync.timerId);
+                }
+            }
+            pending.clear();
+        }
+        return server == null ? Future.succeededFuture() : server.close();
+    }
+
+    private void handle(HttpServerRequest request) {
+        if (!options.getPath().equals(request.path())) {
+            request.response().setStatusCode(404).end();
+            return;
+        }
+        if (request.method() != HttpMethod.POST) {
+            request.response().setStatusCode(405).end();
+            return;
+        }
+
+        // read the body up to the limit, and drop the rest of a larger one.
+        long maxBody = options.getMaxBodyKb() * 1024L;
+        Buffer body = Buffer.buffer();
+        AtomicBoolean tooLarge = new AtomicBoolean();
+        String length = request.getHeader(HttpHeaders.CONTENT_LENGTH);
+        if (length != null && length.matches("\\d{1,18}") && Long.parseLong(length) > maxBody) {
+            rejectTooLarge(request, tooLarge);
+        }
+        request.handler(chunk -> {
+            if (!tooLarge.get() && body.length() + chunk.length() > maxBody) {
+                rejectTooLarge(request, tooLarge);
+            }
+            if (!tooLarge.get()) {
+                body.appendBuffer(chunk);
+            }
+        });
+        request.endHandler(end -> {
+            if (tooLarge.get()) {
+                return;
+            }
+            if (options.getSecret() != null &&
+                    !sourcePlatform.verifyWebhook(request.headers(), body, options.getSecret())) {
+                logger.error("Rejected webhook with invalid signature from " + request.remoteAddress());
+                request.response().setStatusCode(401).end();
+                return;
+            }
+
+            Repository repo;
+            try {
+                repo = sourcePlatform.parsePushEvent(request.headers(), new JsonObject(body));
+            } catch (DecodeException | ClassCastException | NullPointerException e) {
+                logger.error("Rejected malformed webhook: " + e.getMessage());
+                request.response().setStatusCode(400).end();
+                return;
+            }
+
+            if (repo == null) {
+                // not a push, e.g. the ping sent when the webhook is added.
+                request.response().setStatusCode(204).end();
+                return;
+            }
+            if (!sourcePlatform.isOwnedByUser(repo.getOwner())) {
+                // e.g. an organization or instance webhook, pushing repositories not synced.
+                logger.warn("Rejected webhook for repository [" + repo.getOwner() + "/" + repo.getName() +
+                        "] not owned by the source account from " + request.remoteAddress());
+                request.response().setStatusCode(403).end();
+                return;
+            }
+            if (repo.getVisibilityPrivate() && !options.isIncludePrivate()) {
+                logger.info("[" + repo.getName() + "] is private and private repositories are not mirrored.");
+                request.response().setStatusCode(204).end();
+                return;
+            }
+            request.response().setStatusCode(202).end();
+            onPush(repo);
+        });
+    }
+
+    private void rejectTooLarge(HttpServerRequest request, AtomicBoolean tooLarge) {
+        tooLarge.set(true);
+        logger.error("Rejected webhook over " + options.getMaxBodyKb() + " KB from " + request.remoteAddress());
+        request.response().setStatusCode(413).end();
+    }
+
+    /**
+     * Debounce a push: the repository is mirrored after no push for a while,
+     * but not later than the max delay from the first push.
+     */
+    private synchronized void onPush(Repository repo) {
+        String key = sourcePlatform.getRepositoryKey(repo.getOwner() + "/" + repo.getName());
+        PendingSync sync = pending.computeIfAbsent(key, k -> new PendingSync());
+        sync.repo = repo;
+
+        if (sync.running) {
+            sync.dirty = true;
+            logger.info("[" + repo.getName() + "] pushed while mirroring, will mirror again.");
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        if (sync.timerId >= 0) {
+            vertx.cancelTimer(sync.timerId);
+        } else {
+            sync.firstPushAt = now;
+        }
+        long delay = Math.min(options.getDebounceMs(), sync.firstPushAt + options.getMaxDelayMs() - now);
+        sync.timerId = vertx.setTimer(Math.max(1, delay), id -> startSync(key));
+    }
+
+    private void startSync(String key) {
+        Repository repo;
+        synchronized (this) {
+            PendingSync sync = pending.get(key);
+            if (sync == null) {
+                return;
+            }
+            sync.timerId = -1;
+            sync.running = true;
+            repo = sync.repo;
+        }
+
+        logger.warn("Mirroring pushed repository [" + repo.getName() + "] ...");
+        sourcePlatform.mirrorRepoTo(targetPlatform, repo, scheduler)
+                .onComplete(ar -> finishSync(key, repo, ar));
+    }
+
+    private synchronized void finishSync(String key, Repository repo, AsyncResult<MirrorSummary> ar) {
+        if (ar.succeeded()) {
+            logger.info("Mirroring pushed repository [" + repo.getName() + "] complete: " + ar.result());
+        } else {
+            logger.error("Fail to mirror pushed repository [" + repo.getName() + "]: " + ar.cause().getMessage());
+        }
+
+        PendingSync sync = pending.get(key);
+        if (sync == null) {
+            return; // closed.
+        }
+        sync.running = false;
+        if (sync.dirty) {
+            sync.dirty = false;
+            sync.firstPushAt = System.currentTimeMillis();
+            sync.timerId = vertx.setTimer(Math.max(1, options.getDebounceMs()), id -> startSync(key));
+        } else {
+            pending.remove(key);
+        }
+    }
+}
@@ -0,0 +1,336 @@
+package iot.zjt.fake;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import iot.zjt.Repository;
+import iot.zjt.mirror.MirrorOptions;
+import iot.zjt.mirror.MirrorRun;
+import iot.zjt.mirror.MirrorScheduler;
+import iot.zjt.mirror.MirrorSummary;
+import iot.zjt.mirror.SyncStage;
+import iot.zjt.mirror.SyncState;
+import iot.zjt.mirror.SyncStateStore;
+import iot.zjt.platform.AbstractOnlinePlatform;
+import iot.zjt.platform.PlatformClientOptions;
+import iot.zjt.platform.PlatformUser;
+import iot.zjt.platform.online.GitHubPlatform;
+import iot.zjt.platform.online.GitLabPlatform;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit test for {@link FakePlatformServer}, driven by the real platforms.
+ */
+public class FakePlatformServerTest {
+
+    private Vertx vertx;
+    private Path root;
+
+    @Before
+    public void setUp() throws Exception {
+        vertx = Vertx.vertx();
+        root = Files.createTempDirectory("fake-server-test-");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        vertx.close();
+        try (Stream<Path> paths = Files.walk(root)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    private static <T> T await(Future<T> future) throws Exception {
+        return future.toCompletionStage().toCompletableFuture().get(30, TimeUnit.SECONDS);
+    }
+
+    private FakePlatformServer start(FakeServerOptions options) throws Exception {
+        FakePlatformServer server = new FakePlatformServer(vertx, options.setRoot(root.resolve(
+                options.getDialect().name().toLowerCase()).toString()));
+        await(server.start());
+        return server;
+    }
+
+    private static <P extends AbstractOnlinePlatform> P pointTo(P platform, FakePlatformServer server) {
+        platform.setApiUrl(server.getApiUrl()).setGitUrl(server.getGitUrl());
+        return platform;
+    }
+
+    private static PlatformClientOptions clientOptions() {
+        return new PlatformClientOptions().setRetryBaseDelayMs(10).setMaxRetries(5);
+    }
+
+    @Test
+    public void shouldListPagesUnderRateLimiting() throws Exception {
+        FakePlatformServer server = start(new FakeServerOptions()
+                .setMaxPerPage(2)
+                .setSeedRepos(5)
+                .setRateLimitEvery(3)
+                .setRetryAfterSeconds(0));
+        GitHubPlatform github = pointTo(new GitHubPlatform(vertx, new PlatformUser("tom", "xxx"),
+                clientOptions()), server);
+
+        List<Repository> repos = await(github.getRepositories(true));
+
+        assertEquals(5, repos.size());
+        assertEquals(Arrays.asList("seed-0", "seed-1", "seed-2", "seed-3", "seed-4"),
+                repos.stream().map(Repository::getName).sorted().collect(Collectors.toList()));
+        assertTrue(repos.get(0).getVisibilityPrivate());
+        // 3 pages, and one 429 in every 3 requests.
+        assertEquals(4, server.getApiRequestCount());
+    }
+
+    @Test
+    public void shouldListRepositoryAddedBehindCachedLastPage() throws Exception {
+        for (FakeServerOptions.Dialect dialect : FakeServerOptions.Dialect.values()) {
+            // exactly one page, of a private repository.
+            FakePlatformServer server = start(new FakeServerOptions()
+                    .setDialect(dialect).setMaxPerPage(1).setSeedRepos(1));
+            PlatformClientOptions options = clientOptions()
+                    .setCacheDirectory(root.resolve("cache/" + dialect).toString());
+            AbstractOnlinePlatform platform = pointTo(dialect == FakeServerOptions.Dialect.GITHUB ?
+                    new GitHubPlatform(vertx, new PlatformUser("tom", "xxx"), options) :
+                    new GitLabPlatform(vertx, new PlatformUser("tom", "xxx"), options), server);
+            assertTrue(await(platform.getRepositories(false)).isEmpty());
+
+            // on the second page, so the cached first page is not modified.
+            Repository added = new Repository();
+            added.setName("added");
+            added.setVisibilityPrivate(false);
+            await(platform.createRepository(added));
+
+            List<Repository> repos = await(platform.getRepositories(false));
+            assertEquals(1, repos.size());
+            assertEquals("added", repos.get(0).getName());
+            assertEquals(2, await(platform.getRepositories(true)).size());
+            platform.close();
+        }
+    }
+
+    @Test
+    public void shouldListRepositoryMetadata() throws Exception {
+        for (String dialect : Arrays.asList("github", "gitlab")) {
+            try (Git git = Git.init().setDirectory(root.resolve("work/" + dialect).toFile()).call()) {
+                git.commit().setMessage("init").setAllowEmpty(true).call();
+            }
+            Git.cloneRepository().setURI(root.resolve("work/" + dialect).toUri().toString()).setBare(true)
+                    .setDirectory(root.resolve(dialect + "/tom/old.git").toFile()).call().close();
+        }
+        FakePlatformServer githubServer = start(new FakeServerOptions().setSeedRepos(1));
+        FakePlatformServer gitlabServer = start(new FakeServerOptions()
+                .setDialect(FakeServerOptions.Dialect.GITLAB).setSeedRepos(1));
+        githubServer.setArchived("old", true);
+        gitlabServer.setArchived("old", true);
+        List<AbstractOnlinePlatform> platforms = Arrays.asList(
+                pointTo(new GitHubPlatform(vertx, new PlatformUser("tom", "xxx"), clientOptions()), githubServer),
+                pointTo(new GitLabPlatform(vertx, new PlatformUser("tom", "xxx"), clientOptions()), gitlabServer));
+
+        for (AbstractOnlinePlatform platform : platforms) {
+            List<Repository> repos = await(platform.getRepositories(true));
+            repos.sort(Comparator.comparing(Repository::getName));
+
+            assertEquals("old", repos.get(0).getName());
+            assertEquals("master", repos.get(0).getDefaultBranch());
+            assertTrue(repos.get(0).getPushedAt() > 0);
+            assertTrue(repos.get(0).isArchived());
+            assertFalse(repos.get(0).isFork());
+            assertEquals("seed-0", repos.get(1).getName());
+            assertNull(repos.get(1).getDefaultBranch()); // empty
+            assertFalse(repos.get(1).isArchived());
+        }
+    }
+
+    @Test
+    public void shouldCreateUpdateAndDeleteProjects() throws Exception {
+        FakePlatformServer server = start(new FakeServerOptions()
+                .setDialect(FakeServerOptions.Dialect.GITLAB)
+                .setLatencyMs(20));
+        GitLabPlatform gitlab = pointTo(new GitLabPlatform(vertx, new PlatformUser("tom", "xxx"),
+                clientOptions()), server);
+        Repository repo = new Repository();
+        repo.setOwner("tom");
+        repo.setName("my.repo");
+        repo.setVisibilityPrivate(true);
+
+        await(gitlab.createRepository(repo));
+        assertEquals(1, repo.getId());
+        // the name is taken.
+        assertFalse(await(gitlab.createRepository(repo).map(true).otherwise(false)));
+
+        repo.setVisibilityPrivate(false);
+        await(gitlab.updateRepository(repo));
+        assertFalse(await(gitlab.getRepositories(true)).get(0).getVisibilityPrivate());
+
+        await(gitlab.deleteRepository(repo));
+        assertTrue(server.getRepositoryNames().isEmpty());
+    }
+
+    @Test
+    public void shouldMirrorThroughSmartHttp() throws Exception {
+        // two repositories on the source, so that the target creates them in one GraphQL request.
+        Path source = root.resolve("gitlab/tom");
+        for (String name : Arrays.asList("alpha", "beta")) {
+            try (Git git = Git.init().setDirectory(root.resolve("work/" + name).toFile()).call()) {
+                git.commit().setMessage("init " + name).setAllowEmpty(true).call();
+                git.tag().setName("v1").call();
+            }
+            Git.cloneRepository().setURI(root.resolve("work/" + name).toUri().toString())
+                    .setBare(true).setDirectory(source.resolve(name + ".git").toFile()).call().close();
+        }
+        FakePlatformServer gitlabServer = start(new FakeServerOptions()
+                .setDialect(FakeServerOptions.Dialect.GITLAB));
+        FakePlatformServer githubServer = start(new FakeServerOptions());
+        GitLabPlatform gitlab = pointTo(new GitLabPlatform(vertx, new PlatformUser("tom", "xxx"),
+                clientOptions()), gitlabServer);
+        GitHubPlatform github = pointTo(new GitHubPlatform(vertx, new PlatformUser("tom", "xxx"),
+                clientOptions()), githubServer);
+        MirrorScheduler scheduler = new MirrorScheduler(vertx, new MirrorOptions());
+
+        MirrorSummary summary = await(gitlab.mirrorAllRepoTo(github, true, scheduler));
+
+        assertEquals(2, summary.getMirroredCount());
+        assertEquals(Arrays.asList("alpha", "beta"), githubServer.getRepositoryNames());
+        for (String name : Arrays.asList("alpha", "beta")) {
+            try (Git from = Git.open(source.resolve(name + ".git").toFile());
+                 Git to = Git.open(githubServer.getRepositoryDirectory(name).toFile())) {
+                for (String ref : Arrays.asList("refs/heads/master", "refs/tags/v1")) {
+                    ObjectId expected = from.getRepository().resolve(ref);
+                    assertEquals(expected, to.getRepository().resolve(ref));
+                }
+            }
+        }
+
+        // nothing to push the second time.
+        summary = await(gitlab.mirrorAllRepoTo(github, true, scheduler));
+        assertEquals(2, summary.getSkippedCount());
+        scheduler.close();
+    }
+
+    @Test
+    public void shouldStopCancelledRunBeforeMirroring() throws Exception {
+        FakePlatformServer gitlabServer = start(new FakeServerOptions()
+                .setDialect(FakeServerOptions.Dialect.GITLAB).setSeedRepos(3).setLatencyMs(300));
+        FakePlatformServer githubServer = start(new FakeServerOptions());
+        GitLabPlatform gitlab = pointTo(new GitLabPlatform(vertx, new PlatformUser("tom", "xxx"),
+                clientOptions()), gitlabServer);
+        GitHubPlatform github = pointTo(new GitHubPlatform(vertx, new PlatformUser("tom", "xxx"),
+                clientOptions()), githubServer);
+        MirrorScheduler scheduler = new MirrorScheduler(vertx, new MirrorOptions());
+
+        MirrorRun<MirrorSummary> run = gitlab.startMirrorAllRepoTo(github, true, scheduler);
+        assertTrue(run.cancel());
+
+        try {
+            await(run.result());
+            fail("the run should be cancelled");
+        } catch (CancellationException e) {
+            assertEquals("run cancelled", e.getMessage());
+        }
+        assertTrue(githubServer.getRepositoryNames().isEmpty());
+        scheduler.close();
+    }
+
+    @Test
+    public void shouldFindStateOfCreatedRepositoryOnNextRun() throws Exception {
+        try (Git git = Git.init().setDirectory(root.resolve("work/my.repo").toFile()).call()) {
+            git.commit().setMessage("init").setAllowEmpty(true).call();
+        }
+        Git.cloneRepository().setURI(root.resolve("work/my.repo").toUri().toString()).setBare(true)
+                .setDirectory(root.resolve("github/tom/my.repo.git").toFile()).call().close();
+        FakePlatformServer githubServer = start(new FakeServerOptions());
+        // the target account has another name.
+        FakePlatformServer gitlabServer = start(new FakeServerOptions()
+                .setDialect(FakeServerOptions.Dialect.GITLAB).setOwner("jerry"));
+        GitHubPlatform github = pointTo(new GitHubPlatform(vertx, new PlatformUser("tom", "xxx"),
+                clientOptions()), githubServer);
+        GitLabPlatform gitlab = pointTo(new GitLabPlatform(vertx, new PlatformUser("jerry", "xxx"),
+                clientOptions()), gitlabServer);
+        MirrorScheduler scheduler = new MirrorScheduler(vertx, new MirrorOptions()
+                .setStateFile(root.resolve("state.jsonl").toString()));
+
+        MirrorSummary summary = await(github.mirrorAllRepoTo(gitlab, true, scheduler));
+        assertEquals(1, summary.getMirroredCount());
+
+        Repository from = await(github.getRepositories(true)).get(0);
+        Repository to = await(gitlab.getRepositories(true)).get(0);
+        assertEquals("jerry", to.getOwner());
+        SyncState state = SyncStateStore.open(root.resolve("state.jsonl").toString())
+                .get(SyncStateStore.key(github, from, gitlab, to));
+        assertTrue(state.hasReached(SyncStage.MIRRORED));
+        assertEquals(to.getId(), state.getTargetId());
+
+        // the listed target has the state of the created one, and is up to date.
+        summary = await(github.mirrorAllRepoTo(gitlab, true, scheduler));
+        assertEquals(1, summary.getSkippedCount());
+        scheduler.close();
+    }
+
+    @Test
+    public void shouldRepairTargetChangedSinceLastRun() throws Exception {
+        try (Git git = Git.init().setDirectory(root.resolve("work/repo").toFile()).call()) {
+            git.commit().setMessage("init").setAllowEmpty(true).call();
+        }
+        Git.cloneRepository().setURI(root.resolve("work/repo").toUri().toString()).setBare(true)
+                .setDirectory(root.resolve("github/tom/repo.git").toFile()).call().close();
+        FakePlatformServer githubServer = start(new FakeServerOptions());
+        FakePlatformServer gitlabServer = start(new FakeServerOptions()
+                .setDialect(FakeServerOptions.Dialect.GITLAB));
+        GitHubPlatform github = pointTo(new GitHubPlatform(vertx, new PlatformUser("tom", "xxx"),
+                clientOptions()), githubServer);
+        GitLabPlatform gitlab = pointTo(new GitLabPlatform(vertx, new PlatformUser("tom", "xxx"),
+                clientOptions()), gitlabServer);
+        MirrorScheduler scheduler = new MirrorScheduler(vertx, new MirrorOptions()
+                .setStateFile(root.resolve("state.jsonl").toString()));
+        assertEquals(1, await(github.mirrorAllRepoTo(gitlab, true, scheduler)).getMirroredCount());
+        Repository from = await(github.getRepositories(true)).get(0);
+
+        // reset and made public on the target, while the state says it is mirrored.
+        Repository to = await(gitlab.getRepositories(true)).get(0);
+        try (Git git = Git.open(gitlabServer.getRepositoryDirectory("repo").toFile())) {
+            RefUpdate update = git.getRepository().updateRef("refs/heads/master");
+            update.setForceUpdate(true);
+            update.delete();
+        }
+        to.setVisibilityPrivate(!from.getVisibilityPrivate());
+        await(gitlab.updateRepository(to));
+
+        assertEquals(1, await(github.mirrorAllRepoTo(gitlab, true, scheduler)).getMirroredCount());
+        to = await(gitlab.getRepositories(true)).get(0);
+        assertEquals(from.getVisibilityPrivate(), to.getVisibilityPrivate());
+        try (Git git = Git.open(gitlabServer.getRepositoryDirectory("repo").toFile())) {
+            assertTrue(git.getRepository().resolve("refs/heads/master") != null);
+        }
+
+        // deleted on the target, then created again.
+        await(gitlab.deleteRepository(to));
+        assertEquals(1, await(github.mirrorAllRepoTo(gitlab, true, scheduler)).getMirroredCount());
+        Repository recreated = await(gitlab.getRepositories(true)).get(0);
+        assertFalse(recreated.getId() == to.getId());
+        SyncState state = SyncStateStore.open(root.resolve("state.jsonl").toString())
+                .get(SyncStateStore.key(github, from, gitlab, recreated));
+        assertEquals(recreated.getId(), state.getTargetId());
+        assertTrue(state.hasReached(SyncStage.MIRRORED));
+        scheduler.close();
+    }
+}
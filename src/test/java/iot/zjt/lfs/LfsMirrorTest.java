@@ -0,0 +1,165 @@
+package iot.zjt.lfs;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import iot.zjt.fake.FakePlatformServer;
+import iot.zjt.fake.FakeServerOptions;
+import iot.zjt.mirror.MirrorOptions;
+import iot.zjt.mirror.MirrorScheduler;
+import iot.zjt.mirror.MirrorSummary;
+import iot.zjt.platform.PlatformUser;
+import iot.zjt.platform.online.GitHubPlatform;
+import iot.zjt.platform.online.GitLabPlatform;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.ObjectId;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Unit test for {@link LfsMirror}, {@link LfsScanner} and {@link LfsPointer}.
+ */
+public class LfsMirrorTest {
+
+    private Vertx vertx;
+    private Path root;
+
+    @Before
+    public void setUp() throws Exception {
+        vertx = Vertx.vertx();
+        root = Files.createTempDirectory("lfs-test-");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        vertx.close();
+        try (Stream<Path> paths = Files.walk(root)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    private static <T> T await(Future<T> future) throws Exception {
+        return future.toCompletionStage().toCompletableFuture().get(30, TimeUnit.SECONDS);
+    }
+
+    private static byte[] content(int size, long seed) {
+        byte[] content = new byte[size];
+        new Random(seed).nextBytes(content);
+        return content;
+    }
+
+    /**
+     * Commit "*.bin" as LFS pointers of the contents, and "untracked.txt" as a pointer not tracked by LFS.
+     */
+    private Path commit(Path work, byte[]... contents) throws Exception {
+        try (Git git = Git.init().setDirectory(work.toFile()).call()) {
+            Files.write(work.resolve(".gitattributes"),
+                    "*.bin filter=lfs diff=lfs merge=lfs -text\n".getBytes(StandardCharsets.UTF_8));
+            Files.createDirectories(work.resolve("data"));
+            for (int i = 0; i < contents.length; i++) {
+                Files.write(work.resolve("data/file-" + i + ".bin"), pointerOf(contents[i]).toString()
+                        .getBytes(StandardCharsets.UTF_8));
+            }
+            Files.write(work.resolve("untracked.txt"), pointerOf(content(10, 42)).toString()
+                    .getBytes(StandardCharsets.UTF_8));
+            git.add().addFilepattern(".").call();
+            git.commit().setMessage("add large files").call();
+        }
+        return work;
+    }
+
+    private static LfsPointer pointerOf(byte[] content) throws Exception {
+        Path temp = Files.createTempFile("lfs-object-", ".bin");
+        try {
+            Files.write(temp, content);
+            return new LfsPointer(LfsMirror.sha256(temp), content.length);
+        } finally {
+            Files.delete(temp);
+        }
+    }
+
+    @Test
+    public void shouldParsePointers() {
+        String oid = "4d7a214614ab2935c943f9e0ff69d22eadbb8f32b1258daaa5e2ca24d17e2393";
+        LfsPointer pointer = LfsPointer.parse(("version https://git-lfs.github.com/spec/v1\n" +
+                "oid sha256:" + oid + "\nsize 12345\n").getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(new LfsPointer(oid, 12345), pointer);
+        assertEquals(pointer, LfsPointer.parse(pointer.toString().getBytes(StandardCharsets.UTF_8)));
+        assertNull(LfsPointer.parse("hello\nworld\n!\n".getBytes(StandardCharsets.UTF_8)));
+        assertNull(LfsPointer.parse(("version https://git-lfs.github.com/spec/v1\n" +
+                "oid sha256:xyz\nsize 1\n").getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void shouldOnlyScanPathsTrackedByLfs() throws Exception {
+        byte[] content = content(100, 1);
+        Path work = commit(root.resolve("work"), content);
+
+        try (Git git = Git.open(work.toFile())) {
+            ObjectId head = git.getRepository().resolve("HEAD");
+            Set<LfsPointer> pointers = LfsScanner.scan(git.getRepository(),
+                    Collections.singletonList(head), Collections.emptyList());
+            assertEquals(Collections.singleton(pointerOf(content)), pointers);
+
+            // objects of commits known to the target are not scanned again.
+            assertEquals(0, LfsScanner.scan(git.getRepository(),
+                    Collections.singletonList(head), Collections.singletonList(head)).size());
+        }
+    }
+
+    @Test
+    public void shouldMirrorMissingObjectsAndResumeDownloads() throws Exception {
+        byte[] first = content(200 * 1024, 1);
+        byte[] second = content(300 * 1024, 2);
+        Path work = commit(root.resolve("work"), first, second);
+        Git.cloneRepository().setURI(work.toUri().toString()).setBare(true)
+                .setDirectory(root.resolve("hub/tom/repo.git").toFile()).call().close();
+
+        // every second download is cut off half-way, and resumed.
+        FakePlatformServer hub = new FakePlatformServer(vertx, new FakeServerOptions()
+                .setRoot(root.resolve("hub").toString()).setLfsFailEvery(2));
+        FakePlatformServer lab = new FakePlatformServer(vertx, new FakeServerOptions()
+                .setDialect(FakeServerOptions.Dialect.GITLAB).setRoot(root.resolve("lab").toString()));
+        await(hub.start());
+        await(lab.start());
+        for (byte[] content : new byte[][]{first, second}) {
+            Path object = hub.getLfsObjectPath("repo", pointerOf(content).getOid());
+            Files.createDirectories(object.getParent());
+            Files.write(object, content);
+        }
+
+        GitHubPlatform github = new GitHubPlatform(vertx, new PlatformUser("tom", "xxx"));
+        github.setApiUrl(hub.getApiUrl()).setGitUrl(hub.getGitUrl());
+        GitLabPlatform gitlab = new GitLabPlatform(vertx, new PlatformUser("tom", "xxx"));
+        gitlab.setApiUrl(lab.getApiUrl()).setGitUrl(lab.getGitUrl());
+        MirrorScheduler scheduler = new MirrorScheduler(vertx, new MirrorOptions().setLfs(true));
+
+        MirrorSummary summary = await(github.mirrorAllRepoTo(gitlab, true, scheduler));
+
+        assertEquals(1, summary.getMirroredCount());
+        assertEquals(2, lab.getLfsUploadCount());
+        for (byte[] content : new byte[][]{first, second}) {
+            assertArrayEquals(content, Files.readAllBytes(lab.getLfsObjectPath("repo",
+                    pointerOf(content).getOid())));
+        }
+        scheduler.close();
+        github.close();
+        gitlab.close();
+    }
+}
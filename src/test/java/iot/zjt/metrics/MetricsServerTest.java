@@ -0,0 +1,62 @@
+package iot.zjt.metrics;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpServer;
+import io.vertx.ext.web.client.HttpResponse;
+import io.vertx.ext.web.client.WebClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test for {@link MetricsServer}.
+ */
+public class MetricsServerTest {
+
+    private Vertx vertx;
+    private WebClient client;
+    private MetricsServer metrics;
+
+    @Before
+    public void setUp() {
+        vertx = Vertx.vertx();
+        client = WebClient.create(vertx);
+        metrics = new MetricsServer(vertx);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        metrics.close().toCompletionStage().toCompletableFuture().get(10, TimeUnit.SECONDS);
+        client.close();
+        vertx.close();
+    }
+
+    private HttpResponse<Buffer> get(int port, String path) throws Exception {
+        return client.get(port, "localhost", path).send()
+                .toCompletionStage().toCompletableFuture().get(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void shouldServeTimedPhaseInPrometheusFormat() throws Exception {
+        HttpServer server = metrics.start(0).toCompletionStage().toCompletableFuture().get(10, TimeUnit.SECONDS);
+        int port = server.actualPort();
+        assertTrue(port > 0);
+
+        assertEquals("done", MirrorMetrics.time(MirrorMetrics.PHASE_FETCH, "metrics-test", () -> "done"));
+
+        HttpResponse<Buffer> response = get(port, "/metrics");
+        assertEquals(200, response.statusCode());
+        assertTrue(response.getHeader("content-type").startsWith("text/plain; version=0.0.4"));
+        String body = response.bodyAsString();
+        assertTrue(body, body.contains("# TYPE mirror_phase_seconds summary"));
+        assertTrue(body, body.contains("mirror_phase_seconds_count{phase=\"fetch\",platform=\"metrics-test\",} 1.0"));
+
+        assertEquals(404, get(port, "/").statusCode());
+    }
+}
@@ -0,0 +1,212 @@
+package iot.zjt.mirror;
+
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import iot.zjt.Repository;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit test for {@link FanOutMirror}, on local repositories.
+ */
+public class FanOutMirrorTest {
+
+    private Vertx vertx;
+    private Path root;
+    private MirrorScheduler scheduler;
+    private LocalPlatform source;
+    private Repository from;
+
+    @Before
+    public void setUp() throws Exception {
+        vertx = Vertx.vertx();
+        root = Files.createTempDirectory("fan-out-test-");
+        scheduler = new MirrorScheduler(vertx, new MirrorOptions());
+
+        // a source repository with a branch and a tag.
+        try (Git git = Git.init().setDirectory(root.resolve("source/repo.git").toFile()).call()) {
+            git.commit().setMessage("init").setAllowEmpty(true).call();
+            git.tag().setName("v1").call();
+        }
+        source = new LocalPlatform(vertx, "source", root.resolve("source"));
+        from = LocalPlatform.repo("repo");
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.close();
+        vertx.close();
+        RepositoryMirror.deleteRecursively(root);
+    }
+
+    private LocalPlatform target(String name) throws Exception {
+        Git.init().setBare(true).setDirectory(root.resolve(name + "/repo.git").toFile()).call().close();
+        return new LocalPlatform(vertx, name, root.resolve(name));
+    }
+
+    private List<MirrorResult> mirror(List<FanOutMirror.Target> targets) throws Exception {
+        return new FanOutMirror(source, from, targets, null, null, scheduler).mirror()
+                .toCompletionStage().toCompletableFuture().get(30, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void shouldPushOneFetchToEveryTarget() throws Exception {
+        LocalPlatform first = target("first");
+        LocalPlatform second = target("second");
+        List<FanOutMirror.Target> targets = Arrays.asList(
+                new FanOutMirror.Target(first, LocalPlatform.repo("repo")),
+                new FanOutMirror.Target(second, LocalPlatform.repo("repo")));
+
+        List<MirrorResult> results = mirror(targets);
+        assertEquals(MirrorStatus.MIRRORED, results.get(0).getStatus());
+        assertEquals(MirrorStatus.MIRRORED, results.get(1).getStatus());
+
+        RefSnapshot sourceRefs = RefSnapshot.lsRemote(source.getRepositoryHttpsUrl(from), null);
+        for (LocalPlatform target : Arrays.asList(first, second)) {
+            RefSnapshot targetRefs = RefSnapshot.lsRemote(target.getRepositoryHttpsUrl(from), null);
+            assertEquals(sourceRefs, targetRefs);
+        }
+
+        results = mirror(targets);
+        assertEquals(MirrorStatus.SKIPPED, results.get(0).getStatus());
+        assertEquals(MirrorStatus.SKIPPED, results.get(1).getStatus());
+    }
+
+    @Test
+    public void shouldNotStopOtherTargetsOnFailure() throws Exception {
+        LocalPlatform good = target("good");
+        LocalPlatform missing = new LocalPlatform(vertx, "missing", root.resolve("missing"));
+
+        List<MirrorResult> results = mirror(Arrays.asList(
+                new FanOutMirror.Target(missing, LocalPlatform.repo("repo")),
+                new FanOutMirror.Target(good, LocalPlatform.repo("repo"))));
+
+        assertEquals(MirrorStatus.FAILED, results.get(0).getStatus());
+        assertEquals(MirrorStatus.MIRRORED, results.get(1).getStatus());
+        ObjectId head = RefSnapshot.lsRemote(good.getRepositoryHttpsUrl(from), null)
+                .getRefs().get("refs/heads/master");
+        assertEquals(RefSnapshot.lsRemote(source.getRepositoryHttpsUrl(from), null)
+                .getRefs().get("refs/heads/master"), head);
+    }
+
+    @Test
+    public void shouldMirrorFilteredRefsOnly() throws Exception {
+        try (Git git = Git.open(root.resolve("source/repo.git").toFile())) {
+            git.branchCreate().setName("dependabot/npm").call();
+            RefUpdate update = git.getRepository().updateRef("refs/pull/1/head");
+            update.setNewObjectId(git.getRepository().resolve("refs/heads/master"));
+            update.update();
+        }
+        LocalPlatform target = target("target");
+        List<FanOutMirror.Target> targets = Collections.singletonList(
+                new FanOutMirror.Target(target, LocalPlatform.repo("repo")));
+
+        RefFilter noBots = new RefFilter(RefFilter.headsAndTags().getIncludes(),
+                Collections.singletonList("refs/heads/dependabot/**"));
+        List<MirrorResult> results = new FanOutMirror(source, from, targets, null, null, scheduler, noBots)
+                .mirror().toCompletionStage().toCompletableFuture().get(30, TimeUnit.SECONDS);
+        assertEquals(MirrorStatus.MIRRORED, results.get(0).getStatus());
+        RefSnapshot targetRefs = RefSnapshot.lsRemote(target.getRepositoryHttpsUrl(from), null, RefFilter.all());
+        assertEquals(Arrays.asList("refs/heads/master", "refs/tags/v1"),
+                Arrays.asList(targetRefs.getRefs().keySet().toArray()));
+
+        // pull requests are only mirrored with all refs.
+        results = new FanOutMirror(source, from, targets, null, null, scheduler, RefFilter.all())
+                .mirror().toCompletionStage().toCompletableFuture().get(30, TimeUnit.SECONDS);
+        assertEquals(MirrorStatus.MIRRORED, results.get(0).getStatus());
+        targetRefs = RefSnapshot.lsRemote(target.getRepositoryHttpsUrl(from), null, RefFilter.all());
+        assertTrue(targetRefs.getRefs().containsKey("refs/pull/1/head"));
+        assertTrue(targetRefs.getRefs().containsKey("refs/heads/dependabot/npm"));
+        assertFalse(targetRefs.getRefs().containsKey("HEAD"));
+    }
+
+    @Test
+    public void shouldSkipArchivedRepositoryMirroredRecently() throws Exception {
+        LocalPlatform first = target("first");
+        LocalPlatform second = target("second");
+        List<FanOutMirror.Target> targets = Arrays.asList(
+                new FanOutMirror.Target(first, LocalPlatform.repo("repo")),
+                new FanOutMirror.Target(second, LocalPlatform.repo("repo")));
+        SyncStateStore store = SyncStateStore.open(root.resolve("state.jsonl").toString());
+        from.setArchived(true);
+
+        List<MirrorResult> results = new FanOutMirror(source, from, targets, null, store, scheduler)
+                .mirror().toCompletionStage().toCompletableFuture().get(30, TimeUnit.SECONDS);
+        assertEquals(MirrorStatus.MIRRORED, results.get(0).getStatus());
+        assertEquals(MirrorStatus.MIRRORED, results.get(1).getStatus());
+
+        // not even compared, though the source has moved on.
+        try (Git git = Git.open(root.resolve("source/repo.git").toFile())) {
+            git.commit().setMessage("late").setAllowEmpty(true).call();
+        }
+        results = new FanOutMirror(source, from, targets, null, store, scheduler)
+                .mirror().toCompletionStage().toCompletableFuture().get(30, TimeUnit.SECONDS);
+        assertEquals(MirrorStatus.SKIPPED, results.get(0).getStatus());
+        assertEquals(MirrorStatus.SKIPPED, results.get(1).getStatus());
+        store.flush();
+    }
+
+    @Test
+    public void shouldReleaseCacheOfFetchOverrunningItsTimeout() throws Exception {
+        LocalPlatform target = target("target");
+        List<FanOutMirror.Target> targets = Collections.singletonList(
+                new FanOutMirror.Target(target, LocalPlatform.repo("repo")));
+        MirrorCache cache = new MirrorCache(root.resolve("cache").toString(), 0);
+        Semaphore lock = cache.getLock(cache.getDirectory(source, from));
+
+        for (boolean returnsFirst : new boolean[]{true, false}) {
+            List<MirrorJob> fetches = new ArrayList<>();
+            Promise<MirrorResult> reported = Promise.promise();
+            // the fetch job is reported timed out, while the fetch itself goes on.
+            MirrorScheduler overrun = new MirrorScheduler(vertx, new MirrorOptions()) {
+                @Override
+                public Future<MirrorResult> submit(MirrorJob job) {
+                    fetches.add(job);
+                    return reported.future();
+                }
+            };
+            Future<List<MirrorResult>> results = new FanOutMirror(source, from, targets, cache, null, overrun)
+                    .mirror();
+            MirrorResult timedOut = new MirrorResult(from, null, MirrorStatus.FAILED,
+                    new TimeoutException("timed out"), 0);
+            if (returnsFirst) {
+                // returned after its last check, but before the timeout is reported.
+                assertEquals(MirrorStatus.MIRRORED, fetches.get(0).getTask().call());
+                reported.complete(timedOut);
+            } else {
+                reported.complete(timedOut);
+                try {
+                    fetches.get(0).getTask().call();
+                    fail("the fetch should be abandoned");
+                } catch (CancellationException e) {
+                    // released on return.
+                }
+            }
+            assertEquals(MirrorStatus.FAILED, results.toCompletionStage().toCompletableFuture()
+                    .get(30, TimeUnit.SECONDS).get(0).getStatus());
+            assertEquals(1, lock.availablePermits());
+            overrun.close();
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package iot.zjt.mirror;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import iot.zjt.Repository;
+import iot.zjt.platform.AbstractOnlinePlatform;
+import iot.zjt.platform.PlatformUser;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * A platform serving repositories from a local directory, for Git operations in tests.
+ * The repository "{owner}/{name}" is at "{root}/{name}.git".
+ */
+class LocalPlatform extends AbstractOnlinePlatform {
+
+    private final String name;
+    private final Path root;
+
+    LocalPlatform(Vertx vertx, String name, Path root) {
+        super(vertx, new PlatformUser("tom", "xxx"));
+        this.name = name;
+        this.root = root;
+    }
+
+    static Repository repo(String name) {
+        Repository repo = new Repository();
+        repo.setOwner("tom");
+        repo.setName(name);
+        return repo;
+    }
+
+    @Override
+    public Future<Void> createRepository(Repository repo) {
+        return Future.failedFuture("not supported");
+    }
+
+    @Override
+    public Future<Void> deleteRepository(Repository repo) {
+        return Future.failedFuture("not supported");
+    }
+
+    @Override
+    public Future<Void> updateRepository(Repository repo) {
+        return Future.failedFuture("not supported");
+    }
+
+    @Override
+    public Future<List<Repository>> getRepositories(boolean includePrivate) {
+        return Future.failedFuture("not supported");
+    }
+
+    @Override
+    public String getPlatform() {
+        return name;
+    }
+
+    @Override
+    public String getRepositoryHttpsUrl(Repository repo) {
+        return root.resolve(repo.getName() + ".git").toUri().toString();
+    }
+}
@@ -0,0 +1,140 @@
+package iot.zjt.mirror;
+
+import io.vertx.core.Vertx;
+import iot.zjt.Repository;
+import iot.zjt.platform.PlatformUser;
+import iot.zjt.platform.online.GitLabPlatform;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.Semaphore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test for {@link MirrorCache}.
+ */
+public class MirrorCacheTest {
+
+    private Path root;
+    private MirrorCache cache;
+    private final Random random = new Random(42);
+
+    @Before
+    public void setUp() throws Exception {
+        root = Files.createTempDirectory("cache-test-");
+        cache = new MirrorCache(root.toString(), 1);
+    }
+
+    @After
+    public void tearDown() {
+        RepositoryMirror.deleteRecursively(root);
+    }
+
+    /**
+     * Cache an entry of 400 KB, synced the given minutes ago.
+     */
+    private Path entry(String name, int minutesAgo) throws Exception {
+        Path dir = cache.getDirectory("GitHub", "github.com", LocalPlatform.repo(name));
+        Files.createDirectories(dir);
+        byte[] content = new byte[400 * 1024];
+        random.nextBytes(content);
+        Files.write(dir.resolve("pack"), content);
+        cache.markSynced(dir);
+        Files.setLastModifiedTime(dir.resolve("mirror-last-sync"),
+                FileTime.fromMillis(System.currentTimeMillis() - minutesAgo * 60_000L));
+        return dir;
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlySyncedEntry() throws Exception {
+        Path oldest = entry("oldest", 30);
+        Path older = entry("older", 20);
+        Path recent = entry("recent", 10);
+        assertTrue(cache.isCached(oldest));
+
+        // 1200 KB over the cap of 1 MB, one entry is enough.
+        cache.evict();
+
+        assertFalse(Files.exists(oldest));
+        assertTrue(cache.isCached(older));
+        assertTrue(cache.isCached(recent));
+
+        // under the cap now.
+        cache.evict();
+        assertTrue(cache.isCached(older));
+    }
+
+    @Test
+    public void shouldNotEvictEntryInUse() throws Exception {
+        Path oldest = entry("oldest", 30);
+        Path older = entry("older", 20);
+        Path recent = entry("recent", 10);
+        Semaphore lock = cache.getLock(oldest);
+        assertTrue(lock.tryAcquire());
+
+        try {
+            cache.evict();
+        } finally {
+            lock.release();
+        }
+
+        // the next least recently synced one instead.
+        assertTrue(cache.isCached(oldest));
+        assertFalse(Files.exists(older));
+        assertTrue(cache.isCached(recent));
+    }
+
+    @Test
+    public void shouldEvictPartialEntryFirst() throws Exception {
+        Path synced = entry("synced", 30);
+        Path partial = entry("partial", 10);
+        Files.delete(partial.resolve("mirror-last-sync")); // clone interrupted.
+        entry("recent", 5);
+        assertFalse(cache.isCached(partial));
+
+        cache.evict();
+
+        assertFalse(Files.exists(partial));
+        assertTrue(cache.isCached(synced));
+    }
+
+    @Test
+    public void shouldKeepInstancesOfPlatformApart() throws Exception {
+        Vertx vertx = Vertx.vertx();
+        try {
+            Repository repo = LocalPlatform.repo("repo");
+            GitLabPlatform company = new GitLabPlatform(vertx, new PlatformUser("tom", "xxx"));
+            company.setGitUrl("https://gitlab.example.com");
+            GitLabPlatform school = new GitLabPlatform(vertx, new PlatformUser("tom", "xxx"));
+            school.setGitUrl("https://git.example.org:8443");
+
+            assertEquals(root.resolve("gitlab@gitlab.example.com").resolve("tom").resolve("repo.git"),
+                    cache.getDirectory(company, repo));
+            assertEquals(root.resolve("gitlab@git.example.org_8443").resolve("tom").resolve("repo.git"),
+                    cache.getDirectory(school, repo));
+        } finally {
+            vertx.close();
+        }
+    }
+
+    @Test
+    public void shouldNameDirectoryRegardlessOfLocale() {
+        Locale locale = Locale.getDefault();
+        Locale.setDefault(new Locale("tr"));
+        try {
+            Path dir = cache.getDirectory("GITHUB", "GitHub.com", LocalPlatform.repo("repo"));
+            assertEquals("github@github.com", dir.getParent().getParent().getFileName().toString());
+        } finally {
+            Locale.setDefault(locale);
+        }
+    }
+}
@@ -0,0 +1,407 @@
+package iot.zjt.mirror;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import iot.zjt.Repository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test for {@link MirrorScheduler}.
+ */
+public class MirrorSchedulerTest {
+
+    private Vertx vertx;
+
+    @Before
+    public void setUp() {
+        vertx = Vertx.vertx();
+    }
+
+    @After
+    public void tearDown() {
+        vertx.close();
+    }
+
+    private static Repository repo(String name, long size) {
+        Repository repo = new Repository();
+        repo.setName(name);
+        repo.setSize(size);
+        return repo;
+    }
+
+    @Test
+    public void shouldStartLargestJobsFirst() throws Exception {
+        MirrorScheduler scheduler = new MirrorScheduler(vertx, new MirrorOptions().setWorkerPoolSize(1));
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        List<MirrorJob> jobs = new ArrayList<>();
+        for (Repository repo : Arrays.asList(repo("small", 1), repo("big", 300), repo("medium", 20))) {
+            jobs.add(new MirrorJob(repo, repo, "source", "target", () -> {
+                order.add(repo.getName());
+                return MirrorStatus.MIRRORED;
+            }));
+        }
+
+        List<MirrorResult> results = await(scheduler.submitAll(jobs).toCompletionStage().toCompletableFuture());
+
+        assertEquals(Arrays.asList("big", "medium", "small"), order);
+        assertEquals("small", results.get(0).getFrom().getName()); // in submission order
+        scheduler.close();
+    }
+
+    @Test
+    public void shouldStartRecentlyPushedJobsFirst() throws Exception {
+        MirrorScheduler scheduler = new MirrorScheduler(vertx, new MirrorOptions().setWorkerPoolSize(1));
+        long now = System.currentTimeMillis();
+        Repository stale = repo("stale", 300);
+        stale.setPushedAt(now - TimeUnit.DAYS.toMillis(30));
+        Repository archived = repo("archived", 500);
+        archived.setPushedAt(now);
+        archived.setArchived(true);
+        Repository recent = repo("recent", 1);
+        recent.setPushedAt(now - TimeUnit.HOURS.toMillis(1));
+        Repository recentBig = repo("recent-big", 20);
+        recentBig.setPushedAt(now - TimeUnit.HOURS.toMillis(2));
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        List<MirrorJob> jobs = new ArrayList<>();
+        for (Repository repo : Arrays.asList(stale, archived, recent, recentBig)) {
+            jobs.add(new MirrorJob(repo, repo, "source", "target", () -> {
+                order.add(repo.getName());
+                return MirrorStatus.MIRRORED;
+            }));
+        }
+
+        await(scheduler.submitAll(jobs).toCompletionStage().toCompletableFuture());
+
+        // recently pushed ones first, then the others, largest first among each.
+        assertEquals(Arrays.asList("recent-big", "recent", "archived", "stale"), order);
+        scheduler.close();
+    }
+
+    @Test
+    public void shouldRunJobsOnVirtualThreadsIfSupported() throws Exception {
+        MirrorScheduler scheduler = new MirrorScheduler(vertx, new MirrorOptions()
+                .setExecutor(JobExecutor.VIRTUAL_THREADS)
+                .setMaxVirtualThreadJobs(50));
+        CompletableFuture<Void> gate = new CompletableFuture<>();
+        AtomicInteger running = new AtomicInteger();
+        List<String> threads = Collections.synchronizedList(new ArrayList<>());
+        List<MirrorJob> jobs = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            Repository repo = repo("repo-" + i, 1);
+            jobs.add(new MirrorJob(repo, repo, null, null, () -> {
+                threads.add(Thread.currentThread().getName());
+                running.incrementAndGet();
+                gate.get(30, TimeUnit.SECONDS);
+                return MirrorStatus.MIRRORED;
+            }));
+        }
+
+        CompletableFuture<List<MirrorResult>> results =
+                scheduler.submitAll(jobs).toCompletionStage().toCompletableFuture();
+        if (JobExecutor.isVirtualThreadsSupported()) {
+            // every job is blocked at once, far beyond the worker pool size.
+            while (running.get() < 50) {
+                Thread.sleep(10);
+            }
+            assertTrue(threads.stream().allMatch(name -> name.startsWith("mirror-virtual-")));
+        } else {
+            // workers instead.
+            while (running.get() < MirrorOptions.DEFAULT_WORKER_POOL_SIZE) {
+                Thread.sleep(10);
+            }
+            assertEquals(MirrorOptions.DEFAULT_WORKER_POOL_SIZE, scheduler.getRunningJobs());
+            assertTrue(threads.stream().allMatch(name -> name.startsWith("mirror-worker")));
+        }
+        gate.complete(null);
+
+        assertTrue(await(results).stream().allMatch(result -> result.getStatus() == MirrorStatus.MIRRORED));
+        scheduler.close();
+    }
+
+    @Test
+    public void shouldGiveEverySchedulerWorkersOfItsOwn() throws Exception {
+        MirrorScheduler small = new MirrorScheduler(vertx, new MirrorOptions().setWorkerPoolSize(1));
+        MirrorScheduler large = new MirrorScheduler(vertx, new MirrorOptions().setWorkerPoolSize(3));
+        CompletableFuture<Void> gate = new CompletableFuture<>();
+        AtomicInteger running = new AtomicInteger();
+        List<MirrorJob> jobs = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Repository repo = repo("repo-" + i, 1);
+            jobs.add(new MirrorJob(repo, repo, null, null, () -> {
+                running.incrementAndGet();
+                gate.get(30, TimeUnit.SECONDS);
+                return MirrorStatus.MIRRORED;
+            }));
+        }
+
+        CompletableFuture<List<MirrorResult>> results =
+                large.submitAll(jobs).toCompletionStage().toCompletableFuture();
+        // all of them at once, not limited by the pool of the other scheduler.
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (running.get() < 3 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(3, running.get());
+
+        // closing the other scheduler keeps the workers running.
+        small.close();
+        gate.complete(null);
+        assertTrue(await(results).stream().allMatch(result -> result.getStatus() == MirrorStatus.MIRRORED));
+        large.close();
+    }
+
+    @Test
+    public void shouldLimitJobsPerHostAndReportFailures() throws Exception {
+        MirrorScheduler scheduler = new MirrorScheduler(vertx, new MirrorOptions()
+                .setWorkerPoolSize(4).setMaxJobsPerSourceHost(1));
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<MirrorJob> jobs = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            final boolean fail = i == 3;
+            Repository repo = repo("repo-" + i, i);
+            jobs.add(new MirrorJob(repo, repo, "source", "target-" + i, () -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                Thread.sleep(20);
+                running.decrementAndGet();
+                if (fail) {
+                    throw new IllegalStateException("boom");
+                }
+                return MirrorStatus.MIRRORED;
+            }));
+        }
+
+        MirrorSummary summary = new MirrorSummary(
+                await(scheduler.submitAll(jobs).toCompletionStage().toCompletableFuture()));
+
+        assertEquals(1, maxRunning.get());
+        assertEquals(5, summary.getMirroredCount());
+        assertEquals(1, summary.getFailedCount());
+        assertTrue(summary.getResults().get(3).getCause() instanceof IllegalStateException);
+        scheduler.close();
+    }
+
+    @Test
+    public void shouldShareWorkersFairlyBetweenTenants() throws Exception {
+        MirrorScheduler scheduler = new MirrorScheduler(vertx, new MirrorOptions().setWorkerPoolSize(2));
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        List<MirrorJob> jobs = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            jobs.add(tenantJob(repo("big-" + i, 100), "big", order));
+        }
+        for (int i = 0; i < 2; i++) {
+            jobs.add(tenantJob(repo("small-" + i, 1), "small", order));
+        }
+
+        await(scheduler.submitAll(jobs).toCompletionStage().toCompletableFuture());
+
+        // the small tenant is served as soon as a worker is free, not after all big jobs.
+        assertTrue(order.subList(0, 5).contains("small-0"));
+        assertTrue(order.subList(0, 6).contains("small-1"));
+        scheduler.close();
+    }
+
+    @Test
+    public void shouldLimitJobsAndBandwidthPerTenant() throws Exception {
+        MirrorScheduler scheduler = new MirrorScheduler(vertx, new MirrorOptions().setWorkerPoolSize(4));
+        scheduler.setTenantQuota("alice", new TenantQuota(1, 0));
+        // one job at a time, as jobs are charged when they end.
+        scheduler.setTenantQuota("bob", new TenantQuota(1, 100 * 1024));
+        scheduler.setTenantQuota("carol", new TenantQuota(1, 100 * 1024));
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<Long> starts = Collections.synchronizedList(new ArrayList<>());
+        List<Long> upToDateStarts = Collections.synchronizedList(new ArrayList<>());
+        List<MirrorJob> jobs = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Repository repo = repo("alice-" + i, 1);
+            jobs.add(new MirrorJob(repo, repo, null, null, () -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                Thread.sleep(20);
+                running.decrementAndGet();
+                return MirrorStatus.MIRRORED;
+            }, "alice"));
+        }
+        for (int i = 0; i < 3; i++) {
+            Repository repo = repo("bob-" + i, 1);
+            jobs.add(new MirrorJob(repo, repo, null, null, () -> {
+                starts.add(System.currentTimeMillis());
+                JobControl.current().addTransferredBytes(100 * 1024); // 100 KB each
+                return MirrorStatus.MIRRORED;
+            }, "bob"));
+        }
+        for (int i = 0; i < 3; i++) {
+            // 100 MB each on the platform, but up to date.
+            Repository repo = repo("carol-" + i, 100 * 1024);
+            jobs.add(new MirrorJob(repo, repo, null, null, () -> {
+                upToDateStarts.add(System.currentTimeMillis());
+                return MirrorStatus.MIRRORED;
+            }, "carol"));
+        }
+
+        MirrorSummary summary = new MirrorSummary(
+                await(scheduler.submitAll(jobs).toCompletionStage().toCompletableFuture()));
+
+        assertEquals(10, summary.getMirroredCount());
+        assertEquals(1, maxRunning.get());
+        // the third job waits for the debt of the second one to be paid back.
+        Collections.sort(starts);
+        assertTrue(starts.get(2) - starts.get(0) >= 800);
+        // jobs receiving nothing are not charged the size of their repository.
+        Collections.sort(upToDateStarts);
+        assertTrue(upToDateStarts.get(2) - upToDateStarts.get(0) < 800);
+        scheduler.close();
+    }
+
+    @Test
+    public void shouldStopJobsPastRepoTimeout() throws Exception {
+        MirrorScheduler scheduler = new MirrorScheduler(vertx, new MirrorOptions()
+                .setWorkerPoolSize(1).setRepoTimeoutSeconds(1));
+        CompletableFuture<Void> never = new CompletableFuture<>();
+        CompletableFuture<JobControl> control = new CompletableFuture<>();
+        Repository hung = repo("hung", 10);
+        Repository next = repo("next", 1);
+        List<MirrorJob> jobs = Arrays.asList(
+                new MirrorJob(hung, hung, null, null, () -> {
+                    control.complete(JobControl.current());
+                    never.get(); // until interrupted
+                    return MirrorStatus.MIRRORED;
+                }),
+                new MirrorJob(next, next, null, null, () -> MirrorStatus.MIRRORED));
+
+        Future<MirrorResult> hungResult = scheduler.submit(jobs.get(0));
+        Future<MirrorResult> nextResult = scheduler.submit(jobs.get(1));
+        CompletableFuture<String> reasonOnReport = new CompletableFuture<>();
+        hungResult.onComplete(ar -> {
+            try {
+                control.getNow(null).checkCancelled();
+                reasonOnReport.complete(null);
+            } catch (CancellationException e) {
+                reasonOnReport.complete(e.getMessage());
+            }
+        });
+        MirrorResult result = await(hungResult.toCompletionStage().toCompletableFuture());
+
+        assertEquals(MirrorStatus.FAILED, result.getStatus());
+        assertTrue(result.getCause() instanceof TimeoutException);
+        // cancelled before the timeout was reported, not only past its deadline.
+        assertEquals("timed out after 1 second(s)", await(reasonOnReport));
+        // the only worker is given back to the next job.
+        assertEquals(MirrorStatus.MIRRORED, await(nextResult.toCompletionStage().toCompletableFuture()).getStatus());
+        scheduler.close();
+    }
+
+    @Test
+    public void shouldNotTimeOutJobsWaitingForBlockedWorker() throws Exception {
+        MirrorScheduler scheduler = new MirrorScheduler(vertx, new MirrorOptions()
+                .setWorkerPoolSize(1).setRepoTimeoutSeconds(1));
+        Repository hung = repo("hung", 10);
+        Repository next = repo("next", 1);
+        // like a socket read, deaf to interrupts, the worker is back after 2.5 seconds.
+        MirrorJob hungJob = new MirrorJob(hung, hung, null, null, () -> {
+            long end = System.currentTimeMillis() + 2500;
+            while (System.currentTimeMillis() < end) {
+                try {
+                    Thread.sleep(end - System.currentTimeMillis());
+                } catch (InterruptedException e) {
+                    // ignored.
+                }
+            }
+            return MirrorStatus.MIRRORED;
+        });
+        MirrorJob nextJob = new MirrorJob(next, next, null, null, () -> MirrorStatus.MIRRORED);
+
+        Future<MirrorResult> hungResult = scheduler.submit(hungJob);
+        Future<MirrorResult> nextResult = scheduler.submit(nextJob);
+
+        assertEquals(MirrorStatus.FAILED, await(hungResult.toCompletionStage().toCompletableFuture()).getStatus());
+        // started by the scheduler at 1 second, but run at 2.5 seconds, within its own timeout.
+        assertEquals(MirrorStatus.MIRRORED, await(nextResult.toCompletionStage().toCompletableFuture()).getStatus());
+        scheduler.close();
+    }
+
+    @Test
+    public void shouldStopJobsOfCancelledRun() throws Exception {
+        MirrorScheduler scheduler = new MirrorScheduler(vertx, new MirrorOptions().setWorkerPoolSize(1));
+        MirrorRun<Void> run = new MirrorRun<>(vertx, 0);
+        CountDownLatch started = new CountDownLatch(1);
+        CompletableFuture<Void> never = new CompletableFuture<>();
+        List<MirrorJob> jobs = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Repository repo = repo("repo-" + i, 3 - i);
+            jobs.add(new MirrorJob(repo, repo, null, null, () -> {
+                started.countDown();
+                never.get();
+                return MirrorStatus.MIRRORED;
+            }, null, run));
+        }
+        Repository other = repo("other", 1);
+        CompletableFuture<MirrorResult> otherResult = scheduler.submit(new MirrorJob(other, other, null, null,
+                () -> MirrorStatus.MIRRORED)).toCompletionStage().toCompletableFuture();
+
+        CompletableFuture<List<MirrorResult>> results =
+                scheduler.submitAll(jobs).toCompletionStage().toCompletableFuture();
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        assertTrue(run.cancel());
+
+        MirrorSummary summary = new MirrorSummary(await(results));
+        assertEquals(3, summary.getCancelledCount());
+        assertEquals(MirrorStatus.MIRRORED, await(otherResult).getStatus());
+        // jobs submitted afterwards are never started.
+        Repository late = repo("late", 1);
+        MirrorResult lateResult = await(scheduler.submit(new MirrorJob(late, late, null, null,
+                () -> MirrorStatus.MIRRORED, null, run)).toCompletionStage().toCompletableFuture());
+        assertEquals(MirrorStatus.CANCELLED, lateResult.getStatus());
+        scheduler.close();
+    }
+
+    @Test
+    public void shouldCancelRunPastItsDeadline() throws Exception {
+        MirrorScheduler scheduler = new MirrorScheduler(vertx, new MirrorOptions().setWorkerPoolSize(1));
+        MirrorRun<Void> run = new MirrorRun<>(vertx, 200);
+        CompletableFuture<Void> never = new CompletableFuture<>();
+        Repository repo = repo("slow", 1);
+
+        MirrorResult result = await(scheduler.submit(new MirrorJob(repo, repo, null, null, () -> {
+            never.get();
+            return MirrorStatus.MIRRORED;
+        }, null, run)).toCompletionStage().toCompletableFuture());
+
+        assertEquals(MirrorStatus.CANCELLED, result.getStatus());
+        assertEquals("run deadline exceeded", run.getCancelReason());
+        scheduler.close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectNegativeQuota() {
+        new TenantQuota(-1, 0);
+    }
+
+    private static MirrorJob tenantJob(Repository repo, String tenant, List<String> order) {
+        return new MirrorJob(repo, repo, null, null, () -> {
+            order.add(repo.getName());
+            Thread.sleep(20);
+            return MirrorStatus.MIRRORED;
+        }, tenant);
+    }
+
+    private static <T> T await(CompletableFuture<T> future) throws Exception {
+        return future.get(10, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,59 @@
+package iot.zjt.mirror;
+
+import io.vertx.core.json.JsonObject;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test for {@link RefFilter}.
+ */
+public class RefFilterTest {
+
+    @Test
+    public void shouldMatchGlobs() {
+        RefFilter filter = new RefFilter(Arrays.asList("refs/heads/**", "refs/tags/v?.*"),
+                Collections.singletonList("refs/heads/dependabot/*"));
+
+        assertTrue(filter.matches("refs/heads/master"));
+        assertTrue(filter.matches("refs/heads/feature/a/b"));
+        assertTrue(filter.matches("refs/tags/v1.0"));
+        assertTrue(filter.matches("refs/heads/dependabot/npm/lodash"));
+        assertFalse(filter.matches("refs/heads/dependabot/npm"));
+        assertFalse(filter.matches("refs/tags/v10.0"));
+        assertFalse(filter.matches("refs/tags/v1/x"));
+        assertFalse(filter.matches("refs/pull/1/head"));
+        assertFalse(RefFilter.headsAndTags().matches("refs/pull/1/head"));
+        assertTrue(RefFilter.all().matches("refs/pull/1/head"));
+        assertFalse(RefFilter.all().matches("HEAD"));
+    }
+
+    @Test
+    public void shouldLoadFromConfig() {
+        RefFilter defaultFilter = RefFilter.headsAndTags();
+        assertEquals(defaultFilter, RefFilter.fromConfig(new JsonObject(), "sync.a.", defaultFilter));
+
+        RefFilter filter = RefFilter.fromConfig(new JsonObject()
+                .put("sync.a.refs", "all")
+                .put("sync.a.refs.exclude", "refs/pull/**, refs/merge-requests/**"), "sync.a.", defaultFilter);
+        assertEquals(Collections.singletonList("refs/**"), filter.getIncludes());
+        assertTrue(filter.matches("refs/keep-around/abc"));
+        assertFalse(filter.matches("refs/merge-requests/1/head"));
+
+        filter = RefFilter.fromConfig(new JsonObject()
+                .put("sync.a.refs.include", "refs/tags/**"), "sync.a.", defaultFilter);
+        assertFalse(filter.matches("refs/heads/master"));
+        assertTrue(filter.matches("refs/tags/v1"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectUnknownPreset() {
+        RefFilter.fromConfig(new JsonObject().put("mirror.refs", "everything"), "mirror.",
+                RefFilter.headsAndTags());
+    }
+}
@@ -0,0 +1,46 @@
+package iot.zjt.mirror;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test for {@link RefSnapshot}.
+ */
+public class RefSnapshotTest {
+
+    private static final ObjectId A = ObjectId.fromString("1111111111111111111111111111111111111111");
+    private static final ObjectId B = ObjectId.fromString("2222222222222222222222222222222222222222");
+
+    @Test
+    public void shouldFindNoDiffForSameRefs() {
+        Map<String, ObjectId> refs = new HashMap<>();
+        refs.put("refs/heads/master", A);
+        refs.put("refs/tags/v1.0", B);
+
+        assertTrue(new RefSnapshot(refs).diff(new RefSnapshot(refs)).isEmpty());
+    }
+
+    @Test
+    public void shouldFindMissingAndChangedRefsOnly() {
+        Map<String, ObjectId> source = new HashMap<>();
+        source.put("refs/heads/master", A);
+        source.put("refs/heads/dev", A);
+        source.put("refs/tags/v1.0", B);
+        Map<String, ObjectId> target = new HashMap<>();
+        target.put("refs/heads/master", B);
+        target.put("refs/tags/v1.0", B);
+        target.put("refs/heads/stale", A);
+
+        assertEquals(Arrays.asList("refs/heads/dev", "refs/heads/master"),
+                new RefSnapshot(source).diff(new RefSnapshot(target)));
+        assertTrue(new RefSnapshot(Collections.emptyMap()).diff(new RefSnapshot(target)).isEmpty());
+    }
+}
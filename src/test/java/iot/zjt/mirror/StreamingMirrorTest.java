@@ -0,0 +1,108 @@
+package iot.zjt.mirror;
+
+import io.vertx.core.Vertx;
+import iot.zjt.Repository;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.revwalk.ObjectWalk;
+import org.eclipse.jgit.revwalk.RevObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test for {@link StreamingMirror}, on local repositories.
+ */
+public class StreamingMirrorTest {
+
+    private Vertx vertx;
+    private Path root;
+
+    @Before
+    public void setUp() throws Exception {
+        vertx = Vertx.vertx();
+        root = Files.createTempDirectory("streaming-test-");
+    }
+
+    @After
+    public void tearDown() {
+        vertx.close();
+        RepositoryMirror.deleteRecursively(root);
+    }
+
+    @Test
+    public void shouldStreamEveryRefAndObjectInBatches() throws Exception {
+        // branches forking from each other, with files and tags, more refs than a batch.
+        Path work = root.resolve("work");
+        try (Git git = Git.init().setDirectory(work.toFile()).call()) {
+            for (int i = 0; i < 3; i++) {
+                Files.write(work.resolve("master-" + i + ".txt"), ("master " + i).getBytes(StandardCharsets.UTF_8));
+                git.add().addFilepattern(".").call();
+                git.commit().setMessage("master " + i).call();
+            }
+            git.tag().setName("v1").call();
+            for (String branch : new String[]{"feature", "release"}) {
+                git.checkout().setCreateBranch(true).setName(branch).setStartPoint("master").call();
+                Files.write(work.resolve(branch + ".txt"), branch.getBytes(StandardCharsets.UTF_8));
+                git.add().addFilepattern(".").call();
+                git.commit().setMessage(branch).call();
+                git.tag().setName(branch + "-1").setAnnotated(true).setMessage(branch).call();
+            }
+        }
+        Git.cloneRepository().setURI(work.toUri().toString()).setBare(true).setCloneAllBranches(true)
+                .setDirectory(root.resolve("source/repo.git").toFile()).call().close();
+        Git.init().setBare(true).setDirectory(root.resolve("target/repo.git").toFile()).call().close();
+        LocalPlatform source = new LocalPlatform(vertx, "source", root.resolve("source"));
+        LocalPlatform target = new LocalPlatform(vertx, "target", root.resolve("target"));
+        Repository repo = LocalPlatform.repo("repo");
+
+        RefSnapshot sourceRefs = RefSnapshot.lsRemote(source.getRepositoryHttpsUrl(repo), null);
+        assertEquals(6, sourceRefs.getRefs().size());
+        new StreamingMirror(source, repo, target, repo, 4, new TransportProfile())
+                .mirror(new ArrayList<>(sourceRefs.getRefs().keySet()));
+
+        assertEquals(sourceRefs, RefSnapshot.lsRemote(target.getRepositoryHttpsUrl(repo), null));
+        try (Git from = Git.open(root.resolve("source/repo.git").toFile());
+             Git to = Git.open(root.resolve("target/repo.git").toFile());
+             ObjectWalk walk = new ObjectWalk(from.getRepository())) {
+            for (Map.Entry<String, ObjectId> ref : sourceRefs.getRefs().entrySet()) {
+                walk.markStart(walk.parseAny(ref.getValue()));
+            }
+            int objects = 0;
+            for (RevObject object = walk.next(); object != null; object = walk.next()) {
+                assertTrue(to.getRepository().getObjectDatabase().has(object));
+                objects++;
+            }
+            for (RevObject object = walk.nextObject(); object != null; object = walk.nextObject()) {
+                assertTrue(to.getRepository().getObjectDatabase().has(object));
+                objects++;
+            }
+            assertTrue(objects > 10);
+        }
+    }
+
+    @Test
+    public void shouldBoundMemoryOfRepositoriesStreamedAtOnce() {
+        assertTrue(StreamingMirror.reserve(600 * 1024, 1024));
+        try {
+            // the second one goes through the disk.
+            assertFalse(StreamingMirror.reserve(600 * 1024, 1024));
+            assertTrue(StreamingMirror.reserve(400 * 1024, 1024));
+            StreamingMirror.release(400 * 1024);
+        } finally {
+            StreamingMirror.release(600 * 1024);
+        }
+        assertTrue(StreamingMirror.reserve(1024 * 1024, 1024));
+        StreamingMirror.release(1024 * 1024);
+    }
+}
@@ -0,0 +1,76 @@
+package iot.zjt.mirror;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test for {@link SyncStateStore}.
+ */
+public class SyncStateStoreTest {
+
+    private static final String SHA = "1111111111111111111111111111111111111111";
+
+    @Test
+    public void shouldReplayJournalAndSkipBrokenLine() throws Exception {
+        Path dir = Files.createTempDirectory("state-test-");
+        Path file = dir.resolve("state.jsonl");
+        Files.write(file, Arrays.asList(
+                "{\"key\":\"a\",\"stage\":\"CREATED\",\"targetId\":7,\"private\":true}",
+                "{\"key\":\"a\",\"stage\":\"MIRRORED\",\"refs\":{\"refs/heads/master\":\"" + SHA + "\"}}",
+                "{\"key\":\"a\",\"stage\":\"VISIBILITY_UPDATED\",\"private\":false}",
+                "{\"key\":\"b\",\"stage\":\"CRE"), StandardCharsets.UTF_8);
+
+        try {
+            SyncStateStore store = SyncStateStore.open(file.toString());
+            SyncState state = store.get("a");
+            assertEquals(SyncStage.MIRRORED, state.getStage());
+            assertEquals(7, state.getTargetId());
+            assertFalse(state.getVisibilityPrivate());
+            assertEquals(new RefSnapshot(Collections.singletonMap("refs/heads/master", ObjectId.fromString(SHA))),
+                    state.getSourceRefs());
+            assertNull(store.get("b"));
+
+            // compacted into one line per repository.
+            assertEquals(1, Files.readAllLines(file, StandardCharsets.UTF_8).size());
+        } finally {
+            RepositoryMirror.deleteRecursively(dir);
+        }
+    }
+
+    @Test
+    public void shouldAppendRecords() throws Exception {
+        Path dir = Files.createTempDirectory("state-test-");
+        Path file = dir.resolve("state.jsonl");
+
+        try {
+            SyncStateStore store = SyncStateStore.open(file.toString());
+            store.recordCreated("a", 3, true);
+            store.recordVisibility("a", false);
+            assertTrue(store.get("a").hasReached(SyncStage.VISIBILITY_UPDATED));
+            assertFalse(store.get("a").hasReached(SyncStage.MIRRORED));
+
+            // created again, starting over.
+            store.recordMirrored("a", new RefSnapshot(Collections.emptyMap()));
+            store.recordCreated("a", 4, true);
+            assertEquals(SyncStage.CREATED, store.get("a").getStage());
+            assertEquals(4, store.get("a").getTargetId());
+            assertNull(store.get("a").getSourceRefs());
+
+            store.flush();
+            assertEquals(4, Files.readAllLines(file, StandardCharsets.UTF_8).size());
+        } finally {
+            RepositoryMirror.deleteRecursively(dir);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package iot.zjt.mirror;
+
+import io.vertx.core.json.JsonObject;
+import org.junit.Test;
+
+import java.util.zip.Deflater;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test for {@link TransportProfile}.
+ */
+public class TransportProfileTest {
+
+    @Test
+    public void shouldKeepJGitDefaults() {
+        TransportProfile profile = TransportProfile.fromConfig(new JsonObject());
+
+        assertEquals(10, profile.getWindowCacheMb());
+        assertFalse(profile.isMmap());
+        assertEquals(Deflater.DEFAULT_COMPRESSION, profile.getCompressionLevel());
+        assertTrue(profile.isReuseDeltas());
+        assertFalse(profile.isThinPack());
+    }
+
+    @Test
+    public void shouldOverrideBulkProfile() {
+        TransportProfile profile = TransportProfile.fromConfig(new JsonObject()
+                .put("git.profile", "bulk")
+                .put("git.threads", "2")
+                .put("git.reuse-objects", "false"));
+
+        assertEquals(256, profile.getWindowCacheMb());
+        assertTrue(profile.isMmap());
+        assertEquals(Deflater.BEST_SPEED, profile.getCompressionLevel());
+        assertEquals(2, profile.getThreads());
+        assertFalse(profile.isReuseObjects());
+        assertTrue(profile.isThinPack());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectUnknownProfile() {
+        TransportProfile.fromConfig(new JsonObject().put("git.profile", "turbo"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectWindowSizeNotPowerOfTwo() {
+        new TransportProfile().setWindowSizeKb(48);
+    }
+}
@@ -0,0 +1,148 @@
+package iot.zjt.platform;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpServer;
+import io.vertx.ext.web.client.WebClient;
+import iot.zjt.Repository;
+import iot.zjt.platform.online.GitLabPlatform;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit test for {@link AbstractOnlinePlatform}: its API client, and matching
+ * repositories in {@link AbstractOnlinePlatform#prepareTarget} against GitLab names.
+ */
+public class AbstractOnlinePlatformTest {
+
+    private Vertx vertx;
+    private final List<String> created = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        vertx = Vertx.vertx();
+    }
+
+    @After
+    public void tearDown() {
+        vertx.close();
+    }
+
+    private static Repository repo(String name) {
+        Repository repo = new Repository();
+        repo.setOwner("tom");
+        repo.setName(name);
+        repo.setVisibilityPrivate(false);
+        return repo;
+    }
+
+    /**
+     * A GitLab platform creating and updating repositories offline.
+     */
+    private AbstractOnlinePlatform gitLab() {
+        return new GitLabPlatform(vertx, new PlatformUser("jerry", "xxx")) {
+            @Override
+            public Future<Void> createRepository(Repository repo) {
+                created.add(repo.getName());
+                return Future.succeededFuture();
+            }
+
+            @Override
+            public Future<Void> updateRepository(Repository repo) {
+                return Future.succeededFuture();
+            }
+        };
+    }
+
+    private Map<Repository, Repository> prepare(List<Repository> fromRepos, List<Repository> toRepos)
+            throws Exception {
+        return gitLab().prepareTarget(gitLab(), fromRepos, toRepos, null)
+                .toCompletionStage().toCompletableFuture().get(30, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void shouldMatchNormalizedNames() throws Exception {
+        Repository dotted = repo("my.repo");
+        Repository upper = repo("Other");
+        Repository fresh = repo("fresh");
+        Repository dashed = repo("my-repo");
+        Repository lower = repo("other");
+
+        Map<Repository, Repository> mapper = prepare(Arrays.asList(dotted, upper, fresh),
+                Arrays.asList(dashed, lower));
+        assertTrue(mapper.get(dotted) == dashed);
+        assertTrue(mapper.get(upper) == lower);
+        assertEquals(Arrays.asList("fresh"), created);
+    }
+
+    @Test
+    public void shouldMatchExactNameOnCollision() throws Exception {
+        Repository dotted = repo("my.repo");
+        Repository dashed = repo("my-repo");
+        Repository existDashed = repo("my-repo");
+        Repository existDotted = repo("my.repo");
+
+        // the first one of the two sources only, as they share a repository on GitLab.
+        Map<Repository, Repository> mapper = prepare(Arrays.asList(dashed, dotted),
+                Arrays.asList(existDotted, existDashed));
+        assertEquals(1, mapper.size());
+        assertTrue(mapper.get(dashed) == existDashed);
+        assertFalse(mapper.containsKey(dotted));
+
+        mapper = prepare(Arrays.asList(dotted, dashed), new ArrayList<>());
+        assertEquals(1, mapper.size());
+        assertTrue(mapper.containsKey(dotted));
+        assertEquals(Arrays.asList("my.repo"), created);
+    }
+
+    private static int get(WebClient client, int port) throws Exception {
+        return client.get(port, "localhost", "/").send()
+                .toCompletionStage().toCompletableFuture().get(10, TimeUnit.SECONDS).statusCode();
+    }
+
+    @Test
+    public void shouldReuseConnectionsOfItsOwnClient() throws Exception {
+        AtomicInteger connections = new AtomicInteger();
+        HttpServer server = vertx.createHttpServer()
+                .connectionHandler(connection -> connections.incrementAndGet())
+                .requestHandler(request -> request.response().end("ok"))
+                .listen(0).toCompletionStage().toCompletableFuture().get(10, TimeUnit.SECONDS);
+        int port = server.actualPort();
+        AbstractOnlinePlatform first = gitLab();
+        AbstractOnlinePlatform second = gitLab();
+
+        // one client for every request of a platform, keeping its connection alive.
+        WebClient client = first.getWebClient();
+        for (int i = 0; i < 3; i++) {
+            assertTrue(first.getWebClient() == client);
+            assertEquals(200, get(first.getWebClient(), port));
+        }
+        assertEquals(1, connections.get());
+        assertFalse(second.getWebClient() == client);
+
+        // each platform closes its own client only.
+        first.close();
+        try {
+            get(client, port);
+            fail("the client should be closed");
+        } catch (ExecutionException | IllegalStateException e) {
+            // closed.
+        }
+        assertEquals(200, get(second.getWebClient(), port));
+        second.close();
+    }
+}
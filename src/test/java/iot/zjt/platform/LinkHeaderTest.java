@@ -0,0 +1,31 @@
+package iot.zjt.platform;
+
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test for {@link LinkHeader}.
+ */
+public class LinkHeaderTest {
+
+    @Test
+    public void shouldParseGitHubPagination() {
+        Map<String, String> links = LinkHeader.parse(
+                "<https://api.github.com/user/repos?type=owner&page=2&per_page=100>; rel=\"next\", " +
+                "<https://api.github.com/user/repos?type=owner&page=7&per_page=100>; rel=\"last\"");
+
+        assertEquals(2, LinkHeader.pageOf(links.get("next")));
+        assertEquals(7, LinkHeader.pageOf(links.get("last")));
+        assertEquals(0, LinkHeader.pageOf(links.get("prev")));
+    }
+
+    @Test
+    public void shouldHandleMissingHeader() {
+        assertTrue(LinkHeader.parse(null).isEmpty());
+        assertEquals(0, LinkHeader.pageOf("https://api.github.com/user/repos?per_page=100"));
+    }
+}
@@ -0,0 +1,46 @@
+package iot.zjt.platform;
+
+import io.vertx.core.Vertx;
+import iot.zjt.platform.online.GitLabPlatform;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test for {@link PlatformRegistry}.
+ */
+public class PlatformRegistryTest {
+
+    private Vertx vertx;
+
+    @Before
+    public void setUp() {
+        vertx = Vertx.vertx();
+    }
+
+    @After
+    public void tearDown() {
+        vertx.close();
+    }
+
+    @Test
+    public void shouldLoadBundledProviders() {
+        PlatformRegistry registry = PlatformRegistry.load();
+
+        assertEquals(new HashSet<>(Arrays.asList("github", "gitlab")), registry.getTypes());
+        assertTrue(registry.create("GitLab", vertx, new PlatformUser("tom", "xxx"),
+                new PlatformClientOptions()) instanceof GitLabPlatform);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectUnknownType() {
+        PlatformRegistry.load().create("bitbucket", vertx, new PlatformUser("tom", "xxx"),
+                new PlatformClientOptions());
+    }
+}
@@ -0,0 +1,91 @@
+package iot.zjt.platform;
+
+import com.fasterxml.jackson.core.JsonParser;
+import io.vertx.core.buffer.Buffer;
+import iot.zjt.Repository;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test for {@link RepositoryListParser}.
+ */
+public class RepositoryListParserTest {
+
+    private static final String BODY = "[" +
+            "{\"id\": 1, \"name\": \"alpha\", \"topics\": [\"a\", {\"name\": \"x\"}]," +
+            " \"owner\": {\"login\": \"tom\", \"id\": 9}, \"private\": true, \"size\": 1024," +
+            " \"pushed_at\": \"2021-01-29T08:00:00Z\"}," +
+            "{\"name\": \"beta\", \"id\": 2, \"owner\": {\"login\": \"jerry\"}, \"private\": false," +
+            " \"license\": null, \"pushed_at\": null, \"permissions\": {\"admin\": true}}" +
+            "]";
+
+    private static void read(Repository repo, String path, JsonParser parser) throws IOException {
+        switch (path) {
+            case "id":
+                repo.setId(parser.getValueAsInt());
+                break;
+            case "name":
+                repo.setName(parser.getText());
+                break;
+            case "owner.login":
+                repo.setOwner(parser.getText());
+                break;
+            case "private":
+                repo.setVisibilityPrivate(parser.getValueAsBoolean());
+                break;
+            case "size":
+                repo.setSize(parser.getValueAsLong());
+                break;
+            case "pushed_at":
+                repo.setPushedAt(RepositoryListParser.readTime(parser));
+                break;
+            default:
+                break;
+        }
+    }
+
+    @Test
+    public void shouldParseChunkedBody() {
+        List<Repository> repos = new ArrayList<>();
+        RepositoryListParser parser = new RepositoryListParser(RepositoryListParserTest::read, repos::add);
+
+        // feed a few bytes at a time, splitting tokens.
+        for (int i = 0; i < BODY.length(); i += 7) {
+            parser.write(Buffer.buffer(BODY.substring(i, Math.min(BODY.length(), i + 7))));
+        }
+        parser.end();
+
+        assertEquals(2, repos.size());
+        assertEquals(1, repos.get(0).getId());
+        assertEquals("alpha", repos.get(0).getName()); // not overwritten by "topics"
+        assertEquals("tom", repos.get(0).getOwner());
+        assertTrue(repos.get(0).getVisibilityPrivate());
+        assertEquals(1024, repos.get(0).getSize());
+        assertEquals(1611907200000L, repos.get(0).getPushedAt());
+        assertEquals("beta", repos.get(1).getName());
+        assertEquals("jerry", repos.get(1).getOwner());
+        assertFalse(repos.get(1).getVisibilityPrivate());
+        assertEquals(0, repos.get(1).getPushedAt());
+    }
+
+    @Test
+    public void shouldIgnoreObjectBodyAndReportMalformedBody() {
+        List<Repository> repos = new ArrayList<>();
+
+        assertNull(new RepositoryListParser(RepositoryListParserTest::read, repos::add)
+                .parse(Buffer.buffer("{\"message\": \"Bad credentials\", \"owner\": {\"login\": \"x\"}}")));
+        assertTrue(repos.isEmpty());
+
+        assertNotNull(new RepositoryListParser(RepositoryListParserTest::read, repos::add)
+                .parse(Buffer.buffer("<html>502 Bad Gateway</html>")));
+    }
+}
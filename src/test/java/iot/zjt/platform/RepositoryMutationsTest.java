@@ -0,0 +1,125 @@
+package iot.zjt.platform;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import iot.zjt.Repository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test for {@link RepositoryMutations}.
+ */
+public class RepositoryMutationsTest {
+
+    private Vertx vertx;
+    private final List<String> created = new ArrayList<>();
+    private final List<String> updated = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        vertx = Vertx.vertx();
+    }
+
+    @After
+    public void tearDown() {
+        vertx.close();
+    }
+
+    private static Repository repo(String name, boolean visibilityPrivate) {
+        Repository repo = new Repository();
+        repo.setOwner("tom");
+        repo.setName(name);
+        repo.setVisibilityPrivate(visibilityPrivate);
+        return repo;
+    }
+
+    /**
+     * A platform creating every 10 repositories in one request.
+     */
+    private AbstractOnlinePlatform platform() {
+        return new AbstractOnlinePlatform(vertx, new PlatformUser("tom", "xxx")) {
+            @Override
+            public Future<Void> createRepository(Repository repo) {
+                created.add(repo.getName() + (repo.getVisibilityPrivate() ? ":private" : ":public"));
+                return Future.succeededFuture();
+            }
+
+            @Override
+            public int countCreateRequests(int repos) {
+                return (repos + 9) / 10;
+            }
+
+            @Override
+            public Future<Void> deleteRepository(Repository repo) {
+                return Future.succeededFuture();
+            }
+
+            @Override
+            public Future<Void> updateRepository(Repository repo) {
+                updated.add(repo.getName() + (repo.getVisibilityPrivate() ? ":private" : ":public"));
+                return Future.succeededFuture();
+            }
+
+            @Override
+            public Future<List<Repository>> getRepositories(boolean includePrivate) {
+                return Future.succeededFuture(new ArrayList<>());
+            }
+
+            @Override
+            public String getPlatform() {
+                return "test";
+            }
+
+            @Override
+            public String getRepositoryHttpsUrl(Repository repo) {
+                return "https://localhost/" + repo.getOwner() + "/" + repo.getName() + ".git";
+            }
+        };
+    }
+
+    @Test
+    public void shouldFoldVisibilityIntoCreation() {
+        RepositoryMutations mutations = new RepositoryMutations(platform());
+        Repository first = mutations.create(repo("a", false));
+        Repository second = mutations.create(repo("A", false)); // the same name on the platform
+        mutations.updateVisibility(second, true);
+
+        Map<Repository, Future<Void>> results = mutations.applyCreates();
+        assertTrue(first == second);
+        assertEquals(1, results.size());
+        assertTrue(mutations.applyUpdates().isEmpty());
+        assertEquals(1, created.size());
+        assertEquals("a:private", created.get(0));
+        assertTrue(updated.isEmpty());
+        assertEquals(2, mutations.getSavedCount());
+    }
+
+    @Test
+    public void shouldSendLastUpdateOnly() {
+        RepositoryMutations mutations = new RepositoryMutations(platform());
+        Repository exist = repo("b", false);
+        mutations.updateVisibility(exist, true);
+        mutations.updateVisibility(exist, false);
+        for (int i = 0; i < 12; i++) {
+            mutations.create(repo("new-" + i, false));
+        }
+
+        mutations.applyCreates();
+        mutations.applyUpdates();
+        assertEquals(12, created.size());
+        assertEquals(1, updated.size());
+        assertFalse(exist.getVisibilityPrivate());
+        assertEquals(14, mutations.getRequestedCount());
+        assertEquals(3, mutations.getRequestCount()); // 2 batches of creations and 1 update
+        assertEquals(11, mutations.getSavedCount());
+    }
+}
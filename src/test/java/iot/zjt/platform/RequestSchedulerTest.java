@@ -0,0 +1,72 @@
+package iot.zjt.platform;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpServer;
+import io.vertx.ext.web.client.HttpResponse;
+import io.vertx.ext.web.client.WebClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Unit test for {@link RequestScheduler}.
+ */
+public class RequestSchedulerTest {
+
+    private Vertx vertx;
+    private HttpServer server;
+    private WebClient client;
+    private final AtomicInteger hits = new AtomicInteger();
+
+    @Before
+    public void setUp() throws Exception {
+        vertx = Vertx.vertx();
+        // the first two requests are rate limited, then succeed.
+        server = vertx.createHttpServer().requestHandler(request -> {
+            if (hits.incrementAndGet() <= 2) {
+                request.response().setStatusCode(429).putHeader("Retry-After", "0").end();
+            } else {
+                request.response().putHeader("X-RateLimit-Remaining", "42").end("ok");
+            }
+        }).listen(0).toCompletionStage().toCompletableFuture().get(10, TimeUnit.SECONDS);
+        client = WebClient.create(vertx);
+    }
+
+    @After
+    public void tearDown() {
+        vertx.close();
+    }
+
+    @Test
+    public void shouldRetryRateLimitedRequests() throws Exception {
+        RequestScheduler scheduler = new RequestScheduler(vertx, "test", new PlatformClientOptions()
+                .setRetryBaseDelayMs(10).setMaxRetries(3));
+
+        HttpResponse<Buffer> response = scheduler.schedule(RequestScheduler.Lane.LISTING,
+                () -> client.get(server.actualPort(), "localhost", "/").send())
+                .toCompletionStage().toCompletableFuture().get(10, TimeUnit.SECONDS);
+
+        assertEquals(200, response.statusCode());
+        assertEquals(3, hits.get());
+        assertEquals(42, scheduler.getRateLimitRemaining());
+    }
+
+    @Test
+    public void shouldGiveUpAfterMaxRetries() throws Exception {
+        RequestScheduler scheduler = new RequestScheduler(vertx, "test", new PlatformClientOptions()
+                .setRetryBaseDelayMs(10).setMaxRetries(1));
+
+        HttpResponse<Buffer> response = scheduler.schedule(RequestScheduler.Lane.MUTATION,
+                () -> client.get(server.actualPort(), "localhost", "/").send())
+                .toCompletionStage().toCompletableFuture().get(10, TimeUnit.SECONDS);
+
+        assertEquals(429, response.statusCode());
+        assertEquals(2, hits.get());
+    }
+}
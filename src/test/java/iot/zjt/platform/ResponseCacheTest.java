@@ -0,0 +1,126 @@
+package iot.zjt.platform;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpServer;
+import io.vertx.ext.web.client.HttpRequest;
+import io.vertx.ext.web.client.HttpResponse;
+import io.vertx.ext.web.client.WebClient;
+import io.vertx.ext.web.codec.BodyCodec;
+import iot.zjt.Repository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test for {@link ResponseCache}, against a local server supporting ETag.
+ */
+public class ResponseCacheTest {
+
+    private static final String ETAG = "\"v1\"";
+
+    private Vertx vertx;
+    private HttpServer server;
+    private WebClient client;
+    private Path dir;
+    private final AtomicInteger notModified = new AtomicInteger();
+
+    @Before
+    public void setUp() throws Exception {
+        vertx = Vertx.vertx();
+        dir = Files.createTempDirectory("response-cache-test-");
+        server = vertx.createHttpServer().requestHandler(request -> {
+            if (ETAG.equals(request.getHeader("If-None-Match"))) {
+                notModified.incrementAndGet();
+                request.response().setStatusCode(304).putHeader("ETag", ETAG).end();
+            } else {
+                request.response().putHeader("ETag", ETAG)
+                        .end("[{\"id\": 1, \"name\": \"alpha\", \"private\": false}]");
+            }
+        }).listen(0).toCompletionStage().toCompletableFuture().get(10, TimeUnit.SECONDS);
+        client = WebClient.create(vertx);
+    }
+
+    @After
+    public void tearDown() {
+        vertx.close();
+        for (File file : dir.toFile().listFiles()) {
+            file.delete();
+        }
+        dir.toFile().delete();
+    }
+
+    private static <T> T await(io.vertx.core.Future<T> future) throws Exception {
+        return future.toCompletionStage().toCompletableFuture().get(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * List the page like the platforms do, through the cache.
+     */
+    private RepositoryPage list(ResponseCache cache) throws Exception {
+        ResponseCache.Entry cached = await(cache.get("repos?page=1"));
+        List<Repository> repos = new ArrayList<>();
+        HttpRequest<Void> request = client.get(server.actualPort(), "localhost", "/repos")
+                .as(BodyCodec.pipe(new RepositoryListParser((repo, path, parser) -> {
+                    if ("name".equals(path)) {
+                        repo.setName(parser.getText());
+                    }
+                }, repos::add)));
+        HttpResponse<Void> response = await(cached == null ? request.send() :
+                cached.addConditionalHeaders(request).send());
+
+        if (response.statusCode() == 304) {
+            return RepositoryPage.fromJson(cached.getValue());
+        }
+        RepositoryPage page = new RepositoryPage(repos, 0, 1);
+        cache.put("repos?page=1", response, page.toJson());
+        return page;
+    }
+
+    @Test
+    public void shouldServeNotModifiedFromCache() throws Exception {
+        ResponseCache cache = new ResponseCache(vertx, "test/tom",
+                new PlatformClientOptions().setCacheDirectory(dir.toString()));
+
+        assertEquals("alpha", list(cache).getRepositories().get(0).getName());
+        Thread.sleep(200); // written asynchronously.
+        assertNotNull(await(cache.get("repos?page=1")));
+
+        RepositoryPage page = list(cache);
+        assertEquals(1, notModified.get());
+        assertEquals("alpha", page.getRepositories().get(0).getName());
+        assertEquals(1, page.getLastPage());
+    }
+
+    @Test
+    public void shouldBypassAndEvict() throws Exception {
+        PlatformClientOptions options = new PlatformClientOptions().setCacheDirectory(dir.toString());
+        ResponseCache cache = new ResponseCache(vertx, "test/tom", options);
+        cache.put("repos?page=1", await(client.get(server.actualPort(), "localhost", "/").send()),
+                new RepositoryPage(Collections.emptyList(), 0, 1).toJson());
+        Thread.sleep(200);
+
+        assertNull(await(new ResponseCache(vertx, "test/tom", options.setCacheBypass(true)).get("repos?page=1")));
+        assertNull(await(new ResponseCache(vertx, "test/jerry", options.setCacheBypass(false)).get("repos?page=1")));
+
+        // older than the max age.
+        for (File file : dir.toFile().listFiles()) {
+            assertTrue(file.setLastModified(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(30)));
+        }
+        await(cache.evict());
+        assertEquals(0, dir.toFile().listFiles().length);
+    }
+}
@@ -0,0 +1,138 @@
+package iot.zjt.sync;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import iot.zjt.fake.FakePlatformServer;
+import iot.zjt.fake.FakeServerOptions;
+import iot.zjt.mirror.MirrorOptions;
+import iot.zjt.mirror.MirrorScheduler;
+import iot.zjt.mirror.MirrorSummary;
+import iot.zjt.platform.PlatformRegistry;
+import iot.zjt.platform.online.GitHubPlatform;
+import iot.zjt.platform.online.GitLabPlatform;
+import org.eclipse.jgit.api.Git;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test for {@link SyncPlan}.
+ */
+public class SyncPlanTest {
+
+    private Vertx vertx;
+    private Path root;
+
+    @Before
+    public void setUp() throws Exception {
+        vertx = Vertx.vertx();
+        root = Files.createTempDirectory("sync-plan-test-");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        vertx.close();
+        try (Stream<Path> paths = Files.walk(root)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    private static <T> T await(Future<T> future) throws Exception {
+        return future.toCompletionStage().toCompletableFuture().get(30, TimeUnit.SECONDS);
+    }
+
+    private FakePlatformServer serve(String name, FakeServerOptions.Dialect dialect, String... repos)
+            throws Exception {
+        for (String repo : repos) {
+            Path work = root.resolve("work/" + repo);
+            try (Git git = Git.init().setDirectory(work.toFile()).call()) {
+                git.commit().setMessage("init").setAllowEmpty(true).call();
+            }
+            Git.cloneRepository().setURI(work.toUri().toString()).setBare(true)
+                    .setDirectory(root.resolve(name + "/tom/" + repo + ".git").toFile()).call().close();
+        }
+        FakePlatformServer server = new FakePlatformServer(vertx, new FakeServerOptions()
+                .setDialect(dialect).setRoot(root.resolve(name).toString()));
+        await(server.start());
+        return server;
+    }
+
+    private static JsonObject instance(JsonObject config, String name, String type, FakePlatformServer server) {
+        return config.put("platform." + name + ".type", type)
+                .put("platform." + name + ".username", "tom")
+                .put("platform." + name + ".token", "xxx")
+                .put("platform." + name + ".api-url", server.getApiUrl())
+                .put("platform." + name + ".git-url", server.getGitUrl());
+    }
+
+    @Test
+    public void shouldFallBackToGitHubAndGitLabKeys() {
+        SyncPlan plan = SyncPlan.fromConfig(vertx, new JsonObject()
+                .put("github.username", "tom")
+                .put("gitlab.username", "jerry")
+                .put("gitlab.api-url", "https://git.example.com/api/v4"), PlatformRegistry.load());
+
+        assertTrue(plan.getPlatform("github") instanceof GitHubPlatform);
+        assertTrue(plan.getPlatform("gitlab") instanceof GitLabPlatform);
+        assertEquals("https://git.example.com/api/v4", plan.getPlatform("gitlab").getApiUrl());
+        assertEquals(1, plan.getSyncs().size());
+        assertEquals("github", plan.getSyncs().get(0).getSource());
+        assertEquals(Collections.singletonList("gitlab"), plan.getSyncs().get(0).getTargets());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectUnknownTarget() {
+        SyncPlan.fromConfig(vertx, new JsonObject()
+                .put("platforms", "hub")
+                .put("platform.hub.type", "github")
+                .put("syncs", "a")
+                .put("sync.a.source", "hub")
+                .put("sync.a.targets", "lab"), PlatformRegistry.load());
+    }
+
+    @Test
+    public void shouldRunSyncsOfManyAccountsTogether() throws Exception {
+        FakePlatformServer hub = serve("hub", FakeServerOptions.Dialect.GITHUB, "alpha");
+        FakePlatformServer lab = serve("lab", FakeServerOptions.Dialect.GITLAB, "beta", "gamma");
+        FakePlatformServer backup = serve("backup", FakeServerOptions.Dialect.GITLAB);
+
+        JsonObject config = new JsonObject()
+                .put("platforms", "hub, lab, backup")
+                .put("platform.backup.max-jobs", "1")
+                .put("platform.lab.max-in-flight", "2")
+                .put("syncs", "one,two")
+                .put("sync.one.source", "hub")
+                .put("sync.one.targets", "backup")
+                .put("sync.two.source", "lab")
+                .put("sync.two.targets", "backup");
+        instance(config, "hub", "github", hub);
+        instance(config, "lab", "gitlab", lab);
+        instance(config, "backup", "gitlab", backup);
+        SyncPlan plan = SyncPlan.fromConfig(vertx, config, PlatformRegistry.load());
+        MirrorScheduler scheduler = new MirrorScheduler(vertx, new MirrorOptions());
+
+        Map<String, List<MirrorSummary>> summaries = await(plan.run(scheduler));
+
+        assertEquals(Arrays.asList("one", "two"), Arrays.asList(summaries.keySet().toArray()));
+        assertEquals(1, summaries.get("one").get(0).getMirroredCount());
+        assertEquals(2, summaries.get("two").get(0).getMirroredCount());
+        assertEquals(3, backup.getRepositoryNames().size());
+        scheduler.close();
+        plan.close();
+    }
+}
@@ -0,0 +1,138 @@
+package iot.zjt.sync;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import iot.zjt.fake.FakePlatformServer;
+import iot.zjt.fake.FakeServerOptions;
+import iot.zjt.mirror.MirrorOptions;
+import iot.zjt.mirror.MirrorScheduler;
+import iot.zjt.mirror.TenantQuota;
+import iot.zjt.platform.AbstractOnlinePlatform;
+import iot.zjt.platform.PlatformRegistry;
+import iot.zjt.platform.PlatformUser;
+import iot.zjt.platform.online.GitHubPlatform;
+import iot.zjt.platform.online.GitLabPlatform;
+import org.eclipse.jgit.api.Git;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test for {@link TenantBatch}.
+ */
+public class TenantBatchTest {
+
+    private Vertx vertx;
+    private Path root;
+
+    @Before
+    public void setUp() throws Exception {
+        vertx = Vertx.vertx();
+        root = Files.createTempDirectory("tenant-batch-test-");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        vertx.close();
+        try (Stream<Path> paths = Files.walk(root)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    private static <T> T await(Future<T> future) throws Exception {
+        return future.toCompletionStage().toCompletableFuture().get(30, TimeUnit.SECONDS);
+    }
+
+    private FakePlatformServer serve(String name, String owner, FakeServerOptions.Dialect dialect,
+                                     String... repos) throws Exception {
+        for (String repo : repos) {
+            Path work = root.resolve("work/" + name + "/" + repo);
+            try (Git git = Git.init().setDirectory(work.toFile()).call()) {
+                git.commit().setMessage("init").setAllowEmpty(true).call();
+            }
+            Git.cloneRepository().setURI(work.toUri().toString()).setBare(true)
+                    .setDirectory(root.resolve(name + "/" + owner + "/" + repo + ".git").toFile()).call().close();
+        }
+        FakePlatformServer server = new FakePlatformServer(vertx, new FakeServerOptions()
+                .setDialect(dialect).setOwner(owner).setRoot(root.resolve(name).toString()));
+        await(server.start());
+        return server;
+    }
+
+    @Test
+    public void shouldLoadTenantsWithDefaultQuotas() {
+        TenantBatch batch = TenantBatch.fromConfig(vertx, new JsonObject()
+                .put("tenants", "alice, bob")
+                .put("tenants.max-jobs", "2")
+                .put("tenant.alice.source-username", "alice")
+                .put("tenant.bob.max-kb-per-second", "1024")
+                .put("tenant.bob.include-private", "false"), PlatformRegistry.load());
+
+        List<TenantBatch.Tenant> tenants = batch.getTenants();
+        assertEquals(2, tenants.size());
+        assertEquals("alice", tenants.get(0).getSource().getUsername());
+        assertEquals(2, tenants.get(0).getQuota().getMaxJobs());
+        assertEquals(0, tenants.get(0).getQuota().getMaxBytesPerSecond());
+        assertEquals(1024 * 1024, tenants.get(1).getQuota().getMaxBytesPerSecond());
+        assertFalse(tenants.get(1).isIncludePrivate());
+    }
+
+    @Test
+    public void shouldReportEachTenantApart() throws Exception {
+        Map<String, FakePlatformServer> sources = new HashMap<>();
+        Map<String, FakePlatformServer> targets = new HashMap<>();
+        sources.put("alice", serve("alice-hub", "alice", FakeServerOptions.Dialect.GITHUB, "a1", "a2", "a3"));
+        targets.put("alice", serve("alice-lab", "alice", FakeServerOptions.Dialect.GITLAB));
+        sources.put("bob", serve("bob-hub", "bob", FakeServerOptions.Dialect.GITHUB, "b1"));
+        targets.put("bob", serve("bob-lab", "bob", FakeServerOptions.Dialect.GITLAB));
+
+        TenantBatch batch = new TenantBatch(
+                user -> point(new GitHubPlatform(vertx, user), sources.get(user.getUsername())),
+                user -> point(new GitLabPlatform(vertx, user), targets.get(user.getUsername())));
+        batch.addTenant(new TenantBatch.Tenant("alice", new PlatformUser("alice", "xxx"),
+                new PlatformUser("alice", "xxx"), new TenantQuota(1, 0), true));
+        batch.addTenant(new TenantBatch.Tenant("bob", new PlatformUser("bob", "xxx"),
+                new PlatformUser("bob", "xxx"), null, true));
+        batch.addTenant(new TenantBatch.Tenant("carol", new PlatformUser("carol", "xxx"),
+                new PlatformUser("carol", "xxx"), null, true));
+        MirrorScheduler scheduler = new MirrorScheduler(vertx, new MirrorOptions());
+
+        List<TenantBatch.TenantResult> results = await(batch.run(scheduler));
+
+        assertEquals(3, results.size());
+        assertTrue(results.get(0).isSucceeded());
+        assertEquals(3, results.get(0).getSummary().getMirroredCount());
+        assertEquals(3, targets.get("alice").getRepositoryNames().size());
+        assertTrue(results.get(1).isSucceeded());
+        assertEquals(1, targets.get("bob").getRepositoryNames().size());
+        // carol has no server, which fails only her own result.
+        assertFalse(results.get(2).isSucceeded());
+        assertNull(results.get(2).getSummary());
+        assertNotNull(results.get(2).getCause());
+        scheduler.close();
+    }
+
+    private static AbstractOnlinePlatform point(AbstractOnlinePlatform platform, FakePlatformServer server) {
+        if (server == null) {
+            throw new IllegalStateException("no server for " + platform.getPlatform());
+        }
+        return platform.setApiUrl(server.getApiUrl()).setGitUrl(server.getGitUrl());
+    }
+}
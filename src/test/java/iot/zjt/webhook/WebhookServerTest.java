@@ -0,0 +1,271 @@
+package iot.zjt.webhook;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientResponse;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.client.HttpRequest;
+import io.vertx.ext.web.client.WebClient;
+import iot.zjt.Repository;
+import iot.zjt.mirror.MirrorOptions;
+import iot.zjt.mirror.MirrorScheduler;
+import iot.zjt.mirror.MirrorSummary;
+import iot.zjt.platform.AbstractOnlinePlatform;
+import iot.zjt.platform.PlatformUser;
+import iot.zjt.platform.online.GitHubPlatform;
+import iot.zjt.platform.online.GitLabPlatform;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit test for {@link WebhookServer}, with webhooks posted locally.
+ */
+public class WebhookServerTest {
+
+    private static final String SECRET = "s3cret";
+
+    private Vertx vertx;
+    private WebClient client;
+    private MirrorScheduler scheduler;
+    private WebhookServer server;
+    private int port;
+    private final List<Repository> mirrored = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void setUp() {
+        vertx = Vertx.vertx();
+        client = WebClient.create(vertx);
+        scheduler = new MirrorScheduler(vertx, new MirrorOptions());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.close().toCompletionStage().toCompletableFuture().get(10, TimeUnit.SECONDS);
+        scheduler.close();
+        vertx.close();
+    }
+
+    private void start(AbstractOnlinePlatform source) throws Exception {
+        start(source, new WebhookOptions().setSecret(SECRET).setDebounceMs(200));
+    }
+
+    private void start(AbstractOnlinePlatform source, WebhookOptions options) throws Exception {
+        server = new WebhookServer(vertx, source, source, scheduler, options);
+        port = server.start().toCompletionStage().toCompletableFuture().get(10, TimeUnit.SECONDS).actualPort();
+    }
+
+    private AbstractOnlinePlatform recordingGitHub() {
+        return new GitHubPlatform(vertx, new PlatformUser("tom", "xxx")) {
+            @Override
+            public Future<MirrorSummary> mirrorRepoTo(AbstractOnlinePlatform targetPlatform, Repository from,
+                                                      MirrorScheduler scheduler) {
+                return record(mirrored, from);
+            }
+        };
+    }
+
+    private int post(HttpRequest<Buffer> request, JsonObject payload) throws Exception {
+        return request.sendBuffer(payload.toBuffer())
+                .toCompletionStage().toCompletableFuture().get(10, TimeUnit.SECONDS).statusCode();
+    }
+
+    private static String sign(Buffer body) throws Exception {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(SECRET.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+        StringBuilder signature = new StringBuilder("sha256=");
+        for (byte b : mac.doFinal(body.getBytes())) {
+            signature.append(String.format("%02x", b));
+        }
+        return signature.toString();
+    }
+
+    private static JsonObject gitHubPush(String name) {
+        return new JsonObject().put("ref", "refs/heads/master").put("repository", new JsonObject()
+                .put("id", 1).put("name", name).put("private", false).put("size", 10)
+                .put("owner", new JsonObject().put("name", "tom").put("login", "tom")));
+    }
+
+    private static Future<MirrorSummary> record(List<Repository> mirrored, Repository from) {
+        mirrored.add(from);
+        return Future.succeededFuture(new MirrorSummary(Collections.emptyList()));
+    }
+
+    @Test
+    public void shouldCoalesceBurstOfGitHubPushes() throws Exception {
+        start(new GitHubPlatform(vertx, new PlatformUser("tom", "xxx")) {
+            @Override
+            public Future<MirrorSummary> mirrorRepoTo(AbstractOnlinePlatform targetPlatform, Repository from,
+                                                      MirrorScheduler scheduler) {
+                return record(mirrored, from);
+            }
+        });
+
+        for (String name : new String[]{"a", "a", "b", "a"}) {
+            JsonObject payload = gitHubPush(name);
+            assertEquals(202, post(client.post(port, "localhost", "/webhook")
+                    .putHeader("X-GitHub-Event", "push")
+                    .putHeader("X-Hub-Signature-256", sign(payload.toBuffer())), payload));
+        }
+        Thread.sleep(1000);
+
+        assertEquals(2, mirrored.size());
+        assertEquals("tom", mirrored.get(0).getOwner());
+        assertTrue(mirrored.stream().anyMatch(repo -> "a".equals(repo.getName())));
+        assertTrue(mirrored.stream().anyMatch(repo -> "b".equals(repo.getName())));
+    }
+
+    @Test
+    public void shouldRejectInvalidGitHubSignature() throws Exception {
+        start(new GitHubPlatform(vertx, new PlatformUser("tom", "xxx")) {
+            @Override
+            public Future<MirrorSummary> mirrorRepoTo(AbstractOnlinePlatform targetPlatform, Repository from,
+                                                      MirrorScheduler scheduler) {
+                return record(mirrored, from);
+            }
+        });
+
+        JsonObject payload = gitHubPush("a");
+        assertEquals(401, post(client.post(port, "localhost", "/webhook")
+                .putHeader("X-GitHub-Event", "push")
+                .putHeader("X-Hub-Signature-256", sign(gitHubPush("b").toBuffer())), payload));
+        assertEquals(204, post(client.post(port, "localhost", "/webhook")
+                .putHeader("X-GitHub-Event", "ping")
+                .putHeader("X-Hub-Signature-256", sign(payload.toBuffer())), payload));
+        Thread.sleep(500);
+
+        assertTrue(mirrored.isEmpty());
+    }
+
+    @Test
+    public void shouldVerifyGitLabToken() throws Exception {
+        start(new GitLabPlatform(vertx, new PlatformUser("tom", "xxx")) {
+            @Override
+            public Future<MirrorSummary> mirrorRepoTo(AbstractOnlinePlatform targetPlatform, Repository from,
+                                                      MirrorScheduler scheduler) {
+                return record(mirrored, from);
+            }
+        });
+
+        JsonObject payload = new JsonObject().put("object_kind", "push").put("project_id", 3)
+                .put("project", new JsonObject().put("id", 3).put("name", "repo")
+                        .put("path_with_namespace", "tom/repo").put("visibility_level", 0));
+        assertEquals(401, post(client.post(port, "localhost", "/webhook")
+                .putHeader("X-Gitlab-Event", "Push Hook")
+                .putHeader("X-Gitlab-Token", "wrong"), payload));
+        assertEquals(202, post(client.post(port, "localhost", "/webhook")
+                .putHeader("X-Gitlab-Event", "Push Hook")
+                .putHeader("X-Gitlab-Token", SECRET), payload));
+        Thread.sleep(500);
+
+        assertEquals(1, mirrored.size());
+        assertEquals("tom", mirrored.get(0).getOwner());
+        assertEquals("repo", mirrored.get(0).getName());
+        assertTrue(mirrored.get(0).getVisibilityPrivate());
+    }
+
+    @Test
+    public void shouldRefuseUnsignedRequestsUnlessAllowed() throws Exception {
+        try {
+            start(recordingGitHub(), new WebhookOptions());
+            fail("the server should not start without a secret");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+
+        start(recordingGitHub(), new WebhookOptions().setAllowUnsigned(true).setDebounceMs(200));
+        assertEquals(202, post(client.post(port, "localhost", "/webhook")
+                .putHeader("X-GitHub-Event", "push"), gitHubPush("a")));
+        Thread.sleep(500);
+
+        assertEquals(1, mirrored.size());
+    }
+
+    @Test
+    public void shouldRejectTooLargeBody() throws Exception {
+        start(recordingGitHub(), new WebhookOptions().setSecret(SECRET).setDebounceMs(200).setMaxBodyKb(1));
+        char[] padding = new char[2048];
+        Arrays.fill(padding, 'x');
+        JsonObject payload = gitHubPush("a").put("padding", new String(padding));
+
+        // told by the length.
+        assertEquals(413, post(client.post(port, "localhost", "/webhook")
+                .putHeader("X-GitHub-Event", "push")
+                .putHeader("X-Hub-Signature-256", sign(payload.toBuffer())), payload));
+
+        // found while reading chunks.
+        HttpClient http = vertx.createHttpClient();
+        int status = http.request(HttpMethod.POST, port, "localhost", "/webhook").compose(request -> {
+            request.setChunked(true).putHeader("X-GitHub-Event", "push");
+            for (int i = 0; i < 4; i++) {
+                request.write(Buffer.buffer(new String(padding, 0, 512)));
+            }
+            request.end();
+            return request.response();
+        }).map(HttpClientResponse::statusCode).toCompletionStage().toCompletableFuture().get(10, TimeUnit.SECONDS);
+        http.close();
+        assertEquals(413, status);
+        Thread.sleep(500);
+
+        assertTrue(mirrored.isEmpty());
+    }
+
+    @Test
+    public void shouldRejectRepositoryNotOwnedBySourceAccount() throws Exception {
+        start(recordingGitHub());
+        JsonObject payload = gitHubPush("a");
+        payload.getJsonObject("repository").put("owner", new JsonObject().put("name", "acme").put("login", "acme"));
+
+        // a validly signed organization webhook, pushing a repository not synced.
+        assertEquals(403, post(client.post(port, "localhost", "/webhook")
+                .putHeader("X-GitHub-Event", "push")
+                .putHeader("X-Hub-Signature-256", sign(payload.toBuffer())), payload));
+
+        // logins are case-insensitive.
+        payload = gitHubPush("b");
+        payload.getJsonObject("repository").put("owner", new JsonObject().put("name", "Tom").put("login", "Tom"));
+        assertEquals(202, post(client.post(port, "localhost", "/webhook")
+                .putHeader("X-GitHub-Event", "push")
+                .putHeader("X-Hub-Signature-256", sign(payload.toBuffer())), payload));
+        Thread.sleep(500);
+
+        assertEquals(1, mirrored.size());
+        assertEquals("b", mirrored.get(0).getName());
+    }
+
+    @Test
+    public void shouldIgnorePrivateRepositoryUnlessIncluded() throws Exception {
+        start(recordingGitHub(), new WebhookOptions().setSecret(SECRET).setDebounceMs(200).setIncludePrivate(false));
+        JsonObject secret = gitHubPush("secret");
+        secret.getJsonObject("repository").put("private", true);
+
+        assertEquals(204, post(client.post(port, "localhost", "/webhook")
+                .putHeader("X-GitHub-Event", "push")
+                .putHeader("X-Hub-Signature-256", sign(secret.toBuffer())), secret));
+        JsonObject open = gitHubPush("open");
+        assertEquals(202, post(client.post(port, "localhost", "/webhook")
+                .putHeader("X-GitHub-Event", "push")
+                .putHeader("X-Hub-Signature-256", sign(open.toBuffer())), open));
+        Thread.sleep(500);
+
+        assertEquals(1, mirrored.size());
+        assertEquals("open", mirrored.get(0).getName());
+    }
+}